@@ -0,0 +1,230 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+
+import org.apache.cxf.common.logging.LogUtils;
+import org.apache.cxf.endpoint.Client;
+import org.apache.cxf.endpoint.PreexistingConduitSelector;
+import org.apache.cxf.frontend.ClientProxy;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+import org.apache.cxf.security.transport.TLSSessionInfo;
+import org.apache.cxf.transport.AbstractConduit;
+import org.apache.cxf.ws.addressing.AddressingProperties;
+import org.apache.cxf.ws.addressing.EndpointReferenceUtils;
+import org.apache.cxf.ws.addressing.JAXWSAConstants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.base.Charsets;
+
+import https.ws_paymentsgateway_net.v1.Authentication;
+import https.ws_paymentsgateway_net.v1.CcCardType;
+import https.ws_paymentsgateway_net.v1.ClientRecord;
+import https.ws_paymentsgateway_net.v1.CreateClient;
+import https.ws_paymentsgateway_net.v1.CreatePaymentMethod;
+import https.ws_paymentsgateway_net.v1.ObjectFactory;
+import https.ws_paymentsgateway_net.v1.PaymentMethod;
+
+// What a tokenization costs before reaching the network: authentication ticket, JAXB marshalling of the request
+// payloads, and a full CXF call (outbound interceptor chain, LoggingOutInterceptor and HttpHeaderInterceptor included,
+// then response unmarshalling) over an in-memory conduit answering a canned response.
+// Run with: mvn -Pjmh test-compile exec:exec -Djmh.args="ForteWSClientBenchmark" (see gc.alloc.rate.norm for the bytes allocated per operation)
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ForteWSClientBenchmark {
+
+    // Never connected to
+    private static final String URL = "https://127.0.0.1:1/ws/Client.svc";
+    private static final long CONNECT_TIMEOUT_MILLIS = 10000;
+    private static final long RECEIVE_TIMEOUT_MILLIS = 60000;
+    private static final String UTC_IN_TICKS = "635646912000000000";
+
+    // Like the gateway, correlated with the request (RelatesTo)
+    private static final String CREATE_PAYMENT_METHOD_RESPONSE_START = "<s:Envelope xmlns:s=\"http://www.w3.org/2003/05/soap-envelope\" xmlns:a=\"http://www.w3.org/2005/08/addressing\">" +
+                                                                       "<s:Header>" +
+                                                                       "<a:Action s:mustUnderstand=\"1\">https://ws.paymentsgateway.net/v1/IClientService/createPaymentMethodResponse</a:Action>" +
+                                                                       "<a:RelatesTo>";
+    private static final String CREATE_PAYMENT_METHOD_RESPONSE_END = "</a:RelatesTo>" +
+                                                                     "</s:Header>" +
+                                                                     "<s:Body>" +
+                                                                     "<createPaymentMethodResponse xmlns=\"https://ws.paymentsgateway.net/v1\">" +
+                                                                     "<createPaymentMethodResult>1234567</createPaymentMethodResult>" +
+                                                                     "</createPaymentMethodResponse>" +
+                                                                     "</s:Body>" +
+                                                                     "</s:Envelope>";
+
+    private ForteWSProxies proxies;
+    private ForteWSClient wsClient;
+    private Marshaller marshaller;
+    private CreatePaymentMethod createPaymentMethod;
+    private CreateClient createClient;
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream(4096);
+    private long utcTimeMillis = System.currentTimeMillis();
+
+    @Setup
+    public void setUp() throws JAXBException {
+        final Properties properties = new Properties();
+        properties.put("org.killbill.billing.plugin.forte.merchantId", "123456");
+        properties.put("org.killbill.billing.plugin.forte.apiLoginId", "apiLoginId");
+        properties.put("org.killbill.billing.plugin.forte.secureTransactionKey", "secureTransactionKey");
+        properties.put("org.killbill.billing.plugin.forte.wsUrl", URL);
+        properties.put("org.killbill.billing.plugin.forte.connectTimeout", String.valueOf(CONNECT_TIMEOUT_MILLIS));
+        properties.put("org.killbill.billing.plugin.forte.wsTimeout", String.valueOf(RECEIVE_TIMEOUT_MILLIS));
+        proxies = new ForteWSProxies(new Properties());
+        wsClient = new ForteWSClient(properties, proxies);
+
+        // The proxy the client uses
+        final Client client = ClientProxy.getClient(proxies.getProxy(URL, CONNECT_TIMEOUT_MILLIS, RECEIVE_TIMEOUT_MILLIS));
+        client.setConduitSelector(new PreexistingConduitSelector(new InMemoryConduit(), client.getEndpoint()));
+
+        marshaller = JAXBContext.newInstance(ObjectFactory.class).createMarshaller();
+
+        final PaymentMethod paymentMethod = new PaymentMethod();
+        paymentMethod.setMerchantID(123456);
+        paymentMethod.setAcctHolderName("John Doe");
+        paymentMethod.setCcCardType(CcCardType.VISA);
+        paymentMethod.setCcCardNumber("4111111111111111");
+        paymentMethod.setCcExpirationDate("203012");
+        createPaymentMethod = new CreatePaymentMethod();
+        createPaymentMethod.setTicket(wsClient.buildAuthentication(utcTimeMillis));
+        createPaymentMethod.setPayment(paymentMethod);
+
+        final ClientRecord clientRecord = new ClientRecord();
+        clientRecord.setMerchantID(123456);
+        clientRecord.setFirstName("John");
+        clientRecord.setLastName("Doe");
+        clientRecord.setAddress1("1 Main Street");
+        clientRecord.setState("CA");
+        clientRecord.setPostalCode("94105");
+        clientRecord.setEmailAddress("john@example.com");
+        createClient = new CreateClient();
+        createClient.setTicket(wsClient.buildAuthentication(utcTimeMillis));
+        createClient.setClient(clientRecord);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        wsClient.close();
+        proxies.close();
+    }
+
+    @Benchmark
+    public String generateTSHash() {
+        return wsClient.generateTSHash(UTC_IN_TICKS);
+    }
+
+    // A new second every time: the ticket is never reused
+    @Benchmark
+    public Authentication buildAuthentication() {
+        utcTimeMillis += 1000;
+        return wsClient.buildAuthentication(utcTimeMillis);
+    }
+
+    // Within the same second
+    @Benchmark
+    public Authentication buildAuthenticationCached() {
+        return wsClient.buildAuthentication(utcTimeMillis);
+    }
+
+    @Benchmark
+    public int marshalPaymentMethod() throws JAXBException {
+        output.reset();
+        marshaller.marshal(createPaymentMethod, output);
+        return output.size();
+    }
+
+    @Benchmark
+    public int marshalClientRecord() throws JAXBException {
+        output.reset();
+        marshaller.marshal(createClient, output);
+        return output.size();
+    }
+
+    @Benchmark
+    public String tokenizeCreditCard() {
+        return wsClient.tokenizeCreditCard("John Doe", "visa", "4111111111111111", "12", "2030");
+    }
+
+    // Swallows the request, answers right away (on the calling thread, as over HTTPS)
+    private static final class InMemoryConduit extends AbstractConduit {
+
+        private static final Logger LOG = LogUtils.getL7dLogger(InMemoryConduit.class);
+
+        private InMemoryConduit() {
+            super(EndpointReferenceUtils.getEndpointReference(URL));
+        }
+
+        @Override
+        public void prepare(final Message message) {
+            // Like HTTPConduit: Client.wsdl requires HTTPS
+            message.put("http.scheme", "https");
+            message.setContent(OutputStream.class, new ByteArrayOutputStream(4096));
+        }
+
+        @Override
+        public void close(final Message message) throws IOException {
+            super.close(message);
+            // Also called with the response, once the exchange completes
+            if (message != message.getExchange().getOutMessage()) {
+                return;
+            }
+
+            final Message response = new MessageImpl();
+            response.setExchange(message.getExchange());
+            response.put(Message.RESPONSE_CODE, 200);
+            response.put(Message.CONTENT_TYPE, "application/soap+xml; charset=utf-8");
+            response.put(TLSSessionInfo.class, new TLSSessionInfo("TLS_RSA_WITH_AES_128_CBC_SHA"));
+            final String messageId = ((AddressingProperties) message.get(JAXWSAConstants.ADDRESSING_PROPERTIES_OUTBOUND)).getMessageID().getValue();
+            final byte[] content = (CREATE_PAYMENT_METHOD_RESPONSE_START + messageId + CREATE_PAYMENT_METHOD_RESPONSE_END).getBytes(Charsets.UTF_8);
+            response.setContent(InputStream.class, new ByteArrayInputStream(content));
+            incomingObserver.onMessage(response);
+        }
+
+        @Override
+        protected Logger getLogger() {
+            return LOG;
+        }
+    }
+}
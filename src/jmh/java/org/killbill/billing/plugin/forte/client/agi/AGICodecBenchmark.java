@@ -0,0 +1,199 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.client.agi;
+
+import java.math.BigDecimal;
+import java.net.ProtocolException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.killbill.billing.plugin.forte.client.ForteAGIClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+
+// Request building and wire encoding (what the transports write), and response parsing (what they read), without I/O.
+// Run with: mvn -Pjmh test-compile exec:exec (the GC profiler reports the bytes allocated per operation: gc.alloc.rate.norm)
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AGICodecBenchmark {
+
+    private static final BigDecimal AMOUNT = new BigDecimal("10.50");
+    // What FortePaymentPluginApi passes along
+    private static final Map<String, Object> OPTIONAL_DATA = ImmutableMap.<String, Object>of(ForteAGIClient.PG_MERCHANT_DATA_1, "7d3b8c5e-2a8f-4b64-9d0e-9f8b7a6c5d4e",
+                                                                                             ForteAGIClient.PG_MERCHANT_DATA_2, "0b9f5c7e-6d1a-4c3b-8e2f-1a2b3c4d5e6f");
+    private static final Map<String, Object> TOKEN_DATA = ImmutableMap.<String, Object>builder()
+                                                                      .putAll(OPTIONAL_DATA)
+                                                                      .put(ForteAGIClient.PG_PAYMENT_METHOD_ID, "a9bc1def-2345-6789-abcd-ef0123456789")
+                                                                      .build();
+
+    private static final byte[] APPROVAL_RESPONSE = ("pg_merchant_id=123456\n" +
+                                                     "pg_transaction_type=10\n" +
+                                                     "pg_merchant_data_1=7d3b8c5e-2a8f-4b64-9d0e-9f8b7a6c5d4e\n" +
+                                                     "pg_merchant_data_2=0b9f5c7e-6d1a-4c3b-8e2f-1a2b3c4d5e6f\n" +
+                                                     "pg_total_amount=10.50\n" +
+                                                     "ecom_billto_postal_name_first=John\n" +
+                                                     "ecom_billto_postal_name_last=Smith\n" +
+                                                     "pg_response_type=A\n" +
+                                                     "pg_response_code=A01\n" +
+                                                     "pg_response_description=TEST APPROVAL\n" +
+                                                     "pg_authorization_code=4Q8T2Z\n" +
+                                                     "pg_trace_number=8D3B6E4C-1F2A-4B5C-9D8E-7F6A5B4C3D2E\n" +
+                                                     "pg_avs_result=Y\n" +
+                                                     "pg_cvv2_result=M\n" +
+                                                     "pg_preauth_result=OK\n" +
+                                                     "endofdata\n").getBytes(Charsets.ISO_8859_1);
+    private static final byte[] DECLINE_RESPONSE = ("pg_merchant_id=123456\n" +
+                                                    "pg_transaction_type=20\n" +
+                                                    "pg_total_amount=10.50\n" +
+                                                    "ecom_billto_postal_name_first=John\n" +
+                                                    "ecom_billto_postal_name_last=Smith\n" +
+                                                    "pg_response_type=D\n" +
+                                                    "pg_response_code=U02\n" +
+                                                    "pg_response_description=ACCOUNT NOT APPROVED\n" +
+                                                    "pg_trace_number=8D3B6E4C-1F2A-4B5C-9D8E-7F6A5B4C3D2E\n" +
+                                                    "endofdata\n").getBytes(Charsets.ISO_8859_1);
+
+    private ForteAGIClient agiClient;
+
+    @Setup
+    public void setUp() {
+        final Properties properties = new Properties();
+        properties.put("org.killbill.billing.plugin.forte.merchantId", "123456");
+        properties.put("org.killbill.billing.plugin.forte.password", "password");
+        // Never connected to
+        properties.put("org.killbill.billing.plugin.forte.host", "127.0.0.1");
+        agiClient = new ForteAGIClient(properties);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        agiClient.shutdown();
+    }
+
+    @Benchmark
+    public int encodeCreditCard() {
+        return encode(agiClient.buildCreditCardRequest(ForteAGIClient.CREDIT_CARD_SALE,
+                                                       AMOUNT,
+                                                       "John",
+                                                       "Smith",
+                                                       "1 Main Street",
+                                                       "CA",
+                                                       "94105",
+                                                       null,
+                                                       "john@example.com",
+                                                       "John Smith",
+                                                       "VISA",
+                                                       "4111111111111111",
+                                                       "08",
+                                                       "2030",
+                                                       OPTIONAL_DATA));
+    }
+
+    @Benchmark
+    public int encodeEFT() {
+        return encode(agiClient.buildEFTRequest(ForteAGIClient.EFT_SALE,
+                                                AMOUNT,
+                                                "John",
+                                                "Smith",
+                                                "1 Main Street",
+                                                "CA",
+                                                "94105",
+                                                null,
+                                                "john@example.com",
+                                                "021000021",
+                                                "123456789",
+                                                "C",
+                                                OPTIONAL_DATA));
+    }
+
+    @Benchmark
+    public int encodeToken() {
+        return encode(agiClient.buildCreditCardRequest(ForteAGIClient.CREDIT_CARD_SALE,
+                                                       AMOUNT,
+                                                       "John",
+                                                       "Smith",
+                                                       null,
+                                                       null,
+                                                       null,
+                                                       null,
+                                                       null,
+                                                       null,
+                                                       null,
+                                                       null,
+                                                       null,
+                                                       null,
+                                                       TOKEN_DATA));
+    }
+
+    @Benchmark
+    public int encodeCapture() {
+        return encode(agiClient.buildAdministrativeRequest(ForteAGIClient.CREDIT_CARD_CAPTURE,
+                                                           "8D3B6E4C-1F2A-4B5C-9D8E-7F6A5B4C3D2E",
+                                                           "4Q8T2Z",
+                                                           OPTIONAL_DATA));
+    }
+
+    @Benchmark
+    public int encodeVoid() {
+        return encode(agiClient.buildAdministrativeRequest(ForteAGIClient.EFT_VOID,
+                                                           "8D3B6E4C-1F2A-4B5C-9D8E-7F6A5B4C3D2E",
+                                                           "4Q8T2Z",
+                                                           OPTIONAL_DATA));
+    }
+
+    @Benchmark
+    public String parseApproval() throws ProtocolException {
+        return parse(APPROVAL_RESPONSE);
+    }
+
+    @Benchmark
+    public String parseDecline() throws ProtocolException {
+        return parse(DECLINE_RESPONSE);
+    }
+
+    // Like the transports: terminated, written out, then released
+    private int encode(final AGIRequest request) {
+        request.terminate();
+        final int length = request.getLength() + request.getBuffer()[request.getLength() - 1];
+        request.release();
+        return length;
+    }
+
+    private String parse(final byte[] bytes) throws ProtocolException {
+        final AGIResponseParser parser = new AGIResponseParser();
+        parser.consume(bytes, 0, bytes.length);
+        return parser.getResponse().get(AGIField.PG_RESPONSE_TYPE);
+    }
+}
@@ -22,6 +22,12 @@ import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.annotation.Nullable;
 
@@ -43,8 +49,13 @@ import org.killbill.billing.plugin.api.PluginProperties;
 import org.killbill.billing.plugin.api.payment.PluginPaymentMethodPlugin;
 import org.killbill.billing.plugin.api.payment.PluginPaymentPluginApi;
 import org.killbill.billing.plugin.forte.client.ForteAGIClient;
+import org.killbill.billing.plugin.forte.client.ForteCircuitOpenException;
 import org.killbill.billing.plugin.forte.client.ForteWSClient;
+import org.killbill.billing.plugin.forte.client.agi.AGIFutures;
+import org.killbill.billing.plugin.forte.client.agi.AGIResponse;
+import org.killbill.billing.plugin.forte.client.agi.AGIUnknownOutcomeException;
 import org.killbill.billing.plugin.forte.core.ForteAGIConfigurationHandler;
+import org.killbill.billing.plugin.forte.core.ForteCustomerService;
 import org.killbill.billing.plugin.forte.core.ForteWSConfigurationHandler;
 import org.killbill.billing.plugin.forte.dao.ForteDao;
 import org.killbill.billing.plugin.forte.dao.gen.tables.FortePaymentMethods;
@@ -53,11 +64,16 @@ import org.killbill.billing.plugin.forte.dao.gen.tables.records.FortePaymentMeth
 import org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteResponsesRecord;
 import org.killbill.billing.util.callcontext.CallContext;
 import org.killbill.clock.Clock;
+import org.osgi.service.log.LogService;
 
 import com.google.common.base.Objects;
+import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMap.Builder;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 public class FortePaymentPluginApi extends PluginPaymentPluginApi<ForteResponsesRecord, ForteResponses, FortePaymentMethodsRecord, FortePaymentMethods> {
 
@@ -68,14 +84,23 @@ public class FortePaymentPluginApi extends PluginPaymentPluginApi<ForteResponses
     public static final String PROPERTY_ACCOUNT_NUMBER = "accountNumber";
     public static final String PROPERTY_ACCOUNT_TYPE = "accountType";
 
+    // Gateway error code of the transactions (and exceptions) short-circuited while the endpoint is considered down
+    public static final String GATEWAY_UNAVAILABLE = "GATEWAY_UNAVAILABLE";
+
     private static final String SOFTWARE_NAME = "KILLBILL";
     private static final String SOFTWARE_VERSION = "1.0";
+    private static final long MAX_CONTEXT_AGE_MILLIS = 5000;
 
     private final ForteAGIConfigurationHandler forteAGIConfigurationHandler;
     private final ForteWSConfigurationHandler forteWSConfigurationHandler;
+    private final ForteCustomerService forteCustomerService;
+    // Lookups issued in parallel before the gateway calls
+    private final ExecutorService lookupExecutor;
 
     public FortePaymentPluginApi(final ForteAGIConfigurationHandler forteAGIConfigurationHandler,
                                  final ForteWSConfigurationHandler forteWSConfigurationHandler,
+                                 final ForteCustomerService forteCustomerService,
+                                 final ExecutorService lookupExecutor,
                                  final OSGIKillbillAPI killbillAPI,
                                  final OSGIConfigPropertiesService configProperties,
                                  final OSGIKillbillLogService logService,
@@ -84,6 +109,8 @@ public class FortePaymentPluginApi extends PluginPaymentPluginApi<ForteResponses
         super(killbillAPI, configProperties, logService, clock, dao);
         this.forteAGIConfigurationHandler = forteAGIConfigurationHandler;
         this.forteWSConfigurationHandler = forteWSConfigurationHandler;
+        this.forteCustomerService = forteCustomerService;
+        this.lookupExecutor = lookupExecutor;
     }
 
     @Override
@@ -111,27 +138,43 @@ public class FortePaymentPluginApi extends PluginPaymentPluginApi<ForteResponses
         return executeTransaction(TransactionType.AUTHORIZE,
                                   new TransactionExecutor() {
                                       @Override
-                                      public Map<String, String> execute(final BigDecimal amount, final String customerFirstName, final String customerLastName, final String cardName, final String cardType, final String cardNumber, final String cardExpMonth, final String cardExpYear, @Nullable final Map<String, Object> optionalData) throws IOException {
-                                          return forteAGIConfigurationHandler.getConfigurable(context.getTenantId()).createAuthTransaction(amount,
-                                                                                                                                           customerFirstName,
-                                                                                                                                           customerFirstName,
-                                                                                                                                           cardName,
-                                                                                                                                           cardType,
-                                                                                                                                           cardNumber,
-                                                                                                                                           cardExpMonth,
-                                                                                                                                           cardExpYear,
-                                                                                                                                           optionalData);
+                                      public ListenableFuture<AGIResponse> execute(final BigDecimal amount, final String customerFirstName, final String customerLastName, final String cardName, final String cardType, final String cardNumber, final String cardExpMonth, final String cardExpYear, @Nullable final Map<String, Object> optionalData, final long budgetMillis) {
+                                          final ForteAGIClient agiClient = forteAGIConfigurationHandler.getConfigurable(context.getTenantId());
+                                          return agiClient.submitAsync(agiClient.buildCreditCardRequest(ForteAGIClient.CREDIT_CARD_AUTH,
+                                                                                                        amount,
+                                                                                                        customerFirstName,
+                                                                                                        customerFirstName,
+                                                                                                        null,
+                                                                                                        null,
+                                                                                                        null,
+                                                                                                        null,
+                                                                                                        null,
+                                                                                                        cardName,
+                                                                                                        cardType,
+                                                                                                        cardNumber,
+                                                                                                        cardExpMonth,
+                                                                                                        cardExpYear,
+                                                                                                        optionalData),
+                                                                       budgetMillis);
                                       }
 
                                       @Override
-                                      public Map<String, String> execute(final BigDecimal amount, final String customerFirstName, final String customerLastName, final String transitRoutingNumber, final String accountNumber, final String accountType, @Nullable final Map<String, Object> optionalData) throws IOException {
-                                          return forteAGIConfigurationHandler.getConfigurable(context.getTenantId()).createAuthTransaction(amount,
-                                                                                                                                           customerFirstName,
-                                                                                                                                           customerFirstName,
-                                                                                                                                           transitRoutingNumber,
-                                                                                                                                           accountNumber,
-                                                                                                                                           accountType,
-                                                                                                                                           optionalData);
+                                      public ListenableFuture<AGIResponse> execute(final BigDecimal amount, final String customerFirstName, final String customerLastName, final String transitRoutingNumber, final String accountNumber, final String accountType, @Nullable final Map<String, Object> optionalData, final long budgetMillis) {
+                                          final ForteAGIClient agiClient = forteAGIConfigurationHandler.getConfigurable(context.getTenantId());
+                                          return agiClient.submitAsync(agiClient.buildEFTRequest(ForteAGIClient.EFT_AUTH,
+                                                                                                 amount,
+                                                                                                 customerFirstName,
+                                                                                                 customerFirstName,
+                                                                                                 null,
+                                                                                                 null,
+                                                                                                 null,
+                                                                                                 null,
+                                                                                                 null,
+                                                                                                 transitRoutingNumber,
+                                                                                                 accountNumber,
+                                                                                                 accountType,
+                                                                                                 optionalData),
+                                                                       budgetMillis);
                                       }
                                   },
                                   kbAccountId,
@@ -149,10 +192,13 @@ public class FortePaymentPluginApi extends PluginPaymentPluginApi<ForteResponses
         return executeTransaction(TransactionType.CAPTURE,
                                   new TransactionExecutor() {
                                       @Override
-                                      public Map<String, String> execute(final String originalTraceNumber, final String originalAuthorizationCode, @Nullable final Map<String, Object> optionalData) throws IOException {
-                                          return forteAGIConfigurationHandler.getConfigurable(context.getTenantId()).createCaptureTransaction(originalTraceNumber,
-                                                                                                                                              originalAuthorizationCode,
-                                                                                                                                              optionalData);
+                                      public ListenableFuture<AGIResponse> execute(final String originalTraceNumber, final String originalAuthorizationCode, @Nullable final Map<String, Object> optionalData, final long budgetMillis) {
+                                          final ForteAGIClient agiClient = forteAGIConfigurationHandler.getConfigurable(context.getTenantId());
+                                          return agiClient.submitAsync(agiClient.buildAdministrativeRequest(ForteAGIClient.EFT_CAPTURE,
+                                                                                                            originalTraceNumber,
+                                                                                                            originalAuthorizationCode,
+                                                                                                            optionalData),
+                                                                       budgetMillis);
                                       }
                                   },
                                   kbAccountId,
@@ -170,27 +216,43 @@ public class FortePaymentPluginApi extends PluginPaymentPluginApi<ForteResponses
         return executeTransaction(TransactionType.PURCHASE,
                                   new TransactionExecutor() {
                                       @Override
-                                      public Map<String, String> execute(final BigDecimal amount, final String customerFirstName, final String customerLastName, final String cardName, final String cardType, final String cardNumber, final String cardExpMonth, final String cardExpYear, @Nullable final Map<String, Object> optionalData) throws IOException {
-                                          return forteAGIConfigurationHandler.getConfigurable(context.getTenantId()).createSaleTransaction(amount,
-                                                                                                                                           customerFirstName,
-                                                                                                                                           customerFirstName,
-                                                                                                                                           cardName,
-                                                                                                                                           cardType,
-                                                                                                                                           cardNumber,
-                                                                                                                                           cardExpMonth,
-                                                                                                                                           cardExpYear,
-                                                                                                                                           optionalData);
+                                      public ListenableFuture<AGIResponse> execute(final BigDecimal amount, final String customerFirstName, final String customerLastName, final String cardName, final String cardType, final String cardNumber, final String cardExpMonth, final String cardExpYear, @Nullable final Map<String, Object> optionalData, final long budgetMillis) {
+                                          final ForteAGIClient agiClient = forteAGIConfigurationHandler.getConfigurable(context.getTenantId());
+                                          return agiClient.submitAsync(agiClient.buildCreditCardRequest(ForteAGIClient.CREDIT_CARD_SALE,
+                                                                                                        amount,
+                                                                                                        customerFirstName,
+                                                                                                        customerFirstName,
+                                                                                                        null,
+                                                                                                        null,
+                                                                                                        null,
+                                                                                                        null,
+                                                                                                        null,
+                                                                                                        cardName,
+                                                                                                        cardType,
+                                                                                                        cardNumber,
+                                                                                                        cardExpMonth,
+                                                                                                        cardExpYear,
+                                                                                                        optionalData),
+                                                                       budgetMillis);
                                       }
 
                                       @Override
-                                      public Map<String, String> execute(final BigDecimal amount, final String customerFirstName, final String customerLastName, final String transitRoutingNumber, final String accountNumber, final String accountType, @Nullable final Map<String, Object> optionalData) throws IOException {
-                                          return forteAGIConfigurationHandler.getConfigurable(context.getTenantId()).createSaleTransaction(amount,
-                                                                                                                                           customerFirstName,
-                                                                                                                                           customerFirstName,
-                                                                                                                                           transitRoutingNumber,
-                                                                                                                                           accountNumber,
-                                                                                                                                           accountType,
-                                                                                                                                           optionalData);
+                                      public ListenableFuture<AGIResponse> execute(final BigDecimal amount, final String customerFirstName, final String customerLastName, final String transitRoutingNumber, final String accountNumber, final String accountType, @Nullable final Map<String, Object> optionalData, final long budgetMillis) {
+                                          final ForteAGIClient agiClient = forteAGIConfigurationHandler.getConfigurable(context.getTenantId());
+                                          return agiClient.submitAsync(agiClient.buildEFTRequest(ForteAGIClient.EFT_SALE,
+                                                                                                 amount,
+                                                                                                 customerFirstName,
+                                                                                                 customerFirstName,
+                                                                                                 null,
+                                                                                                 null,
+                                                                                                 null,
+                                                                                                 null,
+                                                                                                 null,
+                                                                                                 transitRoutingNumber,
+                                                                                                 accountNumber,
+                                                                                                 accountType,
+                                                                                                 optionalData),
+                                                                       budgetMillis);
                                       }
                                   },
                                   kbAccountId,
@@ -208,10 +270,13 @@ public class FortePaymentPluginApi extends PluginPaymentPluginApi<ForteResponses
         return executeTransaction(TransactionType.VOID,
                                   new TransactionExecutor() {
                                       @Override
-                                      public Map<String, String> execute(final String originalTraceNumber, final String originalAuthorizationCode, @Nullable final Map<String, Object> optionalData) throws IOException {
-                                          return forteAGIConfigurationHandler.getConfigurable(context.getTenantId()).createVoidTransaction(originalTraceNumber,
-                                                                                                                                           originalAuthorizationCode,
-                                                                                                                                           optionalData);
+                                      public ListenableFuture<AGIResponse> execute(final String originalTraceNumber, final String originalAuthorizationCode, @Nullable final Map<String, Object> optionalData, final long budgetMillis) {
+                                          final ForteAGIClient agiClient = forteAGIConfigurationHandler.getConfigurable(context.getTenantId());
+                                          return agiClient.submitAsync(agiClient.buildAdministrativeRequest(ForteAGIClient.EFT_VOID,
+                                                                                                            originalTraceNumber,
+                                                                                                            originalAuthorizationCode,
+                                                                                                            optionalData),
+                                                                       budgetMillis);
                                       }
                                   },
                                   kbAccountId,
@@ -229,27 +294,43 @@ public class FortePaymentPluginApi extends PluginPaymentPluginApi<ForteResponses
         return executeTransaction(TransactionType.CREDIT,
                                   new TransactionExecutor() {
                                       @Override
-                                      public Map<String, String> execute(final BigDecimal amount, final String customerFirstName, final String customerLastName, final String cardName, final String cardType, final String cardNumber, final String cardExpMonth, final String cardExpYear, @Nullable final Map<String, Object> optionalData) throws IOException {
-                                          return forteAGIConfigurationHandler.getConfigurable(context.getTenantId()).createCreditTransaction(amount,
-                                                                                                                                             customerFirstName,
-                                                                                                                                             customerFirstName,
-                                                                                                                                             cardName,
-                                                                                                                                             cardType,
-                                                                                                                                             cardNumber,
-                                                                                                                                             cardExpMonth,
-                                                                                                                                             cardExpYear,
-                                                                                                                                             optionalData);
+                                      public ListenableFuture<AGIResponse> execute(final BigDecimal amount, final String customerFirstName, final String customerLastName, final String cardName, final String cardType, final String cardNumber, final String cardExpMonth, final String cardExpYear, @Nullable final Map<String, Object> optionalData, final long budgetMillis) {
+                                          final ForteAGIClient agiClient = forteAGIConfigurationHandler.getConfigurable(context.getTenantId());
+                                          return agiClient.submitAsync(agiClient.buildCreditCardRequest(ForteAGIClient.CREDIT_CARD_CREDIT,
+                                                                                                        amount,
+                                                                                                        customerFirstName,
+                                                                                                        customerFirstName,
+                                                                                                        null,
+                                                                                                        null,
+                                                                                                        null,
+                                                                                                        null,
+                                                                                                        null,
+                                                                                                        cardName,
+                                                                                                        cardType,
+                                                                                                        cardNumber,
+                                                                                                        cardExpMonth,
+                                                                                                        cardExpYear,
+                                                                                                        optionalData),
+                                                                       budgetMillis);
                                       }
 
                                       @Override
-                                      public Map<String, String> execute(final BigDecimal amount, final String customerFirstName, final String customerLastName, final String transitRoutingNumber, final String accountNumber, final String accountType, @Nullable final Map<String, Object> optionalData) throws IOException {
-                                          return forteAGIConfigurationHandler.getConfigurable(context.getTenantId()).createCreditTransaction(amount,
-                                                                                                                                             customerFirstName,
-                                                                                                                                             customerFirstName,
-                                                                                                                                             transitRoutingNumber,
-                                                                                                                                             accountNumber,
-                                                                                                                                             accountType,
-                                                                                                                                             optionalData);
+                                      public ListenableFuture<AGIResponse> execute(final BigDecimal amount, final String customerFirstName, final String customerLastName, final String transitRoutingNumber, final String accountNumber, final String accountType, @Nullable final Map<String, Object> optionalData, final long budgetMillis) {
+                                          final ForteAGIClient agiClient = forteAGIConfigurationHandler.getConfigurable(context.getTenantId());
+                                          return agiClient.submitAsync(agiClient.buildEFTRequest(ForteAGIClient.EFT_CREDIT,
+                                                                                                 amount,
+                                                                                                 customerFirstName,
+                                                                                                 customerFirstName,
+                                                                                                 null,
+                                                                                                 null,
+                                                                                                 null,
+                                                                                                 null,
+                                                                                                 null,
+                                                                                                 transitRoutingNumber,
+                                                                                                 accountNumber,
+                                                                                                 accountType,
+                                                                                                 optionalData),
+                                                                       budgetMillis);
                                       }
                                   },
                                   kbAccountId,
@@ -287,20 +368,26 @@ public class FortePaymentPluginApi extends PluginPaymentPluginApi<ForteResponses
         final Map<String, String> safePropertiesMap = new HashMap<String, String>(PluginProperties.toStringMap(paymentMethodProps.getProperties(), properties));
 
         // TODO add option to skip tokenization
-        // TODO create customers (payment methods are not searchable in the VT)
         final String token;
         final ForteWSClient wsClient = forteWSConfigurationHandler.getConfigurable(context.getTenantId());
-        if (isCCTransaction(properties, null)) {
-            token = wsClient.tokenizeCreditCard(safePropertiesMap.get(PROPERTY_CC_FIRST_NAME),
-                                                safePropertiesMap.get(PROPERTY_CC_LAST_NAME),
-                                                safePropertiesMap.get(PROPERTY_CC_NUMBER),
-                                                safePropertiesMap.get(PROPERTY_CC_EXPIRATION_MONTH),
-                                                safePropertiesMap.get(PROPERTY_CC_EXPIRATION_YEAR));
-        } else {
-            token = wsClient.tokenizeECheck(safePropertiesMap.get(PROPERTY_ACCOUNT_HOLDER_NAME),
-                                            safePropertiesMap.get(PROPERTY_TRANSIT_ROUTING_NUMBER),
-                                            safePropertiesMap.get(PROPERTY_ACCOUNT_NUMBER),
-                                            safePropertiesMap.get(PROPERTY_ACCOUNT_TYPE));
+        try {
+            final String customerId = getCustomerId(kbAccountId, context);
+            if (isCCTransaction(properties, null)) {
+                token = wsClient.tokenizeCreditCard(safePropertiesMap.get(PROPERTY_CC_FIRST_NAME),
+                                                    safePropertiesMap.get(PROPERTY_CC_LAST_NAME),
+                                                    safePropertiesMap.get(PROPERTY_CC_NUMBER),
+                                                    safePropertiesMap.get(PROPERTY_CC_EXPIRATION_MONTH),
+                                                    safePropertiesMap.get(PROPERTY_CC_EXPIRATION_YEAR),
+                                                    customerId);
+            } else {
+                token = wsClient.tokenizeECheck(safePropertiesMap.get(PROPERTY_ACCOUNT_HOLDER_NAME),
+                                                safePropertiesMap.get(PROPERTY_TRANSIT_ROUTING_NUMBER),
+                                                safePropertiesMap.get(PROPERTY_ACCOUNT_NUMBER),
+                                                safePropertiesMap.get(PROPERTY_ACCOUNT_TYPE),
+                                                customerId);
+            }
+        } catch (final ForteCircuitOpenException e) {
+            throw new PaymentPluginApiException(GATEWAY_UNAVAILABLE, e.getMessage());
         }
         safePropertiesMap.put(PROPERTY_TOKEN, token);
 
@@ -313,6 +400,28 @@ public class FortePaymentPluginApi extends PluginPaymentPluginApi<ForteResponses
         super.addPaymentMethod(kbAccountId, kbPaymentMethodId, safePaymentMethodProps, setDefault, safeProperties, context);
     }
 
+    // Payment methods are attached to the client of the account, to be searchable in the Virtual Terminal: if it can't be
+    // retrieved nor created, the payment method is still added, without a client
+    @Nullable
+    private String getCustomerId(final UUID kbAccountId, final CallContext context) {
+        try {
+            return forteCustomerService.getOrCreateCustomerId(kbAccountId,
+                                                              context.getTenantId(),
+                                                              new Supplier<Account>() {
+                                                                  @Override
+                                                                  public Account get() {
+                                                                      return getAccount(kbAccountId, context);
+                                                                  }
+                                                              });
+        } catch (final SQLException e) {
+            logService.log(LogService.LOG_WARNING, "Unable to retrieve the Forte client for kbAccountId " + kbAccountId, e);
+            return null;
+        } catch (final RuntimeException e) {
+            logService.log(LogService.LOG_WARNING, "Unable to create the Forte client for kbAccountId " + kbAccountId, e);
+            return null;
+        }
+    }
+
     private PaymentTransactionInfoPlugin executeTransaction(final TransactionType transactionType,
                                                             final TransactionExecutor transactionExecutor,
                                                             final UUID kbAccountId,
@@ -323,8 +432,40 @@ public class FortePaymentPluginApi extends PluginPaymentPluginApi<ForteResponses
                                                             @Nullable final Currency currency,
                                                             final Iterable<PluginProperty> properties,
                                                             final CallContext context) throws PaymentPluginApiException {
-        final Account account = getAccount(kbAccountId, context);
-        final FortePaymentMethodsRecord paymentMethodsRecord = getPaymentMethodRecord(kbPaymentMethodId, context);
+        final Deadline deadline = buildDeadline(transactionType, context);
+
+        // Independent round trips (Kill Bill API, database): the account and, for modifications, the authorization are retrieved
+        // in the background while the payment method is retrieved on this thread
+        final TimedLookup<Account> accountLookup = new TimedLookup<Account>() {
+            @Override
+            protected Account lookup() {
+                return getAccount(kbAccountId, context);
+            }
+        };
+        final TimedLookup<FortePaymentMethodsRecord> paymentMethodLookup = new TimedLookup<FortePaymentMethodsRecord>() {
+            @Override
+            protected FortePaymentMethodsRecord lookup() throws SQLException {
+                return dao.getPaymentMethod(kbPaymentMethodId, context.getTenantId());
+            }
+        };
+        final TimedLookup<ForteResponsesRecord> previousResponseLookup = transactionType != TransactionType.CAPTURE && transactionType != TransactionType.VOID ? null : new TimedLookup<ForteResponsesRecord>() {
+            @Override
+            protected ForteResponsesRecord lookup() throws SQLException {
+                return dao.getSuccessfulAuthorizationResponse(kbPaymentId, context.getTenantId());
+            }
+        };
+
+        final Future<Account> accountFuture = lookupExecutor.submit(accountLookup);
+        final Future<ForteResponsesRecord> previousResponseFuture = previousResponseLookup == null ? null : lookupExecutor.submit(previousResponseLookup);
+        final ListenableFutureTask<FortePaymentMethodsRecord> paymentMethodFuture = ListenableFutureTask.create(paymentMethodLookup);
+        paymentMethodFuture.run();
+
+        final FortePaymentMethodsRecord paymentMethodsRecord = awaitLookup(paymentMethodFuture, deadline, "Unable to retrieve payment method for kbPaymentMethodId " + kbPaymentMethodId);
+        final Account account = awaitLookup(accountFuture, deadline, "Unable to retrieve account for kbAccountId " + kbAccountId);
+        final ForteResponsesRecord prefetchedPreviousResponse = previousResponseFuture == null ? null : awaitLookup(previousResponseFuture, deadline, "Unable to retrieve previous payment response for kbTransactionId " + kbTransactionId);
+        logService.log(LogService.LOG_DEBUG, String.format("Lookups for kbTransactionId %s: account %s, payment method %s, previous payment response %s",
+                                                           kbTransactionId, accountLookup, paymentMethodLookup, previousResponseLookup));
+
         final Map<String, Object> additionalData = buildAdditionalData(kbAccountId, kbPaymentId, kbTransactionId, kbPaymentMethodId, context);
         final DateTime utcNow = clock.getUTCNow();
 
@@ -343,7 +484,8 @@ public class FortePaymentPluginApi extends PluginPaymentPluginApi<ForteResponses
         final String paymentMethodToken = paymentMethodsRecord == null ? null : paymentMethodsRecord.getToken();
         final String token = PluginProperties.getValue(PROPERTY_TOKEN, paymentMethodToken, properties);
 
-        final Map<String, String> response;
+        deadline.check("calling the gateway");
+        final AGIResponse response;
         if (token != null) {
             final boolean ccTransaction = isCCTransaction(properties, paymentMethodsRecord);
 
@@ -354,26 +496,32 @@ public class FortePaymentPluginApi extends PluginPaymentPluginApi<ForteResponses
 
             try {
                 if (ccTransaction) {
-                    response = transactionExecutor.execute(amount,
-                                                           customerFirstName,
-                                                           customerLastName,
-                                                           null,
-                                                           null,
-                                                           null,
-                                                           null,
-                                                           null,
-                                                           additionalDataWithToken);
+                    response = AGIFutures.getResponse(transactionExecutor.execute(amount,
+                                                                                  customerFirstName,
+                                                                                  customerLastName,
+                                                                                  null,
+                                                                                  null,
+                                                                                  null,
+                                                                                  null,
+                                                                                  null,
+                                                                                  additionalDataWithToken,
+                                                                                  deadline.getRemainingMillis()));
                 } else {
-                    response = transactionExecutor.execute(amount,
-                                                           customerFirstName,
-                                                           customerLastName,
-                                                           null,
-                                                           null,
-                                                           null,
-                                                           additionalDataWithToken);
+                    response = AGIFutures.getResponse(transactionExecutor.execute(amount,
+                                                                                  customerFirstName,
+                                                                                  customerLastName,
+                                                                                  null,
+                                                                                  null,
+                                                                                  null,
+                                                                                  additionalDataWithToken,
+                                                                                  deadline.getRemainingMillis()));
                 }
+            } catch (final AGIUnknownOutcomeException e) {
+                return recordUnknownOutcome(kbAccountId, kbPaymentId, kbTransactionId, transactionType, amount, currency, additionalDataWithToken, utcNow, context.getTenantId(), e);
             } catch (IOException e) {
                 throw new PaymentPluginApiException(null, e);
+            } catch (final ForteCircuitOpenException e) {
+                return new FortePaymentTransactionInfoPlugin(kbPaymentId, kbTransactionId, transactionType, amount, currency, utcNow, GATEWAY_UNAVAILABLE, e.getMessage());
             }
         } else if (ccNumber != null) {
             // By convention, support the same keys as the Ruby plugins (https://github.com/killbill/killbill-plugin-framework-ruby/blob/master/lib/killbill/helpers/active_merchant/payment_plugin.rb)
@@ -393,17 +541,22 @@ public class FortePaymentPluginApi extends PluginPaymentPluginApi<ForteResponses
             final String ccLastName = PluginProperties.getValue(PROPERTY_CC_LAST_NAME, paymentMethodCcLastName, properties);
 
             try {
-                response = transactionExecutor.execute(amount,
-                                                       customerFirstName,
-                                                       customerLastName,
-                                                       String.format("%s %s", ccFirstName, ccLastName),
-                                                       ccType,
-                                                       ccNumber,
-                                                       ccExpirationMonth,
-                                                       ccExpirationYear,
-                                                       additionalData);
+                response = AGIFutures.getResponse(transactionExecutor.execute(amount,
+                                                                              customerFirstName,
+                                                                              customerLastName,
+                                                                              String.format("%s %s", ccFirstName, ccLastName),
+                                                                              ccType,
+                                                                              ccNumber,
+                                                                              ccExpirationMonth,
+                                                                              ccExpirationYear,
+                                                                              additionalData,
+                                                                              deadline.getRemainingMillis()));
+            } catch (final AGIUnknownOutcomeException e) {
+                return recordUnknownOutcome(kbAccountId, kbPaymentId, kbTransactionId, transactionType, amount, currency, additionalData, utcNow, context.getTenantId(), e);
             } catch (IOException e) {
                 throw new PaymentPluginApiException(null, e);
+            } catch (final ForteCircuitOpenException e) {
+                return new FortePaymentTransactionInfoPlugin(kbPaymentId, kbTransactionId, transactionType, amount, currency, utcNow, GATEWAY_UNAVAILABLE, e.getMessage());
             }
         } else if (accountNumber != null) {
             // EFT transaction
@@ -414,22 +567,33 @@ public class FortePaymentPluginApi extends PluginPaymentPluginApi<ForteResponses
             final String accountType = PluginProperties.getValue(PROPERTY_ACCOUNT_TYPE, paymentMethodAccountType, properties);
 
             try {
-                response = transactionExecutor.execute(amount,
-                                                       customerFirstName,
-                                                       customerLastName,
-                                                       transitRoutingNumber,
-                                                       accountNumber,
-                                                       accountType,
-                                                       additionalData);
+                response = AGIFutures.getResponse(transactionExecutor.execute(amount,
+                                                                              customerFirstName,
+                                                                              customerLastName,
+                                                                              transitRoutingNumber,
+                                                                              accountNumber,
+                                                                              accountType,
+                                                                              additionalData,
+                                                                              deadline.getRemainingMillis()));
+            } catch (final AGIUnknownOutcomeException e) {
+                return recordUnknownOutcome(kbAccountId, kbPaymentId, kbTransactionId, transactionType, amount, currency, additionalData, utcNow, context.getTenantId(), e);
             } catch (IOException e) {
                 throw new PaymentPluginApiException(null, e);
+            } catch (final ForteCircuitOpenException e) {
+                return new FortePaymentTransactionInfoPlugin(kbPaymentId, kbTransactionId, transactionType, amount, currency, utcNow, GATEWAY_UNAVAILABLE, e.getMessage());
             }
         } else {
             // Modification (capture, void)
             final String originalTraceNumber;
             final String originalAuthorizationCode;
             try {
-                final ForteResponsesRecord previousResponse = dao.getSuccessfulAuthorizationResponse(kbPaymentId, context.getTenantId());
+                final ForteResponsesRecord previousResponse;
+                if (previousResponseFuture != null) {
+                    previousResponse = prefetchedPreviousResponse;
+                } else {
+                    deadline.check("retrieving the previous payment response");
+                    previousResponse = dao.getSuccessfulAuthorizationResponse(kbPaymentId, context.getTenantId());
+                }
                 if (previousResponse == null) {
                     throw new PaymentPluginApiException(null, "Unable to retrieve previous payment response for kbTransactionId " + kbTransactionId);
                 }
@@ -439,12 +603,18 @@ public class FortePaymentPluginApi extends PluginPaymentPluginApi<ForteResponses
                 throw new PaymentPluginApiException("Unable to retrieve previous payment response for kbTransactionId " + kbTransactionId, e);
             }
 
+            deadline.check("calling the gateway");
             try {
-                response = transactionExecutor.execute(originalTraceNumber,
-                                                       originalAuthorizationCode,
-                                                       additionalData);
+                response = AGIFutures.getResponse(transactionExecutor.execute(originalTraceNumber,
+                                                                              originalAuthorizationCode,
+                                                                              additionalData,
+                                                                              deadline.getRemainingMillis()));
+            } catch (final AGIUnknownOutcomeException e) {
+                return recordUnknownOutcome(kbAccountId, kbPaymentId, kbTransactionId, transactionType, amount, currency, additionalData, utcNow, context.getTenantId(), e);
             } catch (IOException e) {
                 throw new PaymentPluginApiException(null, e);
+            } catch (final ForteCircuitOpenException e) {
+                return new FortePaymentTransactionInfoPlugin(kbPaymentId, kbTransactionId, transactionType, amount, currency, utcNow, GATEWAY_UNAVAILABLE, e.getMessage());
             }
         }
 
@@ -456,6 +626,71 @@ public class FortePaymentPluginApi extends PluginPaymentPluginApi<ForteResponses
         }
     }
 
+    // The request was sent, but no usable response came back (timeout, connection reset...) and Forte may have processed it:
+    // reporting a failure would let Kill Bill retry the payment, and possibly charge twice. The attempt is recorded (UNDEFINED,
+    // without a response type) along with the order id sent to Forte (kbPaymentId), for the kbTransactionId to be reconciled
+    // against the Virtual Terminal.
+    private PaymentTransactionInfoPlugin recordUnknownOutcome(final UUID kbAccountId,
+                                                              final UUID kbPaymentId,
+                                                              final UUID kbTransactionId,
+                                                              final TransactionType transactionType,
+                                                              @Nullable final BigDecimal amount,
+                                                              @Nullable final Currency currency,
+                                                              final Map<String, Object> sentData,
+                                                              final DateTime utcNow,
+                                                              final UUID kbTenantId,
+                                                              final AGIUnknownOutcomeException e) throws PaymentPluginApiException {
+        logService.log(LogService.LOG_WARNING, "Unknown outcome for kbTransactionId " + kbTransactionId + ", to be reconciled", e);
+
+        final Map<String, String> fields = new HashMap<String, String>();
+        for (final Map.Entry<String, Object> entry : sentData.entrySet()) {
+            fields.put(entry.getKey(), String.valueOf(entry.getValue()));
+        }
+        fields.put(ForteAGIClient.PG_RESPONSE_DESCRIPTION, e.getMessage());
+        final AGIResponse response = AGIResponse.copyOf(fields);
+
+        try {
+            dao.addResponse(kbAccountId, kbPaymentId, kbTransactionId, transactionType, amount, currency, response, utcNow, kbTenantId);
+            return new FortePaymentTransactionInfoPlugin(kbPaymentId, kbTransactionId, transactionType, amount, currency, utcNow, response);
+        } catch (final SQLException sqlException) {
+            throw new PaymentPluginApiException("Payment outcome unknown, and we encountered a database error. Payment details: " + response.toString(), sqlException);
+        }
+    }
+
+    // The budget of the call starts with its CallContext: the time already spent by Kill Bill (and by our own lookups)
+    // is deducted from the gateway timeout budget. Contexts older than MAX_CONTEXT_AGE_MILLIS were created for something
+    // else (e.g. reused by a bulk call or a retry): the budget then starts now.
+    private Deadline buildDeadline(final TransactionType transactionType, final CallContext context) {
+        final long budgetMillis = forteAGIConfigurationHandler.getConfigurable(context.getTenantId()).getTimeoutBudgetMillis(toAGITransactionType(transactionType));
+        if (budgetMillis <= 0) {
+            return new Deadline(Long.MAX_VALUE);
+        }
+
+        // Both dates come from the Kill Bill clock
+        final long contextAgeMillis = context.getCreatedDate() == null ? 0 : Math.max(0, clock.getUTCNow().getMillis() - context.getCreatedDate().getMillis());
+        final long elapsedMillis = contextAgeMillis > MAX_CONTEXT_AGE_MILLIS ? 0 : contextAgeMillis;
+        return new Deadline(budgetMillis - elapsedMillis);
+    }
+
+    // EFT transactions share the credit card budgets
+    private static String toAGITransactionType(final TransactionType transactionType) {
+        switch (transactionType) {
+            case AUTHORIZE:
+                return ForteAGIClient.CREDIT_CARD_AUTH;
+            case CAPTURE:
+                return ForteAGIClient.CREDIT_CARD_CAPTURE;
+            case PURCHASE:
+                return ForteAGIClient.CREDIT_CARD_SALE;
+            case VOID:
+                return ForteAGIClient.CREDIT_CARD_VOID;
+            case CREDIT:
+            case REFUND:
+                return ForteAGIClient.CREDIT_CARD_CREDIT;
+            default:
+                return null;
+        }
+    }
+
     private boolean isCCTransaction(final Iterable<PluginProperty> properties, @Nullable final FortePaymentMethodsRecord paymentMethodsRecord) {
         return (paymentMethodsRecord != null && paymentMethodsRecord.getCcType() != null) || (PluginProperties.getValue(PROPERTY_CC_TYPE, null, properties) != null);
     }
@@ -472,43 +707,97 @@ public class FortePaymentPluginApi extends PluginPaymentPluginApi<ForteResponses
         return additionalDataBuilder.build();
     }
 
-    private FortePaymentMethodsRecord getPaymentMethodRecord(final UUID kbPaymentMethodId, final CallContext context) throws PaymentPluginApiException {
-        final FortePaymentMethodsRecord paymentMethodsRecord;
+    // Nothing has been sent to the gateway yet: lookups still running once the budget is spent fail the call
+    private static <T> T awaitLookup(final Future<T> lookup, final Deadline deadline, final String errorMessage) throws PaymentPluginApiException {
         try {
-            paymentMethodsRecord = dao.getPaymentMethod(kbPaymentMethodId, context.getTenantId());
-        } catch (final SQLException e) {
-            throw new PaymentPluginApiException("Unable to retrieve payment method for kbPaymentMethodId " + kbPaymentMethodId, e);
+            return Uninterruptibles.getUninterruptibly(lookup, deadline.getRemainingMillis(), TimeUnit.MILLISECONDS);
+        } catch (final TimeoutException e) {
+            lookup.cancel(true);
+            throw new PaymentPluginApiException(null, "Timed out before calling the gateway");
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new PaymentPluginApiException(errorMessage, e.getCause());
+        }
+    }
+
+    private static final class Deadline {
+
+        private final boolean hasDeadline;
+        private final long deadlineNanos;
+
+        private Deadline(final long remainingMillis) {
+            this.hasDeadline = remainingMillis != Long.MAX_VALUE;
+            this.deadlineNanos = System.nanoTime() + (hasDeadline ? TimeUnit.MILLISECONDS.toNanos(remainingMillis) : 0);
+        }
+
+        private long getRemainingMillis() {
+            return hasDeadline ? Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime())) : Long.MAX_VALUE;
+        }
+
+        // Fails fast, nothing has been sent to the gateway yet
+        private void check(final String step) throws PaymentPluginApiException {
+            if (getRemainingMillis() <= 0) {
+                throw new PaymentPluginApiException(null, "Timed out before " + step);
+            }
+        }
+    }
+
+    // Records its own duration (reported by toString)
+    private abstract static class TimedLookup<T> implements Callable<T> {
+
+        private volatile long durationMicros = -1;
+
+        @Override
+        public T call() throws Exception {
+            final long startNanos = System.nanoTime();
+            try {
+                return lookup();
+            } finally {
+                durationMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+            }
+        }
+
+        protected abstract T lookup() throws Exception;
+
+        @Override
+        public String toString() {
+            return durationMicros < 0 ? "pending" : durationMicros + "us";
         }
-        return paymentMethodsRecord;
     }
 
+    // Sends the transaction within budgetMillis, what is left of the deadline of the call
     private static abstract class TransactionExecutor {
 
-        public Map<String, String> execute(final BigDecimal amount,
-                                           final String customerFirstName,
-                                           final String customerLastName,
-                                           final String cardName,
-                                           final String cardType,
-                                           final String cardNumber,
-                                           final String cardExpMonth,
-                                           final String cardExpYear,
-                                           @Nullable final Map<String, Object> optionalData) throws IOException {
+        public ListenableFuture<AGIResponse> execute(final BigDecimal amount,
+                                                     final String customerFirstName,
+                                                     final String customerLastName,
+                                                     final String cardName,
+                                                     final String cardType,
+                                                     final String cardNumber,
+                                                     final String cardExpMonth,
+                                                     final String cardExpYear,
+                                                     @Nullable final Map<String, Object> optionalData,
+                                                     final long budgetMillis) {
             throw new UnsupportedOperationException();
         }
 
-        public Map<String, String> execute(final BigDecimal amount,
-                                           final String customerFirstName,
-                                           final String customerLastName,
-                                           final String transitRoutingNumber,
-                                           final String accountNumber,
-                                           final String accountType,
-                                           @Nullable final Map<String, Object> optionalData) throws IOException {
+        public ListenableFuture<AGIResponse> execute(final BigDecimal amount,
+                                                     final String customerFirstName,
+                                                     final String customerLastName,
+                                                     final String transitRoutingNumber,
+                                                     final String accountNumber,
+                                                     final String accountType,
+                                                     @Nullable final Map<String, Object> optionalData,
+                                                     final long budgetMillis) {
             throw new UnsupportedOperationException();
         }
 
-        public Map<String, String> execute(final String originalTraceNumber,
-                                           final String originalAuthorizationCode,
-                                           @Nullable final Map<String, Object> optionalData) throws IOException {
+        public ListenableFuture<AGIResponse> execute(final String originalTraceNumber,
+                                                     final String originalAuthorizationCode,
+                                                     @Nullable final Map<String, Object> optionalData,
+                                                     final long budgetMillis) {
             throw new UnsupportedOperationException();
         }
     }
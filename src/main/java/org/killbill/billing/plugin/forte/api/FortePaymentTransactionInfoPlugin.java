@@ -17,21 +17,25 @@
 package org.killbill.billing.plugin.forte.api;
 
 import java.math.BigDecimal;
-import java.util.Map;
 import java.util.UUID;
 
+import javax.annotation.Nullable;
+
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.payment.api.PluginProperty;
 import org.killbill.billing.payment.api.TransactionType;
 import org.killbill.billing.payment.plugin.api.PaymentPluginStatus;
 import org.killbill.billing.plugin.api.PluginProperties;
 import org.killbill.billing.plugin.api.payment.PluginPaymentTransactionInfoPlugin;
-import org.killbill.billing.plugin.forte.client.ForteAGIClient;
+import org.killbill.billing.plugin.forte.client.agi.AGIField;
+import org.killbill.billing.plugin.forte.client.agi.AGIResponse;
 import org.killbill.billing.plugin.forte.dao.ForteDao;
 import org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteResponsesRecord;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
 
 public class FortePaymentTransactionInfoPlugin extends PluginPaymentTransactionInfoPlugin {
 
@@ -61,23 +65,51 @@ public class FortePaymentTransactionInfoPlugin extends PluginPaymentTransactionI
                                              final BigDecimal amount,
                                              final Currency currency,
                                              final DateTime utcNow,
-                                             final Map<String, String> response) {
+                                             final AGIResponse response) {
         super(kbPaymentId,
               kbTransactionId,
               transactionType,
               amount,
               currency,
-              getPluginStatus(response.get(ForteAGIClient.PG_RESPONSE_TYPE)),
-              response.get(response.get(ForteAGIClient.PG_RESPONSE_DESCRIPTION)),
-              response.get(response.get(ForteAGIClient.PG_RESPONSE_CODE)),
-              response.get(response.get(ForteAGIClient.PG_TRACE_NUMBER)),
-              response.get(response.get(ForteAGIClient.PG_AUTHORIZATION_CODE)),
+              getPluginStatus(response.get(AGIField.PG_RESPONSE_TYPE)),
+              response.get(AGIField.PG_RESPONSE_DESCRIPTION),
+              response.get(AGIField.PG_RESPONSE_CODE),
+              response.get(AGIField.PG_TRACE_NUMBER),
+              response.get(AGIField.PG_AUTHORIZATION_CODE),
               utcNow,
               utcNow,
               PluginProperties.buildPluginProperties(response));
     }
 
-    private static PaymentPluginStatus getPluginStatus(final String responseType) {
+    // Transaction which wasn't attempted (nothing was sent to Forte)
+    public FortePaymentTransactionInfoPlugin(final UUID kbPaymentId,
+                                             final UUID kbTransactionId,
+                                             final TransactionType transactionType,
+                                             final BigDecimal amount,
+                                             final Currency currency,
+                                             final DateTime utcNow,
+                                             final String gatewayErrorCode,
+                                             final String gatewayError) {
+        super(kbPaymentId,
+              kbTransactionId,
+              transactionType,
+              amount,
+              currency,
+              PaymentPluginStatus.CANCELED,
+              gatewayError,
+              gatewayErrorCode,
+              null,
+              null,
+              utcNow,
+              utcNow,
+              ImmutableList.<PluginProperty>of());
+    }
+
+    // No response type: the request was sent but no response was received, see FortePaymentPluginApi#recordUnknownOutcome
+    private static PaymentPluginStatus getPluginStatus(@Nullable final String responseType) {
+        if (responseType == null) {
+            return PaymentPluginStatus.UNDEFINED;
+        }
         return RESPONSE_TYPE_APPROVAL.equals(responseType) ? PaymentPluginStatus.PROCESSED : PaymentPluginStatus.ERROR;
     }
 }
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.forte.api.async;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Future;
+
+// Exported as an OSGi service, to let other plugins submit AGI transactions without blocking a thread per call.
+// Responses are the raw AGI key/value pairs (see ForteAGIClient). Only JDK types are used, so that consumers
+// don't need to share our dependencies. The callback is optional.
+public interface ForteAsyncTransactionApi {
+
+    // Credit card transactions
+
+    public <T> Future<Map<String, String>> createAuthTransaction(UUID kbTenantId,
+                                                                 BigDecimal amount,
+                                                                 String customerFirstName,
+                                                                 String customerLastName,
+                                                                 String cardName,
+                                                                 String cardType,
+                                                                 String cardNumber,
+                                                                 String cardExpMonth,
+                                                                 String cardExpYear,
+                                                                 Map<String, T> optionalData,
+                                                                 ForteTransactionCallback callback);
+
+    public <T> Future<Map<String, String>> createCreditTransaction(UUID kbTenantId,
+                                                                   BigDecimal amount,
+                                                                   String customerFirstName,
+                                                                   String customerLastName,
+                                                                   String cardName,
+                                                                   String cardType,
+                                                                   String cardNumber,
+                                                                   String cardExpMonth,
+                                                                   String cardExpYear,
+                                                                   Map<String, T> optionalData,
+                                                                   ForteTransactionCallback callback);
+
+    public <T> Future<Map<String, String>> createSaleTransaction(UUID kbTenantId,
+                                                                 BigDecimal amount,
+                                                                 String customerFirstName,
+                                                                 String customerLastName,
+                                                                 String cardName,
+                                                                 String cardType,
+                                                                 String cardNumber,
+                                                                 String cardExpMonth,
+                                                                 String cardExpYear,
+                                                                 Map<String, T> optionalData,
+                                                                 ForteTransactionCallback callback);
+
+    // EFT transactions
+
+    public <T> Future<Map<String, String>> createAuthTransaction(UUID kbTenantId,
+                                                                 BigDecimal amount,
+                                                                 String customerFirstName,
+                                                                 String customerLastName,
+                                                                 String transitRoutingNumber,
+                                                                 String accountNumber,
+                                                                 String accountType,
+                                                                 Map<String, T> optionalData,
+                                                                 ForteTransactionCallback callback);
+
+    public <T> Future<Map<String, String>> createCreditTransaction(UUID kbTenantId,
+                                                                   BigDecimal amount,
+                                                                   String customerFirstName,
+                                                                   String customerLastName,
+                                                                   String transitRoutingNumber,
+                                                                   String accountNumber,
+                                                                   String accountType,
+                                                                   Map<String, T> optionalData,
+                                                                   ForteTransactionCallback callback);
+
+    public <T> Future<Map<String, String>> createSaleTransaction(UUID kbTenantId,
+                                                                 BigDecimal amount,
+                                                                 String customerFirstName,
+                                                                 String customerLastName,
+                                                                 String transitRoutingNumber,
+                                                                 String accountNumber,
+                                                                 String accountType,
+                                                                 Map<String, T> optionalData,
+                                                                 ForteTransactionCallback callback);
+
+    // Both credit card and EFT transactions
+
+    public <T> Future<Map<String, String>> createCaptureTransaction(UUID kbTenantId,
+                                                                    String originalTraceNumber,
+                                                                    String originalAuthorizationCode,
+                                                                    Map<String, T> optionalData,
+                                                                    ForteTransactionCallback callback);
+
+    public <T> Future<Map<String, String>> createVoidTransaction(UUID kbTenantId,
+                                                                 String originalTraceNumber,
+                                                                 String originalAuthorizationCode,
+                                                                 Map<String, T> optionalData,
+                                                                 ForteTransactionCallback callback);
+}
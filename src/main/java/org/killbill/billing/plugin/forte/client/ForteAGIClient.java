@@ -16,30 +16,52 @@
 
 package org.killbill.billing.plugin.forte.client;
 
-import java.io.BufferedReader;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.math.BigDecimal;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.annotation.Nullable;
-import javax.net.SocketFactory;
-import javax.net.ssl.SSLSocket;
-import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.SSLContext;
 
 import org.joda.time.DateTime;
+import org.killbill.billing.plugin.forte.client.agi.AGIBatchListener;
+import org.killbill.billing.plugin.forte.client.agi.AGIBatchResult;
+import org.killbill.billing.plugin.forte.client.agi.AGIBlockingTransport;
+import org.killbill.billing.plugin.forte.client.agi.AGIConnectionPool;
+import org.killbill.billing.plugin.forte.client.agi.AGIEndpoint;
+import org.killbill.billing.plugin.forte.client.agi.AGIEndpoints;
+import org.killbill.billing.plugin.forte.client.agi.AGIField;
+import org.killbill.billing.plugin.forte.client.agi.AGIHostResolver;
+import org.killbill.billing.plugin.forte.client.agi.AGINioTransport;
+import org.killbill.billing.plugin.forte.client.agi.AGIRequest;
+import org.killbill.billing.plugin.forte.client.agi.AGIRequestEncoder;
+import org.killbill.billing.plugin.forte.client.agi.AGIResponse;
+import org.killbill.billing.plugin.forte.client.agi.AGIResponseTimeoutException;
+import org.killbill.billing.plugin.forte.client.agi.AGISocketFactory;
+import org.killbill.billing.plugin.forte.client.agi.AGITLSPolicy;
+import org.killbill.billing.plugin.forte.client.agi.AGITimeouts;
+import org.killbill.billing.plugin.forte.client.agi.AGITransport;
 
-import com.google.common.base.Function;
-import com.google.common.base.Joiner;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableMap.Builder;
-import com.google.common.collect.Iterables;
-import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import static org.killbill.billing.plugin.forte.client.ForteWireLog.WIRE_LOG;
 
 // See https://www.forte.net/devdocs/pdf/agi_integration.pdf
 public class ForteAGIClient {
@@ -156,49 +178,186 @@ public class ForteAGIClient {
     private static final String DATE_FORMAT = "DD/MM/YYYY";
     private static final String FALSE = "FALSE";
     private static final String TRUE = "TRUE";
-    private static final String ENDOFDATA = "endofdata";
-
-    private static final Joiner MSG_LINE_JOINER = Joiner.on("=");
-    private static final Joiner MSG_LINES_JOINER = Joiner.on("\n");
 
     public static final String PROPERTY_BASE = "org.killbill.billing.plugin.forte";
     public static final String PROPERTY_MERCHANT_ID = PROPERTY_BASE + ".merchantId";
     private static final String PROPERTY_MERCHANT_PASSWORD = PROPERTY_BASE + ".password";
     private static final String PROPERTY_HOST = PROPERTY_BASE + ".host";
     private static final String PROPERTY_PORT = PROPERTY_BASE + ".port";
+    private static final String PROPERTY_DNS_TTL = PROPERTY_BASE + ".dnsTtl";
+    private static final String PROPERTY_HOST_RETRY_DELAY = PROPERTY_BASE + ".hostRetryDelay";
+    private static final String PROPERTY_SSL_PROVIDER = PROPERTY_BASE + ".sslProvider";
+    private static final String PROPERTY_SSL_PROTOCOLS = PROPERTY_BASE + ".sslProtocols";
+    private static final String PROPERTY_SSL_CIPHER_SUITES = PROPERTY_BASE + ".sslCipherSuites";
+    private static final String PROPERTY_SSL_SESSION_CACHE_SIZE = PROPERTY_BASE + ".sslSessionCacheSize";
+    private static final String PROPERTY_SSL_SESSION_TIMEOUT = PROPERTY_BASE + ".sslSessionTimeout";
+    private static final String PROPERTY_POOL_SIZE = PROPERTY_BASE + ".poolSize";
+    private static final String PROPERTY_POOL_MAX_IDLE = PROPERTY_BASE + ".poolMaxIdle";
+    private static final String PROPERTY_POOL_MAX_AGE = PROPERTY_BASE + ".poolMaxAge";
+    private static final String PROPERTY_TRANSPORT = PROPERTY_BASE + ".transport";
+    private static final String PROPERTY_NIO_THREADS = PROPERTY_BASE + ".nioThreads";
+    private static final String PROPERTY_ASYNC_THREADS = PROPERTY_BASE + ".asyncThreads";
+    private static final String PROPERTY_VIRTUAL_THREADS = PROPERTY_BASE + ".virtualThreads";
+    public static final String PROPERTY_CONNECT_TIMEOUT = PROPERTY_BASE + ".connectTimeout";
+    private static final String PROPERTY_TIMEOUT = PROPERTY_BASE + ".timeout";
+    private static final String PROPERTY_AUTH_TIMEOUT = PROPERTY_BASE + ".authTimeout";
+    private static final String PROPERTY_SALE_TIMEOUT = PROPERTY_BASE + ".saleTimeout";
+    private static final String PROPERTY_CAPTURE_TIMEOUT = PROPERTY_BASE + ".captureTimeout";
+    private static final String PROPERTY_CREDIT_TIMEOUT = PROPERTY_BASE + ".creditTimeout";
+    private static final String PROPERTY_VOID_TIMEOUT = PROPERTY_BASE + ".voidTimeout";
+    private static final String PROPERTY_ADAPTIVE_TIMEOUTS = PROPERTY_BASE + ".adaptiveTimeouts";
+    private static final String PROPERTY_BATCH_PARALLELISM = PROPERTY_BASE + ".batchParallelism";
+
+    public static final String DEFAULT_CONNECT_TIMEOUT_MILLIS = "10000";
+    private static final String DEFAULT_TIMEOUT_MILLIS = "60000";
+
+    private static final String TRANSPORT_BLOCKING = "blocking";
+    private static final String TRANSPORT_NIO = "nio";
 
-    private final String merchantId;
-    private final String password;
-    private final String host;
-    private final int port;
-    private final SocketFactory factory;
+    private static final int MERCHANT_REQUIRED_FIELDS = bits(AGIField.PG_MERCHANT_ID,
+                                                             AGIField.PG_PASSWORD,
+                                                             AGIField.PG_TRANSACTION_TYPE);
+    private static final int CREDIT_CARD_REQUIRED_FIELDS = bits(AGIField.PG_TOTAL_AMOUNT,
+                                                                AGIField.ECOM_BILLTO_POSTAL_NAME_FIRST,
+                                                                AGIField.ECOM_BILLTO_POSTAL_NAME_LAST,
+                                                                AGIField.ECOM_PAYMENT_CARD_TYPE,
+                                                                AGIField.ECOM_PAYMENT_CARD_NAME,
+                                                                AGIField.ECOM_PAYMENT_CARD_EXPDATE_MONTH,
+                                                                AGIField.ECOM_PAYMENT_CARD_EXPDATE_YEAR);
+    private static final int EFT_REQUIRED_FIELDS = bits(AGIField.PG_TOTAL_AMOUNT,
+                                                        AGIField.ECOM_BILLTO_POSTAL_NAME_FIRST,
+                                                        AGIField.ECOM_BILLTO_POSTAL_NAME_LAST,
+                                                        AGIField.ECOM_PAYMENT_CHECK_TRN,
+                                                        AGIField.ECOM_PAYMENT_CHECK_ACCOUNT_TYPE);
+
+    private final AGIRequestEncoder encoder;
+    private final AGIEndpoints endpoints;
+    private final AGISocketFactory factory;
+    private final AGITimeouts timeouts;
+    private final ForteCircuitBreaker circuitBreaker;
+    private final AGIBlockingTransport blockingTransport;
+    private final AGITransport transport;
+    private final int batchParallelism;
 
     public ForteAGIClient(final Properties properties) {
+        this(properties, AGISocketFactory.createSSLContext(properties.getProperty(PROPERTY_SSL_PROVIDER)));
+    }
+
+    @VisibleForTesting
+    public ForteAGIClient(final Properties properties, final SSLContext sslContext) {
         this(properties.getProperty(PROPERTY_MERCHANT_ID),
              properties.getProperty(PROPERTY_MERCHANT_PASSWORD),
-             properties.getProperty(PROPERTY_HOST),
-             properties.getProperty(PROPERTY_PORT) == null ? 6050 : Integer.parseInt(properties.getProperty(PROPERTY_PORT)));
+             new AGIEndpoints(properties.getProperty(PROPERTY_HOST),
+                              properties.getProperty(PROPERTY_PORT) == null ? 6050 : Integer.parseInt(properties.getProperty(PROPERTY_PORT)),
+                              new AGIHostResolver(TimeUnit.SECONDS.toMillis(Long.parseLong(properties.getProperty(PROPERTY_DNS_TTL, "60")))),
+                              TimeUnit.SECONDS.toMillis(Long.parseLong(properties.getProperty(PROPERTY_HOST_RETRY_DELAY, "30")))),
+             new AGISocketFactory(sslContext,
+                                  AGITLSPolicy.parse(properties.getProperty(PROPERTY_SSL_PROTOCOLS), properties.getProperty(PROPERTY_SSL_CIPHER_SUITES)),
+                                  Integer.parseInt(properties.getProperty(PROPERTY_SSL_SESSION_CACHE_SIZE, "100")),
+                                  Integer.parseInt(properties.getProperty(PROPERTY_SSL_SESSION_TIMEOUT, "3600")),
+                                  Integer.parseInt(properties.getProperty(PROPERTY_CONNECT_TIMEOUT, DEFAULT_CONNECT_TIMEOUT_MILLIS))),
+             buildTimeouts(properties),
+             ForteCircuitBreaker.fromProperties("AGI", properties),
+             Integer.parseInt(properties.getProperty(PROPERTY_POOL_SIZE, "0")),
+             Long.parseLong(properties.getProperty(PROPERTY_POOL_MAX_IDLE, "300")),
+             Long.parseLong(properties.getProperty(PROPERTY_POOL_MAX_AGE, "30")),
+             properties.getProperty(PROPERTY_TRANSPORT, TRANSPORT_BLOCKING),
+             Integer.parseInt(properties.getProperty(PROPERTY_NIO_THREADS, "2")),
+             Integer.parseInt(properties.getProperty(PROPERTY_ASYNC_THREADS, "0")),
+             Boolean.parseBoolean(properties.getProperty(PROPERTY_VIRTUAL_THREADS, "false")),
+             Integer.parseInt(properties.getProperty(PROPERTY_BATCH_PARALLELISM, "8")));
+    }
+
+    private ForteAGIClient(final String merchantId,
+                           final String password,
+                           final AGIEndpoints endpoints,
+                           final AGISocketFactory factory,
+                           final AGITimeouts timeouts,
+                           final ForteCircuitBreaker circuitBreaker,
+                           final int poolSize,
+                           final long poolMaxIdleSeconds,
+                           final long poolMaxAgeSeconds,
+                           final String transport,
+                           final int nioThreads,
+                           final int asyncThreads,
+                           final boolean virtualThreads,
+                           final int batchParallelism) {
+        this.encoder = new AGIRequestEncoder(merchantId, password);
+        this.endpoints = endpoints;
+        this.factory = factory;
+        this.timeouts = timeouts;
+        this.circuitBreaker = circuitBreaker;
+        this.batchParallelism = batchParallelism;
+
+        if (TRANSPORT_NIO.equals(transport)) {
+            this.blockingTransport = null;
+            try {
+                this.transport = new AGINioTransport(factory, endpoints, nioThreads);
+            } catch (final IOException e) {
+                throw new IllegalStateException(e);
+            }
+        } else {
+            Preconditions.checkArgument(TRANSPORT_BLOCKING.equals(transport), "Unknown AGI transport: " + transport);
+            this.blockingTransport = new AGIBlockingTransport(new AGIConnectionPool(factory,
+                                                                                    endpoints,
+                                                                                    poolSize,
+                                                                                    TimeUnit.SECONDS.toMillis(poolMaxIdleSeconds),
+                                                                                    TimeUnit.SECONDS.toMillis(poolMaxAgeSeconds)),
+                                                              ForteExecutors.newGatewayExecutor("forte-agi-async", asyncThreads, virtualThreads));
+            this.transport = blockingTransport;
+        }
+    }
+
+    // Not Closeable on purpose: PluginTenantConfigurable closes a replaced Closeable right away, while payments may still
+    // hold it. Releases the connections and threads of the transport.
+    public void shutdown() throws IOException {
+        transport.close();
+    }
+
+    // Configured budget of an AGI exchange for that transaction type (e.g. CREDIT_CARD_SALE)
+    public long getTimeoutBudgetMillis(final String transactionType) {
+        return timeouts.getBudgetMillis(transactionType);
+    }
+
+    // Longest configured budget of an AGI exchange, all transaction types (zero or less when one of them has no timeout)
+    public long getMaxTimeoutBudgetMillis() {
+        return timeouts.getMaxBudgetMillis();
+    }
+
+    // Configured endpoints, with their latencies
+    public List<AGIEndpoint> getEndpoints() {
+        return endpoints.getEndpoints();
+    }
+
+    // TLS session cache statistics
+
+    public long getFullHandshakes() {
+        return factory.getFullHandshakes();
+    }
+
+    public long getResumedHandshakes() {
+        return factory.getResumedHandshakes();
+    }
+
+    public int getIdlePooledSockets() {
+        return blockingTransport == null ? 0 : blockingTransport.getIdleSockets();
     }
 
-    private ForteAGIClient(final String merchantId, final String password, final String host, final Integer port) {
-        this.merchantId = merchantId;
-        this.password = password;
-        this.host = host;
-        this.port = port;
-        this.factory = SSLSocketFactory.getDefault();
+    public ForteCircuitBreaker.State getCircuitBreakerState() {
+        return circuitBreaker.getState();
     }
 
     // Credit card transactions
 
-    public <T> Map<String, String> createAuthTransaction(final BigDecimal amount,
-                                                         final String customerFirstName,
-                                                         final String customerLastName,
-                                                         final String cardName,
-                                                         final String cardType,
-                                                         final String cardNumber,
-                                                         final String cardExpMonth,
-                                                         final String cardExpYear,
-                                                         @Nullable final Map<String, T> optionalData) throws IOException {
+    public <T> AGIResponse createAuthTransaction(final BigDecimal amount,
+                                                 final String customerFirstName,
+                                                 final String customerLastName,
+                                                 final String cardName,
+                                                 final String cardType,
+                                                 final String cardNumber,
+                                                 final String cardExpMonth,
+                                                 final String cardExpYear,
+                                                 @Nullable final Map<String, T> optionalData) throws IOException {
         return createAuthTransaction(amount,
                                      customerFirstName,
                                      customerLastName,
@@ -215,46 +374,46 @@ public class ForteAGIClient {
                                      optionalData);
     }
 
-    public <T> Map<String, String> createAuthTransaction(final BigDecimal amount,
-                                                         final String customerFirstName,
-                                                         final String customerLastName,
-                                                         @Nullable final String customerStreetLine1,
-                                                         @Nullable final String customerState,
-                                                         @Nullable final String zip,
-                                                         @Nullable final String phone,
-                                                         @Nullable final String email,
-                                                         final String cardName,
-                                                         final String cardType,
-                                                         final String cardNumber,
-                                                         final String cardExpMonth,
-                                                         final String cardExpYear,
-                                                         @Nullable final Map<String, T> optionalData) throws IOException {
-        return createCreditCardTransaction(CREDIT_CARD_AUTH,
-                                           amount,
-                                           customerFirstName,
-                                           customerLastName,
-                                           customerStreetLine1,
-                                           customerState,
-                                           zip,
-                                           phone,
-                                           email,
-                                           cardName,
-                                           cardType,
-                                           cardNumber,
-                                           cardExpMonth,
-                                           cardExpYear,
-                                           optionalData);
+    public <T> AGIResponse createAuthTransaction(final BigDecimal amount,
+                                                 final String customerFirstName,
+                                                 final String customerLastName,
+                                                 @Nullable final String customerStreetLine1,
+                                                 @Nullable final String customerState,
+                                                 @Nullable final String zip,
+                                                 @Nullable final String phone,
+                                                 @Nullable final String email,
+                                                 final String cardName,
+                                                 final String cardType,
+                                                 final String cardNumber,
+                                                 final String cardExpMonth,
+                                                 final String cardExpYear,
+                                                 @Nullable final Map<String, T> optionalData) throws IOException {
+        return createTransaction(buildCreditCardRequest(CREDIT_CARD_AUTH,
+                                                        amount,
+                                                        customerFirstName,
+                                                        customerLastName,
+                                                        customerStreetLine1,
+                                                        customerState,
+                                                        zip,
+                                                        phone,
+                                                        email,
+                                                        cardName,
+                                                        cardType,
+                                                        cardNumber,
+                                                        cardExpMonth,
+                                                        cardExpYear,
+                                                        optionalData));
     }
 
-    public <T> Map<String, String> createCreditTransaction(final BigDecimal amount,
-                                                           final String customerFirstName,
-                                                           final String customerLastName,
-                                                           final String cardName,
-                                                           final String cardType,
-                                                           final String cardNumber,
-                                                           final String cardExpMonth,
-                                                           final String cardExpYear,
-                                                           @Nullable final Map<String, T> optionalData) throws IOException {
+    public <T> AGIResponse createCreditTransaction(final BigDecimal amount,
+                                                   final String customerFirstName,
+                                                   final String customerLastName,
+                                                   final String cardName,
+                                                   final String cardType,
+                                                   final String cardNumber,
+                                                   final String cardExpMonth,
+                                                   final String cardExpYear,
+                                                   @Nullable final Map<String, T> optionalData) throws IOException {
         return createCreditTransaction(amount,
                                        customerFirstName,
                                        customerLastName,
@@ -271,46 +430,46 @@ public class ForteAGIClient {
                                        optionalData);
     }
 
-    public <T> Map<String, String> createCreditTransaction(final BigDecimal amount,
-                                                           final String customerFirstName,
-                                                           final String customerLastName,
-                                                           @Nullable final String customerStreetLine1,
-                                                           @Nullable final String customerState,
-                                                           @Nullable final String zip,
-                                                           @Nullable final String phone,
-                                                           @Nullable final String email,
-                                                           final String cardName,
-                                                           final String cardType,
-                                                           final String cardNumber,
-                                                           final String cardExpMonth,
-                                                           final String cardExpYear,
-                                                           @Nullable final Map<String, T> optionalData) throws IOException {
-        return createCreditCardTransaction(CREDIT_CARD_CREDIT,
-                                           amount,
-                                           customerFirstName,
-                                           customerLastName,
-                                           customerStreetLine1,
-                                           customerState,
-                                           zip,
-                                           phone,
-                                           email,
-                                           cardName,
-                                           cardType,
-                                           cardNumber,
-                                           cardExpMonth,
-                                           cardExpYear,
-                                           optionalData);
+    public <T> AGIResponse createCreditTransaction(final BigDecimal amount,
+                                                   final String customerFirstName,
+                                                   final String customerLastName,
+                                                   @Nullable final String customerStreetLine1,
+                                                   @Nullable final String customerState,
+                                                   @Nullable final String zip,
+                                                   @Nullable final String phone,
+                                                   @Nullable final String email,
+                                                   final String cardName,
+                                                   final String cardType,
+                                                   final String cardNumber,
+                                                   final String cardExpMonth,
+                                                   final String cardExpYear,
+                                                   @Nullable final Map<String, T> optionalData) throws IOException {
+        return createTransaction(buildCreditCardRequest(CREDIT_CARD_CREDIT,
+                                                        amount,
+                                                        customerFirstName,
+                                                        customerLastName,
+                                                        customerStreetLine1,
+                                                        customerState,
+                                                        zip,
+                                                        phone,
+                                                        email,
+                                                        cardName,
+                                                        cardType,
+                                                        cardNumber,
+                                                        cardExpMonth,
+                                                        cardExpYear,
+                                                        optionalData));
     }
 
-    public <T> Map<String, String> createSaleTransaction(final BigDecimal amount,
-                                                         final String customerFirstName,
-                                                         final String customerLastName,
-                                                         final String cardName,
-                                                         final String cardType,
-                                                         final String cardNumber,
-                                                         final String cardExpMonth,
-                                                         final String cardExpYear,
-                                                         @Nullable final Map<String, T> optionalData) throws IOException {
+    public <T> AGIResponse createSaleTransaction(final BigDecimal amount,
+                                                 final String customerFirstName,
+                                                 final String customerLastName,
+                                                 final String cardName,
+                                                 final String cardType,
+                                                 final String cardNumber,
+                                                 final String cardExpMonth,
+                                                 final String cardExpYear,
+                                                 @Nullable final Map<String, T> optionalData) throws IOException {
         return createSaleTransaction(amount,
                                      customerFirstName,
                                      customerLastName,
@@ -327,46 +486,46 @@ public class ForteAGIClient {
                                      optionalData);
     }
 
-    public <T> Map<String, String> createSaleTransaction(final BigDecimal amount,
-                                                         final String customerFirstName,
-                                                         final String customerLastName,
-                                                         @Nullable final String customerStreetLine1,
-                                                         @Nullable final String customerState,
-                                                         @Nullable final String zip,
-                                                         @Nullable final String phone,
-                                                         @Nullable final String email,
-                                                         final String cardName,
-                                                         final String cardType,
-                                                         final String cardNumber,
-                                                         final String cardExpMonth,
-                                                         final String cardExpYear,
-                                                         @Nullable final Map<String, T> optionalData) throws IOException {
-        return createCreditCardTransaction(CREDIT_CARD_SALE,
-                                           amount,
-                                           customerFirstName,
-                                           customerLastName,
-                                           customerStreetLine1,
-                                           customerState,
-                                           zip,
-                                           phone,
-                                           email,
-                                           cardName,
-                                           cardType,
-                                           cardNumber,
-                                           cardExpMonth,
-                                           cardExpYear,
-                                           optionalData);
+    public <T> AGIResponse createSaleTransaction(final BigDecimal amount,
+                                                 final String customerFirstName,
+                                                 final String customerLastName,
+                                                 @Nullable final String customerStreetLine1,
+                                                 @Nullable final String customerState,
+                                                 @Nullable final String zip,
+                                                 @Nullable final String phone,
+                                                 @Nullable final String email,
+                                                 final String cardName,
+                                                 final String cardType,
+                                                 final String cardNumber,
+                                                 final String cardExpMonth,
+                                                 final String cardExpYear,
+                                                 @Nullable final Map<String, T> optionalData) throws IOException {
+        return createTransaction(buildCreditCardRequest(CREDIT_CARD_SALE,
+                                                        amount,
+                                                        customerFirstName,
+                                                        customerLastName,
+                                                        customerStreetLine1,
+                                                        customerState,
+                                                        zip,
+                                                        phone,
+                                                        email,
+                                                        cardName,
+                                                        cardType,
+                                                        cardNumber,
+                                                        cardExpMonth,
+                                                        cardExpYear,
+                                                        optionalData));
     }
 
     // EFT transactions
 
-    public <T> Map<String, String> createAuthTransaction(final BigDecimal amount,
-                                                         final String customerFirstName,
-                                                         final String customerLastName,
-                                                         final String transitRoutingNumber,
-                                                         final String accountNumber,
-                                                         final String accountType,
-                                                         @Nullable final Map<String, T> optionalData) throws IOException {
+    public <T> AGIResponse createAuthTransaction(final BigDecimal amount,
+                                                 final String customerFirstName,
+                                                 final String customerLastName,
+                                                 final String transitRoutingNumber,
+                                                 final String accountNumber,
+                                                 final String accountType,
+                                                 @Nullable final Map<String, T> optionalData) throws IOException {
         return createAuthTransaction(amount,
                                      customerFirstName,
                                      customerLastName,
@@ -381,40 +540,40 @@ public class ForteAGIClient {
                                      optionalData);
     }
 
-    public <T> Map<String, String> createAuthTransaction(final BigDecimal amount,
-                                                         final String customerFirstName,
-                                                         final String customerLastName,
-                                                         @Nullable final String customerStreetLine1,
-                                                         @Nullable final String customerState,
-                                                         @Nullable final String zip,
-                                                         @Nullable final String phone,
-                                                         @Nullable final String email,
-                                                         final String transitRoutingNumber,
-                                                         final String accountNumber,
-                                                         final String accountType,
-                                                         @Nullable final Map<String, T> optionalData) throws IOException {
-        return createEFTTransaction(EFT_AUTH,
-                                    amount,
-                                    customerFirstName,
-                                    customerLastName,
-                                    customerStreetLine1,
-                                    customerState,
-                                    zip,
-                                    phone,
-                                    email,
-                                    transitRoutingNumber,
-                                    accountNumber,
-                                    accountType,
-                                    optionalData);
-    }
-
-    public <T> Map<String, String> createCreditTransaction(final BigDecimal amount,
-                                                           final String customerFirstName,
-                                                           final String customerLastName,
-                                                           final String transitRoutingNumber,
-                                                           final String accountNumber,
-                                                           final String accountType,
-                                                           @Nullable final Map<String, T> optionalData) throws IOException {
+    public <T> AGIResponse createAuthTransaction(final BigDecimal amount,
+                                                 final String customerFirstName,
+                                                 final String customerLastName,
+                                                 @Nullable final String customerStreetLine1,
+                                                 @Nullable final String customerState,
+                                                 @Nullable final String zip,
+                                                 @Nullable final String phone,
+                                                 @Nullable final String email,
+                                                 final String transitRoutingNumber,
+                                                 final String accountNumber,
+                                                 final String accountType,
+                                                 @Nullable final Map<String, T> optionalData) throws IOException {
+        return createTransaction(buildEFTRequest(EFT_AUTH,
+                                                 amount,
+                                                 customerFirstName,
+                                                 customerLastName,
+                                                 customerStreetLine1,
+                                                 customerState,
+                                                 zip,
+                                                 phone,
+                                                 email,
+                                                 transitRoutingNumber,
+                                                 accountNumber,
+                                                 accountType,
+                                                 optionalData));
+    }
+
+    public <T> AGIResponse createCreditTransaction(final BigDecimal amount,
+                                                   final String customerFirstName,
+                                                   final String customerLastName,
+                                                   final String transitRoutingNumber,
+                                                   final String accountNumber,
+                                                   final String accountType,
+                                                   @Nullable final Map<String, T> optionalData) throws IOException {
         return createCreditTransaction(amount,
                                        customerFirstName,
                                        customerLastName,
@@ -429,40 +588,40 @@ public class ForteAGIClient {
                                        optionalData);
     }
 
-    public <T> Map<String, String> createCreditTransaction(final BigDecimal amount,
-                                                           final String customerFirstName,
-                                                           final String customerLastName,
-                                                           @Nullable final String customerStreetLine1,
-                                                           @Nullable final String customerState,
-                                                           @Nullable final String zip,
-                                                           @Nullable final String phone,
-                                                           @Nullable final String email,
-                                                           final String transitRoutingNumber,
-                                                           final String accountNumber,
-                                                           final String accountType,
-                                                           @Nullable final Map<String, T> optionalData) throws IOException {
-        return createEFTTransaction(EFT_CREDIT,
-                                    amount,
-                                    customerFirstName,
-                                    customerLastName,
-                                    customerStreetLine1,
-                                    customerState,
-                                    zip,
-                                    phone,
-                                    email,
-                                    transitRoutingNumber,
-                                    accountNumber,
-                                    accountType,
-                                    optionalData);
-    }
-
-    public <T> Map<String, String> createSaleTransaction(final BigDecimal amount,
-                                                         final String customerFirstName,
-                                                         final String customerLastName,
-                                                         final String transitRoutingNumber,
-                                                         final String accountNumber,
-                                                         final String accountType,
-                                                         @Nullable final Map<String, T> optionalData) throws IOException {
+    public <T> AGIResponse createCreditTransaction(final BigDecimal amount,
+                                                   final String customerFirstName,
+                                                   final String customerLastName,
+                                                   @Nullable final String customerStreetLine1,
+                                                   @Nullable final String customerState,
+                                                   @Nullable final String zip,
+                                                   @Nullable final String phone,
+                                                   @Nullable final String email,
+                                                   final String transitRoutingNumber,
+                                                   final String accountNumber,
+                                                   final String accountType,
+                                                   @Nullable final Map<String, T> optionalData) throws IOException {
+        return createTransaction(buildEFTRequest(EFT_CREDIT,
+                                                 amount,
+                                                 customerFirstName,
+                                                 customerLastName,
+                                                 customerStreetLine1,
+                                                 customerState,
+                                                 zip,
+                                                 phone,
+                                                 email,
+                                                 transitRoutingNumber,
+                                                 accountNumber,
+                                                 accountType,
+                                                 optionalData));
+    }
+
+    public <T> AGIResponse createSaleTransaction(final BigDecimal amount,
+                                                 final String customerFirstName,
+                                                 final String customerLastName,
+                                                 final String transitRoutingNumber,
+                                                 final String accountNumber,
+                                                 final String accountType,
+                                                 @Nullable final Map<String, T> optionalData) throws IOException {
         return createSaleTransaction(amount,
                                      customerFirstName,
                                      customerLastName,
@@ -477,80 +636,19 @@ public class ForteAGIClient {
                                      optionalData);
     }
 
-    public <T> Map<String, String> createSaleTransaction(final BigDecimal amount,
-                                                         final String customerFirstName,
-                                                         final String customerLastName,
-                                                         @Nullable final String customerStreetLine1,
-                                                         @Nullable final String customerState,
-                                                         @Nullable final String zip,
-                                                         @Nullable final String phone,
-                                                         @Nullable final String email,
-                                                         final String transitRoutingNumber,
-                                                         final String accountNumber,
-                                                         final String accountType,
-                                                         @Nullable final Map<String, T> optionalData) throws IOException {
-        return createEFTTransaction(EFT_SALE,
-                                    amount,
-                                    customerFirstName,
-                                    customerLastName,
-                                    customerStreetLine1,
-                                    customerState,
-                                    zip,
-                                    phone,
-                                    email,
-                                    transitRoutingNumber,
-                                    accountNumber,
-                                    accountType,
-                                    optionalData);
-    }
-
-    // Both credit card and EFT transactions
-
-    public <T> Map<String, String> createCaptureTransaction(final String originalTraceNumber,
-                                                            final String originalAuthorizationCode,
-                                                            @Nullable final Map<String, T> optionalData) throws IOException {
-        return createAdministrativeTransaction(EFT_CAPTURE, originalTraceNumber, originalAuthorizationCode, optionalData);
-    }
-
-    public <T> Map<String, String> createVoidTransaction(final String originalTraceNumber,
-                                                         final String originalAuthorizationCode,
-                                                         @Nullable final Map<String, T> optionalData) throws IOException {
-        return createAdministrativeTransaction(EFT_VOID, originalTraceNumber, originalAuthorizationCode, optionalData);
-    }
-
-    private <T> Map<String, String> createCreditCardTransaction(final String transactionType,
-                                                                final BigDecimal amount,
-                                                                final String customerFirstName,
-                                                                final String customerLastName,
-                                                                @Nullable final String customerStreetLine1,
-                                                                @Nullable final String customerState,
-                                                                @Nullable final String zip,
-                                                                @Nullable final String phone,
-                                                                @Nullable final String email,
-                                                                @Nullable final String cardName,
-                                                                @Nullable final String cardType,
-                                                                @Nullable final String cardNumber,
-                                                                @Nullable final String cardExpMonth,
-                                                                @Nullable final String cardExpYear,
-                                                                @Nullable final Map<String, T> optionalData) throws IOException {
-        final Builder<String, Object> additionalDataBuilder = ImmutableMap.<String, Object>builder();
-        if (cardName != null) {
-            additionalDataBuilder.put(ForteAGIClient.ECOM_PAYMENT_CARD_NAME, cardName);
-        }
-        if (cardType != null) {
-            additionalDataBuilder.put(ForteAGIClient.ECOM_PAYMENT_CARD_TYPE, cardType);
-        }
-        if (cardNumber != null) {
-            additionalDataBuilder.put(ForteAGIClient.ECOM_PAYMENT_CARD_NUMBER, cardNumber);
-        }
-        if (cardExpMonth != null) {
-            additionalDataBuilder.put(ForteAGIClient.ECOM_PAYMENT_CARD_EXPDATE_MONTH, cardExpMonth);
-        }
-        if (cardExpYear != null) {
-            additionalDataBuilder.put(ForteAGIClient.ECOM_PAYMENT_CARD_EXPDATE_YEAR, cardExpYear);
-        }
-
-        return createTCreditCardOrEFTTransaction(transactionType,
+    public <T> AGIResponse createSaleTransaction(final BigDecimal amount,
+                                                 final String customerFirstName,
+                                                 final String customerLastName,
+                                                 @Nullable final String customerStreetLine1,
+                                                 @Nullable final String customerState,
+                                                 @Nullable final String zip,
+                                                 @Nullable final String phone,
+                                                 @Nullable final String email,
+                                                 final String transitRoutingNumber,
+                                                 final String accountNumber,
+                                                 final String accountType,
+                                                 @Nullable final Map<String, T> optionalData) throws IOException {
+        return createTransaction(buildEFTRequest(EFT_SALE,
                                                  amount,
                                                  customerFirstName,
                                                  customerLastName,
@@ -559,212 +657,718 @@ public class ForteAGIClient {
                                                  zip,
                                                  phone,
                                                  email,
-                                                 optionalData,
-                                                 additionalDataBuilder);
-    }
-
-    private <T> Map<String, String> createEFTTransaction(final String transactionType,
-                                                         final BigDecimal amount,
-                                                         final String customerFirstName,
-                                                         final String customerLastName,
-                                                         @Nullable final String customerStreetLine1,
-                                                         @Nullable final String customerState,
-                                                         @Nullable final String zip,
-                                                         @Nullable final String phone,
-                                                         @Nullable final String email,
-                                                         @Nullable final String transitRoutingNumber,
-                                                         @Nullable final String accountNumber,
-                                                         @Nullable final String accountType,
-                                                         @Nullable final Map<String, T> optionalData) throws IOException {
-        final Builder<String, Object> additionalDataBuilder = ImmutableMap.<String, Object>builder();
-        if (transitRoutingNumber != null) {
-            additionalDataBuilder.put(ForteAGIClient.ECOM_PAYMENT_CHECK_TRN, transitRoutingNumber);
-        }
-        if (accountNumber != null) {
-            additionalDataBuilder.put(ForteAGIClient.ECOM_PAYMENT_CHECK_ACCOUNT, accountNumber);
-        }
-        if (accountType != null) {
-            additionalDataBuilder.put(ForteAGIClient.ECOM_PAYMENT_CHECK_ACCOUNT_TYPE, accountType);
-        }
+                                                 transitRoutingNumber,
+                                                 accountNumber,
+                                                 accountType,
+                                                 optionalData));
+    }
 
-        return createTCreditCardOrEFTTransaction(transactionType,
-                                                 amount,
-                                                 customerFirstName,
-                                                 customerLastName,
-                                                 customerStreetLine1,
-                                                 customerState,
-                                                 zip,
-                                                 phone,
-                                                 email,
-                                                 optionalData,
-                                                 additionalDataBuilder);
-    }
-
-    private <T> Map<String, String> createTCreditCardOrEFTTransaction(final String transactionType,
-                                                                      final BigDecimal amount,
-                                                                      final String customerFirstName,
-                                                                      final String customerLastName,
-                                                                      @Nullable final String customerStreetLine1,
-                                                                      @Nullable final String customerState,
-                                                                      @Nullable final String zip,
-                                                                      @Nullable final String phone,
-                                                                      @Nullable final String email,
-                                                                      @Nullable final Map<String, T> optionalData,
-                                                                      final Builder<String, Object> additionalDataBuilder) throws IOException {
-        additionalDataBuilder.put(PG_TOTAL_AMOUNT, toString(amount));
-        additionalDataBuilder.put(ForteAGIClient.ECOM_BILLTO_POSTAL_NAME_FIRST, customerFirstName);
-        additionalDataBuilder.put(ForteAGIClient.ECOM_BILLTO_POSTAL_NAME_LAST, customerLastName);
-        if (customerStreetLine1 != null) {
-            additionalDataBuilder.put(ForteAGIClient.ECOM_BILLTO_POSTAL_STREET_LINE1, customerStreetLine1);
-        }
-        if (customerState != null) {
-            additionalDataBuilder.put(ForteAGIClient.ECOM_BILLTO_POSTAL_STATEPROV, customerState);
-        }
-        if (zip != null) {
-            additionalDataBuilder.put(ForteAGIClient.ECOM_BILLTO_POSTAL_POSTALCODE, zip);
-        }
-        if (phone != null) {
-            additionalDataBuilder.put(ForteAGIClient.ECOM_BILLTO_TELECOM_PHONE_NUMBER, phone);
-        }
-        if (email != null) {
-            additionalDataBuilder.put(ForteAGIClient.ECOM_BILLTO_ONLINE_EMAIL, email);
-        }
-        if (optionalData != null) {
-            additionalDataBuilder.putAll(optionalData);
+    // Both credit card and EFT transactions
+
+    public <T> AGIResponse createCaptureTransaction(final String originalTraceNumber,
+                                                    final String originalAuthorizationCode,
+                                                    @Nullable final Map<String, T> optionalData) throws IOException {
+        return createTransaction(buildAdministrativeRequest(EFT_CAPTURE, originalTraceNumber, originalAuthorizationCode, optionalData));
+    }
+
+    public <T> AGIResponse createVoidTransaction(final String originalTraceNumber,
+                                                 final String originalAuthorizationCode,
+                                                 @Nullable final Map<String, T> optionalData) throws IOException {
+        return createTransaction(buildAdministrativeRequest(EFT_VOID, originalTraceNumber, originalAuthorizationCode, optionalData));
+    }
+
+    // Asynchronous credit card transactions
+
+    public <T> ListenableFuture<AGIResponse> createAuthTransactionAsync(final BigDecimal amount,
+                                                                        final String customerFirstName,
+                                                                        final String customerLastName,
+                                                                        final String cardName,
+                                                                        final String cardType,
+                                                                        final String cardNumber,
+                                                                        final String cardExpMonth,
+                                                                        final String cardExpYear,
+                                                                        @Nullable final Map<String, T> optionalData) {
+        return createAuthTransactionAsync(amount,
+                                          customerFirstName,
+                                          customerLastName,
+                                          null,
+                                          null,
+                                          null,
+                                          null,
+                                          null,
+                                          cardName,
+                                          cardType,
+                                          cardNumber,
+                                          cardExpMonth,
+                                          cardExpYear,
+                                          optionalData);
+    }
+
+    public <T> ListenableFuture<AGIResponse> createAuthTransactionAsync(final BigDecimal amount,
+                                                                        final String customerFirstName,
+                                                                        final String customerLastName,
+                                                                        @Nullable final String customerStreetLine1,
+                                                                        @Nullable final String customerState,
+                                                                        @Nullable final String zip,
+                                                                        @Nullable final String phone,
+                                                                        @Nullable final String email,
+                                                                        final String cardName,
+                                                                        final String cardType,
+                                                                        final String cardNumber,
+                                                                        final String cardExpMonth,
+                                                                        final String cardExpYear,
+                                                                        @Nullable final Map<String, T> optionalData) {
+        return createTransactionAsync(buildCreditCardRequest(CREDIT_CARD_AUTH,
+                                                             amount,
+                                                             customerFirstName,
+                                                             customerLastName,
+                                                             customerStreetLine1,
+                                                             customerState,
+                                                             zip,
+                                                             phone,
+                                                             email,
+                                                             cardName,
+                                                             cardType,
+                                                             cardNumber,
+                                                             cardExpMonth,
+                                                             cardExpYear,
+                                                             optionalData));
+    }
+
+    public <T> ListenableFuture<AGIResponse> createCreditTransactionAsync(final BigDecimal amount,
+                                                                          final String customerFirstName,
+                                                                          final String customerLastName,
+                                                                          final String cardName,
+                                                                          final String cardType,
+                                                                          final String cardNumber,
+                                                                          final String cardExpMonth,
+                                                                          final String cardExpYear,
+                                                                          @Nullable final Map<String, T> optionalData) {
+        return createCreditTransactionAsync(amount,
+                                            customerFirstName,
+                                            customerLastName,
+                                            null,
+                                            null,
+                                            null,
+                                            null,
+                                            null,
+                                            cardName,
+                                            cardType,
+                                            cardNumber,
+                                            cardExpMonth,
+                                            cardExpYear,
+                                            optionalData);
+    }
+
+    public <T> ListenableFuture<AGIResponse> createCreditTransactionAsync(final BigDecimal amount,
+                                                                          final String customerFirstName,
+                                                                          final String customerLastName,
+                                                                          @Nullable final String customerStreetLine1,
+                                                                          @Nullable final String customerState,
+                                                                          @Nullable final String zip,
+                                                                          @Nullable final String phone,
+                                                                          @Nullable final String email,
+                                                                          final String cardName,
+                                                                          final String cardType,
+                                                                          final String cardNumber,
+                                                                          final String cardExpMonth,
+                                                                          final String cardExpYear,
+                                                                          @Nullable final Map<String, T> optionalData) {
+        return createTransactionAsync(buildCreditCardRequest(CREDIT_CARD_CREDIT,
+                                                             amount,
+                                                             customerFirstName,
+                                                             customerLastName,
+                                                             customerStreetLine1,
+                                                             customerState,
+                                                             zip,
+                                                             phone,
+                                                             email,
+                                                             cardName,
+                                                             cardType,
+                                                             cardNumber,
+                                                             cardExpMonth,
+                                                             cardExpYear,
+                                                             optionalData));
+    }
+
+    public <T> ListenableFuture<AGIResponse> createSaleTransactionAsync(final BigDecimal amount,
+                                                                        final String customerFirstName,
+                                                                        final String customerLastName,
+                                                                        final String cardName,
+                                                                        final String cardType,
+                                                                        final String cardNumber,
+                                                                        final String cardExpMonth,
+                                                                        final String cardExpYear,
+                                                                        @Nullable final Map<String, T> optionalData) {
+        return createSaleTransactionAsync(amount,
+                                          customerFirstName,
+                                          customerLastName,
+                                          null,
+                                          null,
+                                          null,
+                                          null,
+                                          null,
+                                          cardName,
+                                          cardType,
+                                          cardNumber,
+                                          cardExpMonth,
+                                          cardExpYear,
+                                          optionalData);
+    }
+
+    public <T> ListenableFuture<AGIResponse> createSaleTransactionAsync(final BigDecimal amount,
+                                                                        final String customerFirstName,
+                                                                        final String customerLastName,
+                                                                        @Nullable final String customerStreetLine1,
+                                                                        @Nullable final String customerState,
+                                                                        @Nullable final String zip,
+                                                                        @Nullable final String phone,
+                                                                        @Nullable final String email,
+                                                                        final String cardName,
+                                                                        final String cardType,
+                                                                        final String cardNumber,
+                                                                        final String cardExpMonth,
+                                                                        final String cardExpYear,
+                                                                        @Nullable final Map<String, T> optionalData) {
+        return createTransactionAsync(buildCreditCardRequest(CREDIT_CARD_SALE,
+                                                             amount,
+                                                             customerFirstName,
+                                                             customerLastName,
+                                                             customerStreetLine1,
+                                                             customerState,
+                                                             zip,
+                                                             phone,
+                                                             email,
+                                                             cardName,
+                                                             cardType,
+                                                             cardNumber,
+                                                             cardExpMonth,
+                                                             cardExpYear,
+                                                             optionalData));
+    }
+
+    // Asynchronous EFT transactions
+
+    public <T> ListenableFuture<AGIResponse> createAuthTransactionAsync(final BigDecimal amount,
+                                                                        final String customerFirstName,
+                                                                        final String customerLastName,
+                                                                        final String transitRoutingNumber,
+                                                                        final String accountNumber,
+                                                                        final String accountType,
+                                                                        @Nullable final Map<String, T> optionalData) {
+        return createAuthTransactionAsync(amount,
+                                          customerFirstName,
+                                          customerLastName,
+                                          null,
+                                          null,
+                                          null,
+                                          null,
+                                          null,
+                                          transitRoutingNumber,
+                                          accountNumber,
+                                          accountType,
+                                          optionalData);
+    }
+
+    public <T> ListenableFuture<AGIResponse> createAuthTransactionAsync(final BigDecimal amount,
+                                                                        final String customerFirstName,
+                                                                        final String customerLastName,
+                                                                        @Nullable final String customerStreetLine1,
+                                                                        @Nullable final String customerState,
+                                                                        @Nullable final String zip,
+                                                                        @Nullable final String phone,
+                                                                        @Nullable final String email,
+                                                                        final String transitRoutingNumber,
+                                                                        final String accountNumber,
+                                                                        final String accountType,
+                                                                        @Nullable final Map<String, T> optionalData) {
+        return createTransactionAsync(buildEFTRequest(EFT_AUTH,
+                                                      amount,
+                                                      customerFirstName,
+                                                      customerLastName,
+                                                      customerStreetLine1,
+                                                      customerState,
+                                                      zip,
+                                                      phone,
+                                                      email,
+                                                      transitRoutingNumber,
+                                                      accountNumber,
+                                                      accountType,
+                                                      optionalData));
+    }
+
+    public <T> ListenableFuture<AGIResponse> createCreditTransactionAsync(final BigDecimal amount,
+                                                                          final String customerFirstName,
+                                                                          final String customerLastName,
+                                                                          final String transitRoutingNumber,
+                                                                          final String accountNumber,
+                                                                          final String accountType,
+                                                                          @Nullable final Map<String, T> optionalData) {
+        return createCreditTransactionAsync(amount,
+                                            customerFirstName,
+                                            customerLastName,
+                                            null,
+                                            null,
+                                            null,
+                                            null,
+                                            null,
+                                            transitRoutingNumber,
+                                            accountNumber,
+                                            accountType,
+                                            optionalData);
+    }
+
+    public <T> ListenableFuture<AGIResponse> createCreditTransactionAsync(final BigDecimal amount,
+                                                                          final String customerFirstName,
+                                                                          final String customerLastName,
+                                                                          @Nullable final String customerStreetLine1,
+                                                                          @Nullable final String customerState,
+                                                                          @Nullable final String zip,
+                                                                          @Nullable final String phone,
+                                                                          @Nullable final String email,
+                                                                          final String transitRoutingNumber,
+                                                                          final String accountNumber,
+                                                                          final String accountType,
+                                                                          @Nullable final Map<String, T> optionalData) {
+        return createTransactionAsync(buildEFTRequest(EFT_CREDIT,
+                                                      amount,
+                                                      customerFirstName,
+                                                      customerLastName,
+                                                      customerStreetLine1,
+                                                      customerState,
+                                                      zip,
+                                                      phone,
+                                                      email,
+                                                      transitRoutingNumber,
+                                                      accountNumber,
+                                                      accountType,
+                                                      optionalData));
+    }
+
+    public <T> ListenableFuture<AGIResponse> createSaleTransactionAsync(final BigDecimal amount,
+                                                                        final String customerFirstName,
+                                                                        final String customerLastName,
+                                                                        final String transitRoutingNumber,
+                                                                        final String accountNumber,
+                                                                        final String accountType,
+                                                                        @Nullable final Map<String, T> optionalData) {
+        return createSaleTransactionAsync(amount,
+                                          customerFirstName,
+                                          customerLastName,
+                                          null,
+                                          null,
+                                          null,
+                                          null,
+                                          null,
+                                          transitRoutingNumber,
+                                          accountNumber,
+                                          accountType,
+                                          optionalData);
+    }
+
+    public <T> ListenableFuture<AGIResponse> createSaleTransactionAsync(final BigDecimal amount,
+                                                                        final String customerFirstName,
+                                                                        final String customerLastName,
+                                                                        @Nullable final String customerStreetLine1,
+                                                                        @Nullable final String customerState,
+                                                                        @Nullable final String zip,
+                                                                        @Nullable final String phone,
+                                                                        @Nullable final String email,
+                                                                        final String transitRoutingNumber,
+                                                                        final String accountNumber,
+                                                                        final String accountType,
+                                                                        @Nullable final Map<String, T> optionalData) {
+        return createTransactionAsync(buildEFTRequest(EFT_SALE,
+                                                      amount,
+                                                      customerFirstName,
+                                                      customerLastName,
+                                                      customerStreetLine1,
+                                                      customerState,
+                                                      zip,
+                                                      phone,
+                                                      email,
+                                                      transitRoutingNumber,
+                                                      accountNumber,
+                                                      accountType,
+                                                      optionalData));
+    }
+
+    // Asynchronous, both credit card and EFT transactions
+
+    public <T> ListenableFuture<AGIResponse> createCaptureTransactionAsync(final String originalTraceNumber,
+                                                                           final String originalAuthorizationCode,
+                                                                           @Nullable final Map<String, T> optionalData) {
+        return createTransactionAsync(buildAdministrativeRequest(EFT_CAPTURE, originalTraceNumber, originalAuthorizationCode, optionalData));
+    }
+
+    public <T> ListenableFuture<AGIResponse> createVoidTransactionAsync(final String originalTraceNumber,
+                                                                        final String originalAuthorizationCode,
+                                                                        @Nullable final Map<String, T> optionalData) {
+        return createTransactionAsync(buildAdministrativeRequest(EFT_VOID, originalTraceNumber, originalAuthorizationCode, optionalData));
+    }
+
+    // Sends a request (see the build*Request methods) within what is left of the caller's own budget, e.g. the deadline
+    // of a payment call: the exchange expires after the shortest of budgetMillis and the timeout of its transaction type.
+    // Long.MAX_VALUE means no budget of its own.
+    public ListenableFuture<AGIResponse> submitAsync(final AGIRequest request, final long budgetMillis) {
+        return createTransactionAsync(request, budgetMillis);
+    }
+
+    // Batches
+
+    // Requests for submitAll and submitAsync (see the create*Transaction methods for the transaction types)
+
+    public <T> AGIRequest buildCreditCardRequest(final String transactionType,
+                                                  final BigDecimal amount,
+                                                  final String customerFirstName,
+                                                  final String customerLastName,
+                                                  @Nullable final String customerStreetLine1,
+                                                  @Nullable final String customerState,
+                                                  @Nullable final String zip,
+                                                  @Nullable final String phone,
+                                                  @Nullable final String email,
+                                                  @Nullable final String cardName,
+                                                  @Nullable final String cardType,
+                                                  @Nullable final String cardNumber,
+                                                  @Nullable final String cardExpMonth,
+                                                  @Nullable final String cardExpYear,
+                                                  @Nullable final Map<String, T> optionalData) {
+        final AGIRequest request = encoder.newRequest(transactionType);
+        request.put(AGIField.ECOM_PAYMENT_CARD_NAME, cardName);
+        request.put(AGIField.ECOM_PAYMENT_CARD_TYPE, cardType);
+        request.put(AGIField.ECOM_PAYMENT_CARD_NUMBER, cardNumber);
+        request.put(AGIField.ECOM_PAYMENT_CARD_EXPDATE_MONTH, cardExpMonth);
+        request.put(AGIField.ECOM_PAYMENT_CARD_EXPDATE_YEAR, cardExpYear);
+
+        return buildCreditCardOrEFTRequest(request,
+                                           amount,
+                                           customerFirstName,
+                                           customerLastName,
+                                           customerStreetLine1,
+                                           customerState,
+                                           zip,
+                                           phone,
+                                           email,
+                                           optionalData);
+    }
+
+    public <T> AGIRequest buildEFTRequest(final String transactionType,
+                                           final BigDecimal amount,
+                                           final String customerFirstName,
+                                           final String customerLastName,
+                                           @Nullable final String customerStreetLine1,
+                                           @Nullable final String customerState,
+                                           @Nullable final String zip,
+                                           @Nullable final String phone,
+                                           @Nullable final String email,
+                                           @Nullable final String transitRoutingNumber,
+                                           @Nullable final String accountNumber,
+                                           @Nullable final String accountType,
+                                           @Nullable final Map<String, T> optionalData) {
+        final AGIRequest request = encoder.newRequest(transactionType);
+        request.put(AGIField.ECOM_PAYMENT_CHECK_TRN, transitRoutingNumber);
+        request.put(AGIField.ECOM_PAYMENT_CHECK_ACCOUNT, accountNumber);
+        request.put(AGIField.ECOM_PAYMENT_CHECK_ACCOUNT_TYPE, accountType);
+
+        return buildCreditCardOrEFTRequest(request,
+                                           amount,
+                                           customerFirstName,
+                                           customerLastName,
+                                           customerStreetLine1,
+                                           customerState,
+                                           zip,
+                                           phone,
+                                           email,
+                                           optionalData);
+    }
+
+    private <T> AGIRequest buildCreditCardOrEFTRequest(final AGIRequest request,
+                                                       final BigDecimal amount,
+                                                       final String customerFirstName,
+                                                       final String customerLastName,
+                                                       @Nullable final String customerStreetLine1,
+                                                       @Nullable final String customerState,
+                                                       @Nullable final String zip,
+                                                       @Nullable final String phone,
+                                                       @Nullable final String email,
+                                                       @Nullable final Map<String, T> optionalData) {
+        request.put(AGIField.PG_TOTAL_AMOUNT, toString(amount));
+        request.put(AGIField.ECOM_BILLTO_POSTAL_NAME_FIRST, customerFirstName);
+        request.put(AGIField.ECOM_BILLTO_POSTAL_NAME_LAST, customerLastName);
+        request.put(AGIField.ECOM_BILLTO_POSTAL_STREET_LINE1, customerStreetLine1);
+        request.put(AGIField.ECOM_BILLTO_POSTAL_STATEPROV, customerState);
+        request.put(AGIField.ECOM_BILLTO_POSTAL_POSTALCODE, zip);
+        request.put(AGIField.ECOM_BILLTO_TELECOM_PHONE_NUMBER, phone);
+        request.put(AGIField.ECOM_BILLTO_ONLINE_EMAIL, email);
+
+        return putOptionalData(request, optionalData);
+    }
+
+    public <T> AGIRequest buildAdministrativeRequest(final String transactionType,
+                                                      final String originalTraceNumber,
+                                                      final String originalAuthorizationCode,
+                                                      @Nullable final Map<String, T> optionalData) {
+        final AGIRequest request = encoder.newRequest(transactionType);
+        request.put(AGIField.PG_ORIGINAL_TRACE_NUMBER, originalTraceNumber);
+        request.put(AGIField.PG_ORIGINAL_AUTHORIZATION_CODE, originalAuthorizationCode);
+
+        return putOptionalData(request, optionalData);
+    }
+
+    public List<AGIBatchResult> submitAll(final List<AGIRequest> requests, @Nullable final AGIBatchListener listener) throws InterruptedException {
+        return submitAll(requests, batchParallelism, listener);
+    }
+
+    // Sends the requests with at most parallelism exchanges in flight (each request gets its full timeout budget once sent),
+    // and waits for all of them. Results are in the order of the requests: a failed request doesn't stop the batch.
+    // If interrupted, the requests not sent yet are released (and the in-flight ones left to complete).
+    public List<AGIBatchResult> submitAll(final List<AGIRequest> requests,
+                                          final int parallelism,
+                                          @Nullable final AGIBatchListener listener) throws InterruptedException {
+        Preconditions.checkArgument(parallelism > 0, "parallelism must be positive");
+
+        final int total = requests.size();
+        final AGIBatchResult[] results = new AGIBatchResult[total];
+        final Semaphore inFlight = new Semaphore(parallelism);
+        final AtomicInteger completed = new AtomicInteger();
+        // Serializes the listener calls: unlike a monitor, it doesn't pin the virtual threads of the blocking transport
+        final Lock listenerLock = new ReentrantLock();
+
+        for (int i = 0; i < total; i++) {
+            final AGIRequest request = requests.get(i);
+            try {
+                inFlight.acquire();
+            } catch (final InterruptedException e) {
+                for (int j = i; j < total; j++) {
+                    requests.get(j).release();
+                }
+                throw e;
+            }
+
+            final int index = i;
+            final String transactionType = request.getTransactionType();
+            ListenableFuture<AGIResponse> future;
+            try {
+                future = createTransactionAsync(request);
+            } catch (final RuntimeException e) {
+                // Invalid request
+                future = Futures.immediateFailedFuture(e);
+            }
+            Futures.addCallback(future,
+                                new FutureCallback<AGIResponse>() {
+                                    @Override
+                                    public void onSuccess(final AGIResponse response) {
+                                        onBatchResult(new AGIBatchResult(index, transactionType, response, null));
+                                    }
+
+                                    @Override
+                                    public void onFailure(final Throwable t) {
+                                        onBatchResult(new AGIBatchResult(index, transactionType, null, t));
+                                    }
+
+                                    private void onBatchResult(final AGIBatchResult result) {
+                                        try {
+                                            results[index] = result;
+                                            if (listener != null) {
+                                                listenerLock.lock();
+                                                try {
+                                                    listener.onResult(result, completed.incrementAndGet(), total);
+                                                } finally {
+                                                    listenerLock.unlock();
+                                                }
+                                            }
+                                        } finally {
+                                            inFlight.release();
+                                        }
+                                    }
+                                },
+                                MoreExecutors.directExecutor());
         }
-        final ImmutableMap<String, Object> additionalData = additionalDataBuilder.build();
 
-        return createTransaction(transactionType, additionalData);
+        // All the results have been set once every permit is back
+        inFlight.acquire(parallelism);
+        return Arrays.asList(results);
     }
 
-    private <T> Map<String, String> createAdministrativeTransaction(final String transactionType,
-                                                                    final String originalTraceNumber,
-                                                                    final String originalAuthorizationCode,
-                                                                    @Nullable final Map<String, T> optionalData) throws IOException {
-        final Builder<String, Object> additionalDataBuilder = ImmutableMap.<String, Object>builder();
-        additionalDataBuilder.put(ForteAGIClient.PG_ORIGINAL_TRACE_NUMBER, originalTraceNumber);
-        additionalDataBuilder.put(ForteAGIClient.PG_ORIGINAL_AUTHORIZATION_CODE, originalAuthorizationCode);
+    private <T> AGIRequest putOptionalData(final AGIRequest request, @Nullable final Map<String, T> optionalData) {
         if (optionalData != null) {
-            additionalDataBuilder.putAll(optionalData);
+            for (final Entry<String, T> entry : optionalData.entrySet()) {
+                request.put(entry.getKey(), toString(entry.getValue()));
+            }
         }
-        final ImmutableMap<String, Object> additionalData = additionalDataBuilder.build();
+        return request;
+    }
+
+    private AGIResponse createTransaction(final AGIRequest request) throws IOException {
+        validateRequest(request);
+        acquirePermission(request);
 
-        return createTransaction(transactionType, additionalData);
+        final long timeoutMillis = timeouts.getTimeoutMillis(request.getTransactionType());
+        final long startNanos = System.nanoTime();
+        request.expireAfter(timeoutMillis);
+        logRequest(request);
+        try {
+            final AGIResponse response = transport.sendAndReceiveData(request);
+            onExchangeCompleted(request.getTransactionType(), startNanos, timeoutMillis, null);
+            WIRE_LOG.log("AGI response", response);
+            return response;
+        } catch (final IOException e) {
+            onExchangeCompleted(request.getTransactionType(), startNanos, timeoutMillis, e);
+            throw e;
+        } catch (final RuntimeException e) {
+            onExchangeCompleted(request.getTransactionType(), startNanos, timeoutMillis, e);
+            throw e;
+        }
     }
 
-    private Map<String, String> createTransaction(final String transactionType, final ImmutableMap<String, Object> additionalData) throws IOException {
-        final Map<String, String> request = buildRequest(transactionType, additionalData);
-        final Map<String, String> response = new HashMap<String, String>();
+    private ListenableFuture<AGIResponse> createTransactionAsync(final AGIRequest request) {
+        return createTransactionAsync(request, Long.MAX_VALUE);
+    }
 
+    private ListenableFuture<AGIResponse> createTransactionAsync(final AGIRequest request, final long budgetMillis) {
         validateRequest(request);
-        sendAndReceiveData(request, response);
+        try {
+            acquirePermission(request);
+        } catch (final ForteCircuitOpenException e) {
+            return Futures.immediateFailedFuture(e);
+        }
 
-        return response;
+        final String transactionType = request.getTransactionType();
+        final long timeoutMillis = getTimeoutMillis(transactionType, budgetMillis);
+        final long startNanos = System.nanoTime();
+        request.expireAfter(timeoutMillis);
+        logRequest(request);
+        final ListenableFuture<AGIResponse> future;
+        try {
+            future = transport.sendAndReceiveDataAsync(request);
+        } catch (final RuntimeException e) {
+            // E.g. RejectedExecutionException once the transport is closed: the request never reached it
+            request.release();
+            circuitBreaker.onIgnored();
+            return Futures.immediateFailedFuture(e);
+        }
+        Futures.addCallback(future,
+                            new FutureCallback<AGIResponse>() {
+                                @Override
+                                public void onSuccess(final AGIResponse response) {
+                                    onExchangeCompleted(transactionType, startNanos, timeoutMillis, null);
+                                    WIRE_LOG.log("AGI response", response);
+                                }
+
+                                @Override
+                                public void onFailure(final Throwable t) {
+                                    onExchangeCompleted(transactionType, startNanos, timeoutMillis, t);
+                                }
+                            },
+                            MoreExecutors.directExecutor());
+        return future;
     }
 
-    private <T> Map<String, String> buildRequest(final String transactionType, final Map<String, T> additionalData) {
-        final Builder<String, String> builder = ImmutableMap.<String, String>builder();
+    // The request is wiped once sent: its content is copied beforehand, when the wire log is enabled
+    private void logRequest(final AGIRequest request) {
+        if (WIRE_LOG.isEnabled()) {
+            WIRE_LOG.log("AGI request", request.getContent());
+        }
+    }
 
-        builder.put(PG_MERCHANT_ID, merchantId);
-        builder.put(PG_PASSWORD, password);
+    private void acquirePermission(final AGIRequest request) throws ForteCircuitOpenException {
+        try {
+            circuitBreaker.acquirePermission();
+        } catch (final ForteCircuitOpenException e) {
+            request.release();
+            throw e;
+        }
+    }
 
-        builder.put(PG_TRANSACTION_TYPE, transactionType);
+    // Zero or less means no timeout
+    private long getTimeoutMillis(@Nullable final String transactionType, final long budgetMillis) {
+        final long timeoutMillis = timeouts.getTimeoutMillis(transactionType);
+        if (budgetMillis == Long.MAX_VALUE) {
+            return timeoutMillis;
+        }
 
-        final Map<String, String> additionalDataAsStrings = Maps.<String, T, String>transformValues(additionalData, TO_STRING);
-        builder.putAll(additionalDataAsStrings);
+        // A spent budget still expires the exchange right away
+        final long positiveBudgetMillis = Math.max(1, budgetMillis);
+        return timeoutMillis <= 0 ? positiveBudgetMillis : Math.min(timeoutMillis, positiveBudgetMillis);
+    }
 
-        return builder.build();
+    // Only I/O errors (timeouts included) count as failures of the gateway. For adaptive timeouts, timed out
+    // exchanges count as taking the whole timeout.
+    private void onExchangeCompleted(final String transactionType, final long startNanos, final long timeoutMillis, @Nullable final Throwable failure) {
+        final long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        if (failure == null) {
+            timeouts.recordLatency(transactionType, durationMillis);
+            circuitBreaker.onSuccess(durationMillis);
+        } else if (failure instanceof SocketTimeoutException || failure instanceof AGIResponseTimeoutException) {
+            timeouts.recordLatency(transactionType, timeoutMillis);
+            circuitBreaker.onFailure(durationMillis);
+        } else if (failure instanceof IOException && !(failure instanceof InterruptedIOException)) {
+            circuitBreaker.onFailure(durationMillis);
+        } else {
+            circuitBreaker.onIgnored();
+        }
     }
 
-    private void validateRequest(final Map<String, String> request) {
-        Preconditions.checkNotNull(request.get(PG_MERCHANT_ID), PG_MERCHANT_ID + " must be specified");
-        Preconditions.checkNotNull(request.get(PG_PASSWORD), PG_PASSWORD + " must be specified");
-        Preconditions.checkNotNull(request.get(PG_TRANSACTION_TYPE), PG_TRANSACTION_TYPE + " must be specified");
+    private void validateRequest(final AGIRequest request) {
+        checkRequiredFields(request, MERCHANT_REQUIRED_FIELDS);
 
-        if (request.get(ECOM_PAYMENT_CARD_NUMBER) != null) {
+        if (request.has(AGIField.ECOM_PAYMENT_CARD_NUMBER)) {
             // Credit card transaction
-            Preconditions.checkNotNull(request.get(PG_TOTAL_AMOUNT), PG_TOTAL_AMOUNT + " must be specified");
-            Preconditions.checkNotNull(request.get(ECOM_BILLTO_POSTAL_NAME_FIRST), ECOM_BILLTO_POSTAL_NAME_FIRST + " must be specified");
-            Preconditions.checkNotNull(request.get(ECOM_BILLTO_POSTAL_NAME_LAST), ECOM_BILLTO_POSTAL_NAME_LAST + " must be specified");
-            Preconditions.checkNotNull(request.get(ECOM_PAYMENT_CARD_TYPE), ECOM_PAYMENT_CARD_TYPE + " must be specified");
-            Preconditions.checkNotNull(request.get(ECOM_PAYMENT_CARD_NAME), ECOM_PAYMENT_CARD_NAME + " must be specified");
-            Preconditions.checkNotNull(request.get(ECOM_PAYMENT_CARD_EXPDATE_MONTH), ECOM_PAYMENT_CARD_EXPDATE_MONTH + " must be specified");
-            Preconditions.checkNotNull(request.get(ECOM_PAYMENT_CARD_EXPDATE_YEAR), ECOM_PAYMENT_CARD_EXPDATE_YEAR + " must be specified");
-        } else if (request.get(ECOM_PAYMENT_CHECK_ACCOUNT) != null) {
+            checkRequiredFields(request, CREDIT_CARD_REQUIRED_FIELDS);
+        } else if (request.has(AGIField.ECOM_PAYMENT_CHECK_ACCOUNT)) {
             // EFT transaction
-            Preconditions.checkNotNull(request.get(PG_TOTAL_AMOUNT), PG_TOTAL_AMOUNT + " must be specified");
-            Preconditions.checkNotNull(request.get(ECOM_BILLTO_POSTAL_NAME_FIRST), ECOM_BILLTO_POSTAL_NAME_FIRST + " must be specified");
-            Preconditions.checkNotNull(request.get(ECOM_BILLTO_POSTAL_NAME_LAST), ECOM_BILLTO_POSTAL_NAME_LAST + " must be specified");
-            Preconditions.checkNotNull(request.get(ECOM_PAYMENT_CHECK_TRN), ECOM_PAYMENT_CHECK_TRN + " must be specified");
-            Preconditions.checkNotNull(request.get(ECOM_PAYMENT_CHECK_ACCOUNT_TYPE), ECOM_PAYMENT_CHECK_ACCOUNT_TYPE + " must be specified");
-        } else if (request.get(PG_PAYMENT_METHOD_ID) != null) {
-            Preconditions.checkNotNull(request.get(PG_TOTAL_AMOUNT), PG_TOTAL_AMOUNT + " must be specified");
+            checkRequiredFields(request, EFT_REQUIRED_FIELDS);
+        } else if (request.has(AGIField.PG_PAYMENT_METHOD_ID)) {
+            checkRequiredFields(request, AGIField.PG_TOTAL_AMOUNT.getBit());
         } else {
             // Administrative message
-            Preconditions.checkNotNull(request.get(PG_ORIGINAL_TRACE_NUMBER), PG_ORIGINAL_TRACE_NUMBER + " must be specified");
+            checkRequiredFields(request, AGIField.PG_ORIGINAL_TRACE_NUMBER.getBit());
         }
     }
 
-    private void sendAndReceiveData(final Map<String, String> request, final Map<String, String> response) throws IOException {
-        SSLSocket socket = null;
-        try {
-            socket = (SSLSocket) factory.createSocket(host, port);
-            socket.setEnabledCipherSuites(socket.getSupportedCipherSuites());
-            sendAndReceiveData(request, response, socket);
-        } finally {
-            if (socket != null) {
-                socket.close();
+    private static void checkRequiredFields(final AGIRequest request, final int requiredFields) {
+        final int missingFields = requiredFields & ~request.getFields();
+        if (missingFields == 0) {
+            return;
+        }
+
+        request.release();
+        for (final AGIField field : AGIField.values()) {
+            if ((missingFields & field.getBit()) != 0) {
+                throw new NullPointerException(field.getKey() + " must be specified");
             }
         }
     }
 
-    private void sendAndReceiveData(final Map<String, String> request, final Map<String, String> response, final SSLSocket socket) throws IOException {
-        final Iterable<String> msgLines = Iterables.<Entry<String, String>, String>transform(request.entrySet(),
-                                                                                             new Function<Entry<String, String>, String>() {
-                                                                                                 @Override
-                                                                                                 public String apply(final Map.Entry<String, String> input) {
-                                                                                                     return MSG_LINE_JOINER.join(input.getKey(), input.getValue());
-                                                                                                 }
-                                                                                             });
-        final String content = MSG_LINES_JOINER.join(msgLines) + "\n" + ENDOFDATA + "\n";
-
-        // Send data
-        final DataOutputStream dos = new DataOutputStream(socket.getOutputStream());
-        dos.writeBytes(content);
-        dos.flush();
+    private static AGITimeouts buildTimeouts(final Properties properties) {
+        final Map<String, Long> timeoutsMillis = new HashMap<String, Long>();
+        putTimeout(timeoutsMillis, properties.getProperty(PROPERTY_AUTH_TIMEOUT), CREDIT_CARD_AUTH, CREDIT_CARD_PRE_AUTH, EFT_AUTH);
+        putTimeout(timeoutsMillis, properties.getProperty(PROPERTY_SALE_TIMEOUT), CREDIT_CARD_SALE, EFT_SALE);
+        putTimeout(timeoutsMillis, properties.getProperty(PROPERTY_CAPTURE_TIMEOUT), CREDIT_CARD_CAPTURE, EFT_CAPTURE);
+        putTimeout(timeoutsMillis, properties.getProperty(PROPERTY_CREDIT_TIMEOUT), CREDIT_CARD_CREDIT, EFT_CREDIT);
+        putTimeout(timeoutsMillis, properties.getProperty(PROPERTY_VOID_TIMEOUT), CREDIT_CARD_VOID, EFT_VOID);
 
-        // Read the response
-        BufferedReader br = null;
-
-        try {
-            br = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            String line = br.readLine();
-            while (line != null) {
-                // Check for end of message
-                if (line.equals(ENDOFDATA)) {
-                    break;
-                }
-
-                final int equalPos = line.indexOf('=');
-                final String name = line.substring(0, equalPos);
-                final String value = line.substring(equalPos + 1);
-                response.put(name, value);
+        return new AGITimeouts(Long.parseLong(properties.getProperty(PROPERTY_TIMEOUT, DEFAULT_TIMEOUT_MILLIS)),
+                               timeoutsMillis,
+                               Boolean.parseBoolean(properties.getProperty(PROPERTY_ADAPTIVE_TIMEOUTS, "false")));
+    }
 
-                // Get next line
-                line = br.readLine();
-            }
-        } finally {
-            if (br != null) {
-                br.close();
-            }
+    private static void putTimeout(final Map<String, Long> timeoutsMillis, @Nullable final String timeoutMillis, final String... transactionTypes) {
+        if (timeoutMillis == null) {
+            return;
+        }
+        for (final String transactionType : transactionTypes) {
+            timeoutsMillis.put(transactionType, Long.parseLong(timeoutMillis));
         }
     }
 
-    private static final Function<Object, String> TO_STRING = new Function<Object, String>() {
-        public String apply(final Object in) {
-            return ForteAGIClient.toString(in);
+    private static int bits(final AGIField... fields) {
+        int bits = 0;
+        for (final AGIField field : fields) {
+            bits |= field.getBit();
         }
-    };
+        return bits;
+    }
 
     private static String toString(@Nullable final Object value) {
         if (value == null) {
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.forte.client;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.killbill.billing.plugin.forte.client.ForteAGIClient.PROPERTY_BASE;
+
+// Count-based circuit breaker of one gateway endpoint (each tenant has its own clients, hence its own breakers).
+// The circuit opens when, over the last windowSize calls, the failure rate or the slow call rate reaches its threshold.
+// Once openDuration has elapsed, a few probe calls are let through (half-open): the circuit closes again if they
+// all succeed in time, and opens again otherwise.
+public class ForteCircuitBreaker {
+
+    private static final String PROPERTY_CIRCUIT_BREAKER = PROPERTY_BASE + ".circuitBreaker";
+    private static final String PROPERTY_WINDOW_SIZE = PROPERTY_BASE + ".circuitBreakerWindowSize";
+    private static final String PROPERTY_MINIMUM_CALLS = PROPERTY_BASE + ".circuitBreakerMinimumCalls";
+    private static final String PROPERTY_FAILURE_RATE = PROPERTY_BASE + ".circuitBreakerFailureRate";
+    private static final String PROPERTY_SLOW_CALL_RATE = PROPERTY_BASE + ".circuitBreakerSlowCallRate";
+    private static final String PROPERTY_SLOW_CALL_DURATION = PROPERTY_BASE + ".circuitBreakerSlowCallDuration";
+    private static final String PROPERTY_OPEN_DURATION = PROPERTY_BASE + ".circuitBreakerOpenDuration";
+    private static final String PROPERTY_HALF_OPEN_CALLS = PROPERTY_BASE + ".circuitBreakerHalfOpenCalls";
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final String endpoint;
+    private final boolean enabled;
+    private final int minimumCalls;
+    private final int failureRatePercent;
+    private final int slowCallRatePercent;
+    private final long slowCallDurationMillis;
+    private final long openDurationMillis;
+    private final int halfOpenCalls;
+
+    // Outcomes of the last calls (ring buffer)
+    private final boolean[] failedCalls;
+    private final boolean[] slowCalls;
+    private int calls;
+    private int failures;
+    private int slow;
+
+    private State state = State.CLOSED;
+    private long openedNanos;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+
+    public ForteCircuitBreaker(final String endpoint,
+                               final boolean enabled,
+                               final int windowSize,
+                               final int minimumCalls,
+                               final int failureRatePercent,
+                               final int slowCallRatePercent,
+                               final long slowCallDurationMillis,
+                               final long openDurationMillis,
+                               final int halfOpenCalls) {
+        this.endpoint = endpoint;
+        this.enabled = enabled;
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, windowSize));
+        this.failureRatePercent = failureRatePercent;
+        this.slowCallRatePercent = slowCallRatePercent;
+        this.slowCallDurationMillis = slowCallDurationMillis;
+        this.openDurationMillis = openDurationMillis;
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+        this.failedCalls = new boolean[Math.max(1, windowSize)];
+        this.slowCalls = new boolean[Math.max(1, windowSize)];
+    }
+
+    public static ForteCircuitBreaker fromProperties(final String endpoint, final Properties properties) {
+        return new ForteCircuitBreaker(endpoint,
+                                       Boolean.parseBoolean(properties.getProperty(PROPERTY_CIRCUIT_BREAKER, "false")),
+                                       Integer.parseInt(properties.getProperty(PROPERTY_WINDOW_SIZE, "50")),
+                                       Integer.parseInt(properties.getProperty(PROPERTY_MINIMUM_CALLS, "20")),
+                                       Integer.parseInt(properties.getProperty(PROPERTY_FAILURE_RATE, "50")),
+                                       Integer.parseInt(properties.getProperty(PROPERTY_SLOW_CALL_RATE, "80")),
+                                       Long.parseLong(properties.getProperty(PROPERTY_SLOW_CALL_DURATION, "10000")),
+                                       Long.parseLong(properties.getProperty(PROPERTY_OPEN_DURATION, "30000")),
+                                       Integer.parseInt(properties.getProperty(PROPERTY_HALF_OPEN_CALLS, "3")));
+    }
+
+    // Each permitted call must be followed by onSuccess, onFailure or onIgnored
+    public synchronized void acquirePermission() throws ForteCircuitOpenException {
+        if (!enabled || state == State.CLOSED) {
+            return;
+        }
+
+        if (state == State.OPEN) {
+            if (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - openedNanos) < openDurationMillis) {
+                throw new ForteCircuitOpenException(endpoint);
+            }
+            state = State.HALF_OPEN;
+            halfOpenPermits = 0;
+            halfOpenSuccesses = 0;
+        }
+
+        if (halfOpenPermits >= halfOpenCalls) {
+            throw new ForteCircuitOpenException(endpoint);
+        }
+        halfOpenPermits++;
+    }
+
+    // The endpoint answered (business errors included)
+    public synchronized void onSuccess(final long durationMillis) {
+        onCompletion(false, durationMillis >= slowCallDurationMillis);
+    }
+
+    // The endpoint couldn't be reached or didn't answer (I/O error, timeout)
+    public synchronized void onFailure(final long durationMillis) {
+        onCompletion(true, durationMillis >= slowCallDurationMillis);
+    }
+
+    // Outcome unrelated to the health of the endpoint (e.g. cancelled call)
+    public synchronized void onIgnored() {
+        if (enabled && state == State.HALF_OPEN && halfOpenPermits > 0) {
+            halfOpenPermits--;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void onCompletion(final boolean failed, final boolean slowCall) {
+        if (!enabled) {
+            return;
+        }
+
+        if (state == State.HALF_OPEN) {
+            if (failed || slowCall) {
+                open();
+            } else if (++halfOpenSuccesses >= halfOpenCalls) {
+                close();
+            }
+            return;
+        } else if (state == State.OPEN) {
+            // Call permitted before the circuit opened
+            return;
+        }
+
+        final int index = calls % failedCalls.length;
+        if (calls >= failedCalls.length) {
+            failures -= failedCalls[index] ? 1 : 0;
+            slow -= slowCalls[index] ? 1 : 0;
+        }
+        failedCalls[index] = failed;
+        slowCalls[index] = slowCall;
+        failures += failed ? 1 : 0;
+        slow += slowCall ? 1 : 0;
+        calls++;
+        if (calls == 2 * failedCalls.length) {
+            // Keep the index from overflowing, the window stays full
+            calls = failedCalls.length;
+        }
+
+        final int windowCalls = Math.min(calls, failedCalls.length);
+        if (windowCalls >= minimumCalls &&
+            ((failureRatePercent > 0 && failures * 100 >= failureRatePercent * windowCalls) ||
+             (slowCallRatePercent > 0 && slow * 100 >= slowCallRatePercent * windowCalls))) {
+            open();
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedNanos = System.nanoTime();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        calls = 0;
+        failures = 0;
+        slow = 0;
+    }
+}
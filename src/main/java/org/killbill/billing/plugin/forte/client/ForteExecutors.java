@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.forte.client;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+// Executors for the blocking gateway calls
+public final class ForteExecutors {
+
+    private ForteExecutors() {}
+
+    // One virtual thread per task when requested and available (JDK 21+), otherwise platform threads:
+    // unbounded by default, idle threads are released after a minute
+    public static ExecutorService newGatewayExecutor(final String name, final int maxThreads, final boolean virtualThreads) {
+        if (virtualThreads) {
+            final ExecutorService virtualThreadExecutor = newVirtualThreadPerTaskExecutor(name);
+            if (virtualThreadExecutor != null) {
+                return virtualThreadExecutor;
+            }
+        }
+
+        final ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat(name + "-%d").setDaemon(true).build();
+        if (maxThreads <= 0) {
+            return Executors.newCachedThreadPool(threadFactory);
+        }
+
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    public static boolean areVirtualThreadsAvailable() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (final NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    // The plugin is built for older JDKs: Thread.ofVirtual().name(name + "-", 0).factory() via reflection
+    private static ExecutorService newVirtualThreadPerTaskExecutor(final String name) {
+        if (!areVirtualThreadsAvailable()) {
+            return null;
+        }
+
+        try {
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0L);
+            final ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+
+            final Method newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) newThreadPerTaskExecutor.invoke(null, threadFactory);
+        } catch (final Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
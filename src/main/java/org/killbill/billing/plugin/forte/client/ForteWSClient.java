@@ -18,37 +18,42 @@ package org.killbill.billing.plugin.forte.client;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
-import java.lang.reflect.Proxy;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nullable;
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
-import javax.xml.ws.BindingProvider;
-import javax.xml.ws.soap.AddressingFeature;
+import javax.xml.ws.AsyncHandler;
+import javax.xml.ws.Response;
+import javax.xml.ws.WebServiceException;
+import javax.xml.ws.soap.SOAPFaultException;
 
-import org.apache.cxf.common.logging.LogUtils;
-import org.apache.cxf.common.logging.Slf4jLogger;
-import org.apache.cxf.endpoint.Client;
-import org.apache.cxf.frontend.ClientProxy;
-import org.killbill.billing.plugin.forte.client.ws.HttpHeaderInterceptor;
-import org.killbill.billing.plugin.forte.client.ws.LoggingInInterceptor;
-import org.killbill.billing.plugin.forte.client.ws.LoggingOutInterceptor;
+import org.apache.cxf.binding.soap.SoapFault;
+import org.killbill.billing.plugin.forte.client.ws.ClientOperations;
+import org.killbill.billing.plugin.forte.client.ws.SoapFaults;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 
 import https.ws_paymentsgateway_net.v1.Authentication;
 import https.ws_paymentsgateway_net.v1.CcCardType;
 import https.ws_paymentsgateway_net.v1.ClientRecord;
-import https.ws_paymentsgateway_net.v1.ClientService;
+import https.ws_paymentsgateway_net.v1.CreatePaymentMethodResponse;
 import https.ws_paymentsgateway_net.v1.EcAccountType;
-import https.ws_paymentsgateway_net.v1.IClientService;
 import https.ws_paymentsgateway_net.v1.PaymentMethod;
 
+import static org.killbill.billing.plugin.forte.client.ForteAGIClient.DEFAULT_CONNECT_TIMEOUT_MILLIS;
 import static org.killbill.billing.plugin.forte.client.ForteAGIClient.PROPERTY_BASE;
+import static org.killbill.billing.plugin.forte.client.ForteAGIClient.PROPERTY_CONNECT_TIMEOUT;
 import static org.killbill.billing.plugin.forte.client.ForteAGIClient.PROPERTY_MERCHANT_ID;
 
 // See http://www.paymentsgateway.com/developerDocumentation/Integration/webservices/merchantservice.aspx
@@ -57,52 +62,128 @@ public class ForteWSClient implements Closeable {
     private static final String PROPERTY_API_LOGIN_ID = PROPERTY_BASE + ".apiLoginId";
     private static final String PROPERTY_SECURE_TRANSACTION_KEY = PROPERTY_BASE + ".secureTransactionKey";
     private static final String PROPERTY_TEST = PROPERTY_BASE + ".test";
+    private static final String PROPERTY_WS_TIMEOUT = PROPERTY_BASE + ".wsTimeout";
+    private static final String PROPERTY_WS_URL = PROPERTY_BASE + ".wsUrl";
+    private static final String DEFAULT_WS_TIMEOUT_MILLIS = "60000";
     private static final String HMAC_MD5 = "HmacMD5";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final int MAX_POOLED_MACS = 16;
 
     private final Integer merchantId;
     private final String apiLoginId;
     private final SecretKeySpec key;
-    private final IClientService client;
-
+    private final Mac macPrototype;
+    // Mac instances aren't thread safe, they are pooled (bounded by the concurrency of the tenant, not the number of threads)
+    private final BlockingQueue<Mac> macs = new ArrayBlockingQueue<Mac>(MAX_POOLED_MACS);
+    private final ForteWSProxies proxies;
+    // Created in the background, the first call waits for it
+    private final ListenableFuture<ClientOperations> client;
+    // Proxies created by (and closed with) this client, if any
+    private final ForteWSProxies ownProxies;
+    private final ForteCircuitBreaker circuitBreaker;
+
+    private volatile CachedAuthentication cachedAuthentication;
+
+    // Standalone client, with its own proxies (closed by close())
     public ForteWSClient(final Properties properties) {
+        this(properties, new ForteWSProxies(properties), true);
+    }
+
+    // The proxies are shared, and not closed by this client
+    public ForteWSClient(final Properties properties, final ForteWSProxies proxies) {
+        this(properties, proxies, false);
+    }
+
+    // Standalone client, with its own proxies (closed by close())
+    public ForteWSClient(final Integer merchantId, final String apiLoginId, final String secureTransactionKey, final Boolean test) {
+        this(merchantId, apiLoginId, secureTransactionKey, test, new ForteWSProxies(new Properties()), true);
+    }
+
+    public ForteWSClient(final Integer merchantId, final String apiLoginId, final String secureTransactionKey, final Boolean test, final ForteWSProxies proxies) {
+        this(merchantId, apiLoginId, secureTransactionKey, test, proxies, false);
+    }
+
+    public ForteWSClient(final Integer merchantId,
+                         final String apiLoginId,
+                         final String secureTransactionKey,
+                         final Boolean test,
+                         final long connectTimeoutMillis,
+                         final long receiveTimeoutMillis,
+                         final ForteWSProxies proxies,
+                         final ForteCircuitBreaker circuitBreaker) {
+        this(merchantId, apiLoginId, secureTransactionKey, test, connectTimeoutMillis, receiveTimeoutMillis, null, proxies, false, circuitBreaker);
+    }
+
+    private ForteWSClient(final Properties properties, final ForteWSProxies proxies, final boolean ownProxies) {
         this(properties.getProperty(PROPERTY_MERCHANT_ID) == null ? null : Integer.parseInt(properties.getProperty(PROPERTY_MERCHANT_ID)),
              properties.getProperty(PROPERTY_API_LOGIN_ID),
              properties.getProperty(PROPERTY_SECURE_TRANSACTION_KEY),
-             properties.getProperty(PROPERTY_TEST) == null ? false : Boolean.valueOf(properties.getProperty(PROPERTY_TEST)));
+             properties.getProperty(PROPERTY_TEST) == null ? false : Boolean.valueOf(properties.getProperty(PROPERTY_TEST)),
+             Long.parseLong(properties.getProperty(PROPERTY_CONNECT_TIMEOUT, DEFAULT_CONNECT_TIMEOUT_MILLIS)),
+             Long.parseLong(properties.getProperty(PROPERTY_WS_TIMEOUT, DEFAULT_WS_TIMEOUT_MILLIS)),
+             properties.getProperty(PROPERTY_WS_URL),
+             proxies,
+             ownProxies,
+             ForteCircuitBreaker.fromProperties("WS", properties));
     }
 
-    public ForteWSClient(final Integer merchantId, final String apiLoginId, final String secureTransactionKey, final Boolean test) {
+    private ForteWSClient(final Integer merchantId,
+                          final String apiLoginId,
+                          final String secureTransactionKey,
+                          final Boolean test,
+                          final ForteWSProxies proxies,
+                          final boolean ownProxies) {
+        this(merchantId,
+             apiLoginId,
+             secureTransactionKey,
+             test,
+             Long.parseLong(DEFAULT_CONNECT_TIMEOUT_MILLIS),
+             Long.parseLong(DEFAULT_WS_TIMEOUT_MILLIS),
+             null,
+             proxies,
+             ownProxies,
+             ForteCircuitBreaker.fromProperties("WS", new Properties()));
+    }
+
+    private ForteWSClient(final Integer merchantId,
+                          final String apiLoginId,
+                          final String secureTransactionKey,
+                          final Boolean test,
+                          final long connectTimeoutMillis,
+                          final long receiveTimeoutMillis,
+                          @Nullable final String wsUrl,
+                          final ForteWSProxies proxies,
+                          final boolean ownProxies,
+                          final ForteCircuitBreaker circuitBreaker) {
         this.merchantId = merchantId;
+        this.circuitBreaker = circuitBreaker;
         this.apiLoginId = apiLoginId;
         if (secureTransactionKey == null) {
             // Not configured
             this.key = null;
+            this.macPrototype = null;
         } else {
-            try {
-                this.key = new SecretKeySpec(secureTransactionKey.getBytes("UTF-8"), HMAC_MD5);
-            } catch (UnsupportedEncodingException e) {
-                throw new IllegalStateException(e);
-            }
+            this.key = new SecretKeySpec(secureTransactionKey.getBytes(Charsets.UTF_8), HMAC_MD5);
+            this.macPrototype = createMac(null);
         }
 
-        final String url = test ? "https://sandbox.paymentsgateway.net/ws/Client.svc" : "https://ws.paymentsgateway.net/Service/v1/Client.svc";
-
-        // Make sure to set the context class loader, see javax.xml.ws.spi.FactoryFinder#find
-        final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
-        Thread.currentThread().setContextClassLoader(this.getClass().getClassLoader());
-        try {
-            this.client = createClient(url);
-        } finally {
-            Thread.currentThread().setContextClassLoader(contextClassLoader);
+        // The endpoint can be overridden, e.g. to load test against a local stand-in
+        final String url;
+        if (wsUrl != null) {
+            url = wsUrl;
+        } else {
+            url = test ? "https://sandbox.paymentsgateway.net/ws/Client.svc" : "https://ws.paymentsgateway.net/Service/v1/Client.svc";
         }
+        this.proxies = proxies;
+        this.client = proxies.getClientOperationsAsync(url, connectTimeoutMillis, receiveTimeoutMillis);
+        this.ownProxies = ownProxies ? proxies : null;
     }
 
+    // Shared proxies are closed by whoever created them
     @Override
     public void close() throws IOException {
-        try {
-            // See ClientProxy.getClient
-            ((ClientProxy) Proxy.getInvocationHandler(client)).close();
-        } catch (final RuntimeException ignored) {
+        if (ownProxies != null) {
+            ownProxies.close();
         }
     }
 
@@ -123,7 +204,12 @@ public class ForteWSClient implements Closeable {
         clientRecord.setPhoneNumber(phone);
         clientRecord.setEmailAddress(email);
 
-        return String.valueOf(client.createClient(buildAuthentication(), clientRecord));
+        return call(new WSCall() {
+            @Override
+            public Integer call() {
+                return getClient().createClient(buildAuthentication(), clientRecord);
+            }
+        });
     }
 
     public String tokenizeCreditCard(final String cardName,
@@ -131,51 +217,227 @@ public class ForteWSClient implements Closeable {
                                      final String cardNumber,
                                      final String cardExpMonth,
                                      final String cardExpYear) {
-        final PaymentMethod paymentMethod = new PaymentMethod();
-        paymentMethod.setMerchantID(merchantId);
-        paymentMethod.setAcctHolderName(cardName);
-        paymentMethod.setCcCardType(CcCardType.fromValue(cardType.toUpperCase()));
-        paymentMethod.setCcCardNumber(cardNumber);
-        paymentMethod.setCcExpirationDate(cardExpYear + cardExpMonth);
+        return tokenizeCreditCard(cardName, cardType, cardNumber, cardExpMonth, cardExpYear, null);
+    }
 
-        return String.valueOf(client.createPaymentMethod(buildAuthentication(), paymentMethod));
+    // The payment method is attached to the given client (see createClient), if any
+    public String tokenizeCreditCard(final String cardName,
+                                     final String cardType,
+                                     final String cardNumber,
+                                     final String cardExpMonth,
+                                     final String cardExpYear,
+                                     @Nullable final String clientId) {
+        return createPaymentMethod(buildCreditCard(cardName, cardType, cardNumber, cardExpMonth, cardExpYear, clientId));
     }
 
     public String tokenizeECheck(final String accountHolderName,
                                  final String transitRoutingNumber,
                                  final String accountNumber,
                                  final String accountType) {
-        final PaymentMethod paymentMethod = new PaymentMethod();
-        paymentMethod.setMerchantID(merchantId);
-        paymentMethod.setAcctHolderName(accountHolderName);
+        return tokenizeECheck(accountHolderName, transitRoutingNumber, accountNumber, accountType, null);
+    }
+
+    public String tokenizeECheck(final String accountHolderName,
+                                 final String transitRoutingNumber,
+                                 final String accountNumber,
+                                 final String accountType,
+                                 @Nullable final String clientId) {
+        return createPaymentMethod(buildECheck(accountHolderName, transitRoutingNumber, accountNumber, accountType, clientId));
+    }
+
+    // Asynchronous variants, sent over the pooled non-blocking conduit (at most wsMaxConnections persistent connections
+    // to the endpoint, further calls wait for a connection): the futures fail with the WebServiceException or
+    // the ForteCircuitOpenException the synchronous calls would throw
+
+    public ListenableFuture<String> tokenizeCreditCardAsync(final String cardName,
+                                                            final String cardType,
+                                                            final String cardNumber,
+                                                            final String cardExpMonth,
+                                                            final String cardExpYear) {
+        return tokenizeCreditCardAsync(cardName, cardType, cardNumber, cardExpMonth, cardExpYear, null);
+    }
+
+    public ListenableFuture<String> tokenizeCreditCardAsync(final String cardName,
+                                                            final String cardType,
+                                                            final String cardNumber,
+                                                            final String cardExpMonth,
+                                                            final String cardExpYear,
+                                                            @Nullable final String clientId) {
+        return createPaymentMethodAsync(buildCreditCard(cardName, cardType, cardNumber, cardExpMonth, cardExpYear, clientId));
+    }
+
+    public ListenableFuture<String> tokenizeECheckAsync(final String accountHolderName,
+                                                        final String transitRoutingNumber,
+                                                        final String accountNumber,
+                                                        final String accountType) {
+        return tokenizeECheckAsync(accountHolderName, transitRoutingNumber, accountNumber, accountType, null);
+    }
+
+    public ListenableFuture<String> tokenizeECheckAsync(final String accountHolderName,
+                                                        final String transitRoutingNumber,
+                                                        final String accountNumber,
+                                                        final String accountType,
+                                                        @Nullable final String clientId) {
+        return createPaymentMethodAsync(buildECheck(accountHolderName, transitRoutingNumber, accountNumber, accountType, clientId));
+    }
+
+    public ForteCircuitBreaker.State getCircuitBreakerState() {
+        return circuitBreaker.getState();
+    }
+
+    // Shared by the synchronous and asynchronous calls
+
+    private PaymentMethod buildCreditCard(final String cardName,
+                                          final String cardType,
+                                          final String cardNumber,
+                                          final String cardExpMonth,
+                                          final String cardExpYear,
+                                          @Nullable final String clientId) {
+        final PaymentMethod paymentMethod = newPaymentMethod(cardName, clientId);
+        paymentMethod.setCcCardType(CcCardType.fromValue(cardType.toUpperCase()));
+        paymentMethod.setCcCardNumber(cardNumber);
+        paymentMethod.setCcExpirationDate(cardExpYear + cardExpMonth);
+        return paymentMethod;
+    }
+
+    private PaymentMethod buildECheck(final String accountHolderName,
+                                      final String transitRoutingNumber,
+                                      final String accountNumber,
+                                      final String accountType,
+                                      @Nullable final String clientId) {
+        final PaymentMethod paymentMethod = newPaymentMethod(accountHolderName, clientId);
         paymentMethod.setEcAccountTRN(transitRoutingNumber);
         paymentMethod.setEcAccountNumber(accountNumber);
         paymentMethod.setEcAccountType("C".equalsIgnoreCase(accountType) || EcAccountType.CHECKING.value().equalsIgnoreCase(accountType) ? EcAccountType.CHECKING : EcAccountType.SAVINGS);
+        return paymentMethod;
+    }
 
-        return String.valueOf(client.createPaymentMethod(buildAuthentication(), paymentMethod));
+    private PaymentMethod newPaymentMethod(final String acctHolderName, @Nullable final String clientId) {
+        final PaymentMethod paymentMethod = new PaymentMethod();
+        paymentMethod.setMerchantID(merchantId);
+        if (clientId != null) {
+            paymentMethod.setClientID(Integer.parseInt(clientId));
+        }
+        paymentMethod.setAcctHolderName(acctHolderName);
+        return paymentMethod;
     }
 
-    private IClientService createClient(final String url) {
-        // Delegate logging to slf4j (see also https://github.com/killbill/killbill-platform/tree/master/osgi-bundles/libs/slf4j-osgi)
-        LogUtils.setLoggerClass(Slf4jLogger.class);
+    private String createPaymentMethod(final PaymentMethod paymentMethod) {
+        return call(new WSCall() {
+            @Override
+            public Integer call() {
+                return getClient().createPaymentMethod(buildAuthentication(), paymentMethod);
+            }
+        });
+    }
 
-        final ClientService clientService = new ClientService();
-        final IClientService client = clientService.getWSHttpBindingIClientService(new AddressingFeature());
+    private ListenableFuture<String> createPaymentMethodAsync(final PaymentMethod paymentMethod) {
+        try {
+            circuitBreaker.acquirePermission();
+        } catch (final ForteCircuitOpenException e) {
+            return Futures.immediateFailedFuture(e);
+        }
 
-        final BindingProvider bindingProvider = (BindingProvider) client;
-        bindingProvider.getRequestContext().put(BindingProvider.ENDPOINT_ADDRESS_PROPERTY, url);
+        final SettableFuture<String> future = SettableFuture.create();
+        final long startNanos = System.nanoTime();
+        try {
+            getClient().createPaymentMethodAsync(buildAuthentication(),
+                                                 paymentMethod,
+                                                 new AsyncHandler<CreatePaymentMethodResponse>() {
+                                                     @Override
+                                                     public void handleResponse(final Response<CreatePaymentMethodResponse> response) {
+                                                         try {
+                                                             final int id = response.get().getCreatePaymentMethodResult();
+                                                             onCallCompleted(startNanos, null);
+                                                             future.set(String.valueOf(id));
+                                                         } catch (final InterruptedException e) {
+                                                             // The response is there already
+                                                             Thread.currentThread().interrupt();
+                                                             onCallCompleted(startNanos, e);
+                                                             future.setException(e);
+                                                         } catch (final ExecutionException e) {
+                                                             onAsyncCallFailed(future, startNanos, e.getCause());
+                                                         }
+                                                     }
+                                                 });
+        } catch (final RuntimeException e) {
+            onAsyncCallFailed(future, startNanos, e);
+        }
+        return future;
+    }
 
-        final Client clientProxy = ClientProxy.getClient(client);
-        clientProxy.getInInterceptors().add(new LoggingInInterceptor());
-        clientProxy.getOutInterceptors().add(new LoggingOutInterceptor());
-        clientProxy.getOutInterceptors().add(new HttpHeaderInterceptor());
-        //clientProxy.getRequestContext().put("org.apache.cxf.http.no_io_exceptions", "true");
+    // The asynchronous conduit doesn't always map I/O errors (e.g. an unknown host surfaces as an IllegalStateException):
+    // anything but a WebServiceException is reported as one, like the synchronous calls do. SOAP faults aren't mapped
+    // either: they are reported as SOAPFaultException, so they still count as answers from the gateway.
+    private void onAsyncCallFailed(final SettableFuture<String> future, final long startNanos, final Throwable cause) {
+        final WebServiceException failure;
+        if (cause instanceof WebServiceException) {
+            failure = (WebServiceException) cause;
+        } else if (cause instanceof SoapFault) {
+            failure = toSOAPFaultException((SoapFault) cause);
+        } else {
+            failure = new WebServiceException(cause);
+        }
+        onCallCompleted(startNanos, failure);
+        future.setException(failure);
+    }
+
+    private static SOAPFaultException toSOAPFaultException(final SoapFault fault) {
+        final SOAPFaultException soapFaultException = SoapFaults.newSOAPFaultException(fault.getMessage(), fault.getFaultCode());
+        soapFaultException.initCause(fault);
+        return soapFaultException;
+    }
 
-        return client;
+    // Any other operation needs ForteWSProxies#getProxy, which rejects the StAX transport
+    private ClientOperations getClient() throws WebServiceException {
+        return proxies.await(client);
+    }
+
+    private String call(final WSCall wsCall) throws ForteCircuitOpenException {
+        circuitBreaker.acquirePermission();
+
+        final long startNanos = System.nanoTime();
+        try {
+            final Integer id = wsCall.call();
+            onCallCompleted(startNanos, null);
+            return String.valueOf(id);
+        } catch (final RuntimeException e) {
+            onCallCompleted(startNanos, e);
+            throw e;
+        }
+    }
+
+    // SOAP faults are answers from the gateway, other WebServiceException are transport errors
+    private void onCallCompleted(final long startNanos, @Nullable final Throwable failure) {
+        final long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        if (failure == null || failure instanceof SOAPFaultException) {
+            circuitBreaker.onSuccess(durationMillis);
+        } else if (failure instanceof WebServiceException) {
+            circuitBreaker.onFailure(durationMillis);
+        } else {
+            circuitBreaker.onIgnored();
+        }
+    }
+
+    private interface WSCall {
+
+        public Integer call();
     }
 
     private Authentication buildAuthentication() {
-        final String utcInTicks = generateUTCInTicks(System.currentTimeMillis());
+        return buildAuthentication(System.currentTimeMillis());
+    }
+
+    // The hash only depends on the second: concurrent calls within the same second share the Authentication (never modified once built)
+    @VisibleForTesting
+    Authentication buildAuthentication(final long utcTimeMillis) {
+        final long utcTimeSeconds = utcTimeMillis / 1000;
+        final CachedAuthentication cached = cachedAuthentication;
+        if (cached != null && cached.utcTimeSeconds == utcTimeSeconds) {
+            return cached.authentication;
+        }
+
+        final String utcInTicks = generateUTCInTicks(utcTimeMillis);
         final String tSHash = generateTSHash(utcInTicks);
 
         final Authentication authentication = new Authentication();
@@ -183,6 +445,7 @@ public class ForteWSClient implements Closeable {
         authentication.setTSHash(tSHash);
         authentication.setUTCTime(utcInTicks);
 
+        cachedAuthentication = new CachedAuthentication(utcTimeSeconds, authentication);
         return authentication;
     }
 
@@ -191,31 +454,58 @@ public class ForteWSClient implements Closeable {
         return String.valueOf(utcTimeMillis / 1000 + 62135596800L) + "0000000";
     }
 
+    // Null if the secure transaction key isn't configured
     @VisibleForTesting
     String generateTSHash(final String utcInTicks) {
+        if (macPrototype == null) {
+            return null;
+        }
+
         final String msg = apiLoginId + "|" + utcInTicks;
+        Mac mac = macs.poll();
+        if (mac == null) {
+            mac = createMac(macPrototype);
+        }
+        final byte[] bytes = mac.doFinal(msg.getBytes(Charsets.US_ASCII));
+        macs.offer(mac);
+
+        final char[] hash = new char[2 * bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            hash[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            hash[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+        return new String(hash);
+    }
+
+    // Cloned from the prototype when possible: no provider lookup nor key setup
+    private Mac createMac(@Nullable final Mac prototype) {
+        if (prototype != null) {
+            try {
+                return (Mac) prototype.clone();
+            } catch (final CloneNotSupportedException ignored) {
+                // Provider without clone support
+            }
+        }
 
-        String digest = null;
         try {
-            Mac mac = Mac.getInstance(HMAC_MD5);
+            final Mac mac = prototype == null ? Mac.getInstance(HMAC_MD5) : Mac.getInstance(HMAC_MD5, prototype.getProvider());
             mac.init(key);
+            return mac;
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (final InvalidKeyException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 
-            byte[] bytes = mac.doFinal(msg.getBytes("ASCII"));
+    private static final class CachedAuthentication {
 
-            StringBuilder hash = new StringBuilder();
-            for (final byte aByte : bytes) {
-                String hex = Integer.toHexString(0xFF & aByte);
-                if (hex.length() == 1) {
-                    hash.append('0');
-                }
-                hash.append(hex);
-            }
-            digest = hash.toString();
-        } catch (UnsupportedEncodingException e) {
-        } catch (InvalidKeyException e) {
-        } catch (NoSuchAlgorithmException e) {
-        }
+        private final long utcTimeSeconds;
+        private final Authentication authentication;
 
-        return digest;
+        private CachedAuthentication(final long utcTimeSeconds, final Authentication authentication) {
+            this.utcTimeSeconds = utcTimeSeconds;
+            this.authentication = authentication;
+        }
     }
 }
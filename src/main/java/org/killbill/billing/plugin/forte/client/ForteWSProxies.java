@@ -0,0 +1,401 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.Nullable;
+import javax.net.ssl.TrustManager;
+import javax.xml.ws.AsyncHandler;
+import javax.xml.ws.BindingProvider;
+import javax.xml.ws.WebServiceException;
+import javax.xml.ws.soap.AddressingFeature;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.BusFactory;
+import org.apache.cxf.common.logging.LogUtils;
+import org.apache.cxf.common.logging.Slf4jLogger;
+import org.apache.cxf.configuration.jsse.TLSClientParameters;
+import org.apache.cxf.endpoint.Client;
+import org.apache.cxf.frontend.ClientProxy;
+import org.apache.cxf.transport.http.HTTPConduit;
+import org.apache.cxf.transport.http.asyncclient.AsyncHTTPConduitFactory;
+import org.apache.cxf.transports.http.configuration.HTTPClientPolicy;
+import org.killbill.billing.plugin.forte.client.ws.ClientOperations;
+import org.killbill.billing.plugin.forte.client.ws.HttpHeaderInterceptor;
+import org.killbill.billing.plugin.forte.client.ws.LoggingInInterceptor;
+import org.killbill.billing.plugin.forte.client.ws.LoggingOutInterceptor;
+import org.killbill.billing.plugin.forte.client.ws.StaxTransport;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Function;
+import com.google.common.base.Objects;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import https.ws_paymentsgateway_net.v1.Authentication;
+import https.ws_paymentsgateway_net.v1.ClientRecord;
+import https.ws_paymentsgateway_net.v1.ClientService;
+import https.ws_paymentsgateway_net.v1.CreateClientResponse;
+import https.ws_paymentsgateway_net.v1.CreatePaymentMethodResponse;
+import https.ws_paymentsgateway_net.v1.DeletePaymentMethodResponse;
+import https.ws_paymentsgateway_net.v1.IClientService;
+import https.ws_paymentsgateway_net.v1.PaymentMethod;
+
+import static org.killbill.billing.plugin.forte.client.ForteAGIClient.PROPERTY_BASE;
+
+// Web Services proxies shared by the ForteWSClient of all tenants: Client.wsdl is parsed once, and there is one (thread safe)
+// proxy per endpoint and timeouts. Tenant credentials are only part of the calls. The bus holds the connection pool of
+// the asynchronous calls, shared by all tenants.
+// The bus and Client.wsdl are set up in the background (the plugin is registered without waiting for them), as well as
+// the proxies: the first calls wait for them, at most wsInitTimeout.
+// With wsTransport=stax, the proxies are StAX based instead (see StaxTransport): no bus nor WSDL model, nothing to wait for,
+// but only the ClientOperations are available.
+public class ForteWSProxies implements Closeable {
+
+    private static final String PROPERTY_WS_MAX_CONNECTIONS = PROPERTY_BASE + ".wsMaxConnections";
+    private static final String PROPERTY_WS_IO_THREADS = PROPERTY_BASE + ".wsIoThreads";
+    private static final String PROPERTY_WS_INIT_TIMEOUT = PROPERTY_BASE + ".wsInitTimeout";
+    private static final String PROPERTY_WS_TRANSPORT = PROPERTY_BASE + ".wsTransport";
+    private static final String DEFAULT_WS_MAX_CONNECTIONS = "8";
+    private static final String DEFAULT_WS_IO_THREADS = "1";
+    private static final String DEFAULT_WS_INIT_TIMEOUT_MILLIS = "60000";
+    private static final String WS_TRANSPORT_CXF = "cxf";
+    private static final String WS_TRANSPORT_STAX = "stax";
+
+    private final long initTimeoutMillis;
+    private final TrustManager[] trustManagers;
+    private final ListeningExecutorService initExecutor;
+    // Either the CXF bus and model, or the StAX transport
+    private final ListenableFuture<Bus> bus;
+    private final ListenableFuture<ClientService> clientService;
+    private final StaxTransport staxTransport;
+    private final Map<ProxyKey, ListenableFuture<ClientOperations>> proxies = new ConcurrentHashMap<ProxyKey, ListenableFuture<ClientOperations>>();
+
+    public ForteWSProxies(final Properties properties) {
+        this(Integer.parseInt(properties.getProperty(PROPERTY_WS_MAX_CONNECTIONS, DEFAULT_WS_MAX_CONNECTIONS)),
+             Integer.parseInt(properties.getProperty(PROPERTY_WS_IO_THREADS, DEFAULT_WS_IO_THREADS)),
+             Long.parseLong(properties.getProperty(PROPERTY_WS_INIT_TIMEOUT, DEFAULT_WS_INIT_TIMEOUT_MILLIS)),
+             isStaxTransport(properties.getProperty(PROPERTY_WS_TRANSPORT, WS_TRANSPORT_CXF)),
+             null);
+    }
+
+    public ForteWSProxies(final int maxConnections, final int ioThreads, final long initTimeoutMillis) {
+        this(maxConnections, ioThreads, initTimeoutMillis, false, null);
+    }
+
+    // Trusting other certificates than the JVM ones (e.g. a local stand-in)
+    @VisibleForTesting
+    ForteWSProxies(final int maxConnections, final int ioThreads, final long initTimeoutMillis, @Nullable final TrustManager[] trustManagers) {
+        this(maxConnections, ioThreads, initTimeoutMillis, false, trustManagers);
+    }
+
+    @VisibleForTesting
+    ForteWSProxies(final int maxConnections, final int ioThreads, final long initTimeoutMillis, final boolean staxTransport, @Nullable final TrustManager[] trustManagers) {
+        this.initTimeoutMillis = initTimeoutMillis;
+        this.trustManagers = trustManagers;
+        this.initExecutor = MoreExecutors.listeningDecorator(ForteExecutors.newGatewayExecutor("forte-ws-init", 0, false));
+        if (staxTransport) {
+            this.staxTransport = new StaxTransport(maxConnections, ioThreads, trustManagers);
+            this.bus = null;
+            this.clientService = null;
+            return;
+        }
+
+        this.staxTransport = null;
+        this.bus = initExecutor.submit(new Callable<Bus>() {
+            @Override
+            public Bus call() {
+                return createBus(maxConnections, ioThreads);
+            }
+        });
+        this.clientService = Futures.transform(bus,
+                                               new Function<Bus, ClientService>() {
+                                                   @Override
+                                                   public ClientService apply(final Bus bus) {
+                                                       return createClientService(bus);
+                                                   }
+                                               },
+                                               initExecutor);
+    }
+
+    // Waits for the operations (see getClientOperationsAsync)
+    public ClientOperations getClientOperations(final String url, final long connectTimeoutMillis, final long receiveTimeoutMillis) {
+        return await(getClientOperationsAsync(url, connectTimeoutMillis, receiveTimeoutMillis));
+    }
+
+    // Returns right away: the proxy is created in the background, in parallel with the ones of other endpoints and timeouts
+    public ListenableFuture<ClientOperations> getClientOperationsAsync(final String url, final long connectTimeoutMillis, final long receiveTimeoutMillis) {
+        final ProxyKey key = new ProxyKey(url, connectTimeoutMillis, receiveTimeoutMillis);
+        ListenableFuture<ClientOperations> proxy = proxies.get(key);
+        if (proxy == null) {
+            synchronized (proxies) {
+                proxy = proxies.get(key);
+                if (proxy == null && staxTransport != null) {
+                    proxy = Futures.<ClientOperations>immediateFuture(staxTransport.newClientService(url, connectTimeoutMillis, receiveTimeoutMillis));
+                    proxies.put(key, proxy);
+                } else if (proxy == null) {
+                    proxy = Futures.transform(clientService,
+                                              new Function<ClientService, ClientOperations>() {
+                                                  @Override
+                                                  public ClientOperations apply(final ClientService clientService) {
+                                                      return new CxfClientOperations(createProxy(clientService, url, connectTimeoutMillis, receiveTimeoutMillis));
+                                                  }
+                                              },
+                                              initExecutor);
+                    proxies.put(key, proxy);
+                }
+            }
+        }
+        return proxy;
+    }
+
+    // Waits for the CXF proxy, for the operations beyond ClientOperations
+    public IClientService getProxy(final String url, final long connectTimeoutMillis, final long receiveTimeoutMillis) throws UnsupportedOperationException {
+        return await(getProxyAsync(url, connectTimeoutMillis, receiveTimeoutMillis));
+    }
+
+    public ListenableFuture<IClientService> getProxyAsync(final String url, final long connectTimeoutMillis, final long receiveTimeoutMillis) throws UnsupportedOperationException {
+        if (staxTransport != null) {
+            throw new UnsupportedOperationException("The StAX transport only supports createClient, createPaymentMethod and deletePaymentMethod: set " +
+                                                    PROPERTY_WS_TRANSPORT + "=" + WS_TRANSPORT_CXF);
+        }
+        return Futures.transform(getClientOperationsAsync(url, connectTimeoutMillis, receiveTimeoutMillis),
+                                 new Function<ClientOperations, IClientService>() {
+                                     @Override
+                                     public IClientService apply(final ClientOperations clientOperations) {
+                                         return ((CxfClientOperations) clientOperations).proxy;
+                                     }
+                                 });
+    }
+
+    // Initialization failures and timeouts are reported as transport errors, like the calls themselves
+    public <T> T await(final ListenableFuture<T> proxy) throws WebServiceException {
+        try {
+            return proxy.get(initTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (final TimeoutException e) {
+            throw new WebServiceException("Web Services client not initialized after " + initTimeoutMillis + " ms", e);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebServiceException(e);
+        } catch (final ExecutionException e) {
+            throw e.getCause() instanceof WebServiceException ? (WebServiceException) e.getCause() : new WebServiceException(e.getCause());
+        }
+    }
+
+    @VisibleForTesting
+    boolean isInitialized() {
+        return staxTransport != null || clientService.isDone();
+    }
+
+    // Doesn't wait for a pending initialization: whatever it creates is closed once done
+    @Override
+    public void close() throws IOException {
+        if (staxTransport != null) {
+            proxies.clear();
+            staxTransport.close();
+            initExecutor.shutdown();
+            return;
+        }
+
+        for (final ListenableFuture<ClientOperations> proxy : proxies.values()) {
+            Futures.addCallback(proxy, new ClosingCallback<ClientOperations>() {
+                @Override
+                public void onSuccess(final ClientOperations clientOperations) {
+                    try {
+                        // See ClientProxy.getClient
+                        ((ClientProxy) Proxy.getInvocationHandler(((CxfClientOperations) clientOperations).proxy)).close();
+                    } catch (final Exception ignored) {
+                    }
+                }
+            });
+        }
+        proxies.clear();
+        Futures.addCallback(bus, new ClosingCallback<Bus>() {
+            @Override
+            public void onSuccess(final Bus bus) {
+                // Closes the pooled asynchronous connections
+                bus.shutdown(false);
+            }
+        });
+        initExecutor.shutdown();
+    }
+
+    private static boolean isStaxTransport(final String transport) {
+        if (WS_TRANSPORT_STAX.equalsIgnoreCase(transport)) {
+            return true;
+        } else if (WS_TRANSPORT_CXF.equalsIgnoreCase(transport)) {
+            return false;
+        } else {
+            throw new IllegalArgumentException("Invalid " + PROPERTY_WS_TRANSPORT + ": " + transport);
+        }
+    }
+
+    // Synchronous calls keep using the default HttpURLConnection conduit
+    private static Bus createBus(final int maxConnections, final int ioThreads) {
+        final Bus bus = BusFactory.newInstance().createBus();
+        bus.setProperty(AsyncHTTPConduitFactory.MAX_CONNECTIONS, maxConnections);
+        bus.setProperty(AsyncHTTPConduitFactory.MAX_PER_HOST_CONNECTIONS, maxConnections);
+        bus.setProperty(AsyncHTTPConduitFactory.THREAD_COUNT, ioThreads);
+        bus.setProperty(AsyncHTTPConduitFactory.SO_KEEPALIVE, true);
+        return bus;
+    }
+
+    // Parses Client.wsdl, the bulk of the initialization
+    private ClientService createClientService(final Bus bus) {
+        // Delegate logging to slf4j (see also https://github.com/killbill/killbill-platform/tree/master/osgi-bundles/libs/slf4j-osgi)
+        LogUtils.setLoggerClass(Slf4jLogger.class);
+
+        // Make sure to set the context class loader, see javax.xml.ws.spi.FactoryFinder#find
+        final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(this.getClass().getClassLoader());
+        final Bus previousBus = BusFactory.getAndSetThreadDefaultBus(bus);
+        try {
+            return new ClientService();
+        } finally {
+            BusFactory.setThreadDefaultBus(previousBus);
+            Thread.currentThread().setContextClassLoader(contextClassLoader);
+        }
+    }
+
+    private IClientService createProxy(final ClientService clientService, final String url, final long connectTimeoutMillis, final long receiveTimeoutMillis) {
+        final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(this.getClass().getClassLoader());
+        final Bus previousBus = BusFactory.getAndSetThreadDefaultBus(Futures.getUnchecked(bus));
+        try {
+            final IClientService client = clientService.getWSHttpBindingIClientService(new AddressingFeature());
+
+            final BindingProvider bindingProvider = (BindingProvider) client;
+            bindingProvider.getRequestContext().put(BindingProvider.ENDPOINT_ADDRESS_PROPERTY, url);
+
+            final Client clientProxy = ClientProxy.getClient(client);
+            clientProxy.getInInterceptors().add(new LoggingInInterceptor());
+            clientProxy.getOutInterceptors().add(new LoggingOutInterceptor());
+            clientProxy.getOutInterceptors().add(new HttpHeaderInterceptor());
+            //clientProxy.getRequestContext().put("org.apache.cxf.http.no_io_exceptions", "true");
+
+            // The CXF defaults (30s to connect, 60s to receive) don't follow the plugin configuration
+            final HTTPClientPolicy clientPolicy = new HTTPClientPolicy();
+            clientPolicy.setConnectionTimeout(connectTimeoutMillis);
+            clientPolicy.setReceiveTimeout(receiveTimeoutMillis);
+            ((HTTPConduit) clientProxy.getConduit()).setClient(clientPolicy);
+            if (trustManagers != null) {
+                final TLSClientParameters tlsClientParameters = new TLSClientParameters();
+                tlsClientParameters.setTrustManagers(trustManagers);
+                ((HTTPConduit) clientProxy.getConduit()).setTlsClientParameters(tlsClientParameters);
+            }
+
+            return client;
+        } finally {
+            BusFactory.setThreadDefaultBus(previousBus);
+            Thread.currentThread().setContextClassLoader(contextClassLoader);
+        }
+    }
+
+    private static final class CxfClientOperations implements ClientOperations {
+
+        private final IClientService proxy;
+
+        private CxfClientOperations(final IClientService proxy) {
+            this.proxy = proxy;
+        }
+
+        @Override
+        public int createClient(final Authentication ticket, final ClientRecord client) {
+            return proxy.createClient(ticket, client);
+        }
+
+        @Override
+        public Future<?> createClientAsync(final Authentication ticket, final ClientRecord client, final AsyncHandler<CreateClientResponse> asyncHandler) {
+            return proxy.createClientAsync(ticket, client, asyncHandler);
+        }
+
+        @Override
+        public int createPaymentMethod(final Authentication ticket, final PaymentMethod payment) {
+            return proxy.createPaymentMethod(ticket, payment);
+        }
+
+        @Override
+        public Future<?> createPaymentMethodAsync(final Authentication ticket, final PaymentMethod payment, final AsyncHandler<CreatePaymentMethodResponse> asyncHandler) {
+            return proxy.createPaymentMethodAsync(ticket, payment, asyncHandler);
+        }
+
+        @Override
+        public int deletePaymentMethod(final Authentication ticket, final int merchantID, final int paymentMethodID) {
+            return proxy.deletePaymentMethod(ticket, merchantID, paymentMethodID);
+        }
+
+        @Override
+        public Future<?> deletePaymentMethodAsync(final Authentication ticket, final int merchantID, final int paymentMethodID, final AsyncHandler<DeletePaymentMethodResponse> asyncHandler) {
+            return proxy.deletePaymentMethodAsync(ticket, merchantID, paymentMethodID, asyncHandler);
+        }
+    }
+
+    private abstract static class ClosingCallback<T> implements FutureCallback<T> {
+
+        @Override
+        public void onFailure(final Throwable t) {
+            // Nothing to close
+        }
+    }
+
+    private static final class ProxyKey {
+
+        private final String url;
+        private final long connectTimeoutMillis;
+        private final long receiveTimeoutMillis;
+
+        private ProxyKey(final String url, final long connectTimeoutMillis, final long receiveTimeoutMillis) {
+            this.url = url;
+            this.connectTimeoutMillis = connectTimeoutMillis;
+            this.receiveTimeoutMillis = receiveTimeoutMillis;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final ProxyKey that = (ProxyKey) o;
+            return connectTimeoutMillis == that.connectTimeoutMillis &&
+                   receiveTimeoutMillis == that.receiveTimeoutMillis &&
+                   url.equals(that.url);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(url, connectTimeoutMillis, receiveTimeoutMillis);
+        }
+    }
+}
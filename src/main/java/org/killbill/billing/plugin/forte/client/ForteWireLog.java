@@ -0,0 +1,200 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.client;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+
+// Wire log of both clients (AGI requests and responses, SOAP messages), at DEBUG level on the org.killbill.billing.plugin.forte.wire
+// logger: when disabled, it only costs a level check. Entries are masked (card numbers and verification values, account numbers,
+// passwords...) and written by a background thread: they are queued in a bounded buffer, new entries are dropped when it is full.
+public class ForteWireLog {
+
+    public static final String LOGGER_NAME = "org.killbill.billing.plugin.forte.wire";
+    public static final ForteWireLog WIRE_LOG = new ForteWireLog(LoggerFactory.getLogger(LOGGER_NAME), 1024);
+
+    private static final String MASK = "***";
+    // AGI keys and Web Services elements whose values are masked
+    private static final String[] MASKED_NAMES = {"pg_password",
+                                                  "ecom_payment_card_number",
+                                                  "ecom_payment_card_verification",
+                                                  "ecom_payment_check_account",
+                                                  "pg_billto_ssn",
+                                                  "pg_billto_dl_number",
+                                                  "pg_cc_swipe_data",
+                                                  "pg_cc_enc_swipe_data",
+                                                  "CcCardNumber",
+                                                  "EcAccountNumber",
+                                                  "cvc"};
+
+    private final Logger logger;
+    private final BlockingQueue<Entry> entries;
+    // Single writer thread, released when idle
+    private final ExecutorService writer = ForteExecutors.newGatewayExecutor("forte-wire-log", 1, false);
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicLong dropped = new AtomicLong();
+
+    @VisibleForTesting
+    ForteWireLog(final Logger logger, final int capacity) {
+        this.logger = logger;
+        this.entries = new ArrayBlockingQueue<Entry>(capacity);
+    }
+
+    public boolean isEnabled() {
+        return logger.isDebugEnabled();
+    }
+
+    // The content (String, or Map of fields) is masked and formatted by the writer: it mustn't change afterwards
+    public void log(final String title, final Object content) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        if (!entries.offer(new Entry(title, content))) {
+            dropped.incrementAndGet();
+            return;
+        }
+        if (draining.compareAndSet(false, true)) {
+            writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    drain();
+                }
+            });
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Entry entry;
+            while ((entry = entries.poll()) != null) {
+                write(entry);
+            }
+
+            final long droppedEntries = dropped.getAndSet(0);
+            if (droppedEntries > 0) {
+                logger.debug("{} wire log entries dropped", droppedEntries);
+            }
+
+            draining.set(false);
+            // Entries queued while the draining flag was still set
+            if (entries.isEmpty() || !draining.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    private void write(final Entry entry) {
+        try {
+            logger.debug("{}:\n{}", entry.title, mask(format(entry.content)));
+        } catch (final RuntimeException ignored) {
+            // Logging mustn't stop the writer
+        }
+    }
+
+    private static String format(final Object content) {
+        if (!(content instanceof Map)) {
+            return String.valueOf(content);
+        }
+
+        // Same key=value lines as on the AGI wire
+        final StringBuilder builder = new StringBuilder();
+        for (final Map.Entry<?, ?> field : ((Map<?, ?>) content).entrySet()) {
+            builder.append(field.getKey()).append('=').append(field.getValue()).append('\n');
+        }
+        return builder.toString();
+    }
+
+    // Single pass: the value following a masked name and '=' (AGI lines) or '>' (XML elements, with or without a namespace
+    // prefix) is masked, up to the end of the line or the next element
+    @VisibleForTesting
+    static String mask(final String text) {
+        StringBuilder masked = null;
+        int copied = 0;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if ((c != '=' && c != '>') || !endsWithMaskedName(text, i)) {
+                continue;
+            }
+
+            int end = i + 1;
+            while (end < text.length() && !isValueEnd(text.charAt(end))) {
+                end++;
+            }
+            if (end == i + 1) {
+                // Empty value, or closing tag
+                continue;
+            }
+
+            if (masked == null) {
+                masked = new StringBuilder(text.length());
+            }
+            masked.append(text, copied, i + 1).append(MASK);
+            copied = end;
+            i = end - 1;
+        }
+
+        if (masked == null) {
+            return text;
+        }
+        return masked.append(text, copied, text.length()).toString();
+    }
+
+    private static boolean endsWithMaskedName(final String text, final int delimiter) {
+        int start = delimiter;
+        while (start > 0 && isNameChar(text.charAt(start - 1))) {
+            start--;
+        }
+
+        final int length = delimiter - start;
+        for (final String name : MASKED_NAMES) {
+            if (name.length() == length && text.regionMatches(start, name, 0, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isNameChar(final char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    private static boolean isValueEnd(final char c) {
+        return c == '<' || c == '\n' || c == '\r';
+    }
+
+    private static final class Entry {
+
+        private final String title;
+        private final Object content;
+
+        private Entry(final String title, final Object content) {
+            this.title = title;
+            this.content = content;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.client.agi;
+
+import javax.annotation.Nullable;
+
+// Outcome of one request of a batch: the gateway response (approved or not), or the reason it couldn't be obtained
+public class AGIBatchResult {
+
+    private final int index;
+    private final String transactionType;
+    private final AGIResponse response;
+    private final Throwable failure;
+
+    public AGIBatchResult(final int index, @Nullable final String transactionType, @Nullable final AGIResponse response, @Nullable final Throwable failure) {
+        this.index = index;
+        this.transactionType = transactionType;
+        this.response = response;
+        this.failure = failure;
+    }
+
+    // Position of the request in the batch
+    public int getIndex() {
+        return index;
+    }
+
+    @Nullable
+    public String getTransactionType() {
+        return transactionType;
+    }
+
+    @Nullable
+    public AGIResponse getResponse() {
+        return response;
+    }
+
+    // E.g. IOException (the transaction may or may not have been processed), ForteCircuitOpenException or
+    // NullPointerException for an invalid request (not sent)
+    @Nullable
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    public boolean isSuccess() {
+        return failure == null;
+    }
+
+}
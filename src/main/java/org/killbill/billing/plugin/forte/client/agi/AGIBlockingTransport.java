@@ -0,0 +1,136 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.forte.client.agi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import javax.net.ssl.SSLSocket;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+// One blocking SSLSocket per exchange, taken from the (optional) warm connection pool. Asynchronous exchanges
+// still hold a thread each, from the executor owned by the transport.
+public class AGIBlockingTransport implements AGITransport {
+
+    private static final int READ_BUFFER_SIZE = 1024;
+
+    private final AGIConnectionPool connectionPool;
+    private final ListeningExecutorService executor;
+
+    public AGIBlockingTransport(final AGIConnectionPool connectionPool, final ExecutorService executor) {
+        this.connectionPool = connectionPool;
+        this.executor = MoreExecutors.listeningDecorator(executor);
+    }
+
+    @Override
+    public AGIResponse sendAndReceiveData(final AGIRequest request) throws IOException {
+        AGIConnection connection = null;
+        try {
+            // E.g. queued for too long behind other asynchronous exchanges
+            checkNotExpired(request);
+            connection = connectionPool.take(request);
+            return sendAndReceiveData(request, connection);
+        } finally {
+            request.release();
+            if (connection != null) {
+                connection.close();
+            }
+        }
+    }
+
+    @Override
+    public ListenableFuture<AGIResponse> sendAndReceiveDataAsync(final AGIRequest request) {
+        return executor.submit(new Callable<AGIResponse>() {
+            @Override
+            public AGIResponse call() throws IOException {
+                return sendAndReceiveData(request);
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdown();
+        connectionPool.close();
+    }
+
+    public int getIdleSockets() {
+        return connectionPool.getIdleSockets();
+    }
+
+    private AGIResponse sendAndReceiveData(final AGIRequest request, final AGIConnection connection) throws IOException {
+        final SSLSocket socket = connection.getSocket();
+
+        // Send data
+        checkNotExpired(request);
+        final long startNanos = System.nanoTime();
+        request.terminate();
+        try {
+            final OutputStream os = socket.getOutputStream();
+            os.write(request.getBuffer(), 0, request.getLength());
+            os.flush();
+
+            // Read the response, until endofdata or the end of the stream
+            final AGIResponseParser parser = new AGIResponseParser();
+            final byte[] buffer = new byte[READ_BUFFER_SIZE];
+            final InputStream is = socket.getInputStream();
+            try {
+                int read = read(request, socket, is, buffer);
+                while (read >= 0) {
+                    if (parser.consume(buffer, 0, read)) {
+                        connectionPool.recordResponse(connection.getEndpoint(), startNanos);
+                        return parser.getResponse();
+                    }
+                    read = read(request, socket, is, buffer);
+                }
+                final AGIResponse response = parser.finish();
+                connectionPool.recordResponse(connection.getEndpoint(), startNanos);
+                return response;
+            } finally {
+                is.close();
+            }
+        } catch (final SocketTimeoutException e) {
+            // The request is on the wire already
+            throw new AGIResponseTimeoutException("Timed out waiting for the AGI response");
+        } catch (final IOException e) {
+            // Connection reset, end of stream, TLS or protocol error: (part of) the request may have reached the gateway
+            throw new AGIUnknownOutcomeException("No AGI response: " + e.getMessage(), e);
+        }
+    }
+
+    // Each read is bounded by what is left of the request budget
+    private int read(final AGIRequest request, final SSLSocket socket, final InputStream is, final byte[] buffer) throws IOException {
+        final long remainingMillis = checkNotExpired(request);
+        socket.setSoTimeout(remainingMillis >= Integer.MAX_VALUE ? 0 : (int) remainingMillis);
+        return is.read(buffer);
+    }
+
+    private long checkNotExpired(final AGIRequest request) throws SocketTimeoutException {
+        final long remainingMillis = request.getRemainingMillis();
+        if (remainingMillis <= 0) {
+            throw new SocketTimeoutException("AGI request timed out");
+        }
+        return remainingMillis;
+    }
+}
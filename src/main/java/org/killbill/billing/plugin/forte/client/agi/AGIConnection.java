@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.client.agi;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+import javax.net.ssl.SSLSocket;
+
+// Connected and handshaked socket, with the endpoint it is connected to
+final class AGIConnection {
+
+    private static final int USABILITY_CHECK_TIMEOUT_MILLIS = 1;
+
+    private final AGIEndpoint endpoint;
+    private final SSLSocket socket;
+    private final long createdMillis;
+    // Last time the socket was known to be usable (handed over between threads by the pool queue)
+    private long checkedMillis;
+
+    AGIConnection(final AGIEndpoint endpoint, final SSLSocket socket) {
+        this.endpoint = endpoint;
+        this.socket = socket;
+        this.createdMillis = System.currentTimeMillis();
+        this.checkedMillis = createdMillis;
+    }
+
+    AGIEndpoint getEndpoint() {
+        return endpoint;
+    }
+
+    SSLSocket getSocket() {
+        return socket;
+    }
+
+    boolean isExpired(final long now, final long maxAgeMillis) {
+        return socket.isClosed() || now - createdMillis > maxAgeMillis;
+    }
+
+    boolean wasCheckedWithin(final long now, final long intervalMillis) {
+        return now - checkedMillis < intervalMillis;
+    }
+
+    // A socket closed by the gateway still looks open until it is read: nothing is expected before the request,
+    // so a short read either times out (usable) or reports the end of the stream (or unexpected data)
+    boolean isUsable() {
+        if (socket.isClosed()) {
+            return false;
+        }
+
+        try {
+            socket.setSoTimeout(USABILITY_CHECK_TIMEOUT_MILLIS);
+            socket.getInputStream().read();
+            return false;
+        } catch (final SocketTimeoutException e) {
+            checkedMillis = System.currentTimeMillis();
+            return true;
+        } catch (final IOException e) {
+            return false;
+        }
+    }
+
+    void close() {
+        try {
+            socket.close();
+        } catch (final IOException ignored) {
+        }
+    }
+}
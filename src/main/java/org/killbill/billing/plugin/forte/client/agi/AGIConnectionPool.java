@@ -0,0 +1,199 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.forte.client.agi;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+// The AGI protocol is one request per connection: the pool keeps up to size sockets connected and handshaked ahead of time,
+// each of them being handed out only once. Sockets older than maxAge are never handed out, and a pool which hasn't been
+// used for maxIdle is drained (and refilled on the next request) so that idle tenants don't hold connections to the gateway.
+// Sockets closed by the gateway while pooled (e.g. its own idle timeout) are detected and replaced in the background, and
+// before being handed out when they haven't been checked recently.
+public class AGIConnectionPool implements Closeable {
+
+    // Under load, sockets are handed out shortly after being connected (or checked): the check would only add latency
+    private static final long USABILITY_CHECK_INTERVAL_MILLIS = 1000;
+
+    private final AGISocketFactory factory;
+    private final AGIEndpoints endpoints;
+    private final int size;
+    private final long maxIdleMillis;
+    private final long maxAgeMillis;
+    private final BlockingQueue<AGIConnection> connections = new LinkedBlockingQueue<AGIConnection>();
+    private final AtomicInteger pendingSockets = new AtomicInteger();
+    private final ScheduledExecutorService executor;
+
+    private volatile long lastUsedMillis;
+    private volatile boolean closed;
+
+    public AGIConnectionPool(final AGISocketFactory factory,
+                             final AGIEndpoints endpoints,
+                             final int size,
+                             final long maxIdleMillis,
+                             final long maxAgeMillis) {
+        this.factory = factory;
+        this.endpoints = endpoints;
+        this.size = size;
+        this.maxIdleMillis = maxIdleMillis;
+        this.maxAgeMillis = maxAgeMillis;
+
+        if (size > 0) {
+            final ScheduledThreadPoolExecutor scheduledExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder().setNameFormat("forte-agi-pool-%d").setDaemon(true).build());
+            scheduledExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+            this.executor = scheduledExecutor;
+
+            final long evictionPeriodMillis = Math.max(1, Math.min(maxIdleMillis, maxAgeMillis) / 2);
+            this.executor.scheduleWithFixedDelay(new Runnable() {
+                                                     @Override
+                                                     public void run() {
+                                                         evict();
+                                                     }
+                                                 },
+                                                 evictionPeriodMillis,
+                                                 evictionPeriodMillis,
+                                                 TimeUnit.MILLISECONDS);
+        } else {
+            this.executor = null;
+        }
+    }
+
+    // Returns a connected and handshaked socket, from the pool if possible
+    AGIConnection take(final AGIRequest request) throws IOException {
+        if (executor == null) {
+            return endpoints.connect(factory, request);
+        }
+
+        lastUsedMillis = System.currentTimeMillis();
+        try {
+            AGIConnection connection = connections.poll();
+            while (connection != null) {
+                if (!connection.isExpired(lastUsedMillis, maxAgeMillis) &&
+                    (connection.wasCheckedWithin(lastUsedMillis, USABILITY_CHECK_INTERVAL_MILLIS) || connection.isUsable())) {
+                    return connection;
+                }
+                connection.close();
+                connection = connections.poll();
+            }
+
+            // Pool is empty (cold start or traffic burst)
+            return endpoints.connect(factory, request);
+        } finally {
+            refill();
+        }
+    }
+
+    public int getIdleSockets() {
+        return connections.size();
+    }
+
+    void recordResponse(final AGIEndpoint endpoint, final long startNanos) {
+        endpoints.recordResponse(endpoint, startNanos);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (executor == null) {
+            return;
+        }
+
+        closed = true;
+        executor.shutdownNow();
+        drain();
+    }
+
+    private void refill() {
+        while (true) {
+            final int pending = pendingSockets.get();
+            if (connections.size() + pending >= size) {
+                return;
+            }
+            if (!pendingSockets.compareAndSet(pending, pending + 1)) {
+                continue;
+            }
+
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            if (closed) {
+                                return;
+                            }
+                            connections.add(endpoints.connect(factory, null));
+                            // Connected while the pool was being closed: the drain may have missed it
+                            if (closed) {
+                                drain();
+                            }
+                        } catch (final IOException ignored) {
+                            // Gateway unreachable, we'll try again on the next request
+                        } finally {
+                            pendingSockets.decrementAndGet();
+                        }
+                    }
+                });
+            } catch (final RuntimeException e) {
+                // Pool closed
+                pendingSockets.decrementAndGet();
+                return;
+            }
+        }
+    }
+
+    private void evict() {
+        final long now = System.currentTimeMillis();
+        if (now - lastUsedMillis > maxIdleMillis) {
+            drain();
+            return;
+        }
+
+        // Sockets being checked are out of the queue, so that they can't be handed out meanwhile
+        for (final AGIConnection connection : connections.toArray(new AGIConnection[0])) {
+            if (!connections.remove(connection)) {
+                // Handed out already
+                continue;
+            }
+            if (connection.isExpired(now, maxAgeMillis) || !connection.isUsable()) {
+                connection.close();
+            } else {
+                connections.add(connection);
+            }
+        }
+        // Pool closed while checking: the drain may have missed them
+        if (closed) {
+            drain();
+            return;
+        }
+        refill();
+    }
+
+    private void drain() {
+        AGIConnection connection = connections.poll();
+        while (connection != null) {
+            connection.close();
+            connection = connections.poll();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.client.agi;
+
+// One configured AGI host:port, with exponentially weighted moving averages of its connect (TCP and TLS handshake) and
+// response latencies. An endpoint which couldn't be connected to is set aside for a while.
+public class AGIEndpoint {
+
+    // Weight of the latest sample
+    private static final double EWMA_ALPHA = 0.2;
+
+    private final String host;
+    private final int port;
+
+    private double connectLatencyMillis = -1;
+    private double responseLatencyMillis = -1;
+    private long lastSampleMillis;
+    private long unavailableUntilMillis;
+    private int resolvedAddressIndex;
+
+    public AGIEndpoint(final String host, final int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    // -1 until the first sample
+    public synchronized double getConnectLatencyMillis() {
+        return connectLatencyMillis;
+    }
+
+    // -1 until the first sample
+    public synchronized double getResponseLatencyMillis() {
+        return responseLatencyMillis;
+    }
+
+    public synchronized boolean isAvailable() {
+        return System.currentTimeMillis() >= unavailableUntilMillis;
+    }
+
+    synchronized void recordConnect(final long latencyMillis) {
+        connectLatencyMillis = ewma(connectLatencyMillis, latencyMillis);
+        lastSampleMillis = System.currentTimeMillis();
+        unavailableUntilMillis = 0;
+    }
+
+    synchronized void recordResponse(final long latencyMillis) {
+        responseLatencyMillis = ewma(responseLatencyMillis, latencyMillis);
+        lastSampleMillis = System.currentTimeMillis();
+    }
+
+    synchronized void recordConnectFailure(final long retryDelayMillis) {
+        unavailableUntilMillis = System.currentTimeMillis() + retryDelayMillis;
+    }
+
+    // Endpoints without samples yet are the fastest ones, so that they get tried
+    synchronized double getScore() {
+        return Math.max(0, connectLatencyMillis) + Math.max(0, responseLatencyMillis);
+    }
+
+    synchronized long getLastSampleMillis() {
+        return lastSampleMillis;
+    }
+
+    synchronized long getUnavailableUntilMillis() {
+        return unavailableUntilMillis;
+    }
+
+    // Round-robin over the addresses of the host
+    synchronized int nextResolvedAddressIndex(final int addresses) {
+        resolvedAddressIndex = (resolvedAddressIndex + 1) % addresses;
+        return resolvedAddressIndex;
+    }
+
+    @Override
+    public String toString() {
+        return host + ":" + port;
+    }
+
+    private static double ewma(final double average, final long sample) {
+        return average < 0 ? sample : EWMA_ALPHA * sample + (1 - EWMA_ALPHA) * average;
+    }
+}
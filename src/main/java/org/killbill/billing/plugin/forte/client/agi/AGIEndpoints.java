@@ -0,0 +1,197 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.client.agi;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+import javax.net.ssl.SSLSocket;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Doubles;
+import com.google.common.primitives.Longs;
+
+// The AGI endpoints of a merchant: transactions go to the available endpoint with the lowest connect + response latency.
+// Failing over to the next endpoint only ever happens while connecting (TCP connection and TLS handshake), before any
+// byte of the request is sent, so that a transaction can't be processed twice.
+public class AGIEndpoints {
+
+    // Every so often, the least recently used available endpoint is tried first, to keep its latencies current
+    private static final int PROBE_INTERVAL = 20;
+
+    static final String NO_HOST_CONFIGURED = "No AGI host configured";
+
+    private final List<AGIEndpoint> endpoints;
+    private final AGIHostResolver resolver;
+    private final long retryDelayMillis;
+    private final AtomicInteger selections = new AtomicInteger();
+
+    // hosts is a comma separated list of host[:port] ([ipv6]:port), retryDelayMillis is how long an endpoint which couldn't be
+    // connected to is only tried as a last resort
+    public AGIEndpoints(final String hosts, final int defaultPort, final AGIHostResolver resolver, final long retryDelayMillis) {
+        this.endpoints = parse(hosts, defaultPort);
+        this.resolver = resolver;
+        this.retryDelayMillis = retryDelayMillis;
+    }
+
+    public List<AGIEndpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    // Endpoints in the order they should be tried: available ones fastest first, then the other ones, soonest available first
+    List<AGIEndpoint> select() {
+        if (endpoints.size() <= 1) {
+            return endpoints;
+        }
+
+        final long now = System.currentTimeMillis();
+        final List<Candidate> available = new ArrayList<Candidate>(endpoints.size());
+        final List<Candidate> unavailable = new ArrayList<Candidate>(endpoints.size());
+        for (final AGIEndpoint endpoint : endpoints) {
+            final Candidate candidate = new Candidate(endpoint);
+            if (now >= candidate.unavailableUntilMillis) {
+                available.add(candidate);
+            } else {
+                unavailable.add(candidate);
+            }
+        }
+
+        Collections.sort(available, new Comparator<Candidate>() {
+            @Override
+            public int compare(final Candidate first, final Candidate second) {
+                return Doubles.compare(first.score, second.score);
+            }
+        });
+        if (available.size() > 1 && (selections.getAndIncrement() & Integer.MAX_VALUE) % PROBE_INTERVAL == 0) {
+            Candidate leastRecentlyUsed = available.get(0);
+            for (final Candidate candidate : available) {
+                if (candidate.lastSampleMillis < leastRecentlyUsed.lastSampleMillis) {
+                    leastRecentlyUsed = candidate;
+                }
+            }
+            available.remove(leastRecentlyUsed);
+            available.add(0, leastRecentlyUsed);
+        }
+        Collections.sort(unavailable, new Comparator<Candidate>() {
+            @Override
+            public int compare(final Candidate first, final Candidate second) {
+                return Longs.compare(first.unavailableUntilMillis, second.unavailableUntilMillis);
+            }
+        });
+
+        final List<AGIEndpoint> selected = new ArrayList<AGIEndpoint>(endpoints.size());
+        for (final Candidate candidate : available) {
+            selected.add(candidate.endpoint);
+        }
+        for (final Candidate candidate : unavailable) {
+            selected.add(candidate.endpoint);
+        }
+        return selected;
+    }
+
+    // Resolved through the cache, rotating over the addresses of the host
+    InetSocketAddress resolve(final AGIEndpoint endpoint) throws UnknownHostException {
+        final InetAddress[] addresses = resolver.resolve(endpoint.getHost());
+        return new InetSocketAddress(addresses[endpoint.nextResolvedAddressIndex(addresses.length)], endpoint.getPort());
+    }
+
+    // Connected and handshaked socket to the best endpoint which can be reached (within the budget of the request, if any)
+    AGIConnection connect(final AGISocketFactory factory, @Nullable final AGIRequest request) throws IOException {
+        IOException failure = new UnknownHostException(NO_HOST_CONFIGURED);
+        for (final AGIEndpoint endpoint : select()) {
+            if (request != null && request.getRemainingMillis() <= 0) {
+                throw new SocketTimeoutException("AGI request timed out");
+            }
+
+            final long startNanos = System.nanoTime();
+            try {
+                final SSLSocket socket = factory.createSocket(resolve(endpoint));
+                recordConnect(endpoint, startNanos);
+                return new AGIConnection(endpoint, socket);
+            } catch (final IOException e) {
+                recordConnectFailure(endpoint);
+                failure = e;
+            }
+        }
+        throw failure;
+    }
+
+    void recordConnect(final AGIEndpoint endpoint, final long startNanos) {
+        endpoint.recordConnect(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+
+    void recordResponse(final AGIEndpoint endpoint, final long startNanos) {
+        endpoint.recordResponse(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+
+    void recordConnectFailure(final AGIEndpoint endpoint) {
+        endpoint.recordConnectFailure(retryDelayMillis);
+    }
+
+    // Empty when no host is configured (e.g. global configuration of a multi-tenant deployment)
+    static List<AGIEndpoint> parse(@Nullable final String hosts, final int defaultPort) {
+        if (hosts == null) {
+            return ImmutableList.<AGIEndpoint>of();
+        }
+
+        final ImmutableList.Builder<AGIEndpoint> endpoints = ImmutableList.<AGIEndpoint>builder();
+        for (final String hostAndPort : Splitter.on(',').trimResults().omitEmptyStrings().split(hosts)) {
+            final int portSeparator = hostAndPort.lastIndexOf(':');
+            if (hostAndPort.startsWith("[")) {
+                // IPv6 literal
+                final int closingBracket = hostAndPort.indexOf(']');
+                Preconditions.checkArgument(closingBracket > 0, "Invalid AGI host: " + hostAndPort);
+                endpoints.add(new AGIEndpoint(hostAndPort.substring(1, closingBracket),
+                                              portSeparator > closingBracket ? Integer.parseInt(hostAndPort.substring(portSeparator + 1)) : defaultPort));
+            } else if (portSeparator > 0 && hostAndPort.indexOf(':') == portSeparator) {
+                endpoints.add(new AGIEndpoint(hostAndPort.substring(0, portSeparator), Integer.parseInt(hostAndPort.substring(portSeparator + 1))));
+            } else {
+                endpoints.add(new AGIEndpoint(hostAndPort, defaultPort));
+            }
+        }
+        return endpoints.build();
+    }
+
+    // Snapshot, so that concurrent updates can't break the sort
+    private static final class Candidate {
+
+        private final AGIEndpoint endpoint;
+        private final double score;
+        private final long lastSampleMillis;
+        private final long unavailableUntilMillis;
+
+        private Candidate(final AGIEndpoint endpoint) {
+            this.endpoint = endpoint;
+            this.score = endpoint.getScore();
+            this.lastSampleMillis = endpoint.getLastSampleMillis();
+            this.unavailableUntilMillis = endpoint.getUnavailableUntilMillis();
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.forte.client.agi;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Charsets;
+
+// The AGI fields known to the plugin (see the ForteAGIClient constants). Fields checked when validating requests
+// have a bit, so that the fields present in a request can be tracked as a bitmask.
+public enum AGIField {
+
+    PG_MERCHANT_ID("pg_merchant_id", 1 << 0),
+    PG_PASSWORD("pg_password", 1 << 1),
+    PG_TRANSACTION_TYPE("pg_transaction_type", 1 << 2),
+    PG_MERCHANT_DATA_1("pg_merchant_data_1"),
+    PG_MERCHANT_DATA_2("pg_merchant_data_2"),
+    PG_MERCHANT_DATA_3("pg_merchant_data_3"),
+    PG_MERCHANT_DATA_4("pg_merchant_data_4"),
+    PG_MERCHANT_DATA_5("pg_merchant_data_5"),
+    PG_MERCHANT_DATA_6("pg_merchant_data_6"),
+    PG_MERCHANT_DATA_7("pg_merchant_data_7"),
+    PG_MERCHANT_DATA_8("pg_merchant_data_8"),
+    PG_MERCHANT_DATA_9("pg_merchant_data_9"),
+    PG_TOTAL_AMOUNT("pg_total_amount", 1 << 3),
+    PG_SALES_TAX_AMOUNT("pg_sales_tax_amount"),
+    PG_CONSUMER_ID("pg_consumer_id"),
+    ECOM_CONSUMERORDERID("ecom_consumerorderid"),
+    ECOM_WALLETID("ecom_walletid"),
+    PG_CUSTOMER_TOKEN("pg_customer_token"),
+    PG_CLIENT_ID("pg_client_id"),
+    PG_BILLTO_POSTAL_NAME_COMPANY("pg_billto_postal_name_company"),
+    ECOM_BILLTO_POSTAL_NAME_FIRST("ecom_billto_postal_name_first", 1 << 4),
+    ECOM_BILLTO_POSTAL_NAME_LAST("ecom_billto_postal_name_last", 1 << 5),
+    ECOM_BILLTO_POSTAL_STREET_LINE1("ecom_billto_postal_street_line1"),
+    ECOM_BILLTO_POSTAL_STREET_LINE2("ecom_billto_postal_street_line2"),
+    ECOM_BILLTO_POSTAL_CITY("ecom_billto_postal_city"),
+    ECOM_BILLTO_POSTAL_STATEPROV("ecom_billto_postal_stateprov"),
+    ECOM_BILLTO_POSTAL_POSTALCODE("ecom_billto_postal_postalcode"),
+    ECOM_BILLTO_POSTAL_COUNTRYCODE("ecom_billto_postal_countrycode"),
+    ECOM_BILLTO_TELECOM_PHONE_NUMBER("ecom_billto_telecom_phone_number"),
+    ECOM_BILLTO_ONLINE_EMAIL("ecom_billto_online_email"),
+    PG_BILLTO_SSN("pg_billto_ssn"),
+    PG_BILLTO_DL_NUMBER("pg_billto_dl_number"),
+    PG_BILLTO_DL_STATE("pg_billto_dl_state"),
+    PG_BILLTO_DATE_OF_BIRTH("pg_billto_date_of_birth"),
+    PG_ENTERED_BY("pg_entered_by"),
+    PG_SCHEDULE_QUANTITY("pg_schedule_quantity"),
+    PG_SCHEDULE_FREQUENCY("pg_schedule_frequency"),
+    PG_SCHEDULE_RECURRING_AMOUNT("pg_schedule_recurring_amount"),
+    PG_SCHEDULE_START_DATE("pg_schedule_start_date"),
+    PG_CUSTOMER_IP_ADDRESS("pg_customer_ip_address"),
+    PG_MERCHANT_RECURRING("pg_merchant_recurring"),
+    PG_SOFTWARE_NAME("pg_software_name"),
+    PG_SOFTWARE_VERSION("pg_software_version"),
+    PG_AVS_METHOD("pg_avs_method"),
+    ECOM_PAYMENT_CARD_TYPE("ecom_payment_card_type", 1 << 6),
+    ECOM_PAYMENT_CARD_NAME("ecom_payment_card_name", 1 << 7),
+    ECOM_PAYMENT_CARD_NUMBER("ecom_payment_card_number", 1 << 8),
+    ECOM_PAYMENT_CARD_EXPDATE_MONTH("ecom_payment_card_expdate_month", 1 << 9),
+    ECOM_PAYMENT_CARD_EXPDATE_YEAR("ecom_payment_card_expdate_year", 1 << 10),
+    ECOM_PAYMENT_CARD_VERIFICATION("ecom_payment_card_verification"),
+    PG_PROCUREMENT_CARD("pg_procurement_card"),
+    PG_CUSTOMER_ACCT_CODE("pg_customer_acct_code"),
+    PG_CC_SWIPE_DATA("pg_cc_swipe_data"),
+    PG_CC_ENC_SWIPE_DATA("pg_cc_enc_swipe_data"),
+    PG_CC_ENC_DECRYPTOR("pg_cc_enc_decryptor"),
+    ECOM_3D_SECURE_DATA("ecom_3d_secure_data"),
+    ECOM_3D_SECURE_AUTHENTICATED("ecom_3d_secure_authenticated"),
+    PG_PARTIAL_AUTH_ALLOWED_FLAG("pg_partial_auth_allowed_flag"),
+    PG_MAIL_OR_PHONE_ORDER("pg_mail_or_phone_order"),
+    PG_PAYMENT_TOKEN("pg_payment_token"),
+    PG_PAYMENT_METHOD_ID("pg_payment_method_id", 1 << 14),
+    PG_ONETIME_TOKEN("pg_onetime_token"),
+    ECOM_PAYMENT_CHECK_TRN("ecom_payment_check_trn", 1 << 11),
+    ECOM_PAYMENT_CHECK_ACCOUNT("ecom_payment_check_account", 1 << 12),
+    ECOM_PAYMENT_CHECK_ACCOUNT_TYPE("ecom_payment_check_account_type", 1 << 13),
+    ECOM_PAYMENT_CHECK_CHECKNO("ecom_payment_check_checkno"),
+    PG_ENTRY_CLASS_CODE("pg_entry_class_code"),
+    PG_TRACE_NUMBER("pg_trace_number"),
+    PG_AUTHORIZATION_CODE("pg_authorization_code"),
+    PG_ORIGINAL_TRACE_NUMBER("pg_original_trace_number", 1 << 15),
+    PG_ORIGINAL_AUTHORIZATION_CODE("pg_original_authorization_code"),
+    PG_RESPONSE_TYPE("pg_response_type"),
+    PG_RESPONSE_DESCRIPTION("pg_response_description"),
+    PG_RESPONSE_CODE("pg_response_code"),
+    PG_AVS_RESULT("pg_avs_result"),
+    PG_PREAUTH_RESULT("pg_preauth_result"),
+    PG_PREAUTH_DESCRIPTION("pg_preauth_description"),
+    PG_PREAUTH_NEG_REPORT("pg_preauth_neg_report"),
+    PG_CVV2_RESULT("pg_cvv2_result"),
+    PG_3D_SECURE_RESULT("pg_3d_secure_result"),
+    PG_AVAILABLE_CARD_BALANCE("pg_available_card_balance"),
+    PG_REQUESTED_AMOUNT("pg_requested_amount"),
+    PG_CONVENIENCE_FEE("pg_convenience_fee");
+
+    private static final AGIField[] FIELDS = values();
+    private static final Map<String, AGIField> FIELDS_BY_KEY = new HashMap<String, AGIField>();
+    // For the response parser, to look keys up without decoding them first
+    private static final AGIField[][] FIELDS_BY_KEY_LENGTH;
+
+    static {
+        int maxKeyLength = 0;
+        for (final AGIField field : FIELDS) {
+            FIELDS_BY_KEY.put(field.key, field);
+            maxKeyLength = Math.max(maxKeyLength, field.key.length());
+        }
+
+        FIELDS_BY_KEY_LENGTH = new AGIField[maxKeyLength + 1][];
+        for (int keyLength = 0; keyLength <= maxKeyLength; keyLength++) {
+            final List<AGIField> fields = new ArrayList<AGIField>();
+            for (final AGIField field : FIELDS) {
+                if (field.key.length() == keyLength) {
+                    fields.add(field);
+                }
+            }
+            FIELDS_BY_KEY_LENGTH[keyLength] = fields.toArray(new AGIField[fields.size()]);
+        }
+    }
+
+    private final String key;
+    private final byte[] keyBytes;
+    private final int bit;
+
+    AGIField(final String key) {
+        this(key, 0);
+    }
+
+    AGIField(final String key, final int bit) {
+        this.key = key;
+        this.keyBytes = (key + "=").getBytes(Charsets.ISO_8859_1);
+        this.bit = bit;
+    }
+
+    @Nullable
+    public static AGIField forKey(final String key) {
+        return FIELDS_BY_KEY.get(key);
+    }
+
+    @Nullable
+    static AGIField forKey(final byte[] bytes, final int offset, final int length) {
+        if (length >= FIELDS_BY_KEY_LENGTH.length) {
+            return null;
+        }
+
+        for (final AGIField field : FIELDS_BY_KEY_LENGTH[length]) {
+            if (field.keyMatches(bytes, offset, length)) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    static AGIField forOrdinal(final int ordinal) {
+        return FIELDS[ordinal];
+    }
+
+    static int count() {
+        return FIELDS.length;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public int getBit() {
+        return bit;
+    }
+
+    // Pre-encoded "key="
+    byte[] getKeyBytes() {
+        return keyBytes;
+    }
+
+    private boolean keyMatches(final byte[] bytes, final int offset, final int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (keyBytes[i] != bytes[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.client.agi;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.security.Security;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+
+// Caches the addresses of the gateway hosts for ttlMillis. When a refresh fails, the stale addresses keep being used until
+// the next refresh attempt. Refreshes go through InetAddress, hence through the JVM-wide DNS cache: addresses are only
+// refreshed as often as ttlMillis when the JVM TTL (networkaddress.cache.ttl, forever by default with a security manager)
+// isn't longer, which is checked (and logged) once.
+public class AGIHostResolver {
+
+    private static final Logger logger = LoggerFactory.getLogger(AGIHostResolver.class);
+
+    // Defaults of the JDK (see java.security)
+    private static final long DEFAULT_JVM_TTL_SECONDS = 30;
+    private static final long FOREVER = -1;
+
+    private final long ttlMillis;
+    private final ConcurrentMap<String, ResolvedHost> resolvedHosts = new ConcurrentHashMap<String, ResolvedHost>();
+
+    // A ttlMillis of zero or less disables the cache
+    public AGIHostResolver(final long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+        if (ttlMillis > 0) {
+            checkJvmTtl(ttlMillis, getJvmTtlSeconds());
+        }
+    }
+
+    public InetAddress[] resolve(final String host) throws UnknownHostException {
+        if (ttlMillis <= 0) {
+            return InetAddress.getAllByName(host);
+        }
+
+        final long now = System.currentTimeMillis();
+        final ResolvedHost resolvedHost = resolvedHosts.get(host);
+        if (resolvedHost != null && now < resolvedHost.expirationMillis) {
+            return resolvedHost.addresses;
+        }
+
+        try {
+            final InetAddress[] addresses = InetAddress.getAllByName(host);
+            resolvedHosts.put(host, new ResolvedHost(addresses, now + ttlMillis));
+            return addresses;
+        } catch (final UnknownHostException e) {
+            if (resolvedHost == null) {
+                throw e;
+            }
+            // DNS outage: retry in a TTL
+            resolvedHosts.put(host, new ResolvedHost(resolvedHost.addresses, now + ttlMillis));
+            return resolvedHost.addresses;
+        }
+    }
+
+    @VisibleForTesting
+    static boolean checkJvmTtl(final long ttlMillis, final long jvmTtlSeconds) {
+        if (jvmTtlSeconds != FOREVER && TimeUnit.SECONDS.toMillis(jvmTtlSeconds) <= ttlMillis) {
+            return true;
+        }
+
+        logger.warn("The JVM caches DNS lookups for {} (networkaddress.cache.ttl), longer than the {} ms of dnsTtl: " +
+                    "the addresses of the AGI hosts are only refreshed that often",
+                    jvmTtlSeconds == FOREVER ? "ever" : jvmTtlSeconds + " s",
+                    ttlMillis);
+        return false;
+    }
+
+    // In seconds, FOREVER (-1) for no expiration
+    @VisibleForTesting
+    static long getJvmTtlSeconds() {
+        return parseJvmTtlSeconds(Security.getProperty("networkaddress.cache.ttl"),
+                                  System.getProperty("sun.net.inetaddr.ttl"),
+                                  System.getSecurityManager() != null);
+    }
+
+    @VisibleForTesting
+    static long parseJvmTtlSeconds(@Nullable final String securityTtl, @Nullable final String systemTtl, final boolean securityManager) {
+        // The security property wins over the legacy system one
+        for (final String ttl : new String[]{securityTtl, systemTtl}) {
+            if (ttl != null) {
+                try {
+                    final long ttlSeconds = Long.parseLong(ttl.trim());
+                    return ttlSeconds < 0 ? FOREVER : ttlSeconds;
+                } catch (final NumberFormatException ignored) {
+                    // Ignored by the JDK as well
+                }
+            }
+        }
+        return securityManager ? FOREVER : DEFAULT_JVM_TTL_SECONDS;
+    }
+
+    private static final class ResolvedHost {
+
+        private final InetAddress[] addresses;
+        private final long expirationMillis;
+
+        private ResolvedHost(final InetAddress[] addresses, final long expirationMillis) {
+            this.addresses = addresses;
+            this.expirationMillis = expirationMillis;
+        }
+    }
+}
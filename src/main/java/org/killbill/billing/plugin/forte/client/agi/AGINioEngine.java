@@ -0,0 +1,595 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.forte.client.agi;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+// A few selector threads driving any number of in-flight AGI exchanges (SocketChannel + SSLEngine), instead of one blocked
+// thread per transaction. The engine is shared by all tenants and stopped when the last transport using it is closed.
+public class AGINioEngine {
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    // How often the I/O threads look for timed out (or cancelled) exchanges
+    private static final long TIMEOUT_CHECK_INTERVAL_MILLIS = 100;
+
+    private static AGINioEngine sharedEngine;
+    private static int sharedEngineReferences;
+
+    private final IOLoop[] ioLoops;
+    private final AtomicInteger nextIOLoop = new AtomicInteger();
+    // Runs the SSLEngine delegated tasks (certificate validation, key exchange computations) off the selector threads
+    private final ThreadPoolExecutor taskExecutor;
+
+    private AGINioEngine(final int ioThreads) throws IOException {
+        taskExecutor = new ThreadPoolExecutor(ioThreads,
+                                              ioThreads,
+                                              60L,
+                                              TimeUnit.SECONDS,
+                                              new LinkedBlockingQueue<Runnable>(),
+                                              new ThreadFactoryBuilder().setNameFormat("forte-agi-tls-%d").setDaemon(true).build());
+        taskExecutor.allowCoreThreadTimeOut(true);
+
+        ioLoops = new IOLoop[ioThreads];
+        try {
+            for (int i = 0; i < ioThreads; i++) {
+                ioLoops[i] = new IOLoop();
+            }
+        } catch (final IOException e) {
+            shutdown();
+            throw e;
+        }
+
+        for (int i = 0; i < ioThreads; i++) {
+            final Thread thread = new Thread(ioLoops[i], "forte-agi-nio-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    // The number of I/O threads is fixed by the first caller
+    public static synchronized AGINioEngine acquire(final int ioThreads) throws IOException {
+        if (sharedEngine == null) {
+            sharedEngine = new AGINioEngine(Math.max(1, ioThreads));
+        }
+        sharedEngineReferences++;
+        return sharedEngine;
+    }
+
+    public static synchronized void release(final AGINioEngine engine) {
+        if (engine != sharedEngine) {
+            return;
+        }
+
+        sharedEngineReferences--;
+        if (sharedEngineReferences == 0) {
+            sharedEngine.shutdown();
+            sharedEngine = null;
+        }
+    }
+
+    public ListenableFuture<AGIResponse> submit(final AGISocketFactory factory, final AGIEndpoints endpoints, final AGIRequest request) {
+        final SettableFuture<AGIResponse> future = SettableFuture.<AGIResponse>create();
+
+        // Resolve the gateway addresses in the caller thread, the I/O threads should never block
+        final List<AGIEndpoint> candidates = new ArrayList<AGIEndpoint>();
+        final List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+        UnknownHostException unknownHost = new UnknownHostException(AGIEndpoints.NO_HOST_CONFIGURED);
+        for (final AGIEndpoint endpoint : endpoints.select()) {
+            try {
+                addresses.add(endpoints.resolve(endpoint));
+                candidates.add(endpoint);
+            } catch (final UnknownHostException e) {
+                endpoints.recordConnectFailure(endpoint);
+                unknownHost = e;
+            }
+        }
+        if (candidates.isEmpty()) {
+            request.release();
+            future.setException(unknownHost);
+            return future;
+        }
+
+        final Exchange exchange = new Exchange(factory, endpoints, candidates, addresses, request, future, taskExecutor);
+        ioLoops[(nextIOLoop.getAndIncrement() & Integer.MAX_VALUE) % ioLoops.length].register(exchange);
+        return future;
+    }
+
+    private void shutdown() {
+        for (final IOLoop ioLoop : ioLoops) {
+            if (ioLoop != null) {
+                ioLoop.shutdown();
+            }
+        }
+        taskExecutor.shutdown();
+    }
+
+    private static final class IOLoop implements Runnable {
+
+        private final Selector selector;
+        private final Queue<Exchange> pendingExchanges = new ConcurrentLinkedQueue<Exchange>();
+        private final Queue<Runnable> resumptions = new ConcurrentLinkedQueue<Runnable>();
+
+        private volatile boolean running = true;
+
+        private IOLoop() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        private void register(final Exchange exchange) {
+            exchange.ioLoop = this;
+            pendingExchanges.add(exchange);
+            selector.wakeup();
+            if (!running) {
+                failPendingExchanges();
+            }
+        }
+
+        // Hands back an exchange whose delegated tasks have run
+        private void resume(final Exchange exchange, final SSLEngine sslEngine) {
+            resumptions.add(new Runnable() {
+                @Override
+                public void run() {
+                    exchange.resume(sslEngine);
+                }
+            });
+            selector.wakeup();
+        }
+
+        private void shutdown() {
+            running = false;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            long lastTimeoutCheckNanos = System.nanoTime();
+            while (running) {
+                try {
+                    selector.select(TIMEOUT_CHECK_INTERVAL_MILLIS);
+                } catch (final IOException e) {
+                    continue;
+                }
+
+                Exchange exchange = pendingExchanges.poll();
+                while (exchange != null) {
+                    exchange.start(selector);
+                    exchange = pendingExchanges.poll();
+                }
+
+                Runnable resumption = resumptions.poll();
+                while (resumption != null) {
+                    resumption.run();
+                    resumption = resumptions.poll();
+                }
+
+                final Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    final SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+                    ((Exchange) key.attachment()).handle(key);
+                }
+
+                final long nowNanos = System.nanoTime();
+                if (TimeUnit.NANOSECONDS.toMillis(nowNanos - lastTimeoutCheckNanos) >= TIMEOUT_CHECK_INTERVAL_MILLIS) {
+                    lastTimeoutCheckNanos = nowNanos;
+                    for (final SelectionKey key : selector.keys()) {
+                        if (key.isValid()) {
+                            ((Exchange) key.attachment()).checkTimeout(nowNanos);
+                        }
+                    }
+                }
+            }
+
+            for (final SelectionKey key : selector.keys()) {
+                ((Exchange) key.attachment()).fail(new IOException("AGI NIO engine stopped"));
+            }
+            failPendingExchanges();
+            // Failed above with the other registered exchanges
+            resumptions.clear();
+            try {
+                selector.close();
+            } catch (final IOException ignored) {
+            }
+        }
+
+        private void failPendingExchanges() {
+            Exchange exchange = pendingExchanges.poll();
+            while (exchange != null) {
+                exchange.fail(new IOException("AGI NIO engine stopped"));
+                exchange = pendingExchanges.poll();
+            }
+        }
+    }
+
+    // Only ever touched by its I/O thread, but for the delegated tasks of its SSLEngine: they run on the task executor
+    // with the interest ops of the key cleared, then the exchange is handed back to the I/O thread
+    private static final class Exchange {
+
+        private final AGISocketFactory factory;
+        private final AGIEndpoints endpoints;
+        private final List<AGIEndpoint> candidates;
+        private final List<InetSocketAddress> addresses;
+        private final AGIRequest agiRequest;
+        private final ByteBuffer request;
+        private final SettableFuture<AGIResponse> future;
+        private final AGIResponseParser parser = new AGIResponseParser();
+        private final Executor taskExecutor;
+
+        // netOut is kept flipped (pending encrypted bytes), netIn and appIn are kept in fill mode
+        private ByteBuffer netOut;
+        private ByteBuffer netIn;
+        private ByteBuffer appIn;
+
+        private IOLoop ioLoop;
+        private int attempt;
+        private AGIEndpoint endpoint;
+        private SSLEngine sslEngine;
+        private SocketChannel channel;
+        private SelectionKey key;
+        private long startNanos;
+        private long responseStartNanos;
+        private long handshakeStartMillis;
+        private boolean handshaked;
+        private boolean done;
+
+        private Exchange(final AGISocketFactory factory,
+                         final AGIEndpoints endpoints,
+                         final List<AGIEndpoint> candidates,
+                         final List<InetSocketAddress> addresses,
+                         final AGIRequest agiRequest,
+                         final SettableFuture<AGIResponse> future,
+                         final Executor taskExecutor) {
+            this.factory = factory;
+            this.endpoints = endpoints;
+            this.candidates = candidates;
+            this.addresses = addresses;
+            this.agiRequest = agiRequest;
+            agiRequest.terminate();
+            this.request = ByteBuffer.wrap(agiRequest.getBuffer(), 0, agiRequest.getLength());
+            this.future = future;
+            this.taskExecutor = taskExecutor;
+        }
+
+        // Connects to the endpoint of the current attempt
+        private void start(final Selector selector) {
+            if (done) {
+                return;
+            }
+
+            startNanos = System.nanoTime();
+            endpoint = candidates.get(attempt);
+            try {
+                sslEngine = factory.createSSLEngine(endpoint.getHost(), endpoint.getPort());
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                key = channel.register(selector, 0, this);
+                if (channel.connect(addresses.get(attempt))) {
+                    onConnected();
+                } else {
+                    key.interestOps(SelectionKey.OP_CONNECT);
+                }
+            } catch (final IOException e) {
+                onError(e);
+            } catch (final RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        private void handle(final SelectionKey key) {
+            try {
+                if (key.isConnectable()) {
+                    if (channel.finishConnect()) {
+                        onConnected();
+                    }
+                } else {
+                    process();
+                }
+            } catch (final IOException e) {
+                onError(e);
+            } catch (final RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        private void resume(final SSLEngine tasksEngine) {
+            // Failed, or moved on to another endpoint, while the tasks were running
+            if (done || tasksEngine != sslEngine || channel == null) {
+                return;
+            }
+
+            try {
+                process();
+            } catch (final IOException e) {
+                onError(e);
+            } catch (final RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        private void checkTimeout(final long nowNanos) {
+            final int connectTimeoutMillis = factory.getConnectTimeoutMillis();
+            if (future.isCancelled()) {
+                done = true;
+                close();
+            } else if (!handshaked && connectTimeoutMillis > 0 && TimeUnit.NANOSECONDS.toMillis(nowNanos - startNanos) >= connectTimeoutMillis) {
+                onError(new SocketTimeoutException("Timed out connecting to the AGI gateway"));
+            } else if (agiRequest.getRemainingMillis() <= 0) {
+                // Once wrapped, (part of) the request may have reached the gateway
+                fail(request.position() == 0 ? new SocketTimeoutException("AGI request timed out") : new AGIResponseTimeoutException("Timed out waiting for the AGI response"));
+            }
+        }
+
+        private void onConnected() throws IOException {
+            final int packetBufferSize = sslEngine.getSession().getPacketBufferSize();
+            netOut = ByteBuffer.allocate(packetBufferSize);
+            netOut.flip();
+            netIn = ByteBuffer.allocate(packetBufferSize);
+            appIn = ByteBuffer.allocate(sslEngine.getSession().getApplicationBufferSize());
+
+            handshakeStartMillis = System.currentTimeMillis();
+            sslEngine.beginHandshake();
+            process();
+        }
+
+        private void process() throws IOException {
+            while (!done) {
+                // Flush the pending TLS records first
+                if (netOut.hasRemaining()) {
+                    channel.write(netOut);
+                    if (netOut.hasRemaining()) {
+                        key.interestOps(SelectionKey.OP_WRITE);
+                        return;
+                    }
+                }
+
+                final HandshakeStatus handshakeStatus = sslEngine.getHandshakeStatus();
+                if (handshakeStatus == HandshakeStatus.NEED_TASK) {
+                    runDelegatedTasks();
+                    return;
+                } else if (handshakeStatus == HandshakeStatus.NEED_WRAP) {
+                    wrap(EMPTY);
+                } else if (handshakeStatus == HandshakeStatus.NEED_UNWRAP) {
+                    if (!unwrap()) {
+                        key.interestOps(SelectionKey.OP_READ);
+                        return;
+                    }
+                } else if (request.hasRemaining()) {
+                    wrap(request);
+                } else if (!unwrap()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                    return;
+                }
+            }
+        }
+
+        // The key stays registered (for the timeout checks) without interest ops until the tasks have run
+        private void runDelegatedTasks() {
+            key.interestOps(0);
+            final SSLEngine engine = sslEngine;
+            final IOLoop loop = ioLoop;
+            taskExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Runnable task = engine.getDelegatedTask();
+                        while (task != null) {
+                            task.run();
+                            task = engine.getDelegatedTask();
+                        }
+                    } finally {
+                        loop.resume(Exchange.this, engine);
+                    }
+                }
+            });
+        }
+
+        private void wrap(final ByteBuffer source) throws IOException {
+            netOut.compact();
+            final SSLEngineResult result;
+            try {
+                result = sslEngine.wrap(source, netOut);
+            } finally {
+                netOut.flip();
+            }
+
+            if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                netOut = enlarge(netOut, sslEngine.getSession().getPacketBufferSize(), false);
+            } else if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                throw new SSLException("TLS connection closed while sending the AGI request");
+            }
+            checkHandshakeFinished(result);
+        }
+
+        // Returns false when more bytes are needed from the network
+        private boolean unwrap() throws IOException {
+            netIn.flip();
+            final SSLEngineResult result;
+            try {
+                result = sslEngine.unwrap(netIn, appIn);
+            } finally {
+                netIn.compact();
+            }
+            checkHandshakeFinished(result);
+
+            switch (result.getStatus()) {
+                case BUFFER_UNDERFLOW:
+                    if (!netIn.hasRemaining()) {
+                        netIn = enlarge(netIn, sslEngine.getSession().getPacketBufferSize(), true);
+                    }
+                    final int read = channel.read(netIn);
+                    if (read < 0) {
+                        onEndOfStream();
+                        return true;
+                    }
+                    return read > 0;
+                case BUFFER_OVERFLOW:
+                    appIn = enlarge(appIn, sslEngine.getSession().getApplicationBufferSize(), true);
+                    return true;
+                case CLOSED:
+                    consumeApplicationData();
+                    onEndOfStream();
+                    return true;
+                default:
+                    consumeApplicationData();
+                    return true;
+            }
+        }
+
+        private void checkHandshakeFinished(final SSLEngineResult result) {
+            if (!handshaked && result.getHandshakeStatus() == HandshakeStatus.FINISHED) {
+                handshaked = true;
+                factory.recordHandshake(sslEngine.getSession(), handshakeStartMillis);
+                endpoints.recordConnect(endpoint, startNanos);
+                responseStartNanos = System.nanoTime();
+            }
+        }
+
+        private void consumeApplicationData() throws IOException {
+            appIn.flip();
+            try {
+                if (!done && parser.consume(appIn)) {
+                    complete();
+                }
+            } finally {
+                appIn.clear();
+            }
+        }
+
+        private void onEndOfStream() throws IOException {
+            if (done) {
+                return;
+            } else if (!handshaked || request.hasRemaining()) {
+                throw new EOFException("Connection closed by the AGI gateway");
+            }
+            // Like the blocking transport, return what has been read so far
+            parser.finish();
+            complete();
+        }
+
+        private void complete() {
+            endpoints.recordResponse(endpoint, responseStartNanos);
+            done = true;
+            future.set(parser.getResponse());
+            close();
+        }
+
+        // Until the first byte of the request has been wrapped, the exchange can safely move on to the next endpoint
+        private void onError(final IOException e) {
+            if (!done && request.position() == 0) {
+                endpoints.recordConnectFailure(endpoint);
+                if (attempt + 1 < candidates.size() && !future.isCancelled() && agiRequest.getRemainingMillis() > 0) {
+                    closeChannel();
+                    attempt++;
+                    // Started again by the I/O loop (the selector keys may be being iterated)
+                    ioLoop.register(this);
+                    return;
+                }
+            }
+            fail(e);
+        }
+
+        private void fail(final Throwable t) {
+            done = true;
+            if (t instanceof IOException && !(t instanceof AGIUnknownOutcomeException) && request.position() > 0) {
+                // Connection reset, end of stream, TLS or protocol error once (part of) the request may have reached the gateway
+                future.setException(new AGIUnknownOutcomeException("No AGI response: " + t.getMessage(), t));
+            } else {
+                future.setException(t);
+            }
+            close();
+        }
+
+        private void close() {
+            // The request has either been wrapped (copied) already, or won't be
+            agiRequest.release();
+            closeChannel();
+        }
+
+        private void closeChannel() {
+            if (channel == null) {
+                return;
+            }
+
+            try {
+                if (netOut != null) {
+                    // Best effort close_notify
+                    sslEngine.closeOutbound();
+                    netOut.compact();
+                    sslEngine.wrap(EMPTY, netOut);
+                    netOut.flip();
+                    channel.write(netOut);
+                }
+            } catch (final IOException ignored) {
+            } catch (final RuntimeException ignored) {
+            } finally {
+                if (key != null) {
+                    key.cancel();
+                }
+                try {
+                    channel.close();
+                } catch (final IOException ignored) {
+                }
+                channel = null;
+                key = null;
+                netOut = null;
+                netIn = null;
+                appIn = null;
+                handshaked = false;
+            }
+        }
+
+        private static ByteBuffer enlarge(final ByteBuffer buffer, final int minCapacity, final boolean fillMode) {
+            final ByteBuffer enlarged = ByteBuffer.allocate(Math.max(minCapacity, buffer.capacity() * 2));
+            if (fillMode) {
+                buffer.flip();
+            }
+            enlarged.put(buffer);
+            if (!fillMode) {
+                enlarged.flip();
+            }
+            return enlarged;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.forte.client.agi;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+// Exchanges are multiplexed on the shared AGINioEngine selector threads
+public class AGINioTransport implements AGITransport {
+
+    private final AGISocketFactory factory;
+    private final AGIEndpoints endpoints;
+    private final AGINioEngine engine;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    public AGINioTransport(final AGISocketFactory factory, final AGIEndpoints endpoints, final int ioThreads) throws IOException {
+        this.factory = factory;
+        this.endpoints = endpoints;
+        this.engine = AGINioEngine.acquire(ioThreads);
+    }
+
+    @Override
+    public AGIResponse sendAndReceiveData(final AGIRequest request) throws IOException {
+        return AGIFutures.getResponse(sendAndReceiveDataAsync(request));
+    }
+
+    @Override
+    public ListenableFuture<AGIResponse> sendAndReceiveDataAsync(final AGIRequest request) {
+        return engine.submit(factory, endpoints, request);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed.compareAndSet(false, true)) {
+            AGINioEngine.release(engine);
+        }
+    }
+}
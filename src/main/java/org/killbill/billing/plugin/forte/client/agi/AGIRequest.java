@@ -0,0 +1,194 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.forte.client.agi;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Charsets;
+
+// An encoded AGI request: key=value lines written straight into a buffer borrowed from the AGIRequestEncoder pool.
+// Null values are skipped, a field can only be set once. The transport sending the request gives the buffer back once
+// it has been written (a request can only be sent once), requests which won't be sent should be released.
+public class AGIRequest {
+
+    private static final byte[] ENDOFDATA_BYTES = (AGIProtocol.ENDOFDATA + "\n").getBytes(Charsets.ISO_8859_1);
+
+    private final AGIRequestEncoder encoder;
+    private final String transactionType;
+
+    private byte[] buffer;
+    private int length;
+    private int fields;
+    // Fields set so far without a bit (by ordinal), and unknown keys: only checked for duplicates
+    private final long[] otherFields = new long[(AGIField.count() + 63) / 64];
+    private Set<String> otherKeys;
+    private boolean terminated;
+    private boolean hasDeadline;
+    private long deadlineNanos;
+
+    AGIRequest(final AGIRequestEncoder encoder, @Nullable final String transactionType, final byte[] buffer, final int length, final int fields) {
+        this.encoder = encoder;
+        this.transactionType = transactionType;
+        this.buffer = buffer;
+        this.length = length;
+        this.fields = fields;
+    }
+
+    public AGIRequest put(final AGIField field, @Nullable final String value) {
+        if (value == null) {
+            return this;
+        }
+
+        final boolean duplicate;
+        if (field.getBit() != 0) {
+            duplicate = (fields & field.getBit()) != 0;
+        } else {
+            final long ordinalBit = 1L << (field.ordinal() & 63);
+            duplicate = (otherFields[field.ordinal() >>> 6] & ordinalBit) != 0;
+            otherFields[field.ordinal() >>> 6] |= ordinalBit;
+        }
+        if (duplicate) {
+            rejectDuplicate(field.getKey());
+        }
+
+        write(field.getKeyBytes());
+        writeValue(value);
+        fields |= field.getBit();
+        return this;
+    }
+
+    public AGIRequest put(final String key, @Nullable final String value) {
+        final AGIField field = AGIField.forKey(key);
+        if (field != null) {
+            return put(field, value);
+        } else if (value == null) {
+            return this;
+        }
+
+        if (otherKeys == null) {
+            otherKeys = new HashSet<String>();
+        }
+        if (!otherKeys.add(key)) {
+            rejectDuplicate(key);
+        }
+
+        ensureCapacity(key.length() + 1);
+        writeChars(key);
+        buffer[length++] = '=';
+        writeValue(value);
+        return this;
+    }
+
+    // Budget of the whole exchange, starting now (connection and executor queueing included): past it, the transport
+    // gives up with a SocketTimeoutException. Zero or less means no deadline.
+    public AGIRequest expireAfter(final long timeoutMillis) {
+        hasDeadline = timeoutMillis > 0;
+        deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        return this;
+    }
+
+    @Nullable
+    public String getTransactionType() {
+        return transactionType;
+    }
+
+    // Bitmask of the AGIField bits set by this request
+    public int getFields() {
+        return fields;
+    }
+
+    public boolean has(final AGIField field) {
+        return (fields & field.getBit()) != 0;
+    }
+
+    // Appends the endofdata line, before the request is written
+    void terminate() {
+        if (!terminated) {
+            write(ENDOFDATA_BYTES);
+            terminated = true;
+        }
+    }
+
+    // Long.MAX_VALUE without deadline, zero or less once expired
+    long getRemainingMillis() {
+        return hasDeadline ? TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()) : Long.MAX_VALUE;
+    }
+
+    // The fields encoded so far, unmasked (e.g. for the wire log)
+    public String getContent() {
+        return buffer == null ? "" : new String(buffer, 0, length, Charsets.ISO_8859_1);
+    }
+
+    byte[] getBuffer() {
+        return buffer;
+    }
+
+    int getLength() {
+        return length;
+    }
+
+    // Wipes the request (card and account numbers) and returns the buffer to the pool
+    public void release() {
+        if (buffer == null) {
+            return;
+        }
+
+        Arrays.fill(buffer, 0, length, (byte) 0);
+        encoder.release(buffer);
+        buffer = null;
+        length = 0;
+    }
+
+    // Like the checks of the required fields, the request (which may already hold a card number) is released first
+    private void rejectDuplicate(final String key) {
+        release();
+        throw new IllegalArgumentException("Duplicate AGI field " + key);
+    }
+
+    private void writeValue(final String value) {
+        ensureCapacity(value.length() + 1);
+        writeChars(value);
+        buffer[length++] = '\n';
+    }
+
+    // Same encoding as DataOutputStream#writeBytes: low byte of each char
+    private void writeChars(final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            buffer[length++] = (byte) value.charAt(i);
+        }
+    }
+
+    private void write(final byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+
+    private void ensureCapacity(final int extraLength) {
+        if (length + extraLength > buffer.length) {
+            final byte[] larger = new byte[Math.max(buffer.length * 2, length + extraLength)];
+            System.arraycopy(buffer, 0, larger, 0, length);
+            Arrays.fill(buffer, 0, length, (byte) 0);
+            buffer = larger;
+        }
+    }
+}
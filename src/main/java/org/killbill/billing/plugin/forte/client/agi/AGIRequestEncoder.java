@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.forte.client.agi;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.annotation.Nullable;
+
+// Creates the requests of one merchant: the credentials lines are encoded once, and request buffers are pooled
+// (a request rarely exceeds 1KB, larger buffers are left to the garbage collector)
+public class AGIRequestEncoder {
+
+    private static final int BUFFER_SIZE = 1024;
+    private static final int MAX_POOLED_BUFFER_SIZE = 4 * BUFFER_SIZE;
+    private static final int MAX_POOLED_BUFFERS = 64;
+
+    private final byte[] prefix;
+    private final int prefixFields;
+    private final BlockingQueue<byte[]> buffers = new ArrayBlockingQueue<byte[]>(MAX_POOLED_BUFFERS);
+
+    public AGIRequestEncoder(@Nullable final String merchantId, @Nullable final String password) {
+        final AGIRequest prefixRequest = new AGIRequest(this, null, new byte[BUFFER_SIZE], 0, 0);
+        prefixRequest.put(AGIField.PG_MERCHANT_ID, merchantId);
+        prefixRequest.put(AGIField.PG_PASSWORD, password);
+
+        this.prefix = new byte[prefixRequest.getLength()];
+        System.arraycopy(prefixRequest.getBuffer(), 0, prefix, 0, prefix.length);
+        this.prefixFields = prefixRequest.getFields();
+    }
+
+    public AGIRequest newRequest(final String transactionType) {
+        byte[] buffer = buffers.poll();
+        if (buffer == null || buffer.length < prefix.length) {
+            buffer = new byte[Math.max(BUFFER_SIZE, 2 * prefix.length)];
+        }
+        System.arraycopy(prefix, 0, buffer, 0, prefix.length);
+
+        return new AGIRequest(this, transactionType, buffer, prefix.length, prefixFields).put(AGIField.PG_TRANSACTION_TYPE, transactionType);
+    }
+
+    void release(final byte[] buffer) {
+        if (buffer.length <= MAX_POOLED_BUFFER_SIZE) {
+            buffers.offer(buffer);
+        }
+    }
+}
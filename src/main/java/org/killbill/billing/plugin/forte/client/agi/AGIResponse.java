@@ -0,0 +1,163 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.forte.client.agi;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+// An AGI response: known fields are stored by AGIField ordinal, other fields in a (rarely needed) additional map.
+// It is also a read-only Map view of all the fields, keyed by AGI key, for callers that don't need the typed accessors.
+public class AGIResponse extends AbstractMap<String, String> {
+
+    private final String[] values = new String[AGIField.count()];
+
+    private Map<String, String> additionalFields;
+    private int size;
+
+    // E.g. for responses saved before, or built by hand
+    public static AGIResponse copyOf(final Map<String, String> fields) {
+        if (fields instanceof AGIResponse) {
+            return (AGIResponse) fields;
+        }
+
+        final AGIResponse response = new AGIResponse();
+        for (final Entry<String, String> entry : fields.entrySet()) {
+            if (entry.getValue() == null) {
+                continue;
+            }
+
+            final AGIField field = AGIField.forKey(entry.getKey());
+            if (field != null) {
+                response.set(field, entry.getValue());
+            } else {
+                response.setAdditionalField(entry.getKey(), entry.getValue());
+            }
+        }
+        return response;
+    }
+
+    @Nullable
+    public String get(final AGIField field) {
+        return values[field.ordinal()];
+    }
+
+    public Map<String, String> getAdditionalFields() {
+        return additionalFields == null ? Collections.<String, String>emptyMap() : Collections.unmodifiableMap(additionalFields);
+    }
+
+    @Override
+    public String get(final Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+
+        final AGIField field = AGIField.forKey((String) key);
+        if (field != null) {
+            return values[field.ordinal()];
+        } else {
+            return additionalFields == null ? null : additionalFields.get(key);
+        }
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<Entry<String, String>>() {
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    void set(final AGIField field, final String value) {
+        if (values[field.ordinal()] == null) {
+            size++;
+        }
+        values[field.ordinal()] = value;
+    }
+
+    void setAdditionalField(final String key, final String value) {
+        if (additionalFields == null) {
+            additionalFields = new HashMap<String, String>();
+        }
+        if (additionalFields.put(key, value) == null) {
+            size++;
+        }
+    }
+
+    // Known fields first, in AGIField order
+    private final class EntryIterator implements Iterator<Entry<String, String>> {
+
+        private final Iterator<Entry<String, String>> additionalFieldsIterator = getAdditionalFields().entrySet().iterator();
+
+        private int nextOrdinal = nextOrdinal(0);
+
+        @Override
+        public boolean hasNext() {
+            return nextOrdinal < values.length || additionalFieldsIterator.hasNext();
+        }
+
+        @Override
+        public Entry<String, String> next() {
+            if (nextOrdinal < values.length) {
+                final AGIField field = AGIField.forOrdinal(nextOrdinal);
+                nextOrdinal = nextOrdinal(nextOrdinal + 1);
+                return new SimpleImmutableEntry<String, String>(field.getKey(), values[field.ordinal()]);
+            } else if (additionalFieldsIterator.hasNext()) {
+                return additionalFieldsIterator.next();
+            } else {
+                throw new NoSuchElementException();
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private int nextOrdinal(final int from) {
+            int ordinal = from;
+            while (ordinal < values.length && values[ordinal] == null) {
+                ordinal++;
+            }
+            return ordinal;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.forte.client.agi;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+import com.google.common.base.Charsets;
+
+// Incremental parser of an AGI response, fed with the bytes as they are read from the network.
+// Keys are matched against the AGIField keys as bytes, only values are decoded.
+final class AGIResponseParser {
+
+    private static final byte[] ENDOFDATA_BYTES = AGIProtocol.ENDOFDATA.getBytes(Charsets.ISO_8859_1);
+
+    private final AGIResponse response = new AGIResponse();
+
+    private byte[] line = new byte[128];
+    private int lineLength;
+    private boolean complete;
+
+    // Returns true once the endofdata line has been parsed (remaining bytes are ignored)
+    boolean consume(final byte[] bytes, final int offset, final int length) throws ProtocolException {
+        for (int i = offset; i < offset + length && !complete; i++) {
+            consume(bytes[i]);
+        }
+        return complete;
+    }
+
+    boolean consume(final ByteBuffer buffer) throws ProtocolException {
+        while (buffer.hasRemaining() && !complete) {
+            consume(buffer.get());
+        }
+        return complete;
+    }
+
+    boolean isComplete() {
+        return complete;
+    }
+
+    // On end of stream, the response read so far (including a last line without a line feed)
+    AGIResponse finish() throws ProtocolException {
+        if (!complete) {
+            endOfLine();
+            complete = true;
+        }
+        return response;
+    }
+
+    AGIResponse getResponse() {
+        return response;
+    }
+
+    private void consume(final byte b) throws ProtocolException {
+        if (b == '\n') {
+            endOfLine();
+        } else if (b != '\r') {
+            if (lineLength == line.length) {
+                final byte[] larger = new byte[2 * line.length];
+                System.arraycopy(line, 0, larger, 0, lineLength);
+                line = larger;
+            }
+            line[lineLength++] = b;
+        }
+    }
+
+    private void endOfLine() throws ProtocolException {
+        final int length = lineLength;
+        lineLength = 0;
+
+        if (length == 0) {
+            return;
+        } else if (isEndOfData(length)) {
+            complete = true;
+            return;
+        }
+
+        int equalPos = 0;
+        while (equalPos < length && line[equalPos] != '=') {
+            equalPos++;
+        }
+        if (equalPos == length) {
+            throw new ProtocolException("Malformed AGI response line (no '=')");
+        }
+
+        final String value = new String(line, equalPos + 1, length - equalPos - 1, Charsets.ISO_8859_1);
+        final AGIField field = AGIField.forKey(line, 0, equalPos);
+        if (field != null) {
+            response.set(field, value);
+        } else {
+            response.setAdditionalField(new String(line, 0, equalPos, Charsets.ISO_8859_1), value);
+        }
+    }
+
+    private boolean isEndOfData(final int length) {
+        if (length != ENDOFDATA_BYTES.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (line[i] != ENDOFDATA_BYTES[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.forte.client.agi;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.security.GeneralSecurityException;
+import java.security.Provider;
+import java.security.Security;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+// Owns the SSLContext used for AGI connections, so that its client session cache (keyed by host:port) lets
+// subsequent connections to the same gateway resume the TLS session instead of doing a full handshake
+public class AGISocketFactory {
+
+    private final SSLContext sslContext;
+    private final SSLSocketFactory factory;
+    private final AGITLSPolicy tlsPolicy;
+    private final int connectTimeoutMillis;
+    private final AtomicLong fullHandshakes = new AtomicLong();
+    private final AtomicLong resumedHandshakes = new AtomicLong();
+
+    // connectTimeoutMillis bounds both the TCP connection and the TLS handshake (zero means no timeout)
+    public AGISocketFactory(final SSLContext sslContext,
+                            final AGITLSPolicy tlsPolicy,
+                            final int sessionCacheSize,
+                            final int sessionTimeoutSeconds,
+                            final int connectTimeoutMillis) {
+        tlsPolicy.validate(sslContext);
+
+        final SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+        sessionContext.setSessionCacheSize(sessionCacheSize);
+        sessionContext.setSessionTimeout(sessionTimeoutSeconds);
+
+        this.sslContext = sslContext;
+        this.factory = sslContext.getSocketFactory();
+        this.tlsPolicy = tlsPolicy;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    public static SSLContext createDefaultSSLContext() {
+        return createSSLContext(null);
+    }
+
+    // provider is either the name of a registered JSSE provider, or the class name of a provider shipped with the plugin
+    // (instantiated from the plugin class loader, without being registered JVM-wide)
+    public static SSLContext createSSLContext(@Nullable final String provider) {
+        try {
+            final SSLContext sslContext;
+            if (provider == null) {
+                sslContext = SSLContext.getInstance("TLS");
+            } else if (Security.getProvider(provider) != null) {
+                sslContext = SSLContext.getInstance("TLS", provider);
+            } else {
+                sslContext = SSLContext.getInstance("TLS", (Provider) Class.forName(provider).newInstance());
+            }
+            // Default key and trust managers
+            sslContext.init(null, null, null);
+            return sslContext;
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        } catch (final ClassNotFoundException e) {
+            throw new IllegalStateException("Unknown JSSE provider " + provider, e);
+        } catch (final InstantiationException e) {
+            throw new IllegalStateException(e);
+        } catch (final IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // The address should keep the host name it was resolved from, to find the cached session
+    public SSLSocket createSocket(final InetSocketAddress address) throws IOException {
+        final SSLSocket socket = (SSLSocket) factory.createSocket();
+        try {
+            socket.connect(address, connectTimeoutMillis);
+            socket.setSoTimeout(connectTimeoutMillis);
+            tlsPolicy.apply(socket);
+
+            // Handshake eagerly to find out whether the cached session was resumed
+            final long handshakeStartMillis = System.currentTimeMillis();
+            socket.startHandshake();
+            recordHandshake(socket.getSession(), handshakeStartMillis);
+        } catch (final IOException e) {
+            closeQuietly(socket);
+            throw e;
+        }
+        return socket;
+    }
+
+    // For the NIO transport: same session cache (the peer host and port are the resumption key) and same TLS policy
+    public SSLEngine createSSLEngine(final String host, final int port) {
+        final SSLEngine engine = sslContext.createSSLEngine(host, port);
+        engine.setUseClientMode(true);
+        tlsPolicy.apply(engine);
+        return engine;
+    }
+
+    int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    public long getFullHandshakes() {
+        return fullHandshakes.get();
+    }
+
+    public long getResumedHandshakes() {
+        return resumedHandshakes.get();
+    }
+
+    void recordHandshake(final SSLSession session, final long handshakeStartMillis) {
+        // A resumed session keeps the creation time of the handshake which established it
+        if (session.getCreationTime() < handshakeStartMillis) {
+            resumedHandshakes.incrementAndGet();
+        } else {
+            fullHandshakes.incrementAndGet();
+        }
+    }
+
+    private static void closeQuietly(final SSLSocket socket) {
+        try {
+            socket.close();
+        } catch (final IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.client.agi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+
+// Protocols and cipher suites enabled on the AGI connections: allow-lists in order of preference, restricted to what the JSSE
+// provider supports. The defaults prefer TLS 1.3 and the (EC)DHE AEAD suites (AES-GCM, ChaCha20-Poly1305), which have forward
+// secrecy. The static RSA key exchange suites after them don't, and are only kept, with a few CBC suites last, for gateways
+// which wouldn't negotiate anything else.
+public class AGITLSPolicy {
+
+    // Keeps the protocols or cipher suites enabled by default by the JSSE provider
+    public static final String PROVIDER_DEFAULTS = "default";
+
+    public static final List<String> DEFAULT_PROTOCOLS = ImmutableList.<String>of("TLSv1.3", "TLSv1.2");
+    public static final List<String> DEFAULT_CIPHER_SUITES = ImmutableList.<String>of("TLS_AES_128_GCM_SHA256",
+                                                                                      "TLS_AES_256_GCM_SHA384",
+                                                                                      "TLS_CHACHA20_POLY1305_SHA256",
+                                                                                      "TLS_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256",
+                                                                                      "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256",
+                                                                                      "TLS_ECDHE_ECDSA_WITH_AES_256_GCM_SHA384",
+                                                                                      "TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384",
+                                                                                      "TLS_ECDHE_ECDSA_WITH_CHACHA20_POLY1305_SHA256",
+                                                                                      "TLS_ECDHE_RSA_WITH_CHACHA20_POLY1305_SHA256",
+                                                                                      "TLS_DHE_RSA_WITH_AES_128_GCM_SHA256",
+                                                                                      "TLS_DHE_RSA_WITH_AES_256_GCM_SHA384",
+                                                                                      "TLS_RSA_WITH_AES_128_GCM_SHA256",
+                                                                                      "TLS_RSA_WITH_AES_256_GCM_SHA384",
+                                                                                      "TLS_ECDHE_RSA_WITH_AES_128_CBC_SHA256",
+                                                                                      "TLS_ECDHE_RSA_WITH_AES_128_CBC_SHA",
+                                                                                      "TLS_RSA_WITH_AES_128_CBC_SHA256",
+                                                                                      "TLS_RSA_WITH_AES_128_CBC_SHA");
+
+    // null keeps the provider defaults
+    private final List<String> protocols;
+    private final List<String> cipherSuites;
+    // Only the built-in allow-lists fall back to the provider defaults when the provider supports none of their values
+    private final boolean defaultProtocols;
+    private final boolean defaultCipherSuites;
+
+    // Computed once: the sockets and engines of a factory all come from the same SSLContext
+    private volatile String[] enabledProtocols;
+    private volatile String[] enabledCipherSuites;
+
+    public AGITLSPolicy(@Nullable final List<String> protocols, @Nullable final List<String> cipherSuites) {
+        this(protocols, false, cipherSuites, false);
+    }
+
+    private AGITLSPolicy(@Nullable final List<String> protocols,
+                         final boolean defaultProtocols,
+                         @Nullable final List<String> cipherSuites,
+                         final boolean defaultCipherSuites) {
+        this.protocols = protocols;
+        this.cipherSuites = cipherSuites;
+        this.defaultProtocols = defaultProtocols;
+        this.defaultCipherSuites = defaultCipherSuites;
+    }
+
+    // Comma separated lists, PROVIDER_DEFAULTS, or null for the default allow-lists
+    public static AGITLSPolicy parse(@Nullable final String protocols, @Nullable final String cipherSuites) {
+        return new AGITLSPolicy(parse(protocols, DEFAULT_PROTOCOLS),
+                                protocols == null,
+                                parse(cipherSuites, DEFAULT_CIPHER_SUITES),
+                                cipherSuites == null);
+    }
+
+    // Fails fast (IllegalArgumentException) when the provider of the context supports none of the values of an explicit allow-list
+    public void validate(final SSLContext sslContext) {
+        final SSLParameters supported = sslContext.getSupportedSSLParameters();
+        final SSLParameters providerDefaults = sslContext.getDefaultSSLParameters();
+        if (protocols != null) {
+            getEnabledProtocols(supported.getProtocols(), providerDefaults.getProtocols());
+        }
+        if (cipherSuites != null) {
+            getEnabledCipherSuites(supported.getCipherSuites(), providerDefaults.getCipherSuites());
+        }
+    }
+
+    public void apply(final SSLSocket socket) {
+        if (protocols != null) {
+            socket.setEnabledProtocols(getEnabledProtocols(socket.getSupportedProtocols(), socket.getEnabledProtocols()));
+        }
+        if (cipherSuites != null) {
+            socket.setEnabledCipherSuites(getEnabledCipherSuites(socket.getSupportedCipherSuites(), socket.getEnabledCipherSuites()));
+        }
+    }
+
+    public void apply(final SSLEngine engine) {
+        if (protocols != null) {
+            engine.setEnabledProtocols(getEnabledProtocols(engine.getSupportedProtocols(), engine.getEnabledProtocols()));
+        }
+        if (cipherSuites != null) {
+            engine.setEnabledCipherSuites(getEnabledCipherSuites(engine.getSupportedCipherSuites(), engine.getEnabledCipherSuites()));
+        }
+    }
+
+    private String[] getEnabledProtocols(final String[] supported, final String[] providerDefaults) {
+        String[] enabled = enabledProtocols;
+        if (enabled == null) {
+            enabled = allowed("TLS protocols", protocols, defaultProtocols, supported, providerDefaults);
+            enabledProtocols = enabled;
+        }
+        return enabled;
+    }
+
+    private String[] getEnabledCipherSuites(final String[] supported, final String[] providerDefaults) {
+        String[] enabled = enabledCipherSuites;
+        if (enabled == null) {
+            enabled = allowed("cipher suites", cipherSuites, defaultCipherSuites, supported, providerDefaults);
+            enabledCipherSuites = enabled;
+        }
+        return enabled;
+    }
+
+    // Supported values of the allow-list, in its order. The provider defaults are kept when none of the built-in allow-list is supported.
+    private static String[] allowed(final String name,
+                                    final List<String> allowList,
+                                    final boolean defaultAllowList,
+                                    final String[] supported,
+                                    final String[] providerDefaults) {
+        final Set<String> supportedSet = new HashSet<String>(Arrays.asList(supported));
+        final List<String> allowed = new ArrayList<String>(allowList.size());
+        for (final String value : allowList) {
+            if (supportedSet.contains(value)) {
+                allowed.add(value);
+            }
+        }
+        if (!allowed.isEmpty()) {
+            return allowed.toArray(new String[allowed.size()]);
+        } else if (defaultAllowList) {
+            return providerDefaults;
+        } else {
+            throw new IllegalArgumentException("None of the " + name + " " + allowList + " is supported by the JSSE provider");
+        }
+    }
+
+    private static List<String> parse(@Nullable final String values, final List<String> defaultValues) {
+        if (values == null) {
+            return defaultValues;
+        } else if (PROVIDER_DEFAULTS.equals(values.trim())) {
+            return null;
+        } else {
+            return ImmutableList.<String>copyOf(Splitter.on(',').trimResults().omitEmptyStrings().split(values));
+        }
+    }
+}
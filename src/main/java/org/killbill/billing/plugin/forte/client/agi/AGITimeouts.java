@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.forte.client.agi;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+
+import com.google.common.collect.ImmutableMap;
+
+// Timeout budgets of the AGI exchanges, by transaction type. When adaptive, the timeout of a transaction type shrinks
+// to a multiple of its recently observed p99 latency (never above the configured budget), so that a degraded gateway
+// fails calls quickly instead of holding payment threads for the whole budget.
+public class AGITimeouts {
+
+    private static final int LATENCY_WINDOW_SIZE = 256;
+    private static final int MIN_LATENCY_SAMPLES = 64;
+    private static final int P99_MULTIPLIER = 4;
+    private static final long MIN_ADAPTIVE_TIMEOUT_MILLIS = 2000;
+
+    private final long defaultTimeoutMillis;
+    private final Map<String, Long> timeoutsMillis;
+    private final boolean adaptive;
+    private final ConcurrentMap<String, LatencyWindow> latencies = new ConcurrentHashMap<String, LatencyWindow>();
+
+    public AGITimeouts(final long defaultTimeoutMillis, final Map<String, Long> timeoutsMillisByTransactionType, final boolean adaptive) {
+        this.defaultTimeoutMillis = defaultTimeoutMillis;
+        this.timeoutsMillis = ImmutableMap.<String, Long>copyOf(timeoutsMillisByTransactionType);
+        this.adaptive = adaptive;
+    }
+
+    // Configured budget
+    public long getBudgetMillis(@Nullable final String transactionType) {
+        final Long timeoutMillis = transactionType == null ? null : timeoutsMillis.get(transactionType);
+        return timeoutMillis == null ? defaultTimeoutMillis : timeoutMillis;
+    }
+
+    // Longest configured budget, all transaction types (zero or less when one of them has no timeout)
+    public long getMaxBudgetMillis() {
+        long maxBudgetMillis = defaultTimeoutMillis;
+        for (final long timeoutMillis : timeoutsMillis.values()) {
+            if (timeoutMillis <= 0 || maxBudgetMillis <= 0) {
+                return 0;
+            }
+            maxBudgetMillis = Math.max(maxBudgetMillis, timeoutMillis);
+        }
+        return maxBudgetMillis;
+    }
+
+    // Timeout to use for the next exchange
+    public long getTimeoutMillis(@Nullable final String transactionType) {
+        final long budgetMillis = getBudgetMillis(transactionType);
+        if (!adaptive || transactionType == null || budgetMillis <= 0) {
+            return budgetMillis;
+        }
+
+        final LatencyWindow latencyWindow = latencies.get(transactionType);
+        if (latencyWindow == null || latencyWindow.getP99Millis() < 0) {
+            return budgetMillis;
+        }
+        return Math.min(budgetMillis, Math.max(MIN_ADAPTIVE_TIMEOUT_MILLIS, P99_MULTIPLIER * latencyWindow.getP99Millis()));
+    }
+
+    // Timed out exchanges should be recorded too (with the timeout as latency), for the timeout to grow back
+    public void recordLatency(@Nullable final String transactionType, final long latencyMillis) {
+        if (!adaptive || transactionType == null) {
+            return;
+        }
+
+        LatencyWindow latencyWindow = latencies.get(transactionType);
+        if (latencyWindow == null) {
+            latencies.putIfAbsent(transactionType, new LatencyWindow());
+            latencyWindow = latencies.get(transactionType);
+        }
+        latencyWindow.record(latencyMillis);
+    }
+
+    // Last LATENCY_WINDOW_SIZE latencies, the p99 being recomputed every few samples
+    private static final class LatencyWindow {
+
+        private static final int P99_REFRESH_INTERVAL = 16;
+
+        private final long[] latenciesMillis = new long[LATENCY_WINDOW_SIZE];
+        private int samples;
+
+        private volatile long p99Millis = -1;
+
+        private long getP99Millis() {
+            return p99Millis;
+        }
+
+        private synchronized void record(final long latencyMillis) {
+            latenciesMillis[samples % LATENCY_WINDOW_SIZE] = latencyMillis;
+            samples++;
+
+            if (samples >= MIN_LATENCY_SAMPLES && samples % P99_REFRESH_INTERVAL == 0) {
+                final long[] sortedLatenciesMillis = Arrays.copyOf(latenciesMillis, Math.min(samples, LATENCY_WINDOW_SIZE));
+                Arrays.sort(sortedLatenciesMillis);
+                p99Millis = sortedLatenciesMillis[(sortedLatenciesMillis.length * 99) / 100];
+            }
+            if (samples == 2 * LATENCY_WINDOW_SIZE) {
+                // Keep the index from overflowing, the window stays full
+                samples = LATENCY_WINDOW_SIZE;
+            }
+        }
+    }
+}
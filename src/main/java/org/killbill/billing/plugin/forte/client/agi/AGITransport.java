@@ -0,0 +1,32 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.forte.client.agi;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+// One AGI exchange: send the request over a fresh TLS connection and read the response until endofdata.
+// The transport releases the request buffer once it has been written.
+public interface AGITransport extends Closeable {
+
+    public AGIResponse sendAndReceiveData(AGIRequest request) throws IOException;
+
+    // Failures (IOException) are reported through the future
+    public ListenableFuture<AGIResponse> sendAndReceiveDataAsync(AGIRequest request);
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.forte.client.ws;
+
+import java.util.concurrent.Future;
+
+import javax.xml.ws.AsyncHandler;
+
+import https.ws_paymentsgateway_net.v1.Authentication;
+import https.ws_paymentsgateway_net.v1.ClientRecord;
+import https.ws_paymentsgateway_net.v1.CreateClientResponse;
+import https.ws_paymentsgateway_net.v1.CreatePaymentMethodResponse;
+import https.ws_paymentsgateway_net.v1.DeletePaymentMethodResponse;
+import https.ws_paymentsgateway_net.v1.PaymentMethod;
+
+// The IClientService operations the plugin calls, the only ones both transports implement (same signatures and exceptions).
+// The other operations need the CXF proxy, see ForteWSProxies#getProxy.
+public interface ClientOperations {
+
+    public int createClient(Authentication ticket, ClientRecord client);
+
+    public Future<?> createClientAsync(Authentication ticket, ClientRecord client, AsyncHandler<CreateClientResponse> asyncHandler);
+
+    public int createPaymentMethod(Authentication ticket, PaymentMethod payment);
+
+    public Future<?> createPaymentMethodAsync(Authentication ticket, PaymentMethod payment, AsyncHandler<CreatePaymentMethodResponse> asyncHandler);
+
+    public int deletePaymentMethod(Authentication ticket, int merchantID, int paymentMethodID);
+
+    public Future<?> deletePaymentMethodAsync(Authentication ticket, int merchantID, int paymentMethodID, AsyncHandler<DeletePaymentMethodResponse> asyncHandler);
+}
@@ -16,12 +16,33 @@
 
 package org.killbill.billing.plugin.forte.client.ws;
 
+import java.io.PrintWriter;
+import java.util.logging.Logger;
+
+import org.apache.cxf.interceptor.Fault;
+import org.apache.cxf.message.Message;
+
+import com.google.common.io.CharStreams;
+
+import static org.killbill.billing.plugin.forte.client.ForteWireLog.WIRE_LOG;
+
+// Messages are only buffered when the wire log is enabled, and masked by its writer
 public class LoggingOutInterceptor extends org.apache.cxf.interceptor.LoggingOutInterceptor {
 
+    public LoggingOutInterceptor() {
+        // Never written to (see log): CXF then logs regardless of the level of its own loggers
+        super(new PrintWriter(CharStreams.nullWriter()));
+    }
+
+    @Override
+    public void handleMessage(final Message message) throws Fault {
+        if (WIRE_LOG.isEnabled()) {
+            super.handleMessage(message);
+        }
+    }
+
     @Override
-    protected String transform(final String originalLogString) {
-        return originalLogString.replaceAll("cvc>[0-9]+</", "cvc>***</")
-                                .replaceAll("CcCardNumber>[0-9]+</", "CcCardNumber>***</")
-                                .replaceAll("EcAccountNumber>[0-9]+</", "EcAccountNumber>***</");
+    protected void log(final Logger logger, final String message) {
+        WIRE_LOG.log("Web Services", message);
     }
 }
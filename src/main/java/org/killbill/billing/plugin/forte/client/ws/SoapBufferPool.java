@@ -0,0 +1,97 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.client.ws;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Request buffers of the StAX transport (an envelope rarely exceeds 2KB, larger buffers are left to the garbage collector).
+// Buffers are wiped (card and account numbers) before going back to the pool.
+class SoapBufferPool {
+
+    private static final int BUFFER_SIZE = 2048;
+    private static final int MAX_POOLED_BUFFER_SIZE = 4 * BUFFER_SIZE;
+    private static final int MAX_POOLED_BUFFERS = 64;
+
+    private final BlockingQueue<byte[]> buffers = new ArrayBlockingQueue<byte[]>(MAX_POOLED_BUFFERS);
+
+    SoapBuffer acquire() {
+        final byte[] buffer = buffers.poll();
+        return new SoapBuffer(buffer == null ? new byte[BUFFER_SIZE] : buffer);
+    }
+
+    private void release(final byte[] buffer, final int length) {
+        Arrays.fill(buffer, 0, length, (byte) 0);
+        if (buffer.length <= MAX_POOLED_BUFFER_SIZE) {
+            buffers.offer(buffer);
+        }
+    }
+
+    // Not thread safe: written by one thread, then sent
+    class SoapBuffer extends OutputStream {
+
+        private byte[] buffer;
+        private int length;
+
+        private SoapBuffer(final byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(final int b) {
+            ensureCapacity(1);
+            buffer[length++] = (byte) b;
+        }
+
+        @Override
+        public void write(final byte[] bytes, final int offset, final int len) {
+            ensureCapacity(len);
+            System.arraycopy(bytes, offset, buffer, length, len);
+            length += len;
+        }
+
+        byte[] getBuffer() {
+            return buffer;
+        }
+
+        int getLength() {
+            return length;
+        }
+
+        void release() {
+            if (buffer == null) {
+                return;
+            }
+
+            SoapBufferPool.this.release(buffer, length);
+            buffer = null;
+            length = 0;
+        }
+
+        private void ensureCapacity(final int extraLength) {
+            if (length + extraLength > buffer.length) {
+                final byte[] larger = new byte[Math.max(buffer.length * 2, length + extraLength)];
+                System.arraycopy(buffer, 0, larger, 0, length);
+                Arrays.fill(buffer, 0, length, (byte) 0);
+                buffer = larger;
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.client.ws;
+
+import javax.annotation.Nullable;
+import javax.xml.namespace.QName;
+import javax.xml.soap.SOAPConstants;
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPFactory;
+import javax.xml.soap.SOAPFault;
+import javax.xml.ws.soap.SOAPFaultException;
+
+// SOAP faults which didn't go through the JAX-WS exception mapping (asynchronous CXF calls, StAX transport)
+public final class SoapFaults {
+
+    private SoapFaults() {}
+
+    public static SOAPFaultException newSOAPFaultException(@Nullable final String reason, @Nullable final QName faultCode) {
+        try {
+            final SOAPFactory soapFactory = SOAPFactory.newInstance(SOAPConstants.SOAP_1_2_PROTOCOL);
+            SOAPFault soapFault;
+            try {
+                soapFault = soapFactory.createFault(String.valueOf(reason), faultCode == null ? SOAPConstants.SOAP_RECEIVER_FAULT : faultCode);
+            } catch (final SOAPException e) {
+                // Not a SOAP 1.2 fault code
+                soapFault = soapFactory.createFault(String.valueOf(reason), SOAPConstants.SOAP_RECEIVER_FAULT);
+            }
+            return new SOAPFaultException(soapFault);
+        } catch (final SOAPException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
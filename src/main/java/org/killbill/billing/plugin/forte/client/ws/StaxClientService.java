@@ -0,0 +1,251 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.client.ws;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.ws.AsyncHandler;
+import javax.xml.ws.Response;
+import javax.xml.ws.WebServiceException;
+
+import org.apache.http.client.config.RequestConfig;
+import org.killbill.billing.plugin.forte.client.ws.StaxTransport.BodyWriter;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.ForwardingListenableFuture.SimpleForwardingListenableFuture;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import https.ws_paymentsgateway_net.v1.Authentication;
+import https.ws_paymentsgateway_net.v1.ClientRecord;
+import https.ws_paymentsgateway_net.v1.CreateClientResponse;
+import https.ws_paymentsgateway_net.v1.CreatePaymentMethodResponse;
+import https.ws_paymentsgateway_net.v1.DeletePaymentMethodResponse;
+import https.ws_paymentsgateway_net.v1.PaymentMethod;
+
+// ClientOperations over the StAX transport, for one endpoint and timeouts (thread safe): elements follow the Client.wsdl
+// sequences, unset (nillable) ones are omitted.
+public class StaxClientService implements ClientOperations {
+
+    private final StaxTransport transport;
+    private final String url;
+    private final RequestConfig requestConfig;
+
+    StaxClientService(final StaxTransport transport, final String url, final RequestConfig requestConfig) {
+        this.transport = transport;
+        this.url = url;
+        this.requestConfig = requestConfig;
+    }
+
+    @Override
+    public int createClient(final Authentication ticket, final ClientRecord client) {
+        return await(createClient0(ticket, client));
+    }
+
+    private ListenableResponse<CreateClientResponse> createClientAsync(final Authentication ticket, final ClientRecord client) {
+        return toResponse(createClient0(ticket, client), new Function<Integer, CreateClientResponse>() {
+            @Override
+            public CreateClientResponse apply(final Integer result) {
+                final CreateClientResponse response = new CreateClientResponse();
+                response.setCreateClientResult(result);
+                return response;
+            }
+        });
+    }
+
+    @Override
+    public Future<?> createClientAsync(final Authentication ticket, final ClientRecord client, final AsyncHandler<CreateClientResponse> asyncHandler) {
+        return notify(createClientAsync(ticket, client), asyncHandler);
+    }
+
+    @Override
+    public int createPaymentMethod(final Authentication ticket, final PaymentMethod payment) {
+        return await(createPaymentMethod0(ticket, payment));
+    }
+
+    private ListenableResponse<CreatePaymentMethodResponse> createPaymentMethodAsync(final Authentication ticket, final PaymentMethod payment) {
+        return toResponse(createPaymentMethod0(ticket, payment), new Function<Integer, CreatePaymentMethodResponse>() {
+            @Override
+            public CreatePaymentMethodResponse apply(final Integer result) {
+                final CreatePaymentMethodResponse response = new CreatePaymentMethodResponse();
+                response.setCreatePaymentMethodResult(result);
+                return response;
+            }
+        });
+    }
+
+    @Override
+    public Future<?> createPaymentMethodAsync(final Authentication ticket, final PaymentMethod payment, final AsyncHandler<CreatePaymentMethodResponse> asyncHandler) {
+        return notify(createPaymentMethodAsync(ticket, payment), asyncHandler);
+    }
+
+    @Override
+    public int deletePaymentMethod(final Authentication ticket, final int merchantID, final int paymentMethodID) {
+        return await(deletePaymentMethod0(ticket, merchantID, paymentMethodID));
+    }
+
+    private ListenableResponse<DeletePaymentMethodResponse> deletePaymentMethodAsync(final Authentication ticket, final int merchantID, final int paymentMethodID) {
+        return toResponse(deletePaymentMethod0(ticket, merchantID, paymentMethodID), new Function<Integer, DeletePaymentMethodResponse>() {
+            @Override
+            public DeletePaymentMethodResponse apply(final Integer result) {
+                final DeletePaymentMethodResponse response = new DeletePaymentMethodResponse();
+                response.setDeletePaymentMethodResult(result);
+                return response;
+            }
+        });
+    }
+
+    @Override
+    public Future<?> deletePaymentMethodAsync(final Authentication ticket, final int merchantID, final int paymentMethodID, final AsyncHandler<DeletePaymentMethodResponse> asyncHandler) {
+        return notify(deletePaymentMethodAsync(ticket, merchantID, paymentMethodID), asyncHandler);
+    }
+
+    private ListenableFuture<Integer> createClient0(final Authentication ticket, final ClientRecord client) {
+        return transport.call(url, requestConfig, "createClient", new BodyWriter() {
+            @Override
+            public void write(final XMLStreamWriter writer) throws XMLStreamException {
+                writeTicket(writer, ticket);
+                writer.writeStartElement("client");
+                writeElement(writer, "MerchantID", client.getMerchantID());
+                writeElement(writer, "ClientID", client.getClientID());
+                writeElement(writer, "FirstName", client.getFirstName());
+                writeElement(writer, "LastName", client.getLastName());
+                writeElement(writer, "CompanyName", client.getCompanyName());
+                writeElement(writer, "Address1", client.getAddress1());
+                writeElement(writer, "Address2", client.getAddress2());
+                writeElement(writer, "City", client.getCity());
+                writeElement(writer, "State", client.getState());
+                writeElement(writer, "PostalCode", client.getPostalCode());
+                writeElement(writer, "CountryCode", client.getCountryCode());
+                writeElement(writer, "PhoneNumber", client.getPhoneNumber());
+                writeElement(writer, "FaxNumber", client.getFaxNumber());
+                writeElement(writer, "EmailAddress", client.getEmailAddress());
+                writeElement(writer, "ShiptoFirstName", client.getShiptoFirstName());
+                writeElement(writer, "ShiptoLastName", client.getShiptoLastName());
+                writeElement(writer, "ShiptoCompanyName", client.getShiptoCompanyName());
+                writeElement(writer, "ShiptoAddress1", client.getShiptoAddress1());
+                writeElement(writer, "ShiptoAddress2", client.getShiptoAddress2());
+                writeElement(writer, "ShiptoCity", client.getShiptoCity());
+                writeElement(writer, "ShiptoState", client.getShiptoState());
+                writeElement(writer, "ShiptoPostalCode", client.getShiptoPostalCode());
+                writeElement(writer, "ShiptoCountryCode", client.getShiptoCountryCode());
+                writeElement(writer, "ShiptoPhoneNumber", client.getShiptoPhoneNumber());
+                writeElement(writer, "ShiptoFaxNumber", client.getShiptoFaxNumber());
+                writeElement(writer, "ConsumerID", client.getConsumerID());
+                writeElement(writer, "Status", client.getStatus() == null ? null : client.getStatus().value());
+                writer.writeEndElement();
+            }
+        });
+    }
+
+    private ListenableFuture<Integer> createPaymentMethod0(final Authentication ticket, final PaymentMethod payment) {
+        return transport.call(url, requestConfig, "createPaymentMethod", new BodyWriter() {
+            @Override
+            public void write(final XMLStreamWriter writer) throws XMLStreamException {
+                writeTicket(writer, ticket);
+                writer.writeStartElement("payment");
+                writeElement(writer, "MerchantID", payment.getMerchantID());
+                writeElement(writer, "ClientID", payment.getClientID());
+                writeElement(writer, "PaymentMethodID", payment.getPaymentMethodID());
+                writeElement(writer, "AcctHolderName", payment.getAcctHolderName());
+                writeElement(writer, "CcCardNumber", payment.getCcCardNumber());
+                writeElement(writer, "CcExpirationDate", payment.getCcExpirationDate());
+                writeElement(writer, "CcCardType", payment.getCcCardType() == null ? null : payment.getCcCardType().value());
+                writeElement(writer, "CcProcurementCard", payment.isCcProcurementCard());
+                writeElement(writer, "EcAccountNumber", payment.getEcAccountNumber());
+                writeElement(writer, "EcAccountTRN", payment.getEcAccountTRN());
+                writeElement(writer, "EcAccountType", payment.getEcAccountType() == null ? null : payment.getEcAccountType().value());
+                writeElement(writer, "Note", payment.getNote());
+                writeElement(writer, "IsDefault", payment.isIsDefault());
+                writer.writeEndElement();
+            }
+        });
+    }
+
+    private ListenableFuture<Integer> deletePaymentMethod0(final Authentication ticket, final int merchantID, final int paymentMethodID) {
+        return transport.call(url, requestConfig, "deletePaymentMethod", new BodyWriter() {
+            @Override
+            public void write(final XMLStreamWriter writer) throws XMLStreamException {
+                writeTicket(writer, ticket);
+                writeElement(writer, "MerchantID", merchantID);
+                writeElement(writer, "PaymentMethodID", paymentMethodID);
+            }
+        });
+    }
+
+    // Children inherit the service namespace, declared as default on the operation element
+    private static void writeTicket(final XMLStreamWriter writer, final Authentication ticket) throws XMLStreamException {
+        writer.writeStartElement("ticket");
+        writeElement(writer, "APILoginID", ticket.getAPILoginID());
+        writeElement(writer, "TSHash", ticket.getTSHash());
+        writeElement(writer, "UTCTime", ticket.getUTCTime());
+        writer.writeEndElement();
+    }
+
+    private static void writeElement(final XMLStreamWriter writer, final String name, @Nullable final Object value) throws XMLStreamException {
+        if (value == null) {
+            return;
+        }
+        writer.writeStartElement(name);
+        writer.writeCharacters(value.toString());
+        writer.writeEndElement();
+    }
+
+    // Same exceptions as the CXF proxies: SOAPFaultException or another WebServiceException
+    private static int await(final ListenableFuture<Integer> result) throws WebServiceException {
+        try {
+            // Bounded by the request timeouts
+            return Uninterruptibles.getUninterruptibly(result);
+        } catch (final ExecutionException e) {
+            throw e.getCause() instanceof WebServiceException ? (WebServiceException) e.getCause() : new WebServiceException(e.getCause());
+        }
+    }
+
+    private static <T> ListenableResponse<T> toResponse(final ListenableFuture<Integer> result, final Function<Integer, T> toResponse) {
+        return new ListenableResponse<T>(Futures.transform(result, toResponse));
+    }
+
+    private <T> Future<?> notify(final ListenableResponse<T> response, final AsyncHandler<T> asyncHandler) {
+        response.addListener(new Runnable() {
+            @Override
+            public void run() {
+                asyncHandler.handleResponse(response);
+            }
+        }, transport.getCallbackExecutor());
+        return response;
+    }
+
+    private static final class ListenableResponse<T> extends SimpleForwardingListenableFuture<T> implements Response<T> {
+
+        private ListenableResponse(final ListenableFuture<T> delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public Map<String, Object> getContext() {
+            return Collections.<String, Object>emptyMap();
+        }
+    }
+}
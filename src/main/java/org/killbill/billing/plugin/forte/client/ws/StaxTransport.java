@@ -0,0 +1,315 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.client.ws;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+import javax.annotation.Nullable;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.ws.WebServiceException;
+
+import org.apache.http.Consts;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.util.EntityUtils;
+import org.killbill.billing.plugin.forte.client.ForteExecutors;
+import org.killbill.billing.plugin.forte.client.ws.SoapBufferPool.SoapBuffer;
+
+import com.google.common.base.Charsets;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import static org.killbill.billing.plugin.forte.client.ForteWireLog.WIRE_LOG;
+
+// Alternative to the CXF proxies for the few operations the plugin calls (see StaxClientService): SOAP 1.2 envelopes
+// (with the WS-Addressing headers Client.wsdl requires) are written with StAX into pooled buffers, and sent over a
+// pooled asynchronous HTTP client shared by all tenants. There is no bus nor WSDL model to set up, and responses are
+// only scanned for the operation result or the SOAP fault.
+public class StaxTransport implements Closeable {
+
+    static final String SERVICE_NS = "https://ws.paymentsgateway.net/v1";
+
+    private static final String SOAP_NS = "http://www.w3.org/2003/05/soap-envelope";
+    private static final String WSA_NS = "http://www.w3.org/2005/08/addressing";
+    private static final String WSA_ANONYMOUS = WSA_NS + "/anonymous";
+    private static final String ACTION_BASE = SERVICE_NS + "/IClientService/";
+    private static final ContentType SOAP_CONTENT_TYPE = ContentType.create("application/soap+xml", Consts.UTF_8);
+
+    // Writes the children of the operation element (in the service namespace)
+    interface BodyWriter {
+
+        void write(XMLStreamWriter writer) throws XMLStreamException;
+    }
+
+    private final SoapBufferPool buffers = new SoapBufferPool();
+    private final XMLOutputFactory outputFactory;
+    private final XMLInputFactory inputFactory;
+    private final CloseableHttpAsyncClient httpClient;
+    // Asynchronous handlers run there, not on the I/O threads
+    private final ExecutorService callbackExecutor = ForteExecutors.newGatewayExecutor("forte-ws-callbacks", 0, false);
+
+    public StaxTransport(final int maxConnections, final int ioThreads, @Nullable final TrustManager[] trustManagers) {
+        // Make sure to set the context class loader (StAX implementation lookup)
+        final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(this.getClass().getClassLoader());
+        try {
+            this.outputFactory = XMLOutputFactory.newInstance();
+            this.inputFactory = XMLInputFactory.newInstance();
+        } finally {
+            Thread.currentThread().setContextClassLoader(contextClassLoader);
+        }
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        final HttpAsyncClientBuilder builder = HttpAsyncClients.custom()
+                                                               .setMaxConnTotal(maxConnections)
+                                                               .setMaxConnPerRoute(maxConnections)
+                                                               .setDefaultIOReactorConfig(IOReactorConfig.custom()
+                                                                                                         .setIoThreadCount(ioThreads)
+                                                                                                         .setSoKeepAlive(true)
+                                                                                                         .build())
+                                                               .setThreadFactory(new ThreadFactoryBuilder().setNameFormat("forte-ws-io-%d")
+                                                                                                           .setDaemon(true)
+                                                                                                           .build())
+                                                               .disableCookieManagement()
+                                                               .disableAuthCaching()
+                                                               // Pooled TLS connections can be reused by any call
+                                                               .disableConnectionState();
+        if (trustManagers != null) {
+            builder.setSSLContext(createSSLContext(trustManagers));
+        }
+        this.httpClient = builder.build();
+        httpClient.start();
+    }
+
+    public StaxClientService newClientService(final String url, final long connectTimeoutMillis, final long receiveTimeoutMillis) {
+        // Waiting for a pooled connection counts as receiving
+        final RequestConfig requestConfig = RequestConfig.custom()
+                                                         .setConnectTimeout((int) connectTimeoutMillis)
+                                                         .setSocketTimeout((int) receiveTimeoutMillis)
+                                                         .setConnectionRequestTimeout((int) receiveTimeoutMillis)
+                                                         .build();
+        return new StaxClientService(this, url, requestConfig);
+    }
+
+    @Override
+    public void close() throws IOException {
+        httpClient.close();
+        callbackExecutor.shutdown();
+    }
+
+    Executor getCallbackExecutor() {
+        return callbackExecutor;
+    }
+
+    // Fails with a SOAPFaultException (SOAP fault) or another WebServiceException (transport error), like the CXF proxies
+    ListenableFuture<Integer> call(final String url, final RequestConfig requestConfig, final String operation, final BodyWriter bodyWriter) {
+        final SettableFuture<Integer> result = SettableFuture.create();
+
+        final SoapBuffer buffer = buffers.acquire();
+        try {
+            writeEnvelope(buffer, url, operation, bodyWriter);
+        } catch (final XMLStreamException e) {
+            buffer.release();
+            result.setException(new WebServiceException(e));
+            return result;
+        }
+        if (WIRE_LOG.isEnabled()) {
+            WIRE_LOG.log("Web Services", "POST " + url + "\n" + new String(buffer.getBuffer(), 0, buffer.getLength(), Charsets.UTF_8));
+        }
+
+        final HttpPost post = new HttpPost(url);
+        post.setConfig(requestConfig);
+        post.setEntity(new ByteArrayEntity(buffer.getBuffer(), 0, buffer.getLength(), SOAP_CONTENT_TYPE));
+        try {
+            httpClient.execute(post, new FutureCallback<HttpResponse>() {
+                @Override
+                public void completed(final HttpResponse response) {
+                    buffer.release();
+                    try {
+                        result.set(parseResponse(url, operation, response));
+                    } catch (final WebServiceException e) {
+                        result.setException(e);
+                    }
+                }
+
+                @Override
+                public void failed(final Exception e) {
+                    buffer.release();
+                    result.setException(new WebServiceException("Could not send Message to " + url, e));
+                }
+
+                @Override
+                public void cancelled() {
+                    buffer.release();
+                    result.setException(new WebServiceException("Call to " + url + " cancelled"));
+                }
+            });
+        } catch (final RuntimeException e) {
+            // E.g. closed client
+            buffer.release();
+            result.setException(new WebServiceException(e));
+        }
+        return result;
+    }
+
+    private void writeEnvelope(final SoapBuffer buffer, final String url, final String operation, final BodyWriter bodyWriter) throws XMLStreamException {
+        final XMLStreamWriter writer = outputFactory.createXMLStreamWriter(buffer, "UTF-8");
+        writer.writeStartElement("soap", "Envelope", SOAP_NS);
+        writer.writeNamespace("soap", SOAP_NS);
+        writer.writeNamespace("wsa", WSA_NS);
+
+        writer.writeStartElement("soap", "Header", SOAP_NS);
+        writeAddressingHeader(writer, "Action", ACTION_BASE + operation);
+        writeAddressingHeader(writer, "MessageID", "urn:uuid:" + UUID.randomUUID());
+        writeAddressingHeader(writer, "To", url);
+        writer.writeStartElement("wsa", "ReplyTo", WSA_NS);
+        writeAddressingHeader(writer, "Address", WSA_ANONYMOUS);
+        writer.writeEndElement();
+        writer.writeEndElement();
+
+        writer.writeStartElement("soap", "Body", SOAP_NS);
+        writer.writeStartElement("", operation, SERVICE_NS);
+        writer.writeDefaultNamespace(SERVICE_NS);
+        bodyWriter.write(writer);
+        writer.writeEndElement();
+        writer.writeEndElement();
+
+        writer.writeEndElement();
+        writer.writeEndDocument();
+        writer.close();
+    }
+
+    private static void writeAddressingHeader(final XMLStreamWriter writer, final String name, final String value) throws XMLStreamException {
+        writer.writeStartElement("wsa", name, WSA_NS);
+        writer.writeCharacters(value);
+        writer.writeEndElement();
+    }
+
+    private int parseResponse(final String url, final String operation, final HttpResponse response) throws WebServiceException {
+        final int status = response.getStatusLine().getStatusCode();
+        final HttpEntity entity = response.getEntity();
+        final byte[] content;
+        try {
+            content = entity == null ? new byte[0] : EntityUtils.toByteArray(entity);
+        } catch (final IOException e) {
+            throw new WebServiceException(e);
+        }
+        if (WIRE_LOG.isEnabled()) {
+            WIRE_LOG.log("Web Services", response.getStatusLine() + "\n" + new String(content, Charsets.UTF_8));
+        }
+
+        // Faults come with a 500, but anything else (e.g. a 503 from a load balancer) is a transport error
+        final ContentType contentType = entity == null ? null : ContentType.get(entity);
+        if (content.length == 0 || contentType == null || !contentType.getMimeType().contains("xml")) {
+            throw new WebServiceException("HTTP response '" + status + ": " + response.getStatusLine().getReasonPhrase() + "' when communicating with " + url);
+        }
+
+        try {
+            return parseEnvelope(content, operation + "Result");
+        } catch (final XMLStreamException e) {
+            throw new WebServiceException("Unable to parse the response of " + url + " (HTTP " + status + ")", e);
+        } catch (final NumberFormatException e) {
+            throw new WebServiceException("Unable to parse the response of " + url + " (HTTP " + status + ")", e);
+        }
+    }
+
+    private int parseEnvelope(final byte[] content, final String resultName) throws XMLStreamException {
+        final XMLStreamReader reader = inputFactory.createXMLStreamReader(new ByteArrayInputStream(content));
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                if (SOAP_NS.equals(reader.getNamespaceURI()) && "Fault".equals(reader.getLocalName())) {
+                    throw parseFault(reader);
+                }
+                if (SERVICE_NS.equals(reader.getNamespaceURI()) && resultName.equals(reader.getLocalName())) {
+                    return Integer.parseInt(reader.getElementText().trim());
+                }
+            }
+            throw new XMLStreamException("No " + resultName + " element");
+        } finally {
+            reader.close();
+        }
+    }
+
+    // Only the (top level) code and the first reason text are kept, like CXF does
+    private static WebServiceException parseFault(final XMLStreamReader reader) throws XMLStreamException {
+        QName code = null;
+        String reason = null;
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            } else if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                if (code == null && "Value".equals(reader.getLocalName())) {
+                    final String value = reader.getElementText().trim();
+                    final int colon = value.indexOf(':');
+                    final String prefix = colon < 0 ? "" : value.substring(0, colon);
+                    final String namespace = reader.getNamespaceContext().getNamespaceURI(prefix);
+                    code = new QName(namespace == null ? "" : namespace, value.substring(colon + 1), prefix);
+                    depth--;
+                } else if (reason == null && "Text".equals(reader.getLocalName())) {
+                    reason = reader.getElementText();
+                    depth--;
+                }
+            }
+        }
+        return SoapFaults.newSOAPFaultException(reason, code);
+    }
+
+    private static SSLContext createSSLContext(final TrustManager[] trustManagers) {
+        try {
+            final SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, trustManagers, null);
+            return sslContext;
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (final KeyManagementException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
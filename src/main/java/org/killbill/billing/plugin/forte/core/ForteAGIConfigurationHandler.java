@@ -17,24 +17,152 @@
 
 package org.killbill.billing.plugin.forte.core;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.net.ssl.SSLContext;
 
 import org.killbill.billing.osgi.libs.killbill.OSGIKillbillAPI;
 import org.killbill.billing.osgi.libs.killbill.OSGIKillbillLogService;
 import org.killbill.billing.plugin.api.notification.PluginTenantConfigurableConfigurationHandler;
 import org.killbill.billing.plugin.forte.client.ForteAGIClient;
+import org.osgi.service.log.LogService;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+// Per-tenant clients own connection pools and threads, and this handler alone owns their lifecycle: the client of a tenant
+// is shut down once replaced by a reconfiguration (after a grace period, for the calls already holding it), and the
+// remaining ones when the handler is closed. The map of the base class only serves the lookups: it closes a replaced
+// Closeable value straight away, which is why ForteAGIClient isn't one.
+public class ForteAGIConfigurationHandler extends PluginTenantConfigurableConfigurationHandler<ForteAGIClient> implements Closeable {
 
-public class ForteAGIConfigurationHandler extends PluginTenantConfigurableConfigurationHandler<ForteAGIClient> {
+    // On top of the longest budget of the replaced client (which bounds both its payments and its exchanges)
+    private static final long RETIREMENT_MARGIN_MILLIS = 1000;
+    // When the replaced client has no timeout
+    private static final long UNBOUNDED_RETIREMENT_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private final OSGIKillbillLogService logService;
+    @Nullable
+    private final SSLContext sslContext;
+    // Current client of each configured tenant, to be shut down (the map of the base class isn't exposed). Guarded by this.
+    private final Map<UUID, ForteAGIClient> tenantClients = new HashMap<UUID, ForteAGIClient>();
+    // Tenants whose first-time configuration is done
+    private final Set<UUID> configuredTenants = Collections.newSetFromMap(new ConcurrentHashMap<UUID, Boolean>());
+    // Replaced clients, not shut down yet (guarded by this)
+    private final Set<ForteAGIClient> retiredClients = new HashSet<ForteAGIClient>();
+    private final ScheduledThreadPoolExecutor retirementExecutor;
+    // Client created by the ongoing configure call, if any (guarded by this)
+    private ForteAGIClient createdClient;
 
     public ForteAGIConfigurationHandler(final String pluginName,
                                         final OSGIKillbillAPI osgiKillbillAPI,
                                         final OSGIKillbillLogService osgiKillbillLogService) {
+        this(pluginName, osgiKillbillAPI, osgiKillbillLogService, null);
+    }
+
+    @VisibleForTesting
+    ForteAGIConfigurationHandler(final String pluginName,
+                                 final OSGIKillbillAPI osgiKillbillAPI,
+                                 final OSGIKillbillLogService osgiKillbillLogService,
+                                 @Nullable final SSLContext sslContext) {
         super(pluginName, osgiKillbillAPI, osgiKillbillLogService);
+        this.logService = osgiKillbillLogService;
+        this.sslContext = sslContext;
+
+        this.retirementExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder().setNameFormat("forte-agi-retirement-%d").setDaemon(true).build());
+        this.retirementExecutor.setKeepAliveTime(1, TimeUnit.MINUTES);
+        this.retirementExecutor.allowCoreThreadTimeOut(true);
     }
 
+    // The first-time configuration of the framework isn't thread-safe: concurrent first payments of a tenant would each
+    // create a client, the last one replacing (and retiring) the ones already handed out
     @Override
-    protected ForteAGIClient createConfigurable(final Properties properties) {
-        return new ForteAGIClient(properties);
+    public ForteAGIClient getConfigurable(@Nullable final UUID kbTenantId) {
+        if (kbTenantId != null && !configuredTenants.contains(kbTenantId)) {
+            synchronized (this) {
+                final ForteAGIClient client = super.getConfigurable(kbTenantId);
+                configuredTenants.add(kbTenantId);
+                return client;
+            }
+        }
+        return super.getConfigurable(kbTenantId);
+    }
+
+    @Override
+    protected synchronized void configure(final UUID kbTenantId) {
+        createdClient = null;
+        super.configure(kbTenantId);
+        if (createdClient == null) {
+            // No per-tenant configuration: nothing was replaced
+            return;
+        }
+
+        final ForteAGIClient previousClient = tenantClients.put(kbTenantId, createdClient);
+        createdClient = null;
+        if (previousClient != null) {
+            retire(previousClient);
+        }
+    }
+
+    // Payments may be between their getConfigurable call and the gateway call, and asynchronous exchanges may be queued
+    // on the executor of the transport: closing the client right away would fail them
+    private void retire(final ForteAGIClient client) {
+        final long maxBudgetMillis = client.getMaxTimeoutBudgetMillis();
+        final long delayMillis = maxBudgetMillis <= 0 ? UNBOUNDED_RETIREMENT_DELAY_MILLIS : maxBudgetMillis + RETIREMENT_MARGIN_MILLIS;
+        retiredClients.add(client);
+        retirementExecutor.schedule(new Runnable() {
+                                        @Override
+                                        public void run() {
+                                            synchronized (ForteAGIConfigurationHandler.this) {
+                                                if (!retiredClients.remove(client)) {
+                                                    // Shut down with the handler
+                                                    return;
+                                                }
+                                            }
+                                            // Exchanges still in flight complete on their sockets, idle pooled ones are closed
+                                            shutdownQuietly(client);
+                                        }
+                                    },
+                                    delayMillis,
+                                    TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    protected synchronized ForteAGIClient createConfigurable(final Properties properties) {
+        createdClient = sslContext == null ? new ForteAGIClient(properties) : new ForteAGIClient(properties, sslContext);
+        return createdClient;
     }
-}
 
+    @Override
+    public synchronized void close() {
+        retirementExecutor.shutdownNow();
+        for (final ForteAGIClient client : retiredClients) {
+            shutdownQuietly(client);
+        }
+        retiredClients.clear();
+        for (final ForteAGIClient client : tenantClients.values()) {
+            shutdownQuietly(client);
+        }
+        tenantClients.clear();
+    }
+
+    private void shutdownQuietly(final ForteAGIClient client) {
+        try {
+            client.shutdown();
+        } catch (final IOException e) {
+            logService.log(LogService.LOG_WARNING, "Unable to shut down the AGI client", e);
+        }
+    }
+}
@@ -17,6 +17,7 @@
 package org.killbill.billing.plugin.forte.core;
 
 import java.util.Hashtable;
+import java.util.concurrent.ExecutorService;
 
 import javax.servlet.Servlet;
 import javax.servlet.http.HttpServlet;
@@ -26,19 +27,33 @@ import org.killbill.billing.osgi.libs.killbill.KillbillActivatorBase;
 import org.killbill.billing.payment.plugin.api.PaymentPluginApi;
 import org.killbill.billing.plugin.api.notification.PluginConfigurationEventHandler;
 import org.killbill.billing.plugin.forte.api.FortePaymentPluginApi;
+import org.killbill.billing.plugin.forte.api.async.ForteAsyncTransactionApi;
 import org.killbill.billing.plugin.forte.client.ForteAGIClient;
+import org.killbill.billing.plugin.forte.client.ForteExecutors;
 import org.killbill.billing.plugin.forte.client.ForteWSClient;
+import org.killbill.billing.plugin.forte.client.ForteWSProxies;
 import org.killbill.billing.plugin.forte.dao.ForteDao;
 import org.killbill.clock.Clock;
 import org.killbill.clock.DefaultClock;
 import org.osgi.framework.BundleContext;
 
+import static org.killbill.billing.plugin.forte.client.ForteAGIClient.PROPERTY_BASE;
+
 public class ForteActivator extends KillbillActivatorBase {
 
     public static final String PLUGIN_NAME = "killbill-forte";
 
+    private static final String PROPERTY_LOOKUP_THREADS = PROPERTY_BASE + ".lookupThreads";
+    private static final String DEFAULT_LOOKUP_THREADS = "16";
+    private static final String PROPERTY_CALLBACK_THREADS = PROPERTY_BASE + ".callbackThreads";
+    private static final String DEFAULT_CALLBACK_THREADS = "0";
+
     private ForteAGIConfigurationHandler forteAGIConfigurationHandler;
     private ForteWSConfigurationHandler forteWSConfigurationHandler;
+    private ForteAGIClient globalForteAGIClient;
+    private ForteWSProxies forteWSProxies;
+    private ExecutorService lookupExecutor;
+    private ExecutorService callbackExecutor;
 
     @Override
     public void start(final BundleContext context) throws Exception {
@@ -47,22 +62,60 @@ public class ForteActivator extends KillbillActivatorBase {
         final Clock clock = new DefaultClock();
         final ForteDao dao = new ForteDao(dataSource.getDataSource());
 
-        // Register the servlet
-        final ForteServlet forteServlet = new ForteServlet();
-        registerServlet(context, forteServlet);
-
         forteAGIConfigurationHandler = new ForteAGIConfigurationHandler(PLUGIN_NAME, killbillAPI, logService);
-        forteWSConfigurationHandler = new ForteWSConfigurationHandler(PLUGIN_NAME, killbillAPI, logService);
+        // Client.wsdl is parsed in the background, the first Web Services calls wait for it: the plugin is registered right away
+        forteWSProxies = new ForteWSProxies(configProperties.getProperties());
+        forteWSConfigurationHandler = new ForteWSConfigurationHandler(PLUGIN_NAME, killbillAPI, logService, forteWSProxies);
 
-        final ForteAGIClient globalForteAGIClient = forteAGIConfigurationHandler.createConfigurable(configProperties.getProperties());
+        globalForteAGIClient = forteAGIConfigurationHandler.createConfigurable(configProperties.getProperties());
         forteAGIConfigurationHandler.setDefaultConfigurable(globalForteAGIClient);
 
         final ForteWSClient globalForteWSClient = forteWSConfigurationHandler.createConfigurable(configProperties.getProperties());
         forteWSConfigurationHandler.setDefaultConfigurable(globalForteWSClient);
 
         // Register the payment plugin
-        final FortePaymentPluginApi pluginApi = new FortePaymentPluginApi(forteAGIConfigurationHandler, forteWSConfigurationHandler, killbillAPI, configProperties, logService, clock, dao);
+        final ForteCustomerService customerService = new ForteCustomerService(forteWSConfigurationHandler, dao, clock, configProperties.getProperties());
+        // Bounded: when the lookups are slow, further ones queue up (until the deadline of their payment) instead of piling up threads
+        lookupExecutor = ForteExecutors.newGatewayExecutor("forte-lookups",
+                                                           Integer.parseInt(configProperties.getProperties().getProperty(PROPERTY_LOOKUP_THREADS, DEFAULT_LOOKUP_THREADS)),
+                                                           false);
+        final FortePaymentPluginApi pluginApi = new FortePaymentPluginApi(forteAGIConfigurationHandler, forteWSConfigurationHandler, customerService, lookupExecutor, killbillAPI, configProperties, logService, clock, dao);
         registerPaymentPluginApi(context, pluginApi);
+
+        // Register the servlet
+        final ForteVaultMigrationService vaultMigrationService = new ForteVaultMigrationService(forteWSConfigurationHandler, customerService, killbillAPI, dao, clock);
+        final ForteServlet forteServlet = new ForteServlet(vaultMigrationService);
+        registerServlet(context, forteServlet);
+
+        // Register the asynchronous AGI API, for other plugins
+        callbackExecutor = ForteExecutors.newGatewayExecutor("forte-callbacks",
+                                                             Integer.parseInt(configProperties.getProperties().getProperty(PROPERTY_CALLBACK_THREADS, DEFAULT_CALLBACK_THREADS)),
+                                                             false);
+        final ForteAsyncTransactionApi asyncTransactionApi = new ForteAsyncTransactionService(forteAGIConfigurationHandler, callbackExecutor);
+        registerAsyncTransactionApi(context, asyncTransactionApi);
+    }
+
+    @Override
+    public void stop(final BundleContext context) throws Exception {
+        if (globalForteAGIClient != null) {
+            // Release the warm AGI connections
+            globalForteAGIClient.shutdown();
+        }
+        if (forteAGIConfigurationHandler != null) {
+            // Same for the per-tenant clients
+            forteAGIConfigurationHandler.close();
+        }
+        if (forteWSProxies != null) {
+            // Release the Web Services connections
+            forteWSProxies.close();
+        }
+        if (lookupExecutor != null) {
+            lookupExecutor.shutdownNow();
+        }
+        if (callbackExecutor != null) {
+            callbackExecutor.shutdownNow();
+        }
+        super.stop(context);
     }
 
 
@@ -82,4 +135,10 @@ public class ForteActivator extends KillbillActivatorBase {
         props.put(OSGIPluginProperties.PLUGIN_NAME_PROP, PLUGIN_NAME);
         registrar.registerService(context, PaymentPluginApi.class, api, props);
     }
+
+    private void registerAsyncTransactionApi(final BundleContext context, final ForteAsyncTransactionApi api) {
+        final Hashtable<String, String> props = new Hashtable<String, String>();
+        props.put(OSGIPluginProperties.PLUGIN_NAME_PROP, PLUGIN_NAME);
+        registrar.registerService(context, ForteAsyncTransactionApi.class, api, props);
+    }
 }
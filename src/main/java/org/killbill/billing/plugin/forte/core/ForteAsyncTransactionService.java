@@ -0,0 +1,222 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.forte.core;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.plugin.forte.api.async.ForteAsyncTransactionApi;
+import org.killbill.billing.plugin.forte.api.async.ForteTransactionCallback;
+import org.killbill.billing.plugin.forte.client.ForteAGIClient;
+import org.killbill.billing.plugin.forte.client.agi.AGIResponse;
+
+import com.google.common.base.Functions;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+public class ForteAsyncTransactionService implements ForteAsyncTransactionApi {
+
+    private final ForteAGIConfigurationHandler forteAGIConfigurationHandler;
+    // Callbacks never run on the thread completing the exchange (e.g. the I/O thread shared by all nio exchanges)
+    private final Executor callbackExecutor;
+
+    public ForteAsyncTransactionService(final ForteAGIConfigurationHandler forteAGIConfigurationHandler, final Executor callbackExecutor) {
+        this.forteAGIConfigurationHandler = forteAGIConfigurationHandler;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    @Override
+    public <T> Future<Map<String, String>> createAuthTransaction(final UUID kbTenantId,
+                                                                 final BigDecimal amount,
+                                                                 final String customerFirstName,
+                                                                 final String customerLastName,
+                                                                 final String cardName,
+                                                                 final String cardType,
+                                                                 final String cardNumber,
+                                                                 final String cardExpMonth,
+                                                                 final String cardExpYear,
+                                                                 @Nullable final Map<String, T> optionalData,
+                                                                 @Nullable final ForteTransactionCallback callback) {
+        return withCallback(getClient(kbTenantId).createAuthTransactionAsync(amount,
+                                                                             customerFirstName,
+                                                                             customerLastName,
+                                                                             cardName,
+                                                                             cardType,
+                                                                             cardNumber,
+                                                                             cardExpMonth,
+                                                                             cardExpYear,
+                                                                             optionalData),
+                            callback);
+    }
+
+    @Override
+    public <T> Future<Map<String, String>> createCreditTransaction(final UUID kbTenantId,
+                                                                   final BigDecimal amount,
+                                                                   final String customerFirstName,
+                                                                   final String customerLastName,
+                                                                   final String cardName,
+                                                                   final String cardType,
+                                                                   final String cardNumber,
+                                                                   final String cardExpMonth,
+                                                                   final String cardExpYear,
+                                                                   @Nullable final Map<String, T> optionalData,
+                                                                   @Nullable final ForteTransactionCallback callback) {
+        return withCallback(getClient(kbTenantId).createCreditTransactionAsync(amount,
+                                                                               customerFirstName,
+                                                                               customerLastName,
+                                                                               cardName,
+                                                                               cardType,
+                                                                               cardNumber,
+                                                                               cardExpMonth,
+                                                                               cardExpYear,
+                                                                               optionalData),
+                            callback);
+    }
+
+    @Override
+    public <T> Future<Map<String, String>> createSaleTransaction(final UUID kbTenantId,
+                                                                 final BigDecimal amount,
+                                                                 final String customerFirstName,
+                                                                 final String customerLastName,
+                                                                 final String cardName,
+                                                                 final String cardType,
+                                                                 final String cardNumber,
+                                                                 final String cardExpMonth,
+                                                                 final String cardExpYear,
+                                                                 @Nullable final Map<String, T> optionalData,
+                                                                 @Nullable final ForteTransactionCallback callback) {
+        return withCallback(getClient(kbTenantId).createSaleTransactionAsync(amount,
+                                                                             customerFirstName,
+                                                                             customerLastName,
+                                                                             cardName,
+                                                                             cardType,
+                                                                             cardNumber,
+                                                                             cardExpMonth,
+                                                                             cardExpYear,
+                                                                             optionalData),
+                            callback);
+    }
+
+    @Override
+    public <T> Future<Map<String, String>> createAuthTransaction(final UUID kbTenantId,
+                                                                 final BigDecimal amount,
+                                                                 final String customerFirstName,
+                                                                 final String customerLastName,
+                                                                 final String transitRoutingNumber,
+                                                                 final String accountNumber,
+                                                                 final String accountType,
+                                                                 @Nullable final Map<String, T> optionalData,
+                                                                 @Nullable final ForteTransactionCallback callback) {
+        return withCallback(getClient(kbTenantId).createAuthTransactionAsync(amount,
+                                                                             customerFirstName,
+                                                                             customerLastName,
+                                                                             transitRoutingNumber,
+                                                                             accountNumber,
+                                                                             accountType,
+                                                                             optionalData),
+                            callback);
+    }
+
+    @Override
+    public <T> Future<Map<String, String>> createCreditTransaction(final UUID kbTenantId,
+                                                                   final BigDecimal amount,
+                                                                   final String customerFirstName,
+                                                                   final String customerLastName,
+                                                                   final String transitRoutingNumber,
+                                                                   final String accountNumber,
+                                                                   final String accountType,
+                                                                   @Nullable final Map<String, T> optionalData,
+                                                                   @Nullable final ForteTransactionCallback callback) {
+        return withCallback(getClient(kbTenantId).createCreditTransactionAsync(amount,
+                                                                               customerFirstName,
+                                                                               customerLastName,
+                                                                               transitRoutingNumber,
+                                                                               accountNumber,
+                                                                               accountType,
+                                                                               optionalData),
+                            callback);
+    }
+
+    @Override
+    public <T> Future<Map<String, String>> createSaleTransaction(final UUID kbTenantId,
+                                                                 final BigDecimal amount,
+                                                                 final String customerFirstName,
+                                                                 final String customerLastName,
+                                                                 final String transitRoutingNumber,
+                                                                 final String accountNumber,
+                                                                 final String accountType,
+                                                                 @Nullable final Map<String, T> optionalData,
+                                                                 @Nullable final ForteTransactionCallback callback) {
+        return withCallback(getClient(kbTenantId).createSaleTransactionAsync(amount,
+                                                                             customerFirstName,
+                                                                             customerLastName,
+                                                                             transitRoutingNumber,
+                                                                             accountNumber,
+                                                                             accountType,
+                                                                             optionalData),
+                            callback);
+    }
+
+    @Override
+    public <T> Future<Map<String, String>> createCaptureTransaction(final UUID kbTenantId,
+                                                                    final String originalTraceNumber,
+                                                                    final String originalAuthorizationCode,
+                                                                    @Nullable final Map<String, T> optionalData,
+                                                                    @Nullable final ForteTransactionCallback callback) {
+        return withCallback(getClient(kbTenantId).createCaptureTransactionAsync(originalTraceNumber, originalAuthorizationCode, optionalData), callback);
+    }
+
+    @Override
+    public <T> Future<Map<String, String>> createVoidTransaction(final UUID kbTenantId,
+                                                                 final String originalTraceNumber,
+                                                                 final String originalAuthorizationCode,
+                                                                 @Nullable final Map<String, T> optionalData,
+                                                                 @Nullable final ForteTransactionCallback callback) {
+        return withCallback(getClient(kbTenantId).createVoidTransactionAsync(originalTraceNumber, originalAuthorizationCode, optionalData), callback);
+    }
+
+    private ForteAGIClient getClient(final UUID kbTenantId) {
+        return forteAGIConfigurationHandler.getConfigurable(kbTenantId);
+    }
+
+    // The API exposes the responses as plain maps
+    private Future<Map<String, String>> withCallback(final ListenableFuture<AGIResponse> agiResponseFuture, @Nullable final ForteTransactionCallback callback) {
+        final ListenableFuture<Map<String, String>> future = Futures.transform(agiResponseFuture, Functions.<Map<String, String>>identity());
+        if (callback != null) {
+            Futures.addCallback(future,
+                                new FutureCallback<Map<String, String>>() {
+                                    @Override
+                                    public void onSuccess(final Map<String, String> response) {
+                                        callback.onResponse(response);
+                                    }
+
+                                    @Override
+                                    public void onFailure(final Throwable t) {
+                                        callback.onFailure(t);
+                                    }
+                                },
+                                callbackExecutor);
+        }
+        return future;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.core;
+
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.plugin.forte.client.ForteWSClient;
+import org.killbill.billing.plugin.forte.dao.ForteDao;
+import org.killbill.clock.Clock;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.base.Supplier;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import static org.killbill.billing.plugin.forte.client.ForteAGIClient.PROPERTY_BASE;
+
+// One Forte client (customer) per Kill Bill account, so that its payment methods show up together in the Virtual Terminal.
+// The mapping is stored in forte_customers and the most recent ones are cached: adding further payment methods to an account
+// requires neither a Web Services call nor a database query. Concurrent first payment methods of an account (on this node)
+// share a single client creation.
+public class ForteCustomerService {
+
+    private static final String PROPERTY_CUSTOMER_CACHE_SIZE = PROPERTY_BASE + ".customerCacheSize";
+    private static final String DEFAULT_CUSTOMER_CACHE_SIZE = "10000";
+
+    private final ForteWSConfigurationHandler forteWSConfigurationHandler;
+    private final ForteDao dao;
+    private final Clock clock;
+    // Kill Bill account ids are unique across tenants
+    private final Cache<UUID, String> customerIds;
+
+    public ForteCustomerService(final ForteWSConfigurationHandler forteWSConfigurationHandler, final ForteDao dao, final Clock clock, final Properties properties) {
+        this(forteWSConfigurationHandler, dao, clock, Long.parseLong(properties.getProperty(PROPERTY_CUSTOMER_CACHE_SIZE, DEFAULT_CUSTOMER_CACHE_SIZE)));
+    }
+
+    @VisibleForTesting
+    ForteCustomerService(final ForteWSConfigurationHandler forteWSConfigurationHandler, final ForteDao dao, final Clock clock, final long cacheSize) {
+        Preconditions.checkArgument(cacheSize >= 0, "customerCacheSize must not be negative");
+        this.forteWSConfigurationHandler = forteWSConfigurationHandler;
+        this.dao = dao;
+        this.clock = clock;
+        this.customerIds = CacheBuilder.newBuilder().maximumSize(cacheSize).build();
+    }
+
+    // The account is only retrieved when the client has to be created. Web Services failures (WebServiceException,
+    // ForteCircuitOpenException) are rethrown as is and aren't cached: the next call tries again.
+    public String getOrCreateCustomerId(final UUID kbAccountId, final UUID kbTenantId, final Supplier<Account> account) throws SQLException {
+        try {
+            return customerIds.get(kbAccountId,
+                                   new Callable<String>() {
+                                       @Override
+                                       public String call() throws SQLException {
+                                           return loadOrCreateCustomerId(kbAccountId, kbTenantId, account);
+                                       }
+                                   });
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (final UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private String loadOrCreateCustomerId(final UUID kbAccountId, final UUID kbTenantId, final Supplier<Account> accountSupplier) throws SQLException {
+        final String existingCustomerId = dao.getCustomerId(kbAccountId, kbTenantId);
+        if (existingCustomerId != null) {
+            return existingCustomerId;
+        }
+
+        final Account account = accountSupplier.get();
+        final String[] names = splitName(account.getName(), account.getFirstNameLength());
+        final String customerId = forteWSConfigurationHandler.getConfigurable(kbTenantId).createClient(names[0],
+                                                                                                      names[1],
+                                                                                                      account.getAddress1(),
+                                                                                                      account.getStateOrProvince(),
+                                                                                                      account.getPostalCode(),
+                                                                                                      account.getPhone(),
+                                                                                                      account.getEmail());
+        try {
+            dao.addCustomer(kbAccountId, customerId, clock.getUTCNow(), kbTenantId);
+        } catch (final SQLException e) {
+            // Created concurrently by another node: its client wins, ours is left unused
+            final String concurrentCustomerId = dao.getCustomerId(kbAccountId, kbTenantId);
+            if (concurrentCustomerId == null) {
+                throw e;
+            }
+            return concurrentCustomerId;
+        }
+        return customerId;
+    }
+
+    // First and last names (either may be null): the name is optional, and firstNameLength isn't checked against it
+    @VisibleForTesting
+    static String[] splitName(@Nullable final String name, @Nullable final Integer firstNameLength) {
+        if (name == null) {
+            return new String[]{null, null};
+        }
+
+        final int splitIndex = firstNameLength == null ? 0 : Math.max(0, Math.min(firstNameLength, name.length()));
+        return new String[]{Strings.emptyToNull(name.substring(0, splitIndex).trim()),
+                            Strings.emptyToNull(name.substring(splitIndex).trim())};
+    }
+}
@@ -16,7 +16,107 @@
 
 package org.killbill.billing.plugin.forte.core;
 
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
 import org.killbill.billing.plugin.core.PluginServlet;
+import org.killbill.billing.tenant.api.Tenant;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
 
 public class ForteServlet extends PluginServlet {
+
+    private static final Pattern MIGRATION_PATTERN = Pattern.compile("/migrations/([^/]+)");
+    private static final int DEFAULT_MIGRATION_PARALLELISM = 8;
+    private static final int DEFAULT_MIGRATION_BATCH_SIZE = 100;
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ForteVaultMigrationService vaultMigrationService;
+
+    public ForteServlet(final ForteVaultMigrationService vaultMigrationService) {
+        this.vaultMigrationService = vaultMigrationService;
+    }
+
+    // Progress of a vault migration
+    @Override
+    protected void doGet(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException, IOException {
+        final Matcher matcher = getPathMatcher(MIGRATION_PATTERN, req);
+        final Tenant tenant = getTenant(req);
+        if (matcher == null || tenant == null) {
+            buildNotFoundResponse("Resource not found", resp);
+            return;
+        }
+
+        final ForteVaultMigrationResult result;
+        try {
+            result = vaultMigrationService.getMigration(tenant.getId(), matcher.group(1));
+        } catch (final SQLException e) {
+            buildErrorResponse(e, resp);
+            return;
+        }
+
+        if (result == null) {
+            buildNotFoundResponse("Vault migration " + matcher.group(1) + " not found", resp);
+        } else {
+            buildJsonResponse(HttpServletResponse.SC_OK, result, resp);
+        }
+    }
+
+    // Runs (or resumes) a vault migration, the request body being the records: the response is sent once done
+    @Override
+    protected void doPost(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException, IOException {
+        final Matcher matcher = getPathMatcher(MIGRATION_PATTERN, req);
+        final Tenant tenant = getTenant(req);
+        if (matcher == null || tenant == null) {
+            buildNotFoundResponse("Resource not found", resp);
+            return;
+        }
+
+        final ForteVaultMigrationResult result;
+        try {
+            result = vaultMigrationService.migrate(tenant.getId(),
+                                                   matcher.group(1),
+                                                   req.getInputStream(),
+                                                   getIntParameter(req, "parallelism", DEFAULT_MIGRATION_PARALLELISM),
+                                                   getIntParameter(req, "batchSize", DEFAULT_MIGRATION_BATCH_SIZE));
+        } catch (final ForteVaultMigrationRunningException e) {
+            buildResponse(HttpServletResponse.SC_CONFLICT, e.getMessage().getBytes("UTF-8"), resp);
+            return;
+        } catch (final IllegalArgumentException e) {
+            buildResponse(HttpServletResponse.SC_BAD_REQUEST, String.valueOf(e.getMessage()).getBytes("UTF-8"), resp);
+            return;
+        } catch (final RuntimeJsonMappingException e) {
+            buildResponse(HttpServletResponse.SC_BAD_REQUEST, String.valueOf(e.getMessage()).getBytes("UTF-8"), resp);
+            return;
+        } catch (final JsonProcessingException e) {
+            buildResponse(HttpServletResponse.SC_BAD_REQUEST, String.valueOf(e.getMessage()).getBytes("UTF-8"), resp);
+            return;
+        } catch (final SQLException e) {
+            buildErrorResponse(e, resp);
+            return;
+        }
+
+        // Stopped by a gateway outage: submit the records again to resume
+        buildJsonResponse(result.getError() == null ? HttpServletResponse.SC_OK : HttpServletResponse.SC_SERVICE_UNAVAILABLE, result, resp);
+    }
+
+    private void buildJsonResponse(final int status, final Object data, final HttpServletResponse resp) throws IOException {
+        setJsonContentType(resp);
+        buildResponse(status, objectMapper.writeValueAsBytes(data), resp);
+    }
+
+    private static int getIntParameter(final HttpServletRequest req, final String name, final int defaultValue) {
+        final String value = req.getParameter(name);
+        // NumberFormatException is an IllegalArgumentException
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
 }
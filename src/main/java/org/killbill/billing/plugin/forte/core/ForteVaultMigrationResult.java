@@ -0,0 +1,142 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteVaultMigrationsRecord;
+
+// Progress of a vault migration (serialized as JSON by the servlet). Only the failures of the current run are listed.
+public class ForteVaultMigrationResult {
+
+    private static final int MAX_LISTED_FAILURES = 100;
+
+    private final String migrationId;
+    private final List<Failure> failures = new ArrayList<Failure>();
+
+    private long position;
+    private long tokenized;
+    private long skipped;
+    private long failed;
+    private boolean running;
+    private String error;
+
+    public ForteVaultMigrationResult(final String migrationId, @Nullable final ForteVaultMigrationsRecord checkpoint) {
+        this.migrationId = migrationId;
+        if (checkpoint != null) {
+            this.position = checkpoint.getPosition();
+            this.tokenized = checkpoint.getTokenized();
+            this.skipped = checkpoint.getSkipped();
+            this.failed = checkpoint.getFailed();
+        }
+    }
+
+    public String getMigrationId() {
+        return migrationId;
+    }
+
+    // Number of input records processed and saved
+    public long getPosition() {
+        return position;
+    }
+
+    public long getTokenized() {
+        return tokenized;
+    }
+
+    // Payment methods already there (saved by an interrupted run, or added via the API), not tokenized again
+    public long getSkipped() {
+        return skipped;
+    }
+
+    // Invalid records, or rejected by the gateway
+    public long getFailed() {
+        return failed;
+    }
+
+    public List<Failure> getFailures() {
+        return failures;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Why the run stopped before the end of the records (e.g. gateway unavailable), the migration can be resumed
+    @Nullable
+    public String getError() {
+        return error;
+    }
+
+    void setPosition(final long position) {
+        this.position = position;
+    }
+
+    void setRunning(final boolean running) {
+        this.running = running;
+    }
+
+    void setError(final String error) {
+        this.error = error;
+    }
+
+    void onTokenized() {
+        tokenized++;
+    }
+
+    void onSkipped() {
+        skipped++;
+    }
+
+    void onFailed(final long recordPosition, @Nullable final String kbPaymentMethodId, final String message) {
+        failed++;
+        if (failures.size() < MAX_LISTED_FAILURES) {
+            failures.add(new Failure(recordPosition, kbPaymentMethodId, message));
+        }
+    }
+
+    public static final class Failure {
+
+        private final long position;
+        private final String kbPaymentMethodId;
+        private final String message;
+
+        private Failure(final long position, @Nullable final String kbPaymentMethodId, final String message) {
+            this.position = position;
+            this.kbPaymentMethodId = kbPaymentMethodId;
+            this.message = message;
+        }
+
+        // Of the record in the input, starting at 1
+        public long getPosition() {
+            return position;
+        }
+
+        @Nullable
+        public String getKbPaymentMethodId() {
+            return kbPaymentMethodId;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
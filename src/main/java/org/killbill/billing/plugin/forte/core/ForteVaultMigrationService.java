@@ -0,0 +1,391 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+
+import javax.annotation.Nullable;
+import javax.xml.ws.WebServiceException;
+import javax.xml.ws.soap.SOAPFaultException;
+
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.account.api.AccountApiException;
+import org.killbill.billing.osgi.libs.killbill.OSGIKillbillAPI;
+import org.killbill.billing.plugin.api.PluginTenantContext;
+import org.killbill.billing.plugin.forte.client.ForteCircuitOpenException;
+import org.killbill.billing.plugin.forte.client.ForteExecutors;
+import org.killbill.billing.plugin.forte.client.ForteWSClient;
+import org.killbill.billing.plugin.forte.dao.ForteDao;
+import org.killbill.billing.plugin.forte.dao.ForteVaultMigrationBatch;
+import org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteVaultMigrationsRecord;
+import org.killbill.clock.Clock;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Function;
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.base.Supplier;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import static org.killbill.billing.plugin.forte.api.FortePaymentPluginApi.PROPERTY_ACCOUNT_HOLDER_NAME;
+import static org.killbill.billing.plugin.forte.api.FortePaymentPluginApi.PROPERTY_ACCOUNT_NUMBER;
+import static org.killbill.billing.plugin.forte.api.FortePaymentPluginApi.PROPERTY_ACCOUNT_TYPE;
+import static org.killbill.billing.plugin.forte.api.FortePaymentPluginApi.PROPERTY_CC_EXPIRATION_MONTH;
+import static org.killbill.billing.plugin.forte.api.FortePaymentPluginApi.PROPERTY_CC_EXPIRATION_YEAR;
+import static org.killbill.billing.plugin.forte.api.FortePaymentPluginApi.PROPERTY_CC_FIRST_NAME;
+import static org.killbill.billing.plugin.forte.api.FortePaymentPluginApi.PROPERTY_CC_LAST_NAME;
+import static org.killbill.billing.plugin.forte.api.FortePaymentPluginApi.PROPERTY_CC_NUMBER;
+import static org.killbill.billing.plugin.forte.api.FortePaymentPluginApi.PROPERTY_CC_TYPE;
+import static org.killbill.billing.plugin.forte.api.FortePaymentPluginApi.PROPERTY_TOKEN;
+import static org.killbill.billing.plugin.forte.api.FortePaymentPluginApi.PROPERTY_TRANSIT_ROUTING_NUMBER;
+
+// Bulk import of an existing card / ACH vault, for payment methods already created in Kill Bill. Records (consecutive JSON objects,
+// e.g. one per line, with the same properties as addPaymentMethod) are streamed, tokenized with bounded parallelism, and saved by
+// batches along with the progress of the migration. Submitting the same records again with the same migration id resumes after
+// the last saved batch: payment methods already saved are skipped, not tokenized again. Like via addPaymentMethod, payment methods
+// are attached to the Forte client of their account (see ForteCustomerService), created on the first one.
+public class ForteVaultMigrationService {
+
+    public static final String RECORD_KB_ACCOUNT_ID = "kbAccountId";
+    public static final String RECORD_KB_PAYMENT_METHOD_ID = "kbPaymentMethodId";
+    public static final String RECORD_IS_DEFAULT = "isDefault";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ForteWSConfigurationHandler forteWSConfigurationHandler;
+    private final ForteCustomerService forteCustomerService;
+    private final OSGIKillbillAPI killbillAPI;
+    private final ForteDao dao;
+    private final Clock clock;
+    // A migration can't run twice at the same time (on this node)
+    private final Set<String> runningMigrations = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    public ForteVaultMigrationService(final ForteWSConfigurationHandler forteWSConfigurationHandler,
+                                      final ForteCustomerService forteCustomerService,
+                                      final OSGIKillbillAPI killbillAPI,
+                                      final ForteDao dao,
+                                      final Clock clock) {
+        this.forteWSConfigurationHandler = forteWSConfigurationHandler;
+        this.forteCustomerService = forteCustomerService;
+        this.killbillAPI = killbillAPI;
+        this.dao = dao;
+        this.clock = clock;
+    }
+
+    // Runs until the end of the records, or the first gateway outage (see ForteVaultMigrationResult#getError)
+    public ForteVaultMigrationResult migrate(final UUID kbTenantId,
+                                             final String migrationId,
+                                             final InputStream records,
+                                             final int parallelism,
+                                             final int batchSize) throws IOException, SQLException {
+        Preconditions.checkArgument(parallelism > 0, "parallelism must be positive");
+        Preconditions.checkArgument(batchSize > 0, "batchSize must be positive");
+
+        final String runningMigration = kbTenantId + "/" + migrationId;
+        if (!runningMigrations.add(runningMigration)) {
+            throw new ForteVaultMigrationRunningException(migrationId);
+        }
+        try {
+            final Iterator<Map<String, Object>> recordsIterator = objectMapper.reader(Map.class).readValues(records);
+            return migrate(kbTenantId, migrationId, recordsIterator, parallelism, batchSize);
+        } finally {
+            runningMigrations.remove(runningMigration);
+        }
+    }
+
+    @Nullable
+    public ForteVaultMigrationResult getMigration(final UUID kbTenantId, final String migrationId) throws SQLException {
+        final ForteVaultMigrationsRecord checkpoint = dao.getVaultMigration(migrationId, kbTenantId);
+        final boolean running = runningMigrations.contains(kbTenantId + "/" + migrationId);
+        if (checkpoint == null && !running) {
+            return null;
+        }
+
+        final ForteVaultMigrationResult result = new ForteVaultMigrationResult(migrationId, checkpoint);
+        result.setRunning(running);
+        return result;
+    }
+
+    private ForteVaultMigrationResult migrate(final UUID kbTenantId,
+                                              final String migrationId,
+                                              final Iterator<Map<String, Object>> records,
+                                              final int parallelism,
+                                              final int batchSize) throws IOException, SQLException {
+        final ForteVaultMigrationResult result = new ForteVaultMigrationResult(migrationId, dao.getVaultMigration(migrationId, kbTenantId));
+
+        // Saved by previous runs
+        long position = 0;
+        while (position < result.getPosition() && records.hasNext()) {
+            records.next();
+            position++;
+        }
+
+        final ForteWSClient wsClient = forteWSConfigurationHandler.getConfigurable(kbTenantId);
+        final Semaphore permits = new Semaphore(parallelism);
+        // The clients are retrieved (or created, for the first payment method of each account) within the permits too
+        final ListeningExecutorService customerIdExecutor = MoreExecutors.listeningDecorator(ForteExecutors.newGatewayExecutor("forte-vault-migration", parallelism, false));
+        try {
+            final List<Map<String, Object>> batch = new ArrayList<Map<String, Object>>(batchSize);
+            while (result.getError() == null) {
+                batch.clear();
+                while (batch.size() < batchSize && records.hasNext()) {
+                    batch.add(records.next());
+                }
+                if (batch.isEmpty()) {
+                    break;
+                }
+
+                migrateBatch(kbTenantId, wsClient, permits, customerIdExecutor, batch, result);
+            }
+        } finally {
+            customerIdExecutor.shutdown();
+        }
+        return result;
+    }
+
+    private void migrateBatch(final UUID kbTenantId,
+                              final ForteWSClient wsClient,
+                              final Semaphore permits,
+                              final ListeningExecutorService customerIdExecutor,
+                              final List<Map<String, Object>> records,
+                              final ForteVaultMigrationResult result) throws IOException, SQLException {
+        final long batchPosition = result.getPosition();
+        final List<MigrationRecord> migrationRecords = new ArrayList<MigrationRecord>(records.size());
+        final List<String> kbPaymentMethodIds = new ArrayList<String>(records.size());
+        final List<Failure> failures = new ArrayList<Failure>();
+        for (int i = 0; i < records.size(); i++) {
+            final long recordPosition = batchPosition + i + 1;
+            final Map<String, Object> record = records.get(i);
+            try {
+                final MigrationRecord migrationRecord = new MigrationRecord(recordPosition, record);
+                migrationRecords.add(migrationRecord);
+                kbPaymentMethodIds.add(migrationRecord.kbPaymentMethodId.toString());
+            } catch (final IllegalArgumentException e) {
+                failures.add(new Failure(recordPosition, record.get(RECORD_KB_PAYMENT_METHOD_ID), e.getMessage()));
+            }
+        }
+
+        // One query for the whole batch
+        final Set<String> existingPaymentMethodIds = dao.getExistingPaymentMethodIds(kbPaymentMethodIds);
+        int skipped = 0;
+        final List<MigrationRecord> tokenizedRecords = new ArrayList<MigrationRecord>(migrationRecords.size());
+        final List<ListenableFuture<String>> tokens = new ArrayList<ListenableFuture<String>>(migrationRecords.size());
+        boolean interrupted = false;
+        for (final MigrationRecord migrationRecord : migrationRecords) {
+            if (existingPaymentMethodIds.contains(migrationRecord.kbPaymentMethodId.toString())) {
+                skipped++;
+                continue;
+            }
+
+            try {
+                permits.acquire();
+            } catch (final InterruptedException e) {
+                // The tokenizations already submitted are saved first
+                interrupted = true;
+                break;
+            }
+            final ListenableFuture<String> token = tokenize(kbTenantId, wsClient, customerIdExecutor, migrationRecord);
+            token.addListener(new Runnable() {
+                                  @Override
+                                  public void run() {
+                                      permits.release();
+                                  }
+                              },
+                              MoreExecutors.directExecutor());
+            tokenizedRecords.add(migrationRecord);
+            tokens.add(token);
+        }
+
+        final List<MigrationRecord> savedRecords = new ArrayList<MigrationRecord>(tokenizedRecords.size());
+        Throwable outage = null;
+        for (int i = 0; i < tokens.size(); i++) {
+            final MigrationRecord migrationRecord = tokenizedRecords.get(i);
+            try {
+                final String token = Uninterruptibles.getUninterruptibly(tokens.get(i));
+                savedRecords.add(migrationRecord);
+                migrationRecord.properties.put(PROPERTY_TOKEN, token);
+            } catch (final ExecutionException e) {
+                if (e.getCause() instanceof ForteCircuitOpenException ||
+                    e.getCause() instanceof SQLException ||
+                    (e.getCause() instanceof WebServiceException && !(e.getCause() instanceof SOAPFaultException))) {
+                    outage = outage == null ? e.getCause() : outage;
+                } else {
+                    // Rejected by the gateway, or invalid (e.g. unknown card type)
+                    failures.add(new Failure(migrationRecord.position, migrationRecord.kbPaymentMethodId.toString(), e.getCause().getMessage()));
+                }
+            }
+        }
+
+        // After an outage or an interruption, the whole batch is replayed by the next run: what was tokenized is saved, but
+        // only counted then (as skipped), like the rest of the batch
+        if (outage == null && !interrupted) {
+            for (int i = 0; i < savedRecords.size(); i++) {
+                result.onTokenized();
+            }
+            for (int i = 0; i < skipped; i++) {
+                result.onSkipped();
+            }
+            for (final Failure failure : failures) {
+                result.onFailed(failure.position, failure.kbPaymentMethodId, failure.message);
+            }
+            result.setPosition(batchPosition + records.size());
+        } else if (outage != null) {
+            result.setError(Strings.isNullOrEmpty(outage.getMessage()) ? outage.toString() : outage.getMessage());
+        }
+
+        final ForteVaultMigrationBatch batch = new ForteVaultMigrationBatch(result.getMigrationId(),
+                                                                            result.getPosition(),
+                                                                            result.getTokenized(),
+                                                                            result.getSkipped(),
+                                                                            result.getFailed());
+        for (final MigrationRecord migrationRecord : savedRecords) {
+            batch.addPaymentMethod(migrationRecord.kbAccountId, migrationRecord.kbPaymentMethodId, migrationRecord.isDefault, migrationRecord.getSafeProperties());
+        }
+        dao.addVaultMigrationBatch(batch, clock.getUTCNow(), kbTenantId);
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Vault migration interrupted");
+        }
+    }
+
+    // Client creation failures are reported like the tokenization ones (an outage, including a database one, stops the migration)
+    private ListenableFuture<String> tokenize(final UUID kbTenantId,
+                                              final ForteWSClient wsClient,
+                                              final ListeningExecutorService customerIdExecutor,
+                                              final MigrationRecord migrationRecord) {
+        // Blocking, and a Web Services call for the first payment method of each account (i.e. most of them)
+        final ListenableFuture<String> customerId = customerIdExecutor.submit(new Callable<String>() {
+            @Override
+            public String call() throws SQLException {
+                return forteCustomerService.getOrCreateCustomerId(migrationRecord.kbAccountId, kbTenantId, new Supplier<Account>() {
+                    @Override
+                    public Account get() {
+                        return getAccount(migrationRecord.kbAccountId, kbTenantId);
+                    }
+                });
+            }
+        });
+        return Futures.dereference(Futures.transform(customerId,
+                                                     new Function<String, ListenableFuture<String>>() {
+                                                         @Override
+                                                         public ListenableFuture<String> apply(final String customerId) {
+                                                             return tokenize(wsClient, migrationRecord.properties, customerId);
+                                                         }
+                                                     }));
+    }
+
+    private ListenableFuture<String> tokenize(final ForteWSClient wsClient, final Map<String, String> properties, final String customerId) {
+        if (properties.get(PROPERTY_CC_TYPE) != null) {
+            final String cardName = Joiner.on(' ').skipNulls().join(properties.get(PROPERTY_CC_FIRST_NAME), properties.get(PROPERTY_CC_LAST_NAME));
+            return wsClient.tokenizeCreditCardAsync(cardName,
+                                                    properties.get(PROPERTY_CC_TYPE),
+                                                    properties.get(PROPERTY_CC_NUMBER),
+                                                    properties.get(PROPERTY_CC_EXPIRATION_MONTH),
+                                                    properties.get(PROPERTY_CC_EXPIRATION_YEAR),
+                                                    customerId);
+        } else {
+            return wsClient.tokenizeECheckAsync(properties.get(PROPERTY_ACCOUNT_HOLDER_NAME),
+                                                properties.get(PROPERTY_TRANSIT_ROUTING_NUMBER),
+                                                properties.get(PROPERTY_ACCOUNT_NUMBER),
+                                                properties.get(PROPERTY_ACCOUNT_TYPE),
+                                                customerId);
+        }
+    }
+
+    private Account getAccount(final UUID kbAccountId, final UUID kbTenantId) {
+        try {
+            return killbillAPI.getAccountUserApi().getAccountById(kbAccountId, new PluginTenantContext(kbTenantId));
+        } catch (final AccountApiException e) {
+            throw new IllegalArgumentException("Unable to retrieve account for kbAccountId " + kbAccountId + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static final class MigrationRecord {
+
+        private final long position;
+        private final UUID kbAccountId;
+        private final UUID kbPaymentMethodId;
+        private final boolean isDefault;
+        private final Map<String, String> properties = new HashMap<String, String>();
+
+        private MigrationRecord(final long position, final Map<String, Object> record) throws IllegalArgumentException {
+            this.position = position;
+            this.kbAccountId = UUID.fromString(getRequired(record, RECORD_KB_ACCOUNT_ID));
+            this.kbPaymentMethodId = UUID.fromString(getRequired(record, RECORD_KB_PAYMENT_METHOD_ID));
+            this.isDefault = Boolean.valueOf(String.valueOf(record.get(RECORD_IS_DEFAULT)));
+            for (final Map.Entry<String, Object> entry : record.entrySet()) {
+                if (entry.getValue() != null &&
+                    !RECORD_KB_ACCOUNT_ID.equals(entry.getKey()) &&
+                    !RECORD_KB_PAYMENT_METHOD_ID.equals(entry.getKey()) &&
+                    !RECORD_IS_DEFAULT.equals(entry.getKey())) {
+                    properties.put(entry.getKey(), String.valueOf(entry.getValue()));
+                }
+            }
+        }
+
+        // Sensitive data isn't stored, like for payment methods added via the API
+        private Map<String, String> getSafeProperties() {
+            final Map<String, String> safeProperties = new HashMap<String, String>(properties);
+            safeProperties.remove(PROPERTY_CC_NUMBER);
+            safeProperties.remove(PROPERTY_ACCOUNT_NUMBER);
+            return safeProperties;
+        }
+
+        private static String getRequired(final Map<String, Object> record, final String key) {
+            final Object value = record.get(key);
+            if (value == null) {
+                throw new IllegalArgumentException("Missing " + key);
+            }
+            return String.valueOf(value);
+        }
+    }
+
+    private static final class Failure {
+
+        private final long position;
+        private final String kbPaymentMethodId;
+        private final String message;
+
+        private Failure(final long position, @Nullable final Object kbPaymentMethodId, final String message) {
+            this.position = position;
+            this.kbPaymentMethodId = kbPaymentMethodId == null ? null : String.valueOf(kbPaymentMethodId);
+            this.message = message;
+        }
+    }
+}
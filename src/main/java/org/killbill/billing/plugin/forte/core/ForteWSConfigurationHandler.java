@@ -23,18 +23,24 @@ import org.killbill.billing.osgi.libs.killbill.OSGIKillbillAPI;
 import org.killbill.billing.osgi.libs.killbill.OSGIKillbillLogService;
 import org.killbill.billing.plugin.api.notification.PluginTenantConfigurableConfigurationHandler;
 import org.killbill.billing.plugin.forte.client.ForteWSClient;
+import org.killbill.billing.plugin.forte.client.ForteWSProxies;
 
 public class ForteWSConfigurationHandler extends PluginTenantConfigurableConfigurationHandler<ForteWSClient> {
 
+    // Shared by the clients of all tenants (parsed WSDL, proxies and connection pool)
+    private final ForteWSProxies proxies;
+
     public ForteWSConfigurationHandler(final String pluginName,
                                        final OSGIKillbillAPI osgiKillbillAPI,
-                                       final OSGIKillbillLogService osgiKillbillLogService) {
+                                       final OSGIKillbillLogService osgiKillbillLogService,
+                                       final ForteWSProxies proxies) {
         super(pluginName, osgiKillbillAPI, osgiKillbillLogService);
+        this.proxies = proxies;
     }
 
     @Override
     protected ForteWSClient createConfigurable(final Properties properties) {
-        return new ForteWSClient(properties);
+        return new ForteWSClient(properties, proxies);
     }
 }
 
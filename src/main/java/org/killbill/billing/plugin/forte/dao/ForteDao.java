@@ -20,14 +20,22 @@ import java.io.IOException;
 import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import javax.annotation.Nullable;
 import javax.sql.DataSource;
 
 import org.joda.time.DateTime;
+import org.jooq.Configuration;
+import org.jooq.DSLContext;
+import org.jooq.InsertValuesStepN;
+import org.jooq.TransactionalRunnable;
 import org.jooq.impl.DSL;
 import org.killbill.billing.catalog.api.Currency;
 import org.killbill.billing.payment.api.PluginProperty;
@@ -35,18 +43,23 @@ import org.killbill.billing.payment.api.TransactionType;
 import org.killbill.billing.plugin.api.PluginProperties;
 import org.killbill.billing.plugin.dao.payment.PluginPaymentDao;
 import org.killbill.billing.plugin.forte.api.FortePaymentPluginApi;
-import org.killbill.billing.plugin.forte.client.ForteAGIClient;
+import org.killbill.billing.plugin.forte.client.agi.AGIField;
+import org.killbill.billing.plugin.forte.client.agi.AGIResponse;
 import org.killbill.billing.plugin.forte.dao.gen.tables.FortePaymentMethods;
 import org.killbill.billing.plugin.forte.dao.gen.tables.ForteResponses;
 import org.killbill.billing.plugin.forte.dao.gen.tables.records.FortePaymentMethodsRecord;
 import org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteResponsesRecord;
+import org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteVaultMigrationsRecord;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 
+import static org.killbill.billing.plugin.forte.dao.gen.tables.ForteCustomers.FORTE_CUSTOMERS;
 import static org.killbill.billing.plugin.forte.dao.gen.tables.FortePaymentMethods.FORTE_PAYMENT_METHODS;
 import static org.killbill.billing.plugin.forte.dao.gen.tables.ForteResponses.FORTE_RESPONSES;
+import static org.killbill.billing.plugin.forte.dao.gen.tables.ForteVaultMigrations.FORTE_VAULT_MIGRATIONS;
 
 public class ForteDao extends PluginPaymentDao<ForteResponsesRecord, ForteResponses, FortePaymentMethodsRecord, FortePaymentMethods> {
 
@@ -68,6 +81,18 @@ public class ForteDao extends PluginPaymentDao<ForteResponsesRecord, ForteRespon
                             final Map response,
                             final DateTime utcNow,
                             final UUID kbTenantId) throws SQLException {
+        addResponse(kbAccountId, kbPaymentId, kbPaymentTransactionId, transactionType, amount, currency, AGIResponse.copyOf(response), utcNow, kbTenantId);
+    }
+
+    public void addResponse(final UUID kbAccountId,
+                            final UUID kbPaymentId,
+                            final UUID kbPaymentTransactionId,
+                            final TransactionType transactionType,
+                            final BigDecimal amount,
+                            final Currency currency,
+                            final AGIResponse response,
+                            final DateTime utcNow,
+                            final UUID kbTenantId) throws SQLException {
         execute(dataSource.getConnection(),
                 new WithConnectionCallback<Void>() {
                     @Override
@@ -127,44 +152,44 @@ public class ForteDao extends PluginPaymentDao<ForteResponsesRecord, ForteRespon
                                    transactionType.toString(),
                                    amount,
                                    currency,
-                                   response.get(ForteAGIClient.PG_MERCHANT_ID),
-                                   response.get(ForteAGIClient.PG_TRANSACTION_TYPE),
-                                   response.get(ForteAGIClient.PG_MERCHANT_DATA_1),
-                                   response.get(ForteAGIClient.PG_MERCHANT_DATA_2),
-                                   response.get(ForteAGIClient.PG_MERCHANT_DATA_3),
-                                   response.get(ForteAGIClient.PG_MERCHANT_DATA_4),
-                                   response.get(ForteAGIClient.PG_MERCHANT_DATA_5),
-                                   response.get(ForteAGIClient.PG_MERCHANT_DATA_6),
-                                   response.get(ForteAGIClient.PG_MERCHANT_DATA_7),
-                                   response.get(ForteAGIClient.PG_MERCHANT_DATA_8),
-                                   response.get(ForteAGIClient.PG_MERCHANT_DATA_9),
-                                   response.get(ForteAGIClient.PG_TOTAL_AMOUNT),
-                                   response.get(ForteAGIClient.PG_SALES_TAX_AMOUNT),
-                                   response.get(ForteAGIClient.PG_CUSTOMER_TOKEN),
-                                   response.get(ForteAGIClient.PG_CLIENT_ID),
-                                   response.get(ForteAGIClient.PG_CONSUMER_ID),
-                                   response.get(ForteAGIClient.ECOM_CONSUMERORDERID),
-                                   response.get(ForteAGIClient.PG_PAYMENT_TOKEN),
-                                   response.get(ForteAGIClient.PG_PAYMENT_METHOD_ID),
-                                   response.get(ForteAGIClient.ECOM_WALLETID),
-                                   response.get(ForteAGIClient.ECOM_BILLTO_POSTAL_NAME_FIRST),
-                                   response.get(ForteAGIClient.ECOM_BILLTO_POSTAL_NAME_LAST),
-                                   response.get(ForteAGIClient.PG_BILLTO_POSTAL_NAME_COMPANY),
-                                   response.get(ForteAGIClient.ECOM_BILLTO_ONLINE_EMAIL),
-                                   response.get(ForteAGIClient.PG_RESPONSE_TYPE),
-                                   response.get(ForteAGIClient.PG_RESPONSE_CODE),
-                                   response.get(ForteAGIClient.PG_RESPONSE_DESCRIPTION),
-                                   response.get(ForteAGIClient.PG_AVS_RESULT),
-                                   response.get(ForteAGIClient.PG_TRACE_NUMBER),
-                                   response.get(ForteAGIClient.PG_AUTHORIZATION_CODE),
-                                   response.get(ForteAGIClient.PG_PREAUTH_RESULT),
-                                   response.get(ForteAGIClient.PG_PREAUTH_DESCRIPTION),
-                                   response.get(ForteAGIClient.PG_PREAUTH_NEG_REPORT),
-                                   response.get(ForteAGIClient.PG_CVV2_RESULT),
-                                   response.get(ForteAGIClient.PG_3D_SECURE_RESULT),
-                                   response.get(ForteAGIClient.PG_AVAILABLE_CARD_BALANCE),
-                                   response.get(ForteAGIClient.PG_REQUESTED_AMOUNT),
-                                   response.get(ForteAGIClient.PG_CONVENIENCE_FEE),
+                                   response.get(AGIField.PG_MERCHANT_ID),
+                                   response.get(AGIField.PG_TRANSACTION_TYPE),
+                                   response.get(AGIField.PG_MERCHANT_DATA_1),
+                                   response.get(AGIField.PG_MERCHANT_DATA_2),
+                                   response.get(AGIField.PG_MERCHANT_DATA_3),
+                                   response.get(AGIField.PG_MERCHANT_DATA_4),
+                                   response.get(AGIField.PG_MERCHANT_DATA_5),
+                                   response.get(AGIField.PG_MERCHANT_DATA_6),
+                                   response.get(AGIField.PG_MERCHANT_DATA_7),
+                                   response.get(AGIField.PG_MERCHANT_DATA_8),
+                                   response.get(AGIField.PG_MERCHANT_DATA_9),
+                                   response.get(AGIField.PG_TOTAL_AMOUNT),
+                                   response.get(AGIField.PG_SALES_TAX_AMOUNT),
+                                   response.get(AGIField.PG_CUSTOMER_TOKEN),
+                                   response.get(AGIField.PG_CLIENT_ID),
+                                   response.get(AGIField.PG_CONSUMER_ID),
+                                   response.get(AGIField.ECOM_CONSUMERORDERID),
+                                   response.get(AGIField.PG_PAYMENT_TOKEN),
+                                   response.get(AGIField.PG_PAYMENT_METHOD_ID),
+                                   response.get(AGIField.ECOM_WALLETID),
+                                   response.get(AGIField.ECOM_BILLTO_POSTAL_NAME_FIRST),
+                                   response.get(AGIField.ECOM_BILLTO_POSTAL_NAME_LAST),
+                                   response.get(AGIField.PG_BILLTO_POSTAL_NAME_COMPANY),
+                                   response.get(AGIField.ECOM_BILLTO_ONLINE_EMAIL),
+                                   response.get(AGIField.PG_RESPONSE_TYPE),
+                                   response.get(AGIField.PG_RESPONSE_CODE),
+                                   response.get(AGIField.PG_RESPONSE_DESCRIPTION),
+                                   response.get(AGIField.PG_AVS_RESULT),
+                                   response.get(AGIField.PG_TRACE_NUMBER),
+                                   response.get(AGIField.PG_AUTHORIZATION_CODE),
+                                   response.get(AGIField.PG_PREAUTH_RESULT),
+                                   response.get(AGIField.PG_PREAUTH_DESCRIPTION),
+                                   response.get(AGIField.PG_PREAUTH_NEG_REPORT),
+                                   response.get(AGIField.PG_CVV2_RESULT),
+                                   response.get(AGIField.PG_3D_SECURE_RESULT),
+                                   response.get(AGIField.PG_AVAILABLE_CARD_BALANCE),
+                                   response.get(AGIField.PG_REQUESTED_AMOUNT),
+                                   response.get(AGIField.PG_CONVENIENCE_FEE),
                                    null,
                                    toTimestamp(utcNow),
                                    kbTenantId.toString())
@@ -178,72 +203,50 @@ public class ForteDao extends PluginPaymentDao<ForteResponsesRecord, ForteRespon
 
     @Override
     public void addPaymentMethod(final UUID kbAccountId, final UUID kbPaymentMethodId, final boolean isDefault, final Map properties, final DateTime utcNow, final UUID kbTenantId) throws SQLException {
-        final String ccNumber = getProperty(FortePaymentPluginApi.PROPERTY_CC_NUMBER, properties);
-        final String ccLast4 = ccNumber == null ? null : ccNumber.substring(ccNumber.length() - 5, ccNumber.length() - 1);
+        final Object[] values = buildPaymentMethodValues(kbAccountId, kbPaymentMethodId, isDefault, properties, utcNow, kbTenantId);
+
+        execute(dataSource.getConnection(),
+                new WithConnectionCallback<Void>() {
+                    @Override
+                    public Void withConnection(final Connection conn) throws SQLException {
+                        insertIntoPaymentMethods(DSL.using(conn, dialect, settings)).values(values).execute();
+                        return null;
+                    }
+                });
+    }
+
+    // Customers
+
+    @Nullable
+    public String getCustomerId(final UUID kbAccountId, final UUID kbTenantId) throws SQLException {
+        return execute(dataSource.getConnection(),
+                       new WithConnectionCallback<String>() {
+                           @Override
+                           public String withConnection(final Connection conn) throws SQLException {
+                               return DSL.using(conn, dialect, settings)
+                                         .select(FORTE_CUSTOMERS.CUSTOMER_ID)
+                                         .from(FORTE_CUSTOMERS)
+                                         .where(FORTE_CUSTOMERS.KB_ACCOUNT_ID.equal(kbAccountId.toString()))
+                                         .and(FORTE_CUSTOMERS.KB_TENANT_ID.equal(kbTenantId.toString()))
+                                         .fetchOne(FORTE_CUSTOMERS.CUSTOMER_ID);
+                           }
+                       });
+    }
 
+    public void addCustomer(final UUID kbAccountId, final String customerId, final DateTime utcNow, final UUID kbTenantId) throws SQLException {
         execute(dataSource.getConnection(),
                 new WithConnectionCallback<Void>() {
                     @Override
                     public Void withConnection(final Connection conn) throws SQLException {
                         DSL.using(conn, dialect, settings)
-                           .insertInto(FORTE_PAYMENT_METHODS,
-                                       FORTE_PAYMENT_METHODS.KB_ACCOUNT_ID,
-                                       FORTE_PAYMENT_METHODS.KB_PAYMENT_METHOD_ID,
-                                       FORTE_PAYMENT_METHODS.TOKEN,
-                                       FORTE_PAYMENT_METHODS.CC_FIRST_NAME,
-                                       FORTE_PAYMENT_METHODS.CC_LAST_NAME,
-                                       FORTE_PAYMENT_METHODS.CC_TYPE,
-                                       FORTE_PAYMENT_METHODS.CC_EXP_MONTH,
-                                       FORTE_PAYMENT_METHODS.CC_EXP_YEAR,
-                                       FORTE_PAYMENT_METHODS.CC_NUMBER,
-                                       FORTE_PAYMENT_METHODS.CC_LAST_4,
-                                       FORTE_PAYMENT_METHODS.CC_START_MONTH,
-                                       FORTE_PAYMENT_METHODS.CC_START_YEAR,
-                                       FORTE_PAYMENT_METHODS.CC_ISSUE_NUMBER,
-                                       FORTE_PAYMENT_METHODS.CC_VERIFICATION_VALUE,
-                                       FORTE_PAYMENT_METHODS.CC_TRACK_DATA,
-                                       FORTE_PAYMENT_METHODS.TRANSIT_ROUTING_NUMBER,
-                                       FORTE_PAYMENT_METHODS.ACCOUNT_NUMBER,
-                                       FORTE_PAYMENT_METHODS.ACCOUNT_TYPE,
-                                       FORTE_PAYMENT_METHODS.ADDRESS1,
-                                       FORTE_PAYMENT_METHODS.ADDRESS2,
-                                       FORTE_PAYMENT_METHODS.CITY,
-                                       FORTE_PAYMENT_METHODS.STATE,
-                                       FORTE_PAYMENT_METHODS.ZIP,
-                                       FORTE_PAYMENT_METHODS.COUNTRY,
-                                       FORTE_PAYMENT_METHODS.IS_DEFAULT,
-                                       FORTE_PAYMENT_METHODS.IS_DELETED,
-                                       FORTE_PAYMENT_METHODS.ADDITIONAL_DATA,
-                                       FORTE_PAYMENT_METHODS.CREATED_DATE,
-                                       FORTE_PAYMENT_METHODS.UPDATED_DATE,
-                                       FORTE_PAYMENT_METHODS.KB_TENANT_ID)
+                           .insertInto(FORTE_CUSTOMERS,
+                                       FORTE_CUSTOMERS.KB_ACCOUNT_ID,
+                                       FORTE_CUSTOMERS.CUSTOMER_ID,
+                                       FORTE_CUSTOMERS.CREATED_DATE,
+                                       FORTE_CUSTOMERS.UPDATED_DATE,
+                                       FORTE_CUSTOMERS.KB_TENANT_ID)
                            .values(kbAccountId.toString(),
-                                   kbPaymentMethodId.toString(),
-                                   getProperty(FortePaymentPluginApi.PROPERTY_TOKEN, properties),
-                                   getProperty(FortePaymentPluginApi.PROPERTY_CC_FIRST_NAME, properties),
-                                   getProperty(FortePaymentPluginApi.PROPERTY_CC_LAST_NAME, properties),
-                                   getProperty(FortePaymentPluginApi.PROPERTY_CC_TYPE, properties),
-                                   getProperty(FortePaymentPluginApi.PROPERTY_CC_EXPIRATION_MONTH, properties),
-                                   getProperty(FortePaymentPluginApi.PROPERTY_CC_EXPIRATION_YEAR, properties),
-                                   ccNumber,
-                                   ccLast4,
-                                   getProperty(FortePaymentPluginApi.PROPERTY_CC_START_MONTH, properties),
-                                   getProperty(FortePaymentPluginApi.PROPERTY_CC_START_YEAR, properties),
-                                   getProperty(FortePaymentPluginApi.PROPERTY_CC_ISSUE_NUMBER, properties),
-                                   getProperty(FortePaymentPluginApi.PROPERTY_CC_VERIFICATION_VALUE, properties),
-                                   getProperty(FortePaymentPluginApi.PROPERTY_CC_TRACK_DATA, properties),
-                                   getProperty(FortePaymentPluginApi.PROPERTY_TRANSIT_ROUTING_NUMBER, properties),
-                                   getProperty(FortePaymentPluginApi.PROPERTY_ACCOUNT_NUMBER, properties),
-                                   getProperty(FortePaymentPluginApi.PROPERTY_ACCOUNT_TYPE, properties),
-                                   getProperty(FortePaymentPluginApi.PROPERTY_ADDRESS1, properties),
-                                   getProperty(FortePaymentPluginApi.PROPERTY_ADDRESS2, properties),
-                                   getProperty(FortePaymentPluginApi.PROPERTY_CITY, properties),
-                                   getProperty(FortePaymentPluginApi.PROPERTY_STATE, properties),
-                                   getProperty(FortePaymentPluginApi.PROPERTY_ZIP, properties),
-                                   getProperty(FortePaymentPluginApi.PROPERTY_COUNTRY, properties),
-                                   fromBoolean(isDefault),
-                                   FALSE,
-                                   getAdditionalData(properties),
+                                   customerId,
                                    toTimestamp(utcNow),
                                    toTimestamp(utcNow),
                                    kbTenantId.toString())
@@ -253,6 +256,178 @@ public class ForteDao extends PluginPaymentDao<ForteResponsesRecord, ForteRespon
                 });
     }
 
+    // Vault migrations
+
+    public ForteVaultMigrationsRecord getVaultMigration(final String migrationId, final UUID kbTenantId) throws SQLException {
+        return execute(dataSource.getConnection(),
+                       new WithConnectionCallback<ForteVaultMigrationsRecord>() {
+                           @Override
+                           public ForteVaultMigrationsRecord withConnection(final Connection conn) throws SQLException {
+                               return DSL.using(conn, dialect, settings)
+                                         .selectFrom(FORTE_VAULT_MIGRATIONS)
+                                         .where(FORTE_VAULT_MIGRATIONS.MIGRATION_ID.equal(migrationId))
+                                         .and(FORTE_VAULT_MIGRATIONS.KB_TENANT_ID.equal(kbTenantId.toString()))
+                                         .fetchOne();
+                           }
+                       });
+    }
+
+    // Payment methods already there, among the given ones (regardless of the tenant, the ids are unique)
+    public Set<String> getExistingPaymentMethodIds(final Collection<String> kbPaymentMethodIds) throws SQLException {
+        if (kbPaymentMethodIds.isEmpty()) {
+            return ImmutableSet.<String>of();
+        }
+
+        return execute(dataSource.getConnection(),
+                       new WithConnectionCallback<Set<String>>() {
+                           @Override
+                           public Set<String> withConnection(final Connection conn) throws SQLException {
+                               return new HashSet<String>(DSL.using(conn, dialect, settings)
+                                                             .select(FORTE_PAYMENT_METHODS.KB_PAYMENT_METHOD_ID)
+                                                             .from(FORTE_PAYMENT_METHODS)
+                                                             .where(FORTE_PAYMENT_METHODS.KB_PAYMENT_METHOD_ID.in(kbPaymentMethodIds))
+                                                             .fetch(FORTE_PAYMENT_METHODS.KB_PAYMENT_METHOD_ID));
+                           }
+                       });
+    }
+
+    // The payment methods of the batch (one multi-row insert) and the migration checkpoint are saved together: after a crash,
+    // the migration resumes from the last saved batch
+    public void addVaultMigrationBatch(final ForteVaultMigrationBatch batch, final DateTime utcNow, final UUID kbTenantId) throws SQLException {
+        final List<Object[]> paymentMethodsValues = new ArrayList<Object[]>(batch.getPaymentMethods().size());
+        for (final ForteVaultMigrationBatch.PaymentMethod paymentMethod : batch.getPaymentMethods()) {
+            paymentMethodsValues.add(buildPaymentMethodValues(paymentMethod.getKbAccountId(),
+                                                              paymentMethod.getKbPaymentMethodId(),
+                                                              paymentMethod.isDefault(),
+                                                              paymentMethod.getProperties(),
+                                                              utcNow,
+                                                              kbTenantId));
+        }
+
+        execute(dataSource.getConnection(),
+                new WithConnectionCallback<Void>() {
+                    @Override
+                    public Void withConnection(final Connection conn) throws SQLException {
+                        DSL.using(conn, dialect, settings)
+                           .transaction(new TransactionalRunnable() {
+                               @Override
+                               public void run(final Configuration configuration) throws Exception {
+                                   if (!paymentMethodsValues.isEmpty()) {
+                                       InsertValuesStepN<FortePaymentMethodsRecord> insert = insertIntoPaymentMethods(DSL.using(configuration));
+                                       for (final Object[] values : paymentMethodsValues) {
+                                           insert = insert.values(values);
+                                       }
+                                       insert.execute();
+                                   }
+
+                                   final int updated = DSL.using(configuration)
+                                                          .update(FORTE_VAULT_MIGRATIONS)
+                                                          .set(FORTE_VAULT_MIGRATIONS.POSITION, batch.getPosition())
+                                                          .set(FORTE_VAULT_MIGRATIONS.TOKENIZED, batch.getTokenized())
+                                                          .set(FORTE_VAULT_MIGRATIONS.SKIPPED, batch.getSkipped())
+                                                          .set(FORTE_VAULT_MIGRATIONS.FAILED, batch.getFailed())
+                                                          .set(FORTE_VAULT_MIGRATIONS.UPDATED_DATE, toTimestamp(utcNow))
+                                                          .where(FORTE_VAULT_MIGRATIONS.MIGRATION_ID.equal(batch.getMigrationId()))
+                                                          .and(FORTE_VAULT_MIGRATIONS.KB_TENANT_ID.equal(kbTenantId.toString()))
+                                                          .execute();
+                                   if (updated == 0) {
+                                       DSL.using(configuration)
+                                          .insertInto(FORTE_VAULT_MIGRATIONS,
+                                                      FORTE_VAULT_MIGRATIONS.MIGRATION_ID,
+                                                      FORTE_VAULT_MIGRATIONS.POSITION,
+                                                      FORTE_VAULT_MIGRATIONS.TOKENIZED,
+                                                      FORTE_VAULT_MIGRATIONS.SKIPPED,
+                                                      FORTE_VAULT_MIGRATIONS.FAILED,
+                                                      FORTE_VAULT_MIGRATIONS.CREATED_DATE,
+                                                      FORTE_VAULT_MIGRATIONS.UPDATED_DATE,
+                                                      FORTE_VAULT_MIGRATIONS.KB_TENANT_ID)
+                                          .values(batch.getMigrationId(),
+                                                  batch.getPosition(),
+                                                  batch.getTokenized(),
+                                                  batch.getSkipped(),
+                                                  batch.getFailed(),
+                                                  toTimestamp(utcNow),
+                                                  toTimestamp(utcNow),
+                                                  kbTenantId.toString())
+                                          .execute();
+                                   }
+                               }
+                           });
+                        return null;
+                    }
+                });
+    }
+
+    private InsertValuesStepN<FortePaymentMethodsRecord> insertIntoPaymentMethods(final DSLContext context) {
+        return context.insertInto(FORTE_PAYMENT_METHODS,
+                                  FORTE_PAYMENT_METHODS.KB_ACCOUNT_ID,
+                                  FORTE_PAYMENT_METHODS.KB_PAYMENT_METHOD_ID,
+                                  FORTE_PAYMENT_METHODS.TOKEN,
+                                  FORTE_PAYMENT_METHODS.CC_FIRST_NAME,
+                                  FORTE_PAYMENT_METHODS.CC_LAST_NAME,
+                                  FORTE_PAYMENT_METHODS.CC_TYPE,
+                                  FORTE_PAYMENT_METHODS.CC_EXP_MONTH,
+                                  FORTE_PAYMENT_METHODS.CC_EXP_YEAR,
+                                  FORTE_PAYMENT_METHODS.CC_NUMBER,
+                                  FORTE_PAYMENT_METHODS.CC_LAST_4,
+                                  FORTE_PAYMENT_METHODS.CC_START_MONTH,
+                                  FORTE_PAYMENT_METHODS.CC_START_YEAR,
+                                  FORTE_PAYMENT_METHODS.CC_ISSUE_NUMBER,
+                                  FORTE_PAYMENT_METHODS.CC_VERIFICATION_VALUE,
+                                  FORTE_PAYMENT_METHODS.CC_TRACK_DATA,
+                                  FORTE_PAYMENT_METHODS.TRANSIT_ROUTING_NUMBER,
+                                  FORTE_PAYMENT_METHODS.ACCOUNT_NUMBER,
+                                  FORTE_PAYMENT_METHODS.ACCOUNT_TYPE,
+                                  FORTE_PAYMENT_METHODS.ADDRESS1,
+                                  FORTE_PAYMENT_METHODS.ADDRESS2,
+                                  FORTE_PAYMENT_METHODS.CITY,
+                                  FORTE_PAYMENT_METHODS.STATE,
+                                  FORTE_PAYMENT_METHODS.ZIP,
+                                  FORTE_PAYMENT_METHODS.COUNTRY,
+                                  FORTE_PAYMENT_METHODS.IS_DEFAULT,
+                                  FORTE_PAYMENT_METHODS.IS_DELETED,
+                                  FORTE_PAYMENT_METHODS.ADDITIONAL_DATA,
+                                  FORTE_PAYMENT_METHODS.CREATED_DATE,
+                                  FORTE_PAYMENT_METHODS.UPDATED_DATE,
+                                  FORTE_PAYMENT_METHODS.KB_TENANT_ID);
+    }
+
+    private Object[] buildPaymentMethodValues(final UUID kbAccountId, final UUID kbPaymentMethodId, final boolean isDefault, final Map properties, final DateTime utcNow, final UUID kbTenantId) throws SQLException {
+        final String ccNumber = getProperty(FortePaymentPluginApi.PROPERTY_CC_NUMBER, properties);
+        final String ccLast4 = ccNumber == null ? null : ccNumber.substring(ccNumber.length() - 5, ccNumber.length() - 1);
+
+        return new Object[]{kbAccountId.toString(),
+                            kbPaymentMethodId.toString(),
+                            getProperty(FortePaymentPluginApi.PROPERTY_TOKEN, properties),
+                            getProperty(FortePaymentPluginApi.PROPERTY_CC_FIRST_NAME, properties),
+                            getProperty(FortePaymentPluginApi.PROPERTY_CC_LAST_NAME, properties),
+                            getProperty(FortePaymentPluginApi.PROPERTY_CC_TYPE, properties),
+                            getProperty(FortePaymentPluginApi.PROPERTY_CC_EXPIRATION_MONTH, properties),
+                            getProperty(FortePaymentPluginApi.PROPERTY_CC_EXPIRATION_YEAR, properties),
+                            ccNumber,
+                            ccLast4,
+                            getProperty(FortePaymentPluginApi.PROPERTY_CC_START_MONTH, properties),
+                            getProperty(FortePaymentPluginApi.PROPERTY_CC_START_YEAR, properties),
+                            getProperty(FortePaymentPluginApi.PROPERTY_CC_ISSUE_NUMBER, properties),
+                            getProperty(FortePaymentPluginApi.PROPERTY_CC_VERIFICATION_VALUE, properties),
+                            getProperty(FortePaymentPluginApi.PROPERTY_CC_TRACK_DATA, properties),
+                            getProperty(FortePaymentPluginApi.PROPERTY_TRANSIT_ROUTING_NUMBER, properties),
+                            getProperty(FortePaymentPluginApi.PROPERTY_ACCOUNT_NUMBER, properties),
+                            getProperty(FortePaymentPluginApi.PROPERTY_ACCOUNT_TYPE, properties),
+                            getProperty(FortePaymentPluginApi.PROPERTY_ADDRESS1, properties),
+                            getProperty(FortePaymentPluginApi.PROPERTY_ADDRESS2, properties),
+                            getProperty(FortePaymentPluginApi.PROPERTY_CITY, properties),
+                            getProperty(FortePaymentPluginApi.PROPERTY_STATE, properties),
+                            getProperty(FortePaymentPluginApi.PROPERTY_ZIP, properties),
+                            getProperty(FortePaymentPluginApi.PROPERTY_COUNTRY, properties),
+                            fromBoolean(isDefault),
+                            FALSE,
+                            getAdditionalData(properties),
+                            toTimestamp(utcNow),
+                            toTimestamp(utcNow),
+                            kbTenantId.toString()};
+    }
+
     public static List<PluginProperty> buildPluginProperties(@Nullable final String additionalData) {
         if (additionalData == null) {
             return ImmutableList.<PluginProperty>of();
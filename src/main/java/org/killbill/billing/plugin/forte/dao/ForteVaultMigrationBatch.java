@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Tokenized payment methods of a vault migration batch, saved with the migration progress (counters include previous batches)
+public class ForteVaultMigrationBatch {
+
+    private final String migrationId;
+    private final long position;
+    private final long tokenized;
+    private final long skipped;
+    private final long failed;
+    private final List<PaymentMethod> paymentMethods = new ArrayList<PaymentMethod>();
+
+    public ForteVaultMigrationBatch(final String migrationId, final long position, final long tokenized, final long skipped, final long failed) {
+        this.migrationId = migrationId;
+        this.position = position;
+        this.tokenized = tokenized;
+        this.skipped = skipped;
+        this.failed = failed;
+    }
+
+    public ForteVaultMigrationBatch addPaymentMethod(final UUID kbAccountId, final UUID kbPaymentMethodId, final boolean isDefault, final Map<String, String> properties) {
+        paymentMethods.add(new PaymentMethod(kbAccountId, kbPaymentMethodId, isDefault, properties));
+        return this;
+    }
+
+    public String getMigrationId() {
+        return migrationId;
+    }
+
+    // Number of input records processed, this batch included
+    public long getPosition() {
+        return position;
+    }
+
+    public long getTokenized() {
+        return tokenized;
+    }
+
+    public long getSkipped() {
+        return skipped;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public List<PaymentMethod> getPaymentMethods() {
+        return paymentMethods;
+    }
+
+    public static final class PaymentMethod {
+
+        private final UUID kbAccountId;
+        private final UUID kbPaymentMethodId;
+        private final boolean isDefault;
+        private final Map<String, String> properties;
+
+        private PaymentMethod(final UUID kbAccountId, final UUID kbPaymentMethodId, final boolean isDefault, final Map<String, String> properties) {
+            this.kbAccountId = kbAccountId;
+            this.kbPaymentMethodId = kbPaymentMethodId;
+            this.isDefault = isDefault;
+            this.properties = properties;
+        }
+
+        public UUID getKbAccountId() {
+            return kbAccountId;
+        }
+
+        public UUID getKbPaymentMethodId() {
+            return kbPaymentMethodId;
+        }
+
+        public boolean isDefault() {
+            return isDefault;
+        }
+
+        public Map<String, String> getProperties() {
+            return properties;
+        }
+    }
+}
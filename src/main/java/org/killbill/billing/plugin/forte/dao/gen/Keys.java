@@ -21,16 +21,22 @@ public class Keys {
 	// IDENTITY definitions
 	// -------------------------------------------------------------------------
 
+	public static final org.jooq.Identity<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteCustomersRecord, org.jooq.types.UInteger> IDENTITY_FORTE_CUSTOMERS = Identities0.IDENTITY_FORTE_CUSTOMERS;
 	public static final org.jooq.Identity<org.killbill.billing.plugin.forte.dao.gen.tables.records.FortePaymentMethodsRecord, org.jooq.types.UInteger> IDENTITY_FORTE_PAYMENT_METHODS = Identities0.IDENTITY_FORTE_PAYMENT_METHODS;
 	public static final org.jooq.Identity<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteResponsesRecord, org.jooq.types.UInteger> IDENTITY_FORTE_RESPONSES = Identities0.IDENTITY_FORTE_RESPONSES;
+	public static final org.jooq.Identity<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteVaultMigrationsRecord, org.jooq.types.UInteger> IDENTITY_FORTE_VAULT_MIGRATIONS = Identities0.IDENTITY_FORTE_VAULT_MIGRATIONS;
 
 	// -------------------------------------------------------------------------
 	// UNIQUE and PRIMARY KEY definitions
 	// -------------------------------------------------------------------------
 
+	public static final org.jooq.UniqueKey<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteCustomersRecord> KEY_FORTE_CUSTOMERS_PRIMARY = UniqueKeys0.KEY_FORTE_CUSTOMERS_PRIMARY;
+	public static final org.jooq.UniqueKey<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteCustomersRecord> KEY_FORTE_CUSTOMERS_FORTE_CUSTOMERS_KB_ACCOUNT_ID = UniqueKeys0.KEY_FORTE_CUSTOMERS_FORTE_CUSTOMERS_KB_ACCOUNT_ID;
 	public static final org.jooq.UniqueKey<org.killbill.billing.plugin.forte.dao.gen.tables.records.FortePaymentMethodsRecord> KEY_FORTE_PAYMENT_METHODS_PRIMARY = UniqueKeys0.KEY_FORTE_PAYMENT_METHODS_PRIMARY;
 	public static final org.jooq.UniqueKey<org.killbill.billing.plugin.forte.dao.gen.tables.records.FortePaymentMethodsRecord> KEY_FORTE_PAYMENT_METHODS_FORTE_PAYMENT_METHODS_KB_PAYMENT_ID = UniqueKeys0.KEY_FORTE_PAYMENT_METHODS_FORTE_PAYMENT_METHODS_KB_PAYMENT_ID;
 	public static final org.jooq.UniqueKey<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteResponsesRecord> KEY_FORTE_RESPONSES_PRIMARY = UniqueKeys0.KEY_FORTE_RESPONSES_PRIMARY;
+	public static final org.jooq.UniqueKey<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteVaultMigrationsRecord> KEY_FORTE_VAULT_MIGRATIONS_PRIMARY = UniqueKeys0.KEY_FORTE_VAULT_MIGRATIONS_PRIMARY;
+	public static final org.jooq.UniqueKey<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteVaultMigrationsRecord> KEY_FORTE_VAULT_MIGRATIONS_FORTE_VAULT_MIGRATIONS_MIGRATION_ID = UniqueKeys0.KEY_FORTE_VAULT_MIGRATIONS_FORTE_VAULT_MIGRATIONS_MIGRATION_ID;
 
 	// -------------------------------------------------------------------------
 	// FOREIGN KEY definitions
@@ -42,13 +48,19 @@ public class Keys {
 	// -------------------------------------------------------------------------
 
 	private static class Identities0 extends org.jooq.impl.AbstractKeys {
+		public static org.jooq.Identity<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteCustomersRecord, org.jooq.types.UInteger> IDENTITY_FORTE_CUSTOMERS = createIdentity(org.killbill.billing.plugin.forte.dao.gen.tables.ForteCustomers.FORTE_CUSTOMERS, org.killbill.billing.plugin.forte.dao.gen.tables.ForteCustomers.FORTE_CUSTOMERS.RECORD_ID);
 		public static org.jooq.Identity<org.killbill.billing.plugin.forte.dao.gen.tables.records.FortePaymentMethodsRecord, org.jooq.types.UInteger> IDENTITY_FORTE_PAYMENT_METHODS = createIdentity(org.killbill.billing.plugin.forte.dao.gen.tables.FortePaymentMethods.FORTE_PAYMENT_METHODS, org.killbill.billing.plugin.forte.dao.gen.tables.FortePaymentMethods.FORTE_PAYMENT_METHODS.RECORD_ID);
 		public static org.jooq.Identity<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteResponsesRecord, org.jooq.types.UInteger> IDENTITY_FORTE_RESPONSES = createIdentity(org.killbill.billing.plugin.forte.dao.gen.tables.ForteResponses.FORTE_RESPONSES, org.killbill.billing.plugin.forte.dao.gen.tables.ForteResponses.FORTE_RESPONSES.RECORD_ID);
+		public static org.jooq.Identity<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteVaultMigrationsRecord, org.jooq.types.UInteger> IDENTITY_FORTE_VAULT_MIGRATIONS = createIdentity(org.killbill.billing.plugin.forte.dao.gen.tables.ForteVaultMigrations.FORTE_VAULT_MIGRATIONS, org.killbill.billing.plugin.forte.dao.gen.tables.ForteVaultMigrations.FORTE_VAULT_MIGRATIONS.RECORD_ID);
 	}
 
 	private static class UniqueKeys0 extends org.jooq.impl.AbstractKeys {
+		public static final org.jooq.UniqueKey<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteCustomersRecord> KEY_FORTE_CUSTOMERS_PRIMARY = createUniqueKey(org.killbill.billing.plugin.forte.dao.gen.tables.ForteCustomers.FORTE_CUSTOMERS, org.killbill.billing.plugin.forte.dao.gen.tables.ForteCustomers.FORTE_CUSTOMERS.RECORD_ID);
+		public static final org.jooq.UniqueKey<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteCustomersRecord> KEY_FORTE_CUSTOMERS_FORTE_CUSTOMERS_KB_ACCOUNT_ID = createUniqueKey(org.killbill.billing.plugin.forte.dao.gen.tables.ForteCustomers.FORTE_CUSTOMERS, org.killbill.billing.plugin.forte.dao.gen.tables.ForteCustomers.FORTE_CUSTOMERS.KB_ACCOUNT_ID);
 		public static final org.jooq.UniqueKey<org.killbill.billing.plugin.forte.dao.gen.tables.records.FortePaymentMethodsRecord> KEY_FORTE_PAYMENT_METHODS_PRIMARY = createUniqueKey(org.killbill.billing.plugin.forte.dao.gen.tables.FortePaymentMethods.FORTE_PAYMENT_METHODS, org.killbill.billing.plugin.forte.dao.gen.tables.FortePaymentMethods.FORTE_PAYMENT_METHODS.RECORD_ID);
 		public static final org.jooq.UniqueKey<org.killbill.billing.plugin.forte.dao.gen.tables.records.FortePaymentMethodsRecord> KEY_FORTE_PAYMENT_METHODS_FORTE_PAYMENT_METHODS_KB_PAYMENT_ID = createUniqueKey(org.killbill.billing.plugin.forte.dao.gen.tables.FortePaymentMethods.FORTE_PAYMENT_METHODS, org.killbill.billing.plugin.forte.dao.gen.tables.FortePaymentMethods.FORTE_PAYMENT_METHODS.KB_PAYMENT_METHOD_ID);
 		public static final org.jooq.UniqueKey<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteResponsesRecord> KEY_FORTE_RESPONSES_PRIMARY = createUniqueKey(org.killbill.billing.plugin.forte.dao.gen.tables.ForteResponses.FORTE_RESPONSES, org.killbill.billing.plugin.forte.dao.gen.tables.ForteResponses.FORTE_RESPONSES.RECORD_ID);
+		public static final org.jooq.UniqueKey<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteVaultMigrationsRecord> KEY_FORTE_VAULT_MIGRATIONS_PRIMARY = createUniqueKey(org.killbill.billing.plugin.forte.dao.gen.tables.ForteVaultMigrations.FORTE_VAULT_MIGRATIONS, org.killbill.billing.plugin.forte.dao.gen.tables.ForteVaultMigrations.FORTE_VAULT_MIGRATIONS.RECORD_ID);
+		public static final org.jooq.UniqueKey<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteVaultMigrationsRecord> KEY_FORTE_VAULT_MIGRATIONS_FORTE_VAULT_MIGRATIONS_MIGRATION_ID = createUniqueKey(org.killbill.billing.plugin.forte.dao.gen.tables.ForteVaultMigrations.FORTE_VAULT_MIGRATIONS, org.killbill.billing.plugin.forte.dao.gen.tables.ForteVaultMigrations.FORTE_VAULT_MIGRATIONS.KB_TENANT_ID, org.killbill.billing.plugin.forte.dao.gen.tables.ForteVaultMigrations.FORTE_VAULT_MIGRATIONS.MIGRATION_ID);
 	}
 }
@@ -39,7 +39,9 @@ public class Killbill extends org.jooq.impl.SchemaImpl {
 
 	private final java.util.List<org.jooq.Table<?>> getTables0() {
 		return java.util.Arrays.<org.jooq.Table<?>>asList(
+			org.killbill.billing.plugin.forte.dao.gen.tables.ForteCustomers.FORTE_CUSTOMERS,
 			org.killbill.billing.plugin.forte.dao.gen.tables.FortePaymentMethods.FORTE_PAYMENT_METHODS,
-			org.killbill.billing.plugin.forte.dao.gen.tables.ForteResponses.FORTE_RESPONSES);
+			org.killbill.billing.plugin.forte.dao.gen.tables.ForteResponses.FORTE_RESPONSES,
+			org.killbill.billing.plugin.forte.dao.gen.tables.ForteVaultMigrations.FORTE_VAULT_MIGRATIONS);
 	}
 }
@@ -16,6 +16,11 @@ package org.killbill.billing.plugin.forte.dao.gen;
 @java.lang.SuppressWarnings({ "all", "unchecked", "rawtypes" })
 public class Tables {
 
+	/**
+	 * The table killbill.forte_customers
+	 */
+	public static final org.killbill.billing.plugin.forte.dao.gen.tables.ForteCustomers FORTE_CUSTOMERS = org.killbill.billing.plugin.forte.dao.gen.tables.ForteCustomers.FORTE_CUSTOMERS;
+
 	/**
 	 * The table killbill.forte_payment_methods
 	 */
@@ -25,4 +30,9 @@ public class Tables {
 	 * The table killbill.forte_responses
 	 */
 	public static final org.killbill.billing.plugin.forte.dao.gen.tables.ForteResponses FORTE_RESPONSES = org.killbill.billing.plugin.forte.dao.gen.tables.ForteResponses.FORTE_RESPONSES;
+
+	/**
+	 * The table killbill.forte_vault_migrations
+	 */
+	public static final org.killbill.billing.plugin.forte.dao.gen.tables.ForteVaultMigrations FORTE_VAULT_MIGRATIONS = org.killbill.billing.plugin.forte.dao.gen.tables.ForteVaultMigrations.FORTE_VAULT_MIGRATIONS;
 }
@@ -0,0 +1,124 @@
+/**
+ * This class is generated by jOOQ
+ */
+package org.killbill.billing.plugin.forte.dao.gen.tables;
+
+/**
+ * This class is generated by jOOQ.
+ */
+@javax.annotation.Generated(
+	value = {
+		"http://www.jooq.org",
+		"jOOQ version:3.5.0"
+	},
+	comments = "This class is generated by jOOQ"
+)
+@java.lang.SuppressWarnings({ "all", "unchecked", "rawtypes" })
+public class ForteCustomers extends org.jooq.impl.TableImpl<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteCustomersRecord> {
+
+	private static final long serialVersionUID = -1403817260;
+
+	/**
+	 * The reference instance of <code>killbill.forte_customers</code>
+	 */
+	public static final org.killbill.billing.plugin.forte.dao.gen.tables.ForteCustomers FORTE_CUSTOMERS = new org.killbill.billing.plugin.forte.dao.gen.tables.ForteCustomers();
+
+	/**
+	 * The class holding records for this type
+	 */
+	@Override
+	public java.lang.Class<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteCustomersRecord> getRecordType() {
+		return org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteCustomersRecord.class;
+	}
+
+	/**
+	 * The column <code>killbill.forte_customers.record_id</code>.
+	 */
+	public final org.jooq.TableField<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteCustomersRecord, org.jooq.types.UInteger> RECORD_ID = createField("record_id", org.jooq.impl.SQLDataType.INTEGERUNSIGNED.nullable(false), this, "");
+
+	/**
+	 * The column <code>killbill.forte_customers.kb_account_id</code>.
+	 */
+	public final org.jooq.TableField<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteCustomersRecord, java.lang.String> KB_ACCOUNT_ID = createField("kb_account_id", org.jooq.impl.SQLDataType.CHAR.length(36).nullable(false), this, "");
+
+	/**
+	 * The column <code>killbill.forte_customers.customer_id</code>.
+	 */
+	public final org.jooq.TableField<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteCustomersRecord, java.lang.String> CUSTOMER_ID = createField("customer_id", org.jooq.impl.SQLDataType.VARCHAR.length(64).nullable(false), this, "");
+
+	/**
+	 * The column <code>killbill.forte_customers.created_date</code>.
+	 */
+	public final org.jooq.TableField<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteCustomersRecord, java.sql.Timestamp> CREATED_DATE = createField("created_date", org.jooq.impl.SQLDataType.TIMESTAMP.nullable(false), this, "");
+
+	/**
+	 * The column <code>killbill.forte_customers.updated_date</code>.
+	 */
+	public final org.jooq.TableField<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteCustomersRecord, java.sql.Timestamp> UPDATED_DATE = createField("updated_date", org.jooq.impl.SQLDataType.TIMESTAMP.nullable(false), this, "");
+
+	/**
+	 * The column <code>killbill.forte_customers.kb_tenant_id</code>.
+	 */
+	public final org.jooq.TableField<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteCustomersRecord, java.lang.String> KB_TENANT_ID = createField("kb_tenant_id", org.jooq.impl.SQLDataType.CHAR.length(36).nullable(false), this, "");
+
+	/**
+	 * Create a <code>killbill.forte_customers</code> table reference
+	 */
+	public ForteCustomers() {
+		this("forte_customers", null);
+	}
+
+	/**
+	 * Create an aliased <code>killbill.forte_customers</code> table reference
+	 */
+	public ForteCustomers(java.lang.String alias) {
+		this(alias, org.killbill.billing.plugin.forte.dao.gen.tables.ForteCustomers.FORTE_CUSTOMERS);
+	}
+
+	private ForteCustomers(java.lang.String alias, org.jooq.Table<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteCustomersRecord> aliased) {
+		this(alias, aliased, null);
+	}
+
+	private ForteCustomers(java.lang.String alias, org.jooq.Table<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteCustomersRecord> aliased, org.jooq.Field<?>[] parameters) {
+		super(alias, org.killbill.billing.plugin.forte.dao.gen.Killbill.KILLBILL, aliased, parameters, "");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public org.jooq.Identity<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteCustomersRecord, org.jooq.types.UInteger> getIdentity() {
+		return org.killbill.billing.plugin.forte.dao.gen.Keys.IDENTITY_FORTE_CUSTOMERS;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public org.jooq.UniqueKey<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteCustomersRecord> getPrimaryKey() {
+		return org.killbill.billing.plugin.forte.dao.gen.Keys.KEY_FORTE_CUSTOMERS_PRIMARY;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public java.util.List<org.jooq.UniqueKey<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteCustomersRecord>> getKeys() {
+		return java.util.Arrays.<org.jooq.UniqueKey<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteCustomersRecord>>asList(org.killbill.billing.plugin.forte.dao.gen.Keys.KEY_FORTE_CUSTOMERS_PRIMARY, org.killbill.billing.plugin.forte.dao.gen.Keys.KEY_FORTE_CUSTOMERS_FORTE_CUSTOMERS_KB_ACCOUNT_ID);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public org.killbill.billing.plugin.forte.dao.gen.tables.ForteCustomers as(java.lang.String alias) {
+		return new org.killbill.billing.plugin.forte.dao.gen.tables.ForteCustomers(alias, this);
+	}
+
+	/**
+	 * Rename this table
+	 */
+	public org.killbill.billing.plugin.forte.dao.gen.tables.ForteCustomers rename(java.lang.String name) {
+		return new org.killbill.billing.plugin.forte.dao.gen.tables.ForteCustomers(name, null);
+	}
+}
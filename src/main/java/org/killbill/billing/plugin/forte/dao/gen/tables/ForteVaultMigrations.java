@@ -0,0 +1,139 @@
+/**
+ * This class is generated by jOOQ
+ */
+package org.killbill.billing.plugin.forte.dao.gen.tables;
+
+/**
+ * This class is generated by jOOQ.
+ */
+@javax.annotation.Generated(
+	value = {
+		"http://www.jooq.org",
+		"jOOQ version:3.5.0"
+	},
+	comments = "This class is generated by jOOQ"
+)
+@java.lang.SuppressWarnings({ "all", "unchecked", "rawtypes" })
+public class ForteVaultMigrations extends org.jooq.impl.TableImpl<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteVaultMigrationsRecord> {
+
+	private static final long serialVersionUID = 1218396574;
+
+	/**
+	 * The reference instance of <code>killbill.forte_vault_migrations</code>
+	 */
+	public static final org.killbill.billing.plugin.forte.dao.gen.tables.ForteVaultMigrations FORTE_VAULT_MIGRATIONS = new org.killbill.billing.plugin.forte.dao.gen.tables.ForteVaultMigrations();
+
+	/**
+	 * The class holding records for this type
+	 */
+	@Override
+	public java.lang.Class<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteVaultMigrationsRecord> getRecordType() {
+		return org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteVaultMigrationsRecord.class;
+	}
+
+	/**
+	 * The column <code>killbill.forte_vault_migrations.record_id</code>.
+	 */
+	public final org.jooq.TableField<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteVaultMigrationsRecord, org.jooq.types.UInteger> RECORD_ID = createField("record_id", org.jooq.impl.SQLDataType.INTEGERUNSIGNED.nullable(false), this, "");
+
+	/**
+	 * The column <code>killbill.forte_vault_migrations.migration_id</code>.
+	 */
+	public final org.jooq.TableField<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteVaultMigrationsRecord, java.lang.String> MIGRATION_ID = createField("migration_id", org.jooq.impl.SQLDataType.VARCHAR.length(128).nullable(false), this, "");
+
+	/**
+	 * The column <code>killbill.forte_vault_migrations.position</code>.
+	 */
+	public final org.jooq.TableField<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteVaultMigrationsRecord, java.lang.Long> POSITION = createField("position", org.jooq.impl.SQLDataType.BIGINT.nullable(false), this, "");
+
+	/**
+	 * The column <code>killbill.forte_vault_migrations.tokenized</code>.
+	 */
+	public final org.jooq.TableField<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteVaultMigrationsRecord, java.lang.Long> TOKENIZED = createField("tokenized", org.jooq.impl.SQLDataType.BIGINT.nullable(false), this, "");
+
+	/**
+	 * The column <code>killbill.forte_vault_migrations.skipped</code>.
+	 */
+	public final org.jooq.TableField<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteVaultMigrationsRecord, java.lang.Long> SKIPPED = createField("skipped", org.jooq.impl.SQLDataType.BIGINT.nullable(false), this, "");
+
+	/**
+	 * The column <code>killbill.forte_vault_migrations.failed</code>.
+	 */
+	public final org.jooq.TableField<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteVaultMigrationsRecord, java.lang.Long> FAILED = createField("failed", org.jooq.impl.SQLDataType.BIGINT.nullable(false), this, "");
+
+	/**
+	 * The column <code>killbill.forte_vault_migrations.created_date</code>.
+	 */
+	public final org.jooq.TableField<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteVaultMigrationsRecord, java.sql.Timestamp> CREATED_DATE = createField("created_date", org.jooq.impl.SQLDataType.TIMESTAMP.nullable(false), this, "");
+
+	/**
+	 * The column <code>killbill.forte_vault_migrations.updated_date</code>.
+	 */
+	public final org.jooq.TableField<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteVaultMigrationsRecord, java.sql.Timestamp> UPDATED_DATE = createField("updated_date", org.jooq.impl.SQLDataType.TIMESTAMP.nullable(false), this, "");
+
+	/**
+	 * The column <code>killbill.forte_vault_migrations.kb_tenant_id</code>.
+	 */
+	public final org.jooq.TableField<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteVaultMigrationsRecord, java.lang.String> KB_TENANT_ID = createField("kb_tenant_id", org.jooq.impl.SQLDataType.CHAR.length(36).nullable(false), this, "");
+
+	/**
+	 * Create a <code>killbill.forte_vault_migrations</code> table reference
+	 */
+	public ForteVaultMigrations() {
+		this("forte_vault_migrations", null);
+	}
+
+	/**
+	 * Create an aliased <code>killbill.forte_vault_migrations</code> table reference
+	 */
+	public ForteVaultMigrations(java.lang.String alias) {
+		this(alias, org.killbill.billing.plugin.forte.dao.gen.tables.ForteVaultMigrations.FORTE_VAULT_MIGRATIONS);
+	}
+
+	private ForteVaultMigrations(java.lang.String alias, org.jooq.Table<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteVaultMigrationsRecord> aliased) {
+		this(alias, aliased, null);
+	}
+
+	private ForteVaultMigrations(java.lang.String alias, org.jooq.Table<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteVaultMigrationsRecord> aliased, org.jooq.Field<?>[] parameters) {
+		super(alias, org.killbill.billing.plugin.forte.dao.gen.Killbill.KILLBILL, aliased, parameters, "");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public org.jooq.Identity<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteVaultMigrationsRecord, org.jooq.types.UInteger> getIdentity() {
+		return org.killbill.billing.plugin.forte.dao.gen.Keys.IDENTITY_FORTE_VAULT_MIGRATIONS;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public org.jooq.UniqueKey<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteVaultMigrationsRecord> getPrimaryKey() {
+		return org.killbill.billing.plugin.forte.dao.gen.Keys.KEY_FORTE_VAULT_MIGRATIONS_PRIMARY;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public java.util.List<org.jooq.UniqueKey<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteVaultMigrationsRecord>> getKeys() {
+		return java.util.Arrays.<org.jooq.UniqueKey<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteVaultMigrationsRecord>>asList(org.killbill.billing.plugin.forte.dao.gen.Keys.KEY_FORTE_VAULT_MIGRATIONS_PRIMARY, org.killbill.billing.plugin.forte.dao.gen.Keys.KEY_FORTE_VAULT_MIGRATIONS_FORTE_VAULT_MIGRATIONS_MIGRATION_ID);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public org.killbill.billing.plugin.forte.dao.gen.tables.ForteVaultMigrations as(java.lang.String alias) {
+		return new org.killbill.billing.plugin.forte.dao.gen.tables.ForteVaultMigrations(alias, this);
+	}
+
+	/**
+	 * Rename this table
+	 */
+	public org.killbill.billing.plugin.forte.dao.gen.tables.ForteVaultMigrations rename(java.lang.String name) {
+		return new org.killbill.billing.plugin.forte.dao.gen.tables.ForteVaultMigrations(name, null);
+	}
+}
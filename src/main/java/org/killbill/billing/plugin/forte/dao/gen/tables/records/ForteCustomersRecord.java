@@ -0,0 +1,319 @@
+/**
+ * This class is generated by jOOQ
+ */
+package org.killbill.billing.plugin.forte.dao.gen.tables.records;
+
+/**
+ * This class is generated by jOOQ.
+ */
+@javax.annotation.Generated(
+	value = {
+		"http://www.jooq.org",
+		"jOOQ version:3.5.0"
+	},
+	comments = "This class is generated by jOOQ"
+)
+@java.lang.SuppressWarnings({ "all", "unchecked", "rawtypes" })
+public class ForteCustomersRecord extends org.jooq.impl.UpdatableRecordImpl<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteCustomersRecord> implements org.jooq.Record6<org.jooq.types.UInteger, java.lang.String, java.lang.String, java.sql.Timestamp, java.sql.Timestamp, java.lang.String> {
+
+	private static final long serialVersionUID = 1930264817;
+
+	/**
+	 * Setter for <code>killbill.forte_customers.record_id</code>.
+	 */
+	public void setRecordId(org.jooq.types.UInteger value) {
+		setValue(0, value);
+	}
+
+	/**
+	 * Getter for <code>killbill.forte_customers.record_id</code>.
+	 */
+	public org.jooq.types.UInteger getRecordId() {
+		return (org.jooq.types.UInteger) getValue(0);
+	}
+
+	/**
+	 * Setter for <code>killbill.forte_customers.kb_account_id</code>.
+	 */
+	public void setKbAccountId(java.lang.String value) {
+		setValue(1, value);
+	}
+
+	/**
+	 * Getter for <code>killbill.forte_customers.kb_account_id</code>.
+	 */
+	public java.lang.String getKbAccountId() {
+		return (java.lang.String) getValue(1);
+	}
+
+	/**
+	 * Setter for <code>killbill.forte_customers.customer_id</code>.
+	 */
+	public void setCustomerId(java.lang.String value) {
+		setValue(2, value);
+	}
+
+	/**
+	 * Getter for <code>killbill.forte_customers.customer_id</code>.
+	 */
+	public java.lang.String getCustomerId() {
+		return (java.lang.String) getValue(2);
+	}
+
+	/**
+	 * Setter for <code>killbill.forte_customers.created_date</code>.
+	 */
+	public void setCreatedDate(java.sql.Timestamp value) {
+		setValue(3, value);
+	}
+
+	/**
+	 * Getter for <code>killbill.forte_customers.created_date</code>.
+	 */
+	public java.sql.Timestamp getCreatedDate() {
+		return (java.sql.Timestamp) getValue(3);
+	}
+
+	/**
+	 * Setter for <code>killbill.forte_customers.updated_date</code>.
+	 */
+	public void setUpdatedDate(java.sql.Timestamp value) {
+		setValue(4, value);
+	}
+
+	/**
+	 * Getter for <code>killbill.forte_customers.updated_date</code>.
+	 */
+	public java.sql.Timestamp getUpdatedDate() {
+		return (java.sql.Timestamp) getValue(4);
+	}
+
+	/**
+	 * Setter for <code>killbill.forte_customers.kb_tenant_id</code>.
+	 */
+	public void setKbTenantId(java.lang.String value) {
+		setValue(5, value);
+	}
+
+	/**
+	 * Getter for <code>killbill.forte_customers.kb_tenant_id</code>.
+	 */
+	public java.lang.String getKbTenantId() {
+		return (java.lang.String) getValue(5);
+	}
+
+	// -------------------------------------------------------------------------
+	// Primary key information
+	// -------------------------------------------------------------------------
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public org.jooq.Record1<org.jooq.types.UInteger> key() {
+		return (org.jooq.Record1) super.key();
+	}
+
+	// -------------------------------------------------------------------------
+	// Record6 type implementation
+	// -------------------------------------------------------------------------
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public org.jooq.Row6<org.jooq.types.UInteger, java.lang.String, java.lang.String, java.sql.Timestamp, java.sql.Timestamp, java.lang.String> fieldsRow() {
+		return (org.jooq.Row6) super.fieldsRow();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public org.jooq.Row6<org.jooq.types.UInteger, java.lang.String, java.lang.String, java.sql.Timestamp, java.sql.Timestamp, java.lang.String> valuesRow() {
+		return (org.jooq.Row6) super.valuesRow();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public org.jooq.Field<org.jooq.types.UInteger> field1() {
+		return org.killbill.billing.plugin.forte.dao.gen.tables.ForteCustomers.FORTE_CUSTOMERS.RECORD_ID;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public org.jooq.Field<java.lang.String> field2() {
+		return org.killbill.billing.plugin.forte.dao.gen.tables.ForteCustomers.FORTE_CUSTOMERS.KB_ACCOUNT_ID;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public org.jooq.Field<java.lang.String> field3() {
+		return org.killbill.billing.plugin.forte.dao.gen.tables.ForteCustomers.FORTE_CUSTOMERS.CUSTOMER_ID;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public org.jooq.Field<java.sql.Timestamp> field4() {
+		return org.killbill.billing.plugin.forte.dao.gen.tables.ForteCustomers.FORTE_CUSTOMERS.CREATED_DATE;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public org.jooq.Field<java.sql.Timestamp> field5() {
+		return org.killbill.billing.plugin.forte.dao.gen.tables.ForteCustomers.FORTE_CUSTOMERS.UPDATED_DATE;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public org.jooq.Field<java.lang.String> field6() {
+		return org.killbill.billing.plugin.forte.dao.gen.tables.ForteCustomers.FORTE_CUSTOMERS.KB_TENANT_ID;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public org.jooq.types.UInteger value1() {
+		return getRecordId();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public java.lang.String value2() {
+		return getKbAccountId();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public java.lang.String value3() {
+		return getCustomerId();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public java.sql.Timestamp value4() {
+		return getCreatedDate();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public java.sql.Timestamp value5() {
+		return getUpdatedDate();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public java.lang.String value6() {
+		return getKbTenantId();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ForteCustomersRecord value1(org.jooq.types.UInteger value) {
+		setRecordId(value);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ForteCustomersRecord value2(java.lang.String value) {
+		setKbAccountId(value);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ForteCustomersRecord value3(java.lang.String value) {
+		setCustomerId(value);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ForteCustomersRecord value4(java.sql.Timestamp value) {
+		setCreatedDate(value);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ForteCustomersRecord value5(java.sql.Timestamp value) {
+		setUpdatedDate(value);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ForteCustomersRecord value6(java.lang.String value) {
+		setKbTenantId(value);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ForteCustomersRecord values(org.jooq.types.UInteger value1, java.lang.String value2, java.lang.String value3, java.sql.Timestamp value4, java.sql.Timestamp value5, java.lang.String value6) {
+		return this;
+	}
+
+	// -------------------------------------------------------------------------
+	// Constructors
+	// -------------------------------------------------------------------------
+
+	/**
+	 * Create a detached ForteCustomersRecord
+	 */
+	public ForteCustomersRecord() {
+		super(org.killbill.billing.plugin.forte.dao.gen.tables.ForteCustomers.FORTE_CUSTOMERS);
+	}
+
+	/**
+	 * Create a detached, initialised ForteCustomersRecord
+	 */
+	public ForteCustomersRecord(org.jooq.types.UInteger recordId, java.lang.String kbAccountId, java.lang.String customerId, java.sql.Timestamp createdDate, java.sql.Timestamp updatedDate, java.lang.String kbTenantId) {
+		super(org.killbill.billing.plugin.forte.dao.gen.tables.ForteCustomers.FORTE_CUSTOMERS);
+
+		setValue(0, recordId);
+		setValue(1, kbAccountId);
+		setValue(2, customerId);
+		setValue(3, createdDate);
+		setValue(4, updatedDate);
+		setValue(5, kbTenantId);
+	}
+}
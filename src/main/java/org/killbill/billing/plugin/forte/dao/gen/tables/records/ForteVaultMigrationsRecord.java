@@ -0,0 +1,439 @@
+/**
+ * This class is generated by jOOQ
+ */
+package org.killbill.billing.plugin.forte.dao.gen.tables.records;
+
+/**
+ * This class is generated by jOOQ.
+ */
+@javax.annotation.Generated(
+	value = {
+		"http://www.jooq.org",
+		"jOOQ version:3.5.0"
+	},
+	comments = "This class is generated by jOOQ"
+)
+@java.lang.SuppressWarnings({ "all", "unchecked", "rawtypes" })
+public class ForteVaultMigrationsRecord extends org.jooq.impl.UpdatableRecordImpl<org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteVaultMigrationsRecord> implements org.jooq.Record9<org.jooq.types.UInteger, java.lang.String, java.lang.Long, java.lang.Long, java.lang.Long, java.lang.Long, java.sql.Timestamp, java.sql.Timestamp, java.lang.String> {
+
+	private static final long serialVersionUID = -705563178;
+
+	/**
+	 * Setter for <code>killbill.forte_vault_migrations.record_id</code>.
+	 */
+	public void setRecordId(org.jooq.types.UInteger value) {
+		setValue(0, value);
+	}
+
+	/**
+	 * Getter for <code>killbill.forte_vault_migrations.record_id</code>.
+	 */
+	public org.jooq.types.UInteger getRecordId() {
+		return (org.jooq.types.UInteger) getValue(0);
+	}
+
+	/**
+	 * Setter for <code>killbill.forte_vault_migrations.migration_id</code>.
+	 */
+	public void setMigrationId(java.lang.String value) {
+		setValue(1, value);
+	}
+
+	/**
+	 * Getter for <code>killbill.forte_vault_migrations.migration_id</code>.
+	 */
+	public java.lang.String getMigrationId() {
+		return (java.lang.String) getValue(1);
+	}
+
+	/**
+	 * Setter for <code>killbill.forte_vault_migrations.position</code>.
+	 */
+	public void setPosition(java.lang.Long value) {
+		setValue(2, value);
+	}
+
+	/**
+	 * Getter for <code>killbill.forte_vault_migrations.position</code>.
+	 */
+	public java.lang.Long getPosition() {
+		return (java.lang.Long) getValue(2);
+	}
+
+	/**
+	 * Setter for <code>killbill.forte_vault_migrations.tokenized</code>.
+	 */
+	public void setTokenized(java.lang.Long value) {
+		setValue(3, value);
+	}
+
+	/**
+	 * Getter for <code>killbill.forte_vault_migrations.tokenized</code>.
+	 */
+	public java.lang.Long getTokenized() {
+		return (java.lang.Long) getValue(3);
+	}
+
+	/**
+	 * Setter for <code>killbill.forte_vault_migrations.skipped</code>.
+	 */
+	public void setSkipped(java.lang.Long value) {
+		setValue(4, value);
+	}
+
+	/**
+	 * Getter for <code>killbill.forte_vault_migrations.skipped</code>.
+	 */
+	public java.lang.Long getSkipped() {
+		return (java.lang.Long) getValue(4);
+	}
+
+	/**
+	 * Setter for <code>killbill.forte_vault_migrations.failed</code>.
+	 */
+	public void setFailed(java.lang.Long value) {
+		setValue(5, value);
+	}
+
+	/**
+	 * Getter for <code>killbill.forte_vault_migrations.failed</code>.
+	 */
+	public java.lang.Long getFailed() {
+		return (java.lang.Long) getValue(5);
+	}
+
+	/**
+	 * Setter for <code>killbill.forte_vault_migrations.created_date</code>.
+	 */
+	public void setCreatedDate(java.sql.Timestamp value) {
+		setValue(6, value);
+	}
+
+	/**
+	 * Getter for <code>killbill.forte_vault_migrations.created_date</code>.
+	 */
+	public java.sql.Timestamp getCreatedDate() {
+		return (java.sql.Timestamp) getValue(6);
+	}
+
+	/**
+	 * Setter for <code>killbill.forte_vault_migrations.updated_date</code>.
+	 */
+	public void setUpdatedDate(java.sql.Timestamp value) {
+		setValue(7, value);
+	}
+
+	/**
+	 * Getter for <code>killbill.forte_vault_migrations.updated_date</code>.
+	 */
+	public java.sql.Timestamp getUpdatedDate() {
+		return (java.sql.Timestamp) getValue(7);
+	}
+
+	/**
+	 * Setter for <code>killbill.forte_vault_migrations.kb_tenant_id</code>.
+	 */
+	public void setKbTenantId(java.lang.String value) {
+		setValue(8, value);
+	}
+
+	/**
+	 * Getter for <code>killbill.forte_vault_migrations.kb_tenant_id</code>.
+	 */
+	public java.lang.String getKbTenantId() {
+		return (java.lang.String) getValue(8);
+	}
+
+	// -------------------------------------------------------------------------
+	// Primary key information
+	// -------------------------------------------------------------------------
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public org.jooq.Record1<org.jooq.types.UInteger> key() {
+		return (org.jooq.Record1) super.key();
+	}
+
+	// -------------------------------------------------------------------------
+	// Record9 type implementation
+	// -------------------------------------------------------------------------
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public org.jooq.Row9<org.jooq.types.UInteger, java.lang.String, java.lang.Long, java.lang.Long, java.lang.Long, java.lang.Long, java.sql.Timestamp, java.sql.Timestamp, java.lang.String> fieldsRow() {
+		return (org.jooq.Row9) super.fieldsRow();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public org.jooq.Row9<org.jooq.types.UInteger, java.lang.String, java.lang.Long, java.lang.Long, java.lang.Long, java.lang.Long, java.sql.Timestamp, java.sql.Timestamp, java.lang.String> valuesRow() {
+		return (org.jooq.Row9) super.valuesRow();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public org.jooq.Field<org.jooq.types.UInteger> field1() {
+		return org.killbill.billing.plugin.forte.dao.gen.tables.ForteVaultMigrations.FORTE_VAULT_MIGRATIONS.RECORD_ID;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public org.jooq.Field<java.lang.String> field2() {
+		return org.killbill.billing.plugin.forte.dao.gen.tables.ForteVaultMigrations.FORTE_VAULT_MIGRATIONS.MIGRATION_ID;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public org.jooq.Field<java.lang.Long> field3() {
+		return org.killbill.billing.plugin.forte.dao.gen.tables.ForteVaultMigrations.FORTE_VAULT_MIGRATIONS.POSITION;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public org.jooq.Field<java.lang.Long> field4() {
+		return org.killbill.billing.plugin.forte.dao.gen.tables.ForteVaultMigrations.FORTE_VAULT_MIGRATIONS.TOKENIZED;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public org.jooq.Field<java.lang.Long> field5() {
+		return org.killbill.billing.plugin.forte.dao.gen.tables.ForteVaultMigrations.FORTE_VAULT_MIGRATIONS.SKIPPED;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public org.jooq.Field<java.lang.Long> field6() {
+		return org.killbill.billing.plugin.forte.dao.gen.tables.ForteVaultMigrations.FORTE_VAULT_MIGRATIONS.FAILED;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public org.jooq.Field<java.sql.Timestamp> field7() {
+		return org.killbill.billing.plugin.forte.dao.gen.tables.ForteVaultMigrations.FORTE_VAULT_MIGRATIONS.CREATED_DATE;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public org.jooq.Field<java.sql.Timestamp> field8() {
+		return org.killbill.billing.plugin.forte.dao.gen.tables.ForteVaultMigrations.FORTE_VAULT_MIGRATIONS.UPDATED_DATE;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public org.jooq.Field<java.lang.String> field9() {
+		return org.killbill.billing.plugin.forte.dao.gen.tables.ForteVaultMigrations.FORTE_VAULT_MIGRATIONS.KB_TENANT_ID;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public org.jooq.types.UInteger value1() {
+		return getRecordId();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public java.lang.String value2() {
+		return getMigrationId();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public java.lang.Long value3() {
+		return getPosition();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public java.lang.Long value4() {
+		return getTokenized();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public java.lang.Long value5() {
+		return getSkipped();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public java.lang.Long value6() {
+		return getFailed();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public java.sql.Timestamp value7() {
+		return getCreatedDate();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public java.sql.Timestamp value8() {
+		return getUpdatedDate();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public java.lang.String value9() {
+		return getKbTenantId();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ForteVaultMigrationsRecord value1(org.jooq.types.UInteger value) {
+		setRecordId(value);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ForteVaultMigrationsRecord value2(java.lang.String value) {
+		setMigrationId(value);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ForteVaultMigrationsRecord value3(java.lang.Long value) {
+		setPosition(value);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ForteVaultMigrationsRecord value4(java.lang.Long value) {
+		setTokenized(value);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ForteVaultMigrationsRecord value5(java.lang.Long value) {
+		setSkipped(value);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ForteVaultMigrationsRecord value6(java.lang.Long value) {
+		setFailed(value);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ForteVaultMigrationsRecord value7(java.sql.Timestamp value) {
+		setCreatedDate(value);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ForteVaultMigrationsRecord value8(java.sql.Timestamp value) {
+		setUpdatedDate(value);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ForteVaultMigrationsRecord value9(java.lang.String value) {
+		setKbTenantId(value);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ForteVaultMigrationsRecord values(org.jooq.types.UInteger value1, java.lang.String value2, java.lang.Long value3, java.lang.Long value4, java.lang.Long value5, java.lang.Long value6, java.sql.Timestamp value7, java.sql.Timestamp value8, java.lang.String value9) {
+		return this;
+	}
+
+	// -------------------------------------------------------------------------
+	// Constructors
+	// -------------------------------------------------------------------------
+
+	/**
+	 * Create a detached ForteVaultMigrationsRecord
+	 */
+	public ForteVaultMigrationsRecord() {
+		super(org.killbill.billing.plugin.forte.dao.gen.tables.ForteVaultMigrations.FORTE_VAULT_MIGRATIONS);
+	}
+
+	/**
+	 * Create a detached, initialised ForteVaultMigrationsRecord
+	 */
+	public ForteVaultMigrationsRecord(org.jooq.types.UInteger recordId, java.lang.String migrationId, java.lang.Long position, java.lang.Long tokenized, java.lang.Long skipped, java.lang.Long failed, java.sql.Timestamp createdDate, java.sql.Timestamp updatedDate, java.lang.String kbTenantId) {
+		super(org.killbill.billing.plugin.forte.dao.gen.tables.ForteVaultMigrations.FORTE_VAULT_MIGRATIONS);
+
+		setValue(0, recordId);
+		setValue(1, migrationId);
+		setValue(2, position);
+		setValue(3, tokenized);
+		setValue(4, skipped);
+		setValue(5, failed);
+		setValue(6, createdDate);
+		setValue(7, updatedDate);
+		setValue(8, kbTenantId);
+	}
+}
@@ -93,3 +93,30 @@ create table forte_payment_methods (
 , primary key(record_id)
 ) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
 create unique index forte_payment_methods_kb_payment_id on forte_payment_methods(kb_payment_method_id);
+
+drop table if exists forte_vault_migrations;
+create table forte_vault_migrations (
+  record_id int(11) unsigned not null auto_increment
+, migration_id varchar(128) not null
+, position bigint not null default 0
+, tokenized bigint not null default 0
+, skipped bigint not null default 0
+, failed bigint not null default 0
+, created_date datetime not null
+, updated_date datetime not null
+, kb_tenant_id char(36) not null
+, primary key(record_id)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+create unique index forte_vault_migrations_migration_id on forte_vault_migrations(kb_tenant_id, migration_id);
+
+drop table if exists forte_customers;
+create table forte_customers (
+  record_id int(11) unsigned not null auto_increment
+, kb_account_id char(36) not null
+, customer_id varchar(64) not null
+, created_date datetime not null
+, updated_date datetime not null
+, kb_tenant_id char(36) not null
+, primary key(record_id)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+create unique index forte_customers_kb_account_id on forte_customers(kb_account_id);
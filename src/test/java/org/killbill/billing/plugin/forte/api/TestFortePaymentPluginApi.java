@@ -0,0 +1,354 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.api;
+
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.ws.WebServiceException;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.account.api.AccountUserApi;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.osgi.libs.killbill.OSGIConfigPropertiesService;
+import org.killbill.billing.osgi.libs.killbill.OSGIKillbillAPI;
+import org.killbill.billing.osgi.libs.killbill.OSGIKillbillLogService;
+import org.killbill.billing.payment.api.PaymentMethodPlugin;
+import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.payment.api.TransactionType;
+import org.killbill.billing.payment.plugin.api.PaymentPluginApiException;
+import org.killbill.billing.payment.plugin.api.PaymentPluginStatus;
+import org.killbill.billing.payment.plugin.api.PaymentTransactionInfoPlugin;
+import org.killbill.billing.plugin.forte.client.ForteAGIClient;
+import org.killbill.billing.plugin.forte.client.ForteExecutors;
+import org.killbill.billing.plugin.forte.client.ForteWSClient;
+import org.killbill.billing.plugin.forte.client.agi.AGIRequest;
+import org.killbill.billing.plugin.forte.client.agi.AGIResponse;
+import org.killbill.billing.plugin.forte.client.agi.AGIStandInServer;
+import org.killbill.billing.plugin.forte.core.ForteAGIConfigurationHandler;
+import org.killbill.billing.plugin.forte.core.ForteCustomerService;
+import org.killbill.billing.plugin.forte.core.ForteWSConfigurationHandler;
+import org.killbill.billing.plugin.forte.dao.ForteDao;
+import org.killbill.billing.plugin.forte.dao.gen.tables.records.FortePaymentMethodsRecord;
+import org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteResponsesRecord;
+import org.killbill.billing.util.callcontext.CallContext;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.clock.Clock;
+import org.killbill.clock.DefaultClock;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+public class TestFortePaymentPluginApi {
+
+    private static final long BUDGET_MILLIS = 1000;
+
+    private final UUID kbTenantId = UUID.randomUUID();
+    private final UUID kbAccountId = UUID.randomUUID();
+    private final UUID kbPaymentMethodId = UUID.randomUUID();
+    private final Clock clock = new DefaultClock();
+    // Exchanges sent to the gateway
+    private final AtomicInteger agiCalls = new AtomicInteger();
+
+    private ExecutorService lookupExecutor;
+    private ForteAGIClient agiClient;
+    private ForteAGIConfigurationHandler agiConfigurationHandler;
+    private AccountUserApi accountUserApi;
+    private ForteWSClient wsClient;
+    private ForteCustomerService customerService;
+    private ForteDao dao;
+    private FortePaymentPluginApi pluginApi;
+
+    @BeforeMethod(groups = "fast")
+    public void setUp() throws Exception {
+        agiCalls.set(0);
+        lookupExecutor = ForteExecutors.newGatewayExecutor("forte-lookups", 2, false);
+
+        // Any asynchronous transaction is approved
+        final AGIResponse approval = AGIResponse.copyOf(ImmutableMap.<String, String>of(ForteAGIClient.PG_RESPONSE_TYPE, "A", ForteAGIClient.PG_TRACE_NUMBER, "trace"));
+        agiClient = Mockito.mock(ForteAGIClient.class, new Answer<Object>() {
+            @Override
+            public Object answer(final InvocationOnMock invocation) throws Throwable {
+                final Method method = invocation.getMethod();
+                if ("getTimeoutBudgetMillis".equals(method.getName())) {
+                    return BUDGET_MILLIS;
+                } else if (ListenableFuture.class.equals(method.getReturnType())) {
+                    agiCalls.incrementAndGet();
+                    return Futures.immediateFuture(approval);
+                }
+                return Mockito.RETURNS_DEFAULTS.answer(invocation);
+            }
+        });
+        agiConfigurationHandler = Mockito.mock(ForteAGIConfigurationHandler.class);
+        Mockito.when(agiConfigurationHandler.getConfigurable(kbTenantId)).thenReturn(agiClient);
+
+        final Account account = Mockito.mock(Account.class);
+        Mockito.when(account.getName()).thenReturn("John Doe");
+        Mockito.when(account.getFirstNameLength()).thenReturn(4);
+        accountUserApi = Mockito.mock(AccountUserApi.class);
+        Mockito.when(accountUserApi.getAccountById(Mockito.eq(kbAccountId), Mockito.<TenantContext>any())).thenReturn(account);
+        final OSGIKillbillAPI killbillAPI = Mockito.mock(OSGIKillbillAPI.class);
+        Mockito.when(killbillAPI.getAccountUserApi()).thenReturn(accountUserApi);
+
+        final FortePaymentMethodsRecord paymentMethod = new FortePaymentMethodsRecord();
+        paymentMethod.setToken("token");
+        paymentMethod.setCcType("visa");
+        dao = Mockito.mock(ForteDao.class);
+        Mockito.when(dao.getPaymentMethod(kbPaymentMethodId, kbTenantId)).thenReturn(paymentMethod);
+
+        wsClient = Mockito.mock(ForteWSClient.class);
+        final ForteWSConfigurationHandler wsConfigurationHandler = Mockito.mock(ForteWSConfigurationHandler.class);
+        Mockito.when(wsConfigurationHandler.getConfigurable(kbTenantId)).thenReturn(wsClient);
+        customerService = Mockito.mock(ForteCustomerService.class);
+
+        pluginApi = new FortePaymentPluginApi(agiConfigurationHandler,
+                                              wsConfigurationHandler,
+                                              customerService,
+                                              lookupExecutor,
+                                              killbillAPI,
+                                              Mockito.mock(OSGIConfigPropertiesService.class),
+                                              Mockito.mock(OSGIKillbillLogService.class),
+                                              clock,
+                                              dao);
+    }
+
+    @AfterMethod(groups = "fast")
+    public void tearDown() throws Exception {
+        lookupExecutor.shutdownNow();
+    }
+
+    @Test(groups = "fast")
+    public void testPurchase() throws Exception {
+        final PaymentTransactionInfoPlugin result = purchase(clock.getUTCNow());
+        Assert.assertEquals(result.getStatus(), PaymentPluginStatus.PROCESSED);
+        Assert.assertEquals(agiCalls.get(), 1);
+    }
+
+    @Test(groups = "fast")
+    public void testBudgetIsSpentByKillBill() throws Exception {
+        try {
+            purchase(clock.getUTCNow().minusMillis((int) (2 * BUDGET_MILLIS)));
+            Assert.fail();
+        } catch (final PaymentPluginApiException e) {
+            Assert.assertEquals(e.getErrorMessage(), "Timed out before calling the gateway");
+        }
+        Assert.assertEquals(agiCalls.get(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testGatewayCallGetsWhatIsLeftOfTheBudget() throws Exception {
+        // 400 ms left when the call starts
+        final PaymentTransactionInfoPlugin result = purchase(clock.getUTCNow().minusMillis((int) BUDGET_MILLIS - 400));
+        Assert.assertEquals(result.getStatus(), PaymentPluginStatus.PROCESSED);
+
+        final ArgumentCaptor<Long> budgetMillis = ArgumentCaptor.forClass(Long.class);
+        Mockito.verify(agiClient).submitAsync(Mockito.<AGIRequest>any(), budgetMillis.capture());
+        Assert.assertTrue(budgetMillis.getValue() > 0 && budgetMillis.getValue() <= 400, String.valueOf(budgetMillis.getValue()));
+    }
+
+    @Test(groups = "fast")
+    public void testOldContextDoesNotSpendTheBudget() throws Exception {
+        // E.g. one context reused by a bulk call or a retry
+        final PaymentTransactionInfoPlugin result = purchase(clock.getUTCNow().minusHours(1));
+        Assert.assertEquals(result.getStatus(), PaymentPluginStatus.PROCESSED);
+        Assert.assertEquals(agiCalls.get(), 1);
+    }
+
+    @Test(groups = "fast")
+    public void testSlowAccountLookup() throws Exception {
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        Mockito.when(accountUserApi.getAccountById(Mockito.eq(kbAccountId), Mockito.<TenantContext>any())).thenAnswer(new Answer<Account>() {
+            @Override
+            public Account answer(final InvocationOnMock invocation) throws Throwable {
+                try {
+                    Thread.sleep(10000);
+                } catch (final InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return null;
+            }
+        });
+
+        // 200 ms left when the call starts
+        try {
+            purchase(clock.getUTCNow().minusMillis((int) BUDGET_MILLIS - 200));
+            Assert.fail();
+        } catch (final PaymentPluginApiException e) {
+            Assert.assertEquals(e.getErrorMessage(), "Timed out before calling the gateway");
+        }
+        Assert.assertEquals(agiCalls.get(), 0);
+        // The lookup doesn't hold its thread any longer
+        Assert.assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test(groups = "fast")
+    public void testAccountLookupFailure() throws Exception {
+        Mockito.when(accountUserApi.getAccountById(Mockito.eq(kbAccountId), Mockito.<TenantContext>any())).thenThrow(new IllegalStateException("Kill Bill unavailable"));
+
+        try {
+            purchase(clock.getUTCNow());
+            Assert.fail();
+        } catch (final IllegalStateException e) {
+            Assert.assertEquals(e.getMessage(), "Kill Bill unavailable");
+        }
+        Assert.assertEquals(agiCalls.get(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testCaptureUsesPrefetchedAuthorization() throws Exception {
+        final UUID kbPaymentId = UUID.randomUUID();
+        final ForteResponsesRecord authorization = new ForteResponsesRecord();
+        authorization.setPgTraceNumber("trace");
+        authorization.setPgAuthorizationCode("auth");
+        Mockito.when(dao.getSuccessfulAuthorizationResponse(kbPaymentId, kbTenantId)).thenReturn(authorization);
+
+        final CallContext context = Mockito.mock(CallContext.class);
+        Mockito.when(context.getTenantId()).thenReturn(kbTenantId);
+        Mockito.when(context.getCreatedDate()).thenReturn(clock.getUTCNow());
+        // Not tokenized: the authorization is captured
+        final PaymentTransactionInfoPlugin result = pluginApi.capturePayment(kbAccountId, kbPaymentId, UUID.randomUUID(), UUID.randomUUID(), BigDecimal.TEN, Currency.USD, ImmutableList.<PluginProperty>of(), context);
+        Assert.assertEquals(result.getStatus(), PaymentPluginStatus.PROCESSED);
+
+        Mockito.verify(agiClient).buildAdministrativeRequest(Mockito.eq(ForteAGIClient.EFT_CAPTURE), Mockito.eq("trace"), Mockito.eq("auth"), Mockito.<Map<String, Object>>any());
+        // Retrieved once, in the background
+        Mockito.verify(dao, Mockito.times(1)).getSuccessfulAuthorizationResponse(kbPaymentId, kbTenantId);
+    }
+
+    @Test(groups = "fast")
+    public void testResponseTimeoutIsUndefined() throws Exception {
+        // The response trickles in past the budget: the sale may have been approved
+        final AGIStandInServer server = new AGIStandInServer().setDripDelayMillis(200);
+        final Properties properties = buildStandInProperties(server);
+        properties.put("org.killbill.billing.plugin.forte.saleTimeout", "300");
+        final ForteAGIClient standInClient = new ForteAGIClient(properties, AGIStandInServer.createClientSSLContext());
+        Mockito.when(agiConfigurationHandler.getConfigurable(kbTenantId)).thenReturn(standInClient);
+        try {
+            final PaymentTransactionInfoPlugin result = purchase(clock.getUTCNow());
+            Assert.assertEquals(result.getStatus(), PaymentPluginStatus.UNDEFINED);
+            Assert.assertEquals(server.getRequests(), 1);
+
+            // Recorded, to be reconciled
+            verifyUnknownOutcomeIsRecorded(result);
+        } finally {
+            standInClient.shutdown();
+            server.close();
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testConnectionResetIsUndefined() throws Exception {
+        // The connection is reset once the request has been read: the sale may have been approved
+        final AGIStandInServer server = new AGIStandInServer().setResetProbability(1.0);
+        final ForteAGIClient standInClient = new ForteAGIClient(buildStandInProperties(server), AGIStandInServer.createClientSSLContext());
+        Mockito.when(agiConfigurationHandler.getConfigurable(kbTenantId)).thenReturn(standInClient);
+        try {
+            final PaymentTransactionInfoPlugin result = purchase(clock.getUTCNow());
+            Assert.assertEquals(result.getStatus(), PaymentPluginStatus.UNDEFINED);
+            Assert.assertEquals(server.getResets(), 1);
+
+            verifyUnknownOutcomeIsRecorded(result);
+        } finally {
+            standInClient.shutdown();
+            server.close();
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testAddPaymentMethod() throws Exception {
+        Mockito.when(customerService.getOrCreateCustomerId(Mockito.eq(kbAccountId), Mockito.eq(kbTenantId), Mockito.<Supplier<Account>>any())).thenReturn("42");
+        Mockito.when(wsClient.tokenizeECheck("John Doe", "021000021", "2222222222222", "Checking", "42")).thenReturn("123");
+
+        addECheck();
+        Mockito.verify(wsClient).tokenizeECheck("John Doe", "021000021", "2222222222222", "Checking", "42");
+    }
+
+    @Test(groups = "fast")
+    public void testAddPaymentMethodWithoutClient() throws Exception {
+        // The client can't be created: the payment method is still tokenized, outside of it
+        Mockito.when(customerService.getOrCreateCustomerId(Mockito.eq(kbAccountId), Mockito.eq(kbTenantId), Mockito.<Supplier<Account>>any()))
+               .thenThrow(new WebServiceException("Connection refused"));
+        Mockito.when(wsClient.tokenizeECheck("John Doe", "021000021", "2222222222222", "Checking", null)).thenReturn("123");
+
+        addECheck();
+        Mockito.verify(wsClient).tokenizeECheck("John Doe", "021000021", "2222222222222", "Checking", null);
+    }
+
+    private void addECheck() throws PaymentPluginApiException {
+        final CallContext context = Mockito.mock(CallContext.class);
+        Mockito.when(context.getTenantId()).thenReturn(kbTenantId);
+        final PaymentMethodPlugin paymentMethodProps = Mockito.mock(PaymentMethodPlugin.class);
+        Mockito.when(paymentMethodProps.getProperties()).thenReturn(ImmutableList.<PluginProperty>of());
+        final ImmutableList<PluginProperty> properties = ImmutableList.<PluginProperty>of(new PluginProperty("accountHolderName", "John Doe", false),
+                                                                                          new PluginProperty("trn", "021000021", false),
+                                                                                          new PluginProperty("accountNumber", "2222222222222", false),
+                                                                                          new PluginProperty("accountType", "Checking", false));
+
+        pluginApi.addPaymentMethod(kbAccountId, kbPaymentMethodId, paymentMethodProps, true, properties, context);
+    }
+
+    private void verifyUnknownOutcomeIsRecorded(final PaymentTransactionInfoPlugin result) throws Exception {
+        final ArgumentCaptor<Map> response = ArgumentCaptor.forClass(Map.class);
+        Mockito.verify(dao).addResponse(Mockito.eq(kbAccountId),
+                                        Mockito.eq(result.getKbPaymentId()),
+                                        Mockito.eq(result.getKbTransactionPaymentId()),
+                                        Mockito.eq(TransactionType.PURCHASE),
+                                        Mockito.eq(BigDecimal.TEN),
+                                        Mockito.eq(Currency.USD),
+                                        response.capture(),
+                                        Mockito.<DateTime>any(),
+                                        Mockito.eq(kbTenantId));
+        Assert.assertNull(response.getValue().get(ForteAGIClient.PG_RESPONSE_TYPE));
+        Assert.assertEquals(response.getValue().get(ForteAGIClient.ECOM_CONSUMERORDERID), result.getKbPaymentId().toString());
+    }
+
+    private Properties buildStandInProperties(final AGIStandInServer server) {
+        final Properties properties = new Properties();
+        properties.put("org.killbill.billing.plugin.forte.merchantId", "123456");
+        properties.put("org.killbill.billing.plugin.forte.password", "password");
+        properties.put("org.killbill.billing.plugin.forte.host", server.getHost());
+        properties.put("org.killbill.billing.plugin.forte.port", String.valueOf(server.getPort()));
+        return properties;
+    }
+
+    private PaymentTransactionInfoPlugin purchase(final DateTime contextCreatedDate) throws PaymentPluginApiException {
+        final CallContext context = Mockito.mock(CallContext.class);
+        Mockito.when(context.getTenantId()).thenReturn(kbTenantId);
+        Mockito.when(context.getCreatedDate()).thenReturn(contextCreatedDate);
+
+        return pluginApi.purchasePayment(kbAccountId, UUID.randomUUID(), UUID.randomUUID(), kbPaymentMethodId, BigDecimal.TEN, Currency.USD, ImmutableList.<PluginProperty>of(), context);
+    }
+}
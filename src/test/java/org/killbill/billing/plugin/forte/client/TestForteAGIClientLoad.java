@@ -0,0 +1,128 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.client;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.killbill.billing.plugin.forte.client.agi.AGIBatchListener;
+import org.killbill.billing.plugin.forte.client.agi.AGIBatchResult;
+import org.killbill.billing.plugin.forte.client.agi.AGIField;
+import org.killbill.billing.plugin.forte.client.agi.AGIRequest;
+import org.killbill.billing.plugin.forte.client.agi.AGIStandInServer;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+// Offline load test against the stand-in gateway: long tail latencies (median 80ms, p99 400ms), 1% of connections reset
+// and 5% of declined cards. Run with -Ptest-stress.
+public class TestForteAGIClientLoad {
+
+    private static final int PAYMENTS = 5000;
+    private static final int PARALLELISM = 200;
+    private static final double RESET_PROBABILITY = 0.01;
+
+    @DataProvider(name = "transports")
+    public Object[][] transports() {
+        return new Object[][]{{"blocking"}, {"nio"}};
+    }
+
+    @Test(groups = "stress", dataProvider = "transports")
+    public void testLoad(final String transport) throws Exception {
+        final AGIStandInServer server = new AGIStandInServer().setLatency(AGIStandInServer.LatencyDistribution.logNormal(80, 400))
+                                                              .setResetProbability(RESET_PROBABILITY);
+
+        final Properties properties = new Properties();
+        properties.put("org.killbill.billing.plugin.forte.merchantId", "123456");
+        properties.put("org.killbill.billing.plugin.forte.password", "password");
+        properties.put("org.killbill.billing.plugin.forte.host", server.getHost());
+        properties.put("org.killbill.billing.plugin.forte.port", String.valueOf(server.getPort()));
+        properties.put("org.killbill.billing.plugin.forte.transport", transport);
+        final ForteAGIClient agiClient = new ForteAGIClient(properties, AGIStandInServer.createClientSSLContext());
+
+        try {
+            final List<AGIRequest> requests = new ArrayList<AGIRequest>();
+            for (int i = 0; i < PAYMENTS; i++) {
+                requests.add(agiClient.buildCreditCardRequest(ForteAGIClient.CREDIT_CARD_SALE,
+                                                              BigDecimal.TEN,
+                                                              "John",
+                                                              "Smith",
+                                                              null,
+                                                              null,
+                                                              null,
+                                                              null,
+                                                              null,
+                                                              "John Smith",
+                                                              "VISA",
+                                                              i % 20 == 0 ? AGIStandInServer.DECLINED_CARD_NUMBER : "4111111111111111",
+                                                              "08",
+                                                              "2030",
+                                                              null));
+            }
+
+            final long[] latenciesNanos = new long[PAYMENTS];
+            final long startNanos = System.nanoTime();
+            final List<AGIBatchResult> results = agiClient.submitAll(requests, PARALLELISM, new AGIBatchListener() {
+                @Override
+                public void onResult(final AGIBatchResult result, final int completed, final int total) {
+                    latenciesNanos[result.getIndex()] = System.nanoTime() - startNanos;
+                }
+            });
+            final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+            int approved = 0;
+            int declined = 0;
+            int failed = 0;
+            for (final AGIBatchResult result : results) {
+                if (!result.isSuccess()) {
+                    failed++;
+                } else if (AGIStandInServer.RESPONSE_TYPE_APPROVAL.equals(result.getResponse().get(AGIField.PG_RESPONSE_TYPE))) {
+                    approved++;
+                } else {
+                    Assert.assertEquals(result.getResponse().get(AGIField.PG_RESPONSE_TYPE), AGIStandInServer.RESPONSE_TYPE_DECLINE, result.getResponse().toString());
+                    declined++;
+                }
+            }
+
+            // Completion times since the start of the batch: a rough view of the queueing behind the sliding window
+            Arrays.sort(latenciesNanos);
+            System.out.format("%s transport: %d payments in %d ms (%.0f/s), approved=%d, declined=%d, failed=%d (resets=%d), completed p50=%d ms, p99=%d ms%n",
+                              transport,
+                              PAYMENTS,
+                              elapsedMillis,
+                              PAYMENTS * 1000.0 / Math.max(1, elapsedMillis),
+                              approved,
+                              declined,
+                              failed,
+                              server.getResets(),
+                              TimeUnit.NANOSECONDS.toMillis(latenciesNanos[PAYMENTS / 2]),
+                              TimeUnit.NANOSECONDS.toMillis(latenciesNanos[PAYMENTS * 99 / 100]));
+
+            Assert.assertEquals(approved + declined + failed, PAYMENTS);
+            Assert.assertEquals(failed, server.getResets());
+            Assert.assertTrue(declined > 0);
+        } finally {
+            agiClient.shutdown();
+            server.close();
+        }
+    }
+}
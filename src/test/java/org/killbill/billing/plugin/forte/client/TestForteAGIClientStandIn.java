@@ -0,0 +1,531 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.forte.client;
+
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.killbill.billing.plugin.forte.client.agi.AGIBatchListener;
+import org.killbill.billing.plugin.forte.client.agi.AGIBatchResult;
+import org.killbill.billing.plugin.forte.client.agi.AGIEndpoint;
+import org.killbill.billing.plugin.forte.client.agi.AGIField;
+import org.killbill.billing.plugin.forte.client.agi.AGIFutures;
+import org.killbill.billing.plugin.forte.client.agi.AGIRequest;
+import org.killbill.billing.plugin.forte.client.agi.AGIResponse;
+import org.killbill.billing.plugin.forte.client.agi.AGIResponseTimeoutException;
+import org.killbill.billing.plugin.forte.client.agi.AGIStandInServer;
+import org.killbill.billing.plugin.forte.client.agi.AGIUnknownOutcomeException;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+public class TestForteAGIClientStandIn {
+
+    private static final BigDecimal AMOUNT = new BigDecimal("10");
+
+    private AGIStandInServer server;
+
+    @BeforeMethod(groups = "fast")
+    public void setUp() throws Exception {
+        server = new AGIStandInServer();
+    }
+
+    @AfterMethod(groups = "fast")
+    public void tearDown() throws Exception {
+        server.close();
+    }
+
+    @Test(groups = "fast")
+    public void testTLSSessionIsResumed() throws Exception {
+        final ForteAGIClient agiClient = new ForteAGIClient(buildProperties(), AGIStandInServer.createClientSSLContext());
+
+        for (int i = 0; i < 3; i++) {
+            final Map<String, String> saleResponse = createSaleTransaction(agiClient);
+            Assert.assertEquals(saleResponse.get(ForteAGIClient.PG_RESPONSE_TYPE), "A", saleResponse.toString());
+            Assert.assertEquals(saleResponse.get(ForteAGIClient.PG_TRANSACTION_TYPE), ForteAGIClient.CREDIT_CARD_SALE, saleResponse.toString());
+        }
+
+        Assert.assertEquals(server.getRequests(), 3);
+        Assert.assertEquals(agiClient.getFullHandshakes(), 1);
+        Assert.assertEquals(agiClient.getResumedHandshakes(), 2);
+    }
+
+    @Test(groups = "fast")
+    public void testWarmConnectionPool() throws Exception {
+        final Properties properties = buildProperties();
+        properties.put("org.killbill.billing.plugin.forte.poolSize", "2");
+        final ForteAGIClient agiClient = new ForteAGIClient(properties, AGIStandInServer.createClientSSLContext());
+        try {
+            // Cold pool: the first transaction connects directly and the pool is filled in the background
+            createSaleTransaction(agiClient);
+            waitForIdlePooledSockets(agiClient, 2);
+            Assert.assertEquals(server.getConnections(), 3);
+
+            // The second transaction uses a warm socket
+            createSaleTransaction(agiClient);
+            waitForIdlePooledSockets(agiClient, 2);
+            Assert.assertEquals(server.getConnections(), 4);
+            Assert.assertEquals(server.getRequests(), 2);
+        } finally {
+            agiClient.shutdown();
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testIdleConnectionPoolIsDrained() throws Exception {
+        final Properties properties = buildProperties();
+        properties.put("org.killbill.billing.plugin.forte.poolSize", "2");
+        properties.put("org.killbill.billing.plugin.forte.poolMaxIdle", "1");
+        final ForteAGIClient agiClient = new ForteAGIClient(properties, AGIStandInServer.createClientSSLContext());
+        try {
+            createSaleTransaction(agiClient);
+            waitForIdlePooledSockets(agiClient, 2);
+
+            // No traffic: warm sockets are closed and not replaced
+            waitForIdlePooledSockets(agiClient, 0);
+            Thread.sleep(1000);
+            Assert.assertEquals(agiClient.getIdlePooledSockets(), 0);
+            Assert.assertEquals(server.getConnections(), 3);
+        } finally {
+            agiClient.shutdown();
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testStalePooledSocketsAreReplaced() throws Exception {
+        server.setIdleTimeoutMillis(200);
+        final Properties properties = buildProperties();
+        properties.put("org.killbill.billing.plugin.forte.poolSize", "2");
+        final ForteAGIClient agiClient = new ForteAGIClient(properties, AGIStandInServer.createClientSSLContext());
+        try {
+            createSaleTransaction(agiClient);
+            waitForIdlePooledSockets(agiClient, 2);
+            Assert.assertEquals(server.getConnections(), 3);
+
+            // The warm sockets are closed by the server in the meantime: not checked for a while, they are checked
+            // (and not handed out)
+            Thread.sleep(1500);
+            final Map<String, String> saleResponse = createSaleTransaction(agiClient);
+            Assert.assertEquals(saleResponse.get(ForteAGIClient.PG_RESPONSE_TYPE), "A", saleResponse.toString());
+            Assert.assertEquals(server.getRequests(), 2);
+            Assert.assertTrue(server.getConnections() >= 4);
+        } finally {
+            agiClient.shutdown();
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testClosedPoolIsNotRefilled() throws Exception {
+        final Properties properties = buildProperties();
+        properties.put("org.killbill.billing.plugin.forte.poolSize", "2");
+        final ForteAGIClient agiClient = new ForteAGIClient(properties, AGIStandInServer.createClientSSLContext());
+        // The pool is being filled in the background when it is closed
+        createSaleTransaction(agiClient);
+        agiClient.shutdown();
+
+        Thread.sleep(500);
+        Assert.assertEquals(agiClient.getIdlePooledSockets(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testNioTransport() throws Exception {
+        final Properties properties = buildProperties();
+        properties.put("org.killbill.billing.plugin.forte.transport", "nio");
+        final ForteAGIClient agiClient = new ForteAGIClient(properties, AGIStandInServer.createClientSSLContext());
+        final ExecutorService executor = Executors.newFixedThreadPool(20);
+        try {
+            final List<Future<Map<String, String>>> futures = new ArrayList<Future<Map<String, String>>>();
+            for (int i = 0; i < 200; i++) {
+                futures.add(executor.submit(new Callable<Map<String, String>>() {
+                    @Override
+                    public Map<String, String> call() throws Exception {
+                        return createSaleTransaction(agiClient);
+                    }
+                }));
+            }
+
+            for (final Future<Map<String, String>> future : futures) {
+                final Map<String, String> saleResponse = future.get();
+                Assert.assertEquals(saleResponse.get(ForteAGIClient.PG_RESPONSE_TYPE), "A", saleResponse.toString());
+                Assert.assertEquals(saleResponse.get(ForteAGIClient.PG_TRANSACTION_TYPE), ForteAGIClient.CREDIT_CARD_SALE, saleResponse.toString());
+                Assert.assertTrue(saleResponse.get(ForteAGIClient.PG_AUTHORIZATION_CODE).matches("[A-Z0-9]{6}"), saleResponse.toString());
+            }
+
+            Assert.assertEquals(server.getRequests(), 200);
+            Assert.assertEquals(agiClient.getFullHandshakes() + agiClient.getResumedHandshakes(), 200);
+            Assert.assertTrue(agiClient.getResumedHandshakes() > 0);
+        } finally {
+            executor.shutdownNow();
+            agiClient.shutdown();
+        }
+    }
+
+    @DataProvider(name = "transports")
+    public Object[][] transports() {
+        return new Object[][]{{"blocking"}, {"nio"}};
+    }
+
+    @Test(groups = "fast", dataProvider = "transports")
+    public void testAsyncTransactions(final String transport) throws Exception {
+        final Properties properties = buildProperties();
+        properties.put("org.killbill.billing.plugin.forte.transport", transport);
+        properties.put("org.killbill.billing.plugin.forte.asyncThreads", "4");
+        final ForteAGIClient agiClient = new ForteAGIClient(properties, AGIStandInServer.createClientSSLContext());
+        try {
+            final List<ListenableFuture<AGIResponse>> futures = new ArrayList<ListenableFuture<AGIResponse>>();
+            for (int i = 0; i < 50; i++) {
+                futures.add(agiClient.createSaleTransactionAsync(AMOUNT,
+                                                                 "John",
+                                                                 "Smith",
+                                                                 "John Smith",
+                                                                 "VISA",
+                                                                 "4111111111111111",
+                                                                 "08",
+                                                                 "2030",
+                                                                 null));
+            }
+
+            for (final Map<String, String> saleResponse : Futures.allAsList(futures).get()) {
+                Assert.assertEquals(saleResponse.get(ForteAGIClient.PG_RESPONSE_TYPE), "A", saleResponse.toString());
+                Assert.assertEquals(saleResponse.get(ForteAGIClient.PG_TRANSACTION_TYPE), ForteAGIClient.CREDIT_CARD_SALE, saleResponse.toString());
+            }
+
+            final Map<String, String> voidResponse = agiClient.createVoidTransactionAsync("trace", "123456", null).get();
+            Assert.assertEquals(voidResponse.get(ForteAGIClient.PG_TRANSACTION_TYPE), ForteAGIClient.EFT_VOID, voidResponse.toString());
+            Assert.assertEquals(server.getRequests(), 51);
+        } finally {
+            agiClient.shutdown();
+        }
+    }
+
+    @Test(groups = "fast", dataProvider = "transports")
+    public void testTimeout(final String transport) throws Exception {
+        server.setLatency(AGIStandInServer.LatencyDistribution.fixed(2000));
+
+        final Properties properties = buildProperties();
+        properties.put("org.killbill.billing.plugin.forte.transport", transport);
+        properties.put("org.killbill.billing.plugin.forte.saleTimeout", "300");
+        final ForteAGIClient agiClient = new ForteAGIClient(properties, AGIStandInServer.createClientSSLContext());
+        try {
+            final long startMillis = System.currentTimeMillis();
+            try {
+                createSaleTransaction(agiClient);
+                Assert.fail();
+            } catch (final AGIResponseTimeoutException e) {
+                Assert.assertTrue(System.currentTimeMillis() - startMillis < 1500);
+            }
+
+            server.setLatency(AGIStandInServer.LatencyDistribution.none());
+
+            // Other transaction types keep the default budget
+            Assert.assertEquals(agiClient.getTimeoutBudgetMillis(ForteAGIClient.CREDIT_CARD_SALE), 300);
+            Assert.assertEquals(agiClient.getTimeoutBudgetMillis(ForteAGIClient.EFT_SALE), 300);
+            Assert.assertEquals(agiClient.getTimeoutBudgetMillis(ForteAGIClient.CREDIT_CARD_VOID), 60000);
+            final Map<String, String> voidResponse = agiClient.createVoidTransaction("trace", "123456", null);
+            Assert.assertEquals(voidResponse.get(ForteAGIClient.PG_RESPONSE_TYPE), "A", voidResponse.toString());
+        } finally {
+            agiClient.shutdown();
+        }
+    }
+
+    @Test(groups = "fast", dataProvider = "transports")
+    public void testFailover(final String transport) throws Exception {
+        // Nothing listens on that port: connections are refused
+        final ServerSocket closedServerSocket = new ServerSocket(0);
+        final int closedPort = closedServerSocket.getLocalPort();
+        closedServerSocket.close();
+
+        final Properties properties = buildProperties();
+        properties.put("org.killbill.billing.plugin.forte.transport", transport);
+        properties.put("org.killbill.billing.plugin.forte.host", server.getHost() + ":" + closedPort + ", " + server.getHost());
+        final ForteAGIClient agiClient = new ForteAGIClient(properties, AGIStandInServer.createClientSSLContext());
+        try {
+            for (int i = 0; i < 3; i++) {
+                final Map<String, String> saleResponse = createSaleTransaction(agiClient);
+                Assert.assertEquals(saleResponse.get(ForteAGIClient.PG_RESPONSE_TYPE), "A", saleResponse.toString());
+            }
+            Assert.assertEquals(server.getRequests(), 3);
+
+            final AGIEndpoint deadEndpoint = agiClient.getEndpoints().get(0);
+            Assert.assertEquals(deadEndpoint.getPort(), closedPort);
+            Assert.assertFalse(deadEndpoint.isAvailable());
+            Assert.assertEquals(deadEndpoint.getConnectLatencyMillis(), -1.0);
+
+            final AGIEndpoint liveEndpoint = agiClient.getEndpoints().get(1);
+            Assert.assertEquals(liveEndpoint.getPort(), server.getPort());
+            Assert.assertTrue(liveEndpoint.isAvailable());
+            Assert.assertTrue(liveEndpoint.getConnectLatencyMillis() >= 0);
+            Assert.assertTrue(liveEndpoint.getResponseLatencyMillis() >= 0);
+        } finally {
+            agiClient.shutdown();
+        }
+    }
+
+    @Test(groups = "fast", dataProvider = "transports")
+    public void testSubmitAll(final String transport) throws Exception {
+        final Properties properties = buildProperties();
+        properties.put("org.killbill.billing.plugin.forte.transport", transport);
+        final ForteAGIClient agiClient = new ForteAGIClient(properties, AGIStandInServer.createClientSSLContext());
+        try {
+            final List<AGIRequest> requests = new ArrayList<AGIRequest>();
+            for (int i = 1; i <= 100; i++) {
+                requests.add(agiClient.buildCreditCardRequest(ForteAGIClient.CREDIT_CARD_SALE,
+                                                              new BigDecimal(i),
+                                                              "John",
+                                                              "Smith",
+                                                              null,
+                                                              null,
+                                                              null,
+                                                              null,
+                                                              null,
+                                                              // The 50th request is invalid
+                                                              i == 50 ? null : "John Smith",
+                                                              "VISA",
+                                                              "4111111111111111",
+                                                              "08",
+                                                              "2030",
+                                                              null));
+            }
+
+            final AtomicInteger progress = new AtomicInteger();
+            final List<AGIBatchResult> results = agiClient.submitAll(requests, 4, new AGIBatchListener() {
+                @Override
+                public void onResult(final AGIBatchResult result, final int completed, final int total) {
+                    Assert.assertEquals(total, 100);
+                    Assert.assertEquals(completed, progress.incrementAndGet());
+                }
+            });
+
+            Assert.assertEquals(progress.get(), 100);
+            Assert.assertEquals(results.size(), 100);
+            for (int i = 0; i < 100; i++) {
+                final AGIBatchResult result = results.get(i);
+                Assert.assertEquals(result.getIndex(), i);
+                Assert.assertEquals(result.getTransactionType(), ForteAGIClient.CREDIT_CARD_SALE);
+                if (i == 49) {
+                    Assert.assertFalse(result.isSuccess());
+                    Assert.assertTrue(result.getFailure() instanceof NullPointerException, String.valueOf(result.getFailure()));
+                } else {
+                    Assert.assertTrue(result.isSuccess(), String.valueOf(result.getFailure()));
+                    Assert.assertEquals(result.getResponse().get(AGIField.PG_TOTAL_AMOUNT), String.valueOf(i + 1), result.getResponse().toString());
+                }
+            }
+            Assert.assertEquals(server.getRequests(), 99);
+        } finally {
+            agiClient.shutdown();
+        }
+    }
+
+    @Test(groups = "fast", dataProvider = "transports")
+    public void testDeclines(final String transport) throws Exception {
+        final Properties properties = buildProperties();
+        properties.put("org.killbill.billing.plugin.forte.transport", transport);
+        final ForteAGIClient agiClient = new ForteAGIClient(properties, AGIStandInServer.createClientSSLContext());
+        try {
+            final Map<String, String> saleResponse = agiClient.createSaleTransaction(AMOUNT,
+                                                                                     "John",
+                                                                                     "Smith",
+                                                                                     "John Smith",
+                                                                                     "VISA",
+                                                                                     AGIStandInServer.DECLINED_CARD_NUMBER,
+                                                                                     "08",
+                                                                                     "2030",
+                                                                                     null);
+            Assert.assertEquals(saleResponse.get(ForteAGIClient.PG_RESPONSE_TYPE), AGIStandInServer.RESPONSE_TYPE_DECLINE, saleResponse.toString());
+            Assert.assertEquals(saleResponse.get(ForteAGIClient.PG_RESPONSE_CODE), "U02", saleResponse.toString());
+            Assert.assertNotNull(saleResponse.get(ForteAGIClient.PG_TRACE_NUMBER), saleResponse.toString());
+            Assert.assertNull(saleResponse.get(ForteAGIClient.PG_AUTHORIZATION_CODE), saleResponse.toString());
+
+            final Map<String, String> eftSaleResponse = agiClient.createSaleTransaction(AMOUNT,
+                                                                                        "John",
+                                                                                        "Smith",
+                                                                                        "021000021",
+                                                                                        AGIStandInServer.DECLINED_ACCOUNT_NUMBER,
+                                                                                        "C",
+                                                                                        null);
+            Assert.assertEquals(eftSaleResponse.get(ForteAGIClient.PG_RESPONSE_TYPE), AGIStandInServer.RESPONSE_TYPE_DECLINE, eftSaleResponse.toString());
+
+            final Map<String, String> approvedResponse = createSaleTransaction(agiClient);
+            Assert.assertEquals(approvedResponse.get(ForteAGIClient.PG_RESPONSE_TYPE), AGIStandInServer.RESPONSE_TYPE_APPROVAL, approvedResponse.toString());
+            final Map<String, String> voidResponse = agiClient.createVoidTransaction(approvedResponse.get(ForteAGIClient.PG_TRACE_NUMBER),
+                                                                                     approvedResponse.get(ForteAGIClient.PG_AUTHORIZATION_CODE),
+                                                                                     null);
+            Assert.assertEquals(voidResponse.get(ForteAGIClient.PG_RESPONSE_DESCRIPTION), "APPROVED", voidResponse.toString());
+            Assert.assertEquals(voidResponse.get(ForteAGIClient.PG_ORIGINAL_AUTHORIZATION_CODE), approvedResponse.get(ForteAGIClient.PG_AUTHORIZATION_CODE), voidResponse.toString());
+        } finally {
+            agiClient.shutdown();
+        }
+    }
+
+    @Test(groups = "fast", dataProvider = "transports")
+    public void testConnectionResets(final String transport) throws Exception {
+        server.setResetProbability(1.0);
+
+        final Properties properties = buildProperties();
+        properties.put("org.killbill.billing.plugin.forte.transport", transport);
+        final ForteAGIClient agiClient = new ForteAGIClient(properties, AGIStandInServer.createClientSSLContext());
+        try {
+            try {
+                createSaleTransaction(agiClient);
+                Assert.fail();
+            } catch (final AGIUnknownOutcomeException e) {
+                // The request may have been processed: not retried
+                Assert.assertEquals(server.getResets(), 1);
+            }
+
+            server.setResetProbability(0.0);
+            final Map<String, String> saleResponse = createSaleTransaction(agiClient);
+            Assert.assertEquals(saleResponse.get(ForteAGIClient.PG_RESPONSE_TYPE), AGIStandInServer.RESPONSE_TYPE_APPROVAL, saleResponse.toString());
+        } finally {
+            agiClient.shutdown();
+        }
+    }
+
+    @Test(groups = "fast", dataProvider = "transports")
+    public void testSlowDrip(final String transport) throws Exception {
+        server.setDripDelayMillis(20);
+
+        final Properties properties = buildProperties();
+        properties.put("org.killbill.billing.plugin.forte.transport", transport);
+        final ForteAGIClient agiClient = new ForteAGIClient(properties, AGIStandInServer.createClientSSLContext());
+        try {
+            final Map<String, String> saleResponse = createSaleTransaction(agiClient);
+            Assert.assertEquals(saleResponse.get(ForteAGIClient.PG_RESPONSE_TYPE), AGIStandInServer.RESPONSE_TYPE_APPROVAL, saleResponse.toString());
+            Assert.assertEquals(saleResponse.get(ForteAGIClient.ECOM_BILLTO_POSTAL_NAME_LAST), "Smith", saleResponse.toString());
+        } finally {
+            agiClient.shutdown();
+        }
+    }
+
+    @Test(groups = "fast", dataProvider = "transports")
+    public void testCallerBudgetShortensTheTimeout(final String transport) throws Exception {
+        server.setLatency(AGIStandInServer.LatencyDistribution.fixed(2000));
+
+        final Properties properties = buildProperties();
+        properties.put("org.killbill.billing.plugin.forte.transport", transport);
+        final ForteAGIClient agiClient = new ForteAGIClient(properties, AGIStandInServer.createClientSSLContext());
+        try {
+            final AGIRequest request = agiClient.buildCreditCardRequest(ForteAGIClient.CREDIT_CARD_SALE, AMOUNT, "John", "Smith", null, null, null, null, null, "John Smith", "VISA", "4111111111111111", "08", "2030", null);
+            final long startMillis = System.currentTimeMillis();
+            try {
+                AGIFutures.getResponse(agiClient.submitAsync(request, 300));
+                Assert.fail();
+            } catch (final AGIResponseTimeoutException e) {
+                // Well within the default budget of sales
+                Assert.assertTrue(System.currentTimeMillis() - startMillis < 1500);
+            }
+        } finally {
+            agiClient.shutdown();
+        }
+    }
+
+    @Test(groups = "fast", dataProvider = "transports")
+    public void testSlowDripPastTimeout(final String transport) throws Exception {
+        server.setDripDelayMillis(200);
+
+        final Properties properties = buildProperties();
+        properties.put("org.killbill.billing.plugin.forte.transport", transport);
+        properties.put("org.killbill.billing.plugin.forte.saleTimeout", "300");
+        final ForteAGIClient agiClient = new ForteAGIClient(properties, AGIStandInServer.createClientSSLContext());
+        try {
+            createSaleTransaction(agiClient);
+            Assert.fail();
+        } catch (final AGIResponseTimeoutException e) {
+            // The request was sent: its outcome is unknown
+            Assert.assertEquals(server.getRequests(), 1);
+        } finally {
+            agiClient.shutdown();
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testAsyncTransactionOnClosedClient() throws Exception {
+        final Properties properties = buildProperties();
+        properties.put("org.killbill.billing.plugin.forte.transport", "blocking");
+        final ForteAGIClient agiClient = new ForteAGIClient(properties, AGIStandInServer.createClientSSLContext());
+        agiClient.shutdown();
+
+        // Failed, rather than thrown from the executor of the transport
+        final ListenableFuture<AGIResponse> future = agiClient.createSaleTransactionAsync(AMOUNT, "John", "Smith", "John Smith", "VISA", "4111111111111111", "08", "2030", null);
+        try {
+            future.get();
+            Assert.fail();
+        } catch (final ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException, e.toString());
+        }
+        Assert.assertEquals(server.getConnections(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testRequestValidation() throws Exception {
+        final ForteAGIClient agiClient = new ForteAGIClient(buildProperties(), AGIStandInServer.createClientSSLContext());
+        try {
+            agiClient.createSaleTransaction(AMOUNT, "John", "Smith", null, "VISA", "4111111111111111", "08", "2030", null);
+            Assert.fail();
+        } catch (final NullPointerException e) {
+            Assert.assertEquals(e.getMessage(), ForteAGIClient.ECOM_PAYMENT_CARD_NAME + " must be specified");
+        } finally {
+            agiClient.shutdown();
+        }
+        Assert.assertEquals(server.getConnections(), 0);
+    }
+
+    private void waitForIdlePooledSockets(final ForteAGIClient agiClient, final int idlePooledSockets) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (agiClient.getIdlePooledSockets() != idlePooledSockets && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(agiClient.getIdlePooledSockets(), idlePooledSockets);
+    }
+
+    private Map<String, String> createSaleTransaction(final ForteAGIClient agiClient) throws Exception {
+        return agiClient.createSaleTransaction(AMOUNT,
+                                               "John",
+                                               "Smith",
+                                               "John Smith",
+                                               "VISA",
+                                               "4111111111111111",
+                                               "08",
+                                               "2030",
+                                               null);
+    }
+
+    private Properties buildProperties() {
+        final Properties properties = new Properties();
+        properties.put("org.killbill.billing.plugin.forte.merchantId", "123456");
+        properties.put("org.killbill.billing.plugin.forte.password", "password");
+        properties.put("org.killbill.billing.plugin.forte.host", server.getHost());
+        properties.put("org.killbill.billing.plugin.forte.port", String.valueOf(server.getPort()));
+        return properties;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.forte.client;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.killbill.billing.plugin.forte.client.agi.AGIResponse;
+import org.killbill.billing.plugin.forte.client.agi.AGIStandInServer;
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+// Platform vs virtual threads for the blocking AGI transport, against a stand-in gateway answering in 50ms.
+// Run with -Ptest-stress, virtual threads need the tests to run on JDK 21+ (e.g. -Djvm=/path/to/jdk21/bin/java).
+public class TestForteAGIClientThreadingBenchmark {
+
+    private static final BigDecimal AMOUNT = new BigDecimal("10");
+    private static final int CONCURRENT_PAYMENTS = 1000;
+    private static final long GATEWAY_LATENCY_MILLIS = 50;
+
+    @Test(groups = "stress")
+    public void testPlatformThreads() throws Exception {
+        benchmark(false);
+    }
+
+    @Test(groups = "stress")
+    public void testVirtualThreads() throws Exception {
+        if (!ForteExecutors.areVirtualThreadsAvailable()) {
+            throw new SkipException("Virtual threads require JDK 21+");
+        }
+        benchmark(true);
+    }
+
+    private void benchmark(final boolean virtualThreads) throws Exception {
+        final AGIStandInServer server = new AGIStandInServer().setLatency(AGIStandInServer.LatencyDistribution.fixed(GATEWAY_LATENCY_MILLIS));
+
+        final Properties properties = new Properties();
+        properties.put("org.killbill.billing.plugin.forte.merchantId", "123456");
+        properties.put("org.killbill.billing.plugin.forte.password", "password");
+        properties.put("org.killbill.billing.plugin.forte.host", server.getHost());
+        properties.put("org.killbill.billing.plugin.forte.port", String.valueOf(server.getPort()));
+        properties.put("org.killbill.billing.plugin.forte.virtualThreads", String.valueOf(virtualThreads));
+        final ForteAGIClient agiClient = new ForteAGIClient(properties, AGIStandInServer.createClientSSLContext());
+
+        try {
+            // Warm-up (JIT, TLS session cache)
+            runPayments(agiClient, CONCURRENT_PAYMENTS / 10);
+
+            final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+            threadMXBean.resetPeakThreadCount();
+            final int liveThreads = threadMXBean.getThreadCount();
+
+            final long startNanos = System.nanoTime();
+            final long[] latenciesNanos = runPayments(agiClient, CONCURRENT_PAYMENTS);
+            final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+            Arrays.sort(latenciesNanos);
+            // The stand-in runs in the same JVM, with one platform thread per connection in both modes
+            System.out.format("%s threads: %d payments in %d ms (%.0f/s), p50=%d ms, p99=%d ms, platform threads peak=+%d%n",
+                              virtualThreads ? "Virtual" : "Platform",
+                              CONCURRENT_PAYMENTS,
+                              elapsedMillis,
+                              CONCURRENT_PAYMENTS * 1000.0 / Math.max(1, elapsedMillis),
+                              TimeUnit.NANOSECONDS.toMillis(latenciesNanos[latenciesNanos.length / 2]),
+                              TimeUnit.NANOSECONDS.toMillis(latenciesNanos[latenciesNanos.length * 99 / 100]),
+                              threadMXBean.getPeakThreadCount() - liveThreads);
+        } finally {
+            agiClient.shutdown();
+            server.close();
+        }
+    }
+
+    private long[] runPayments(final ForteAGIClient agiClient, final int payments) throws Exception {
+        final long[] latenciesNanos = new long[payments];
+        final List<ListenableFuture<AGIResponse>> futures = new ArrayList<ListenableFuture<AGIResponse>>();
+        for (int i = 0; i < payments; i++) {
+            final int payment = i;
+            final long submittedNanos = System.nanoTime();
+            final ListenableFuture<AGIResponse> future = agiClient.createSaleTransactionAsync(AMOUNT,
+                                                                                              "John",
+                                                                                              "Smith",
+                                                                                              "John Smith",
+                                                                                              "VISA",
+                                                                                              "4111111111111111",
+                                                                                              "08",
+                                                                                              "2030",
+                                                                                              null);
+            Futures.addCallback(future, new FutureCallback<AGIResponse>() {
+                @Override
+                public void onSuccess(final AGIResponse response) {
+                    latenciesNanos[payment] = System.nanoTime() - submittedNanos;
+                }
+
+                @Override
+                public void onFailure(final Throwable t) {
+                }
+            });
+            futures.add(future);
+        }
+
+        for (final Map<String, String> saleResponse : Futures.allAsList(futures).get()) {
+            Assert.assertEquals(saleResponse.get(ForteAGIClient.PG_RESPONSE_TYPE), "A", saleResponse.toString());
+        }
+        return latenciesNanos;
+    }
+}
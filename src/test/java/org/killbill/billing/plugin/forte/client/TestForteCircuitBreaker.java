@@ -0,0 +1,149 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.client;
+
+import java.util.Properties;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestForteCircuitBreaker {
+
+    @Test(groups = "fast")
+    public void testFailureRate() throws Exception {
+        final ForteCircuitBreaker circuitBreaker = new ForteCircuitBreaker("AGI", true, 10, 4, 80, 0, 1000, 100, 2);
+
+        // Not enough calls yet
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.acquirePermission();
+            circuitBreaker.onFailure(10);
+        }
+        Assert.assertEquals(circuitBreaker.getState(), ForteCircuitBreaker.State.CLOSED);
+
+        // Below the threshold
+        circuitBreaker.acquirePermission();
+        circuitBreaker.onSuccess(10);
+        Assert.assertEquals(circuitBreaker.getState(), ForteCircuitBreaker.State.CLOSED);
+        for (int i = 0; i < 6; i++) {
+            circuitBreaker.acquirePermission();
+            circuitBreaker.onSuccess(10);
+        }
+        Assert.assertEquals(circuitBreaker.getState(), ForteCircuitBreaker.State.CLOSED);
+
+        // Ignored outcomes don't count
+        for (int i = 0; i < 10; i++) {
+            circuitBreaker.acquirePermission();
+            circuitBreaker.onIgnored();
+        }
+        Assert.assertEquals(circuitBreaker.getState(), ForteCircuitBreaker.State.CLOSED);
+
+        // The oldest calls leave the window: 7, then 8 failures out of 10
+        for (int i = 0; i < 7; i++) {
+            circuitBreaker.acquirePermission();
+            circuitBreaker.onFailure(10);
+        }
+        Assert.assertEquals(circuitBreaker.getState(), ForteCircuitBreaker.State.CLOSED);
+        circuitBreaker.acquirePermission();
+        circuitBreaker.onFailure(10);
+        Assert.assertEquals(circuitBreaker.getState(), ForteCircuitBreaker.State.OPEN);
+        assertRejected(circuitBreaker);
+    }
+
+    @Test(groups = "fast")
+    public void testSlowCallRate() throws Exception {
+        final ForteCircuitBreaker circuitBreaker = new ForteCircuitBreaker("WS", true, 4, 4, 50, 75, 1000, 100, 2);
+
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.acquirePermission();
+            circuitBreaker.onSuccess(1000);
+        }
+        Assert.assertEquals(circuitBreaker.getState(), ForteCircuitBreaker.State.CLOSED);
+
+        circuitBreaker.acquirePermission();
+        circuitBreaker.onSuccess(10);
+        Assert.assertEquals(circuitBreaker.getState(), ForteCircuitBreaker.State.OPEN);
+    }
+
+    @Test(groups = "fast")
+    public void testHalfOpen() throws Exception {
+        final ForteCircuitBreaker circuitBreaker = new ForteCircuitBreaker("AGI", true, 2, 2, 50, 0, 1000, 100, 2);
+        open(circuitBreaker);
+        assertRejected(circuitBreaker);
+
+        // Probe calls, a failure opens the circuit again
+        Thread.sleep(150);
+        circuitBreaker.acquirePermission();
+        Assert.assertEquals(circuitBreaker.getState(), ForteCircuitBreaker.State.HALF_OPEN);
+        circuitBreaker.onFailure(10);
+        Assert.assertEquals(circuitBreaker.getState(), ForteCircuitBreaker.State.OPEN);
+        assertRejected(circuitBreaker);
+
+        // Only halfOpenCalls probes at a time
+        Thread.sleep(150);
+        circuitBreaker.acquirePermission();
+        circuitBreaker.acquirePermission();
+        assertRejected(circuitBreaker);
+        circuitBreaker.onIgnored();
+        circuitBreaker.acquirePermission();
+
+        circuitBreaker.onSuccess(10);
+        Assert.assertEquals(circuitBreaker.getState(), ForteCircuitBreaker.State.HALF_OPEN);
+        circuitBreaker.onSuccess(10);
+        Assert.assertEquals(circuitBreaker.getState(), ForteCircuitBreaker.State.CLOSED);
+
+        // The window starts over
+        circuitBreaker.acquirePermission();
+        circuitBreaker.onFailure(10);
+        Assert.assertEquals(circuitBreaker.getState(), ForteCircuitBreaker.State.CLOSED);
+    }
+
+    @Test(groups = "fast")
+    public void testDisabled() throws Exception {
+        final ForteCircuitBreaker circuitBreaker = new ForteCircuitBreaker("AGI", false, 2, 2, 50, 50, 1000, 100, 2);
+        open(circuitBreaker);
+        Assert.assertEquals(circuitBreaker.getState(), ForteCircuitBreaker.State.CLOSED);
+        circuitBreaker.acquirePermission();
+    }
+
+    @Test(groups = "fast")
+    public void testDisabledByDefault() throws Exception {
+        final ForteCircuitBreaker circuitBreaker = ForteCircuitBreaker.fromProperties("AGI", new Properties());
+        for (int i = 0; i < 50; i++) {
+            circuitBreaker.acquirePermission();
+            circuitBreaker.onFailure(10);
+        }
+        Assert.assertEquals(circuitBreaker.getState(), ForteCircuitBreaker.State.CLOSED);
+        circuitBreaker.acquirePermission();
+    }
+
+    private void open(final ForteCircuitBreaker circuitBreaker) {
+        for (int i = 0; i < 2; i++) {
+            circuitBreaker.acquirePermission();
+            circuitBreaker.onFailure(10);
+        }
+    }
+
+    private void assertRejected(final ForteCircuitBreaker circuitBreaker) {
+        try {
+            circuitBreaker.acquirePermission();
+            Assert.fail("Circuit should be open");
+        } catch (final ForteCircuitOpenException e) {
+            Assert.assertTrue(e.getMessage().contains(" AGI ") || e.getMessage().contains(" WS "), e.getMessage());
+        }
+    }
+}
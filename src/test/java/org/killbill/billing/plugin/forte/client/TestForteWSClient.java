@@ -16,10 +16,17 @@
 
 package org.killbill.billing.plugin.forte.client;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.killbill.billing.plugin.forte.TestRemoteBase;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
 public class TestForteWSClient extends TestRemoteBase {
 
     @Test(groups = "slow")
@@ -43,4 +50,23 @@ public class TestForteWSClient extends TestRemoteBase {
                                                                    CARD_EXP_YEAR);
         Assert.assertNotNull(paymentMethodId);
     }
+
+    @Test(groups = "slow")
+    public void testTokenizeCCAsync() throws Exception {
+        final List<ListenableFuture<String>> futures = new ArrayList<ListenableFuture<String>>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(wsClient.tokenizeCreditCardAsync(CARD_NAME,
+                                                         CARD_TYPE,
+                                                         CARD_NUMBER,
+                                                         CARD_EXP_MONTH,
+                                                         CARD_EXP_YEAR));
+        }
+        futures.add(wsClient.tokenizeECheckAsync(CARD_NAME,
+                                                 TRANSIT_ROUTING_NUMBER,
+                                                 ACCOUNT_NUMBER,
+                                                 SAVINGS));
+
+        final List<String> paymentMethodIds = Futures.allAsList(futures).get();
+        Assert.assertEquals(ImmutableSet.<String>copyOf(paymentMethodIds).size(), 11);
+    }
 }
@@ -16,11 +16,35 @@
 
 package org.killbill.billing.plugin.forte.client;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
+import https.ws_paymentsgateway_net.v1.Authentication;
+
 public class TestForteWSClientAuthentication {
 
+    private ForteWSProxies proxies;
+
+    @BeforeClass(groups = "fast")
+    public void setUpBeforeClass() {
+        proxies = new ForteWSProxies(new Properties());
+    }
+
+    @AfterClass(groups = "fast")
+    public void tearDownAfterClass() throws Exception {
+        proxies.close();
+    }
+
     @Test(groups = "fast")
     public void testGenerateUTCInTicks() {
         final Long utcTimeMillis = 63556506722L;
@@ -36,4 +60,48 @@ public class TestForteWSClientAuthentication {
         final ForteWSClient client = new ForteWSClient(0, "1234", "TOTO", true);
         Assert.assertEquals(client.generateTSHash(utcInTicks), "c9fb952e000344fa0ef2ab162eebd0c6");
     }
+
+    @Test(groups = "fast")
+    public void testGenerateTSHASHConcurrently() throws Exception {
+        final ForteWSClient client = new ForteWSClient(0, "1234", "TOTO", true, proxies);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<String>> futures = new ArrayList<Future<String>>();
+            for (int i = 0; i < 1000; i++) {
+                futures.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return client.generateTSHash("1256921035220000000");
+                    }
+                }));
+            }
+            for (final Future<String> future : futures) {
+                Assert.assertEquals(future.get(), "c9fb952e000344fa0ef2ab162eebd0c6");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testAuthenticationReusedWithinTheSameSecond() {
+        final ForteWSClient client = new ForteWSClient(0, "1234", "TOTO", true, proxies);
+
+        final Authentication authentication = client.buildAuthentication(63556506000L);
+        Assert.assertEquals(authentication.getAPILoginID(), "1234");
+        Assert.assertEquals(authentication.getUTCTime(), "621991533060000000");
+        Assert.assertEquals(authentication.getTSHash(), client.generateTSHash("621991533060000000"));
+        Assert.assertSame(client.buildAuthentication(63556506999L), authentication);
+
+        final Authentication nextAuthentication = client.buildAuthentication(63556507000L);
+        Assert.assertNotSame(nextAuthentication, authentication);
+        Assert.assertEquals(nextAuthentication.getUTCTime(), "621991533070000000");
+        Assert.assertNotEquals(nextAuthentication.getTSHash(), authentication.getTSHash());
+    }
+
+    @Test(groups = "fast")
+    public void testNoSecureTransactionKey() {
+        final ForteWSClient client = new ForteWSClient(0, "1234", null, true, proxies);
+        Assert.assertNull(client.generateTSHash("1256921035220000000"));
+    }
 }
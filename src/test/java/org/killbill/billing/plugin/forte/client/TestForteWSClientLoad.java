@@ -0,0 +1,160 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.ws.WebServiceException;
+import javax.xml.ws.soap.SOAPFaultException;
+
+import org.killbill.billing.plugin.forte.client.agi.AGIStandInServer;
+import org.killbill.billing.plugin.forte.client.ws.WSStandInServer;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+// Offline tokenization load test against the Web Services stand-in: long tail latencies (median 80ms, p99 400ms),
+// 1% of SOAP faults and 5% of invalid card numbers. Run with -Ptest-stress.
+public class TestForteWSClientLoad {
+
+    private static final int TOKENIZATIONS = 5000;
+    private static final int PARALLELISM = 64;
+    private static final double FAULT_PROBABILITY = 0.01;
+
+    @DataProvider(name = "modes")
+    public Object[][] modes() {
+        return new Object[][]{{"sync"}, {"async"}};
+    }
+
+    @Test(groups = "stress", dataProvider = "modes")
+    public void testLoad(final String mode) throws Exception {
+        final WSStandInServer server = new WSStandInServer(123456, "apiLoginId", "secureTransactionKey").setLatency(AGIStandInServer.LatencyDistribution.logNormal(80, 400))
+                                                                                                     .setFaultProbability(FAULT_PROBABILITY);
+
+        final Properties properties = new Properties();
+        properties.put("org.killbill.billing.plugin.forte.merchantId", "123456");
+        properties.put("org.killbill.billing.plugin.forte.apiLoginId", "apiLoginId");
+        properties.put("org.killbill.billing.plugin.forte.secureTransactionKey", "secureTransactionKey");
+        properties.put("org.killbill.billing.plugin.forte.wsUrl", server.getUrl());
+        // Faults are answers: the breaker stays closed
+        properties.put("org.killbill.billing.plugin.forte.circuitBreaker", "false");
+        final ForteWSProxies proxies = new ForteWSProxies(PARALLELISM, 2, 60000, AGIStandInServer.createClientTrustManagers());
+        final ForteWSClient wsClient = new ForteWSClient(properties, proxies);
+        final ExecutorService executor = Executors.newFixedThreadPool(PARALLELISM);
+
+        try {
+            // Warm-up (Client.wsdl, JIT, TLS)
+            runTokenizations(wsClient, executor, mode, PARALLELISM, new long[PARALLELISM]);
+
+            final long[] latenciesNanos = new long[TOKENIZATIONS];
+            final long startNanos = System.nanoTime();
+            final int[] outcomes = runTokenizations(wsClient, executor, mode, TOKENIZATIONS, latenciesNanos);
+            final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+            Arrays.sort(latenciesNanos);
+            System.out.format("%s tokenization: %d calls in %d ms (%.0f/s), tokenized=%d, faults=%d, failed=%d, p50=%d ms, p99=%d ms%n",
+                              mode,
+                              TOKENIZATIONS,
+                              elapsedMillis,
+                              TOKENIZATIONS * 1000.0 / Math.max(1, elapsedMillis),
+                              outcomes[0],
+                              outcomes[1],
+                              outcomes[2],
+                              TimeUnit.NANOSECONDS.toMillis(latenciesNanos[TOKENIZATIONS / 2]),
+                              TimeUnit.NANOSECONDS.toMillis(latenciesNanos[TOKENIZATIONS * 99 / 100]));
+
+            Assert.assertEquals(outcomes[0] + outcomes[1] + outcomes[2], TOKENIZATIONS);
+            Assert.assertEquals(outcomes[2], 0);
+            Assert.assertTrue(outcomes[1] > TOKENIZATIONS / 20);
+        } finally {
+            executor.shutdownNow();
+            wsClient.close();
+            proxies.close();
+            server.close();
+        }
+    }
+
+    // Tokenized, SOAP faults (invalid card numbers included) and other failures
+    private int[] runTokenizations(final ForteWSClient wsClient,
+                                   final ExecutorService executor,
+                                   final String mode,
+                                   final int tokenizations,
+                                   final long[] latenciesNanos) throws Exception {
+        final List<Future<String>> futures = new ArrayList<Future<String>>(tokenizations);
+        final Semaphore permits = new Semaphore(PARALLELISM);
+        for (int i = 0; i < tokenizations; i++) {
+            final int tokenization = i;
+            final String cardNumber = i % 20 == 0 ? WSStandInServer.INVALID_CARD_NUMBER : "4111111111111111";
+            if ("sync".equals(mode)) {
+                futures.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        // Not queued behind the executor
+                        final long startNanos = System.nanoTime();
+                        try {
+                            return wsClient.tokenizeCreditCard("John Doe", "visa", cardNumber, "12", "2030");
+                        } finally {
+                            latenciesNanos[tokenization] = System.nanoTime() - startNanos;
+                        }
+                    }
+                }));
+            } else {
+                permits.acquire();
+                final long submittedNanos = System.nanoTime();
+                final ListenableFuture<String> future = wsClient.tokenizeCreditCardAsync("John Doe", "visa", cardNumber, "12", "2030");
+                future.addListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        latenciesNanos[tokenization] = System.nanoTime() - submittedNanos;
+                        permits.release();
+                    }
+                }, MoreExecutors.directExecutor());
+                futures.add(future);
+            }
+        }
+
+        final int[] outcomes = new int[3];
+        for (final Future<String> future : futures) {
+            try {
+                future.get();
+                outcomes[0]++;
+            } catch (final ExecutionException e) {
+                if (e.getCause() instanceof SOAPFaultException) {
+                    outcomes[1]++;
+                } else {
+                    Assert.assertTrue(e.getCause() instanceof WebServiceException, e.getCause().toString());
+                    outcomes[2]++;
+                }
+            }
+        }
+        return outcomes;
+    }
+}
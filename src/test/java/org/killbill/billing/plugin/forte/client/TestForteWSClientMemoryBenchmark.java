@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.client;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+// Heap and creation time per tenant, with a standalone ForteWSClient per tenant (own WSDL model, proxy and bus)
+// vs clients sharing ForteWSProxies. Run with -Ptest-stress.
+public class TestForteWSClientMemoryBenchmark {
+
+    private static final int TENANTS = 500;
+
+    @Test(groups = "stress")
+    public void testStandaloneClients() throws Exception {
+        benchmark(false);
+    }
+
+    @Test(groups = "stress")
+    public void testSharedProxies() throws Exception {
+        benchmark(true);
+    }
+
+    private void benchmark(final boolean shared) throws Exception {
+        final List<Closeable> closeables = new ArrayList<Closeable>();
+        try {
+            // Warm-up (class loading, CXF static state), the shared proxies are created upfront: only the cost of each tenant is measured
+            new ForteWSClient(buildProperties(-1)).close();
+            final ForteWSProxies proxies = shared ? new ForteWSProxies(new Properties()) : null;
+            if (proxies != null) {
+                closeables.add(proxies);
+                closeables.add(new ForteWSClient(buildProperties(-1), proxies));
+            }
+
+            final long usedHeapBefore = getUsedHeapAfterGC();
+            final long startNanos = System.nanoTime();
+            for (int i = 0; i < TENANTS; i++) {
+                closeables.add(shared ? new ForteWSClient(buildProperties(i), proxies) : new ForteWSClient(buildProperties(i)));
+            }
+            final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            final long usedHeapAfter = getUsedHeapAfterGC();
+
+            System.out.format("%s: %d tenants in %d ms, %d bytes of heap per tenant%n",
+                              shared ? "Shared proxies" : "Standalone clients",
+                              TENANTS,
+                              elapsedMillis,
+                              (usedHeapAfter - usedHeapBefore) / TENANTS);
+        } finally {
+            for (final Closeable closeable : closeables) {
+                closeable.close();
+            }
+        }
+    }
+
+    // Until the used heap is stable (finalizers release more objects over a few cycles)
+    private long getUsedHeapAfterGC() throws InterruptedException {
+        final MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+        long usedHeap = Long.MAX_VALUE;
+        for (int i = 0; i < 20; i++) {
+            System.runFinalization();
+            System.gc();
+            Thread.sleep(100);
+            final long previousUsedHeap = usedHeap;
+            usedHeap = memoryMXBean.getHeapMemoryUsage().getUsed();
+            if (i >= 5 && usedHeap > previousUsedHeap - 64 * 1024) {
+                break;
+            }
+        }
+        return usedHeap;
+    }
+
+    private Properties buildProperties(final int tenant) {
+        final Properties properties = new Properties();
+        properties.put("org.killbill.billing.plugin.forte.merchantId", String.valueOf(100000 + tenant));
+        properties.put("org.killbill.billing.plugin.forte.apiLoginId", "login" + tenant);
+        properties.put("org.killbill.billing.plugin.forte.secureTransactionKey", "key" + tenant);
+        properties.put("org.killbill.billing.plugin.forte.test", "true");
+        return properties;
+    }
+}
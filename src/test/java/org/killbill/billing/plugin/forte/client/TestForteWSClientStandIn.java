@@ -0,0 +1,153 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+
+import javax.xml.ws.WebServiceException;
+import javax.xml.ws.soap.SOAPFaultException;
+
+import org.killbill.billing.plugin.forte.client.agi.AGIStandInServer;
+import org.killbill.billing.plugin.forte.client.ws.WSStandInServer;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+public class TestForteWSClientStandIn {
+
+    private static final int MERCHANT_ID = 123456;
+    private static final String API_LOGIN_ID = "apiLoginId";
+    private static final String SECURE_TRANSACTION_KEY = "secureTransactionKey";
+
+    private ForteWSProxies proxies;
+    private WSStandInServer server;
+
+    @BeforeClass(groups = "fast")
+    public void setUpClass() throws Exception {
+        proxies = createProxies();
+    }
+
+    @AfterClass(groups = "fast")
+    public void tearDownClass() throws Exception {
+        proxies.close();
+    }
+
+    @BeforeMethod(groups = "fast")
+    public void setUp() throws Exception {
+        server = new WSStandInServer(MERCHANT_ID, API_LOGIN_ID, SECURE_TRANSACTION_KEY);
+    }
+
+    @AfterMethod(groups = "fast")
+    public void tearDown() throws Exception {
+        server.close();
+    }
+
+    @Test(groups = "fast")
+    public void testTokenize() throws Exception {
+        final ForteWSClient wsClient = new ForteWSClient(buildProperties(SECURE_TRANSACTION_KEY), proxies);
+
+        final String customerId = wsClient.createClient("John", "Doe", "36, rue du puits", null, null, null, null);
+        final String creditCardToken = wsClient.tokenizeCreditCard("John Doe", "visa", "4111111111111111", "12", "2030");
+        final String eCheckToken = wsClient.tokenizeECheck("John Doe", "021000021", "2222222222222", "Checking");
+        Assert.assertEquals(ImmutableSet.<String>of(customerId, creditCardToken, eCheckToken).size(), 3);
+        Assert.assertEquals(server.getPaymentMethods(), 2);
+        Assert.assertEquals(server.getRequests(), 3);
+
+        final List<ListenableFuture<String>> futures = new ArrayList<ListenableFuture<String>>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(wsClient.tokenizeCreditCardAsync("John Doe", "visa", "4111111111111111", "12", "2030"));
+        }
+        Assert.assertEquals(ImmutableSet.<String>copyOf(Futures.allAsList(futures).get()).size(), 20);
+        Assert.assertEquals(server.getPaymentMethods(), 22);
+    }
+
+    @Test(groups = "fast")
+    public void testAuthenticationIsChecked() throws Exception {
+        final ForteWSClient wsClient = new ForteWSClient(buildProperties("wrongKey"), proxies);
+        try {
+            wsClient.tokenizeCreditCard("John Doe", "visa", "4111111111111111", "12", "2030");
+            Assert.fail();
+        } catch (final SOAPFaultException e) {
+            Assert.assertEquals(e.getMessage(), "Error[2]: Invalid TSHash");
+        }
+        Assert.assertEquals(server.getPaymentMethods(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testInvalidCardNumber() throws Exception {
+        final ForteWSClient wsClient = new ForteWSClient(buildProperties(SECURE_TRANSACTION_KEY), proxies);
+        try {
+            wsClient.tokenizeCreditCard("John Doe", "visa", WSStandInServer.INVALID_CARD_NUMBER, "12", "2030");
+            Assert.fail();
+        } catch (final SOAPFaultException e) {
+            Assert.assertEquals(e.getMessage(), "Invalid CcCardNumber");
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testFaultInjection() throws Exception {
+        final ForteWSClient wsClient = new ForteWSClient(buildProperties(SECURE_TRANSACTION_KEY), proxies);
+
+        // Answered by the gateway
+        server.setFaultProbability(1);
+        try {
+            wsClient.tokenizeCreditCardAsync("John Doe", "visa", "4111111111111111", "12", "2030").get();
+            Assert.fail();
+        } catch (final ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof SOAPFaultException, e.getCause().toString());
+        }
+        Assert.assertEquals(server.getFaults(), 1);
+
+        // Transport error
+        server.setFaultProbability(0).setUnavailableProbability(1);
+        try {
+            wsClient.tokenizeCreditCard("John Doe", "visa", "4111111111111111", "12", "2030");
+            Assert.fail();
+        } catch (final WebServiceException e) {
+            Assert.assertFalse(e instanceof SOAPFaultException, e.toString());
+        }
+        Assert.assertEquals(server.getUnavailable(), 1);
+
+        server.setUnavailableProbability(0);
+        Assert.assertNotNull(wsClient.tokenizeCreditCard("John Doe", "visa", "4111111111111111", "12", "2030"));
+    }
+
+    // Client.wsdl is parsed once for all tests
+    protected ForteWSProxies createProxies() throws Exception {
+        return new ForteWSProxies(8, 1, 60000, false, AGIStandInServer.createClientTrustManagers());
+    }
+
+    private Properties buildProperties(final String secureTransactionKey) {
+        final Properties properties = new Properties();
+        properties.put("org.killbill.billing.plugin.forte.merchantId", String.valueOf(MERCHANT_ID));
+        properties.put("org.killbill.billing.plugin.forte.apiLoginId", API_LOGIN_ID);
+        properties.put("org.killbill.billing.plugin.forte.secureTransactionKey", secureTransactionKey);
+        properties.put("org.killbill.billing.plugin.forte.wsUrl", server.getUrl());
+        return properties;
+    }
+}
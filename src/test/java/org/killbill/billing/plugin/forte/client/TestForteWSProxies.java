@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.client;
+
+import java.util.Properties;
+import java.util.concurrent.TimeoutException;
+
+import javax.xml.ws.WebServiceException;
+
+import org.killbill.billing.plugin.forte.client.ws.StaxClientService;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import https.ws_paymentsgateway_net.v1.IClientService;
+
+public class TestForteWSProxies {
+
+    @Test(groups = "fast")
+    public void testProxiesSharedAcrossTenants() throws Exception {
+        final ForteWSProxies proxies = new ForteWSProxies(new Properties());
+        try {
+            final String url = "https://sandbox.paymentsgateway.net/ws/Client.svc";
+            Assert.assertSame(proxies.getProxy(url, 1000, 60000), proxies.getProxy(url, 1000, 60000));
+            Assert.assertNotSame(proxies.getProxy(url, 1000, 30000), proxies.getProxy(url, 1000, 60000));
+
+            // Credentials stay per tenant
+            final ForteWSClient tenant1 = new ForteWSClient(buildProperties("1234", "TOTO"), proxies);
+            final ForteWSClient tenant2 = new ForteWSClient(buildProperties("5678", "TATA"), proxies);
+            Assert.assertEquals(tenant1.generateTSHash("1256921035220000000"), "c9fb952e000344fa0ef2ab162eebd0c6");
+            Assert.assertNotEquals(tenant2.generateTSHash("1256921035220000000"), "c9fb952e000344fa0ef2ab162eebd0c6");
+            Assert.assertEquals(tenant2.buildAuthentication(63556506000L).getAPILoginID(), "5678");
+
+            // The shared proxies are left open
+            tenant1.close();
+            Assert.assertSame(proxies.getProxy(url, 1000, 60000), proxies.getProxy(url, 1000, 60000));
+        } finally {
+            proxies.close();
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testBackgroundInitialization() throws Exception {
+        final ForteWSProxies proxies = new ForteWSProxies(new Properties());
+        try {
+            // Tenant clients don't wait for Client.wsdl
+            final String url = "https://sandbox.paymentsgateway.net/ws/Client.svc";
+            final ListenableFuture<IClientService> proxy = proxies.getProxyAsync(url, 1000, 60000);
+            final ForteWSClient tenant = new ForteWSClient(buildProperties("1234", "TOTO"), proxies);
+            Assert.assertEquals(tenant.generateTSHash("1256921035220000000"), "c9fb952e000344fa0ef2ab162eebd0c6");
+
+            // The first call does
+            Assert.assertSame(proxies.getProxy(url, 1000, 60000), proxy.get());
+            Assert.assertTrue(proxies.isInitialized());
+        } finally {
+            proxies.close();
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testInitializationTimeout() throws Exception {
+        final ForteWSProxies proxies = new ForteWSProxies(1, 1, 0);
+        try {
+            final ListenableFuture<IClientService> proxy = proxies.getProxyAsync("https://sandbox.paymentsgateway.net/ws/Client.svc", 1000, 60000);
+            if (!proxy.isDone()) {
+                try {
+                    proxies.await(proxy);
+                    Assert.fail();
+                } catch (final WebServiceException e) {
+                    Assert.assertTrue(e.getCause() instanceof TimeoutException);
+                }
+            }
+            proxy.get();
+        } finally {
+            // Closes the bus and the proxies once created
+            proxies.close();
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testStaxTransportOnlyImplementsClientOperations() throws Exception {
+        final ForteWSProxies proxies = new ForteWSProxies(1, 1, 0, true, null);
+        try {
+            final String url = "https://sandbox.paymentsgateway.net/ws/Client.svc";
+            Assert.assertTrue(proxies.getClientOperations(url, 1000, 60000) instanceof StaxClientService);
+            Assert.assertSame(proxies.getClientOperations(url, 1000, 60000), proxies.getClientOperations(url, 1000, 60000));
+            try {
+                proxies.getProxy(url, 1000, 60000);
+                Assert.fail();
+            } catch (final UnsupportedOperationException e) {
+                Assert.assertTrue(e.getMessage().contains("wsTransport=cxf"));
+            }
+        } finally {
+            proxies.close();
+        }
+    }
+
+    private Properties buildProperties(final String apiLoginId, final String secureTransactionKey) {
+        final Properties properties = new Properties();
+        properties.put("org.killbill.billing.plugin.forte.merchantId", "0");
+        properties.put("org.killbill.billing.plugin.forte.apiLoginId", apiLoginId);
+        properties.put("org.killbill.billing.plugin.forte.secureTransactionKey", secureTransactionKey);
+        properties.put("org.killbill.billing.plugin.forte.test", "true");
+        return properties;
+    }
+}
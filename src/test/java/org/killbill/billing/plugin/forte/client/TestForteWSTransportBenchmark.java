@@ -0,0 +1,140 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.client;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.killbill.billing.plugin.forte.client.agi.AGIStandInServer;
+import org.killbill.billing.plugin.forte.client.ws.WSStandInServer;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+// CXF proxies vs StAX transport, against the Web Services stand-in (no added latency): startup time (proxies created
+// up to the first tokenization), heap per set of proxies (i.e. per tenant without shared proxies) and latency of
+// sequential tokenizations. Run with -Ptest-stress.
+public class TestForteWSTransportBenchmark {
+
+    private static final int INSTANCES = 50;
+    private static final int TOKENIZATIONS = 5000;
+
+    @DataProvider(name = "transports")
+    public Object[][] transports() {
+        return new Object[][]{{"cxf"}, {"stax"}};
+    }
+
+    @Test(groups = "stress", dataProvider = "transports")
+    public void testTransport(final String transport) throws Exception {
+        final boolean stax = "stax".equals(transport);
+        final WSStandInServer server = new WSStandInServer(123456, "apiLoginId", "secureTransactionKey");
+        try {
+            // Warm-up (class loading, static state): the startup of a plugin restart is measured
+            final long[] ignored = new long[100];
+            runTokenizations(server, stax, ignored);
+
+            final long startNanos = System.nanoTime();
+            runTokenizations(server, stax, new long[1]);
+            final long startupMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+            final long heapPerInstance = measureHeapPerInstance(server, stax);
+
+            final long[] latenciesNanos = new long[TOKENIZATIONS];
+            runTokenizations(server, stax, latenciesNanos);
+            Arrays.sort(latenciesNanos);
+
+            System.out.format("%s: startup %d ms, %d bytes of heap per instance, latency p50=%d us p99=%d us%n",
+                              transport,
+                              startupMillis,
+                              heapPerInstance,
+                              TimeUnit.NANOSECONDS.toMicros(latenciesNanos[latenciesNanos.length / 2]),
+                              TimeUnit.NANOSECONDS.toMicros(latenciesNanos[latenciesNanos.length * 99 / 100]));
+        } finally {
+            server.close();
+        }
+    }
+
+    // With fresh proxies
+    private void runTokenizations(final WSStandInServer server, final boolean stax, final long[] latenciesNanos) throws Exception {
+        final ForteWSProxies proxies = createProxies(stax);
+        final ForteWSClient wsClient = new ForteWSClient(buildProperties(server), proxies);
+        try {
+            for (int i = 0; i < latenciesNanos.length; i++) {
+                final long startNanos = System.nanoTime();
+                wsClient.tokenizeCreditCard("John Doe", "visa", "4111111111111111", "12", "2030");
+                latenciesNanos[i] = System.nanoTime() - startNanos;
+            }
+        } finally {
+            wsClient.close();
+            proxies.close();
+        }
+    }
+
+    // Initialized proxies, for one endpoint
+    private long measureHeapPerInstance(final WSStandInServer server, final boolean stax) throws Exception {
+        final List<ForteWSProxies> instances = new ArrayList<ForteWSProxies>();
+        try {
+            final long usedHeapBefore = getUsedHeapAfterGC();
+            for (int i = 0; i < INSTANCES; i++) {
+                final ForteWSProxies proxies = createProxies(stax);
+                instances.add(proxies);
+                proxies.getProxy(server.getUrl(), 10000, 60000);
+            }
+            final long usedHeapAfter = getUsedHeapAfterGC();
+            return (usedHeapAfter - usedHeapBefore) / INSTANCES;
+        } finally {
+            for (final ForteWSProxies proxies : instances) {
+                proxies.close();
+            }
+        }
+    }
+
+    private ForteWSProxies createProxies(final boolean stax) throws Exception {
+        return new ForteWSProxies(8, 1, 60000, stax, AGIStandInServer.createClientTrustManagers());
+    }
+
+    // See TestForteWSClientMemoryBenchmark
+    private long getUsedHeapAfterGC() throws InterruptedException {
+        final MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+        long usedHeap = Long.MAX_VALUE;
+        for (int i = 0; i < 20; i++) {
+            System.runFinalization();
+            System.gc();
+            Thread.sleep(100);
+            final long previousUsedHeap = usedHeap;
+            usedHeap = memoryMXBean.getHeapMemoryUsage().getUsed();
+            if (i >= 5 && usedHeap > previousUsedHeap - 64 * 1024) {
+                break;
+            }
+        }
+        return usedHeap;
+    }
+
+    private Properties buildProperties(final WSStandInServer server) {
+        final Properties properties = new Properties();
+        properties.put("org.killbill.billing.plugin.forte.merchantId", "123456");
+        properties.put("org.killbill.billing.plugin.forte.apiLoginId", "apiLoginId");
+        properties.put("org.killbill.billing.plugin.forte.secureTransactionKey", "secureTransactionKey");
+        properties.put("org.killbill.billing.plugin.forte.wsUrl", server.getUrl());
+        return properties;
+    }
+}
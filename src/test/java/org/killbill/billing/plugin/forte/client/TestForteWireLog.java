@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.client;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.slf4j.Logger;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestForteWireLog {
+
+    @Test(groups = "fast")
+    public void testMaskAGI() throws Exception {
+        Assert.assertEquals(ForteWireLog.mask("pg_merchant_id=123456\n" +
+                                              "pg_password=secret\n" +
+                                              "ecom_payment_card_number=4111111111111111\n" +
+                                              "ecom_payment_card_verification=123\n" +
+                                              "ecom_payment_check_account=\n" +
+                                              "ecom_payment_card_name=John Smith\n" +
+                                              "endofdata\n"),
+                            "pg_merchant_id=123456\n" +
+                            "pg_password=***\n" +
+                            "ecom_payment_card_number=***\n" +
+                            "ecom_payment_card_verification=***\n" +
+                            "ecom_payment_check_account=\n" +
+                            "ecom_payment_card_name=John Smith\n" +
+                            "endofdata\n");
+        // Prefixes and suffixes of masked keys aren't masked
+        Assert.assertEquals(ForteWireLog.mask("xpg_password=a\r\npg_password_hint=b"), "xpg_password=a\r\npg_password_hint=b");
+        Assert.assertEquals(ForteWireLog.mask("pg_password=a"), "pg_password=***");
+    }
+
+    @Test(groups = "fast")
+    public void testMaskSOAP() throws Exception {
+        Assert.assertEquals(ForteWireLog.mask("<a:CcCardNumber>4111111111111111</a:CcCardNumber><a:CcExpirationDate>203008</a:CcExpirationDate>" +
+                                              "<EcAccountNumber>123456789</EcAccountNumber><EcAccountNumber/><cvc>123</cvc>"),
+                            "<a:CcCardNumber>***</a:CcCardNumber><a:CcExpirationDate>203008</a:CcExpirationDate>" +
+                            "<EcAccountNumber>***</EcAccountNumber><EcAccountNumber/><cvc>***</cvc>");
+        final String unmasked = "<a:AcctHolderName>John Smith</a:AcctHolderName>";
+        Assert.assertSame(ForteWireLog.mask(unmasked), unmasked);
+    }
+
+    @Test(groups = "fast")
+    public void testBackgroundWriter() throws Exception {
+        final Logger logger = Mockito.mock(Logger.class);
+        Mockito.when(logger.isDebugEnabled()).thenReturn(true);
+        final CountDownLatch written = new CountDownLatch(2);
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) {
+                written.countDown();
+                return null;
+            }
+        }).when(logger).debug(Mockito.anyString(), Mockito.<Object>any(), Mockito.<Object>any());
+        final ForteWireLog wireLog = new ForteWireLog(logger, 16);
+
+        final Map<String, String> response = new LinkedHashMap<String, String>();
+        response.put("pg_response_type", "A");
+        response.put("ecom_payment_card_number", "4111111111111111");
+        wireLog.log("AGI response", response);
+        wireLog.log("Web Services", "<cvc>123</cvc>");
+
+        Assert.assertTrue(written.await(5, TimeUnit.SECONDS));
+        Mockito.verify(logger).debug("{}:\n{}", "AGI response", "pg_response_type=A\necom_payment_card_number=***\n");
+        Mockito.verify(logger).debug("{}:\n{}", "Web Services", "<cvc>***</cvc>");
+    }
+
+    @Test(groups = "fast")
+    public void testDisabled() throws Exception {
+        final Logger logger = Mockito.mock(Logger.class);
+        final ForteWireLog wireLog = new ForteWireLog(logger, 16);
+        Assert.assertFalse(wireLog.isEnabled());
+
+        wireLog.log("Web Services", "<cvc>123</cvc>");
+        Thread.sleep(100);
+        Mockito.verify(logger, Mockito.never()).debug(Mockito.anyString(), Mockito.<Object>any(), Mockito.<Object>any());
+    }
+}
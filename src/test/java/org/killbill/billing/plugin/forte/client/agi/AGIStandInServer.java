@@ -0,0 +1,405 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.client.agi;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.killbill.billing.plugin.forte.client.ForteAGIClient;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+// Local stand-in for the Forte AGI gateway: speaks the key=value line protocol over TLS and answers like the sandbox does
+// (approvals, declines for the DECLINED_* card and account numbers, errors for missing fields). Latency, connection resets
+// and slow-drip responses can be configured (and changed while running) to load test the plugin without the real gateway.
+public class AGIStandInServer implements Closeable {
+
+    public static final String DECLINED_CARD_NUMBER = "4000000000000002";
+    public static final String DECLINED_ACCOUNT_NUMBER = "000000000";
+
+    public static final String RESPONSE_TYPE_APPROVAL = "A";
+    public static final String RESPONSE_TYPE_DECLINE = "D";
+    public static final String RESPONSE_TYPE_ERROR = "E";
+
+    private static final String KEY_STORE = "forte-standin.jks";
+    private static final char[] KEY_STORE_PASSWORD = "password".toCharArray();
+    private static final String ENDOFDATA = "endofdata";
+    private static final String LOCALHOST = "127.0.0.1";
+    private static final String AUTHORIZATION_CODE_CHARACTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+
+    private static final ImmutableSet<String> PAYMENT_TRANSACTION_TYPES = ImmutableSet.<String>of(ForteAGIClient.CREDIT_CARD_SALE,
+                                                                                                 ForteAGIClient.CREDIT_CARD_AUTH,
+                                                                                                 ForteAGIClient.CREDIT_CARD_CREDIT,
+                                                                                                 ForteAGIClient.CREDIT_CARD_PRE_AUTH,
+                                                                                                 ForteAGIClient.EFT_SALE,
+                                                                                                 ForteAGIClient.EFT_AUTH,
+                                                                                                 ForteAGIClient.EFT_CREDIT,
+                                                                                                 ForteAGIClient.EFT_FORCE,
+                                                                                                 ForteAGIClient.EFT_VERIFY);
+    private static final ImmutableSet<String> CREDIT_CARD_TEST_APPROVAL_TYPES = ImmutableSet.<String>of(ForteAGIClient.CREDIT_CARD_SALE,
+                                                                                                       ForteAGIClient.CREDIT_CARD_AUTH,
+                                                                                                       ForteAGIClient.CREDIT_CARD_PRE_AUTH);
+
+    // Plain server socket, TLS is layered on top of each connection: resets can then bypass the close_notify alert
+    private final ServerSocket serverSocket;
+    private final SSLSocketFactory sslSocketFactory;
+    private final String[] protocols;
+    private final ExecutorService executor;
+    private final AtomicLong connections = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong resets = new AtomicLong();
+    private final Random random = new Random();
+
+    private volatile LatencyDistribution latency = LatencyDistribution.none();
+    private volatile double resetProbability;
+    private volatile long dripDelayMillis;
+    private volatile int idleTimeoutMillis;
+
+    public AGIStandInServer() throws IOException {
+        this(new String[]{"TLSv1.2"});
+    }
+
+    public AGIStandInServer(final String[] protocols) throws IOException {
+        this.serverSocket = new ServerSocket(0, 512, InetAddress.getByName(LOCALHOST));
+        this.sslSocketFactory = createServerSSLContext().getSocketFactory();
+        this.protocols = protocols;
+        this.executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("agi-standin-%d").setDaemon(true).build());
+        this.executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                acceptLoop();
+            }
+        });
+    }
+
+    public String getHost() {
+        return LOCALHOST;
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public long getConnections() {
+        return connections.get();
+    }
+
+    // Requests received, reset ones included
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getResets() {
+        return resets.get();
+    }
+
+    // Time spent "processing" each request before answering
+    public AGIStandInServer setLatency(final LatencyDistribution latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    // Share of the requests answered by a TCP reset (after they have been read: the client can't tell whether they were processed)
+    public AGIStandInServer setResetProbability(final double resetProbability) {
+        this.resetProbability = resetProbability;
+        return this;
+    }
+
+    // Delay between each line of the responses
+    public AGIStandInServer setDripDelayMillis(final long dripDelayMillis) {
+        this.dripDelayMillis = dripDelayMillis;
+        return this;
+    }
+
+    // Connections without request for that long are closed (like the gateway does)
+    public AGIStandInServer setIdleTimeoutMillis(final int idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        return this;
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+
+    public static SSLContext createServerSSLContext() {
+        try {
+            final KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keyManagerFactory.init(loadKeyStore(), KEY_STORE_PASSWORD);
+
+            final SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(keyManagerFactory.getKeyManagers(), null, null);
+            return sslContext;
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static SSLContext createClientSSLContext() {
+        try {
+            final SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, createClientTrustManagers(), null);
+            return sslContext;
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Trust the stand-in certificate (also used by the Web Services stand-in)
+    public static TrustManager[] createClientTrustManagers() {
+        try {
+            final TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            trustManagerFactory.init(loadKeyStore());
+            return trustManagerFactory.getTrustManagers();
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    protected Map<String, String> buildResponse(final Map<String, String> request) {
+        final String transactionType = request.get(ForteAGIClient.PG_TRANSACTION_TYPE);
+
+        final Map<String, String> response = new LinkedHashMap<String, String>();
+        response.put(ForteAGIClient.PG_MERCHANT_ID, request.get(ForteAGIClient.PG_MERCHANT_ID));
+        response.put(ForteAGIClient.PG_TRANSACTION_TYPE, transactionType);
+        putIfPresent(request, response, ForteAGIClient.PG_TOTAL_AMOUNT);
+        putIfPresent(request, response, ForteAGIClient.ECOM_BILLTO_POSTAL_NAME_FIRST);
+        putIfPresent(request, response, ForteAGIClient.ECOM_BILLTO_POSTAL_NAME_LAST);
+        putIfPresent(request, response, ForteAGIClient.PG_ORIGINAL_TRACE_NUMBER);
+
+        final String missingField = getMissingField(request, transactionType);
+        if (missingField != null) {
+            response.put(ForteAGIClient.PG_RESPONSE_TYPE, RESPONSE_TYPE_ERROR);
+            response.put(ForteAGIClient.PG_RESPONSE_CODE, "F01");
+            response.put(ForteAGIClient.PG_RESPONSE_DESCRIPTION, "MANDATORY FIELD MISSING:" + missingField);
+            return response;
+        }
+
+        response.put(ForteAGIClient.PG_TRACE_NUMBER, UUID.randomUUID().toString().toUpperCase());
+        if (DECLINED_CARD_NUMBER.equals(request.get(ForteAGIClient.ECOM_PAYMENT_CARD_NUMBER)) ||
+            DECLINED_ACCOUNT_NUMBER.equals(request.get(ForteAGIClient.ECOM_PAYMENT_CHECK_ACCOUNT))) {
+            response.put(ForteAGIClient.PG_RESPONSE_TYPE, RESPONSE_TYPE_DECLINE);
+            response.put(ForteAGIClient.PG_RESPONSE_CODE, "U02");
+            response.put(ForteAGIClient.PG_RESPONSE_DESCRIPTION, "ACCOUNT NOT APPROVED");
+            return response;
+        }
+
+        response.put(ForteAGIClient.PG_RESPONSE_TYPE, RESPONSE_TYPE_APPROVAL);
+        response.put(ForteAGIClient.PG_RESPONSE_CODE, "A01");
+        // Like the sandbox
+        response.put(ForteAGIClient.PG_RESPONSE_DESCRIPTION, CREDIT_CARD_TEST_APPROVAL_TYPES.contains(transactionType) ? "TEST APPROVAL" : "APPROVED");
+        if (PAYMENT_TRANSACTION_TYPES.contains(transactionType)) {
+            response.put(ForteAGIClient.PG_AUTHORIZATION_CODE, generateAuthorizationCode());
+        } else {
+            putIfPresent(request, response, ForteAGIClient.PG_ORIGINAL_AUTHORIZATION_CODE);
+        }
+        return response;
+    }
+
+    private String getMissingField(final Map<String, String> request, final String transactionType) {
+        if (request.get(ForteAGIClient.PG_MERCHANT_ID) == null) {
+            return ForteAGIClient.PG_MERCHANT_ID;
+        } else if (request.get(ForteAGIClient.PG_PASSWORD) == null) {
+            return ForteAGIClient.PG_PASSWORD;
+        } else if (transactionType == null) {
+            return ForteAGIClient.PG_TRANSACTION_TYPE;
+        } else if (PAYMENT_TRANSACTION_TYPES.contains(transactionType)) {
+            return request.get(ForteAGIClient.PG_TOTAL_AMOUNT) == null ? ForteAGIClient.PG_TOTAL_AMOUNT : null;
+        } else {
+            return request.get(ForteAGIClient.PG_ORIGINAL_TRACE_NUMBER) == null ? ForteAGIClient.PG_ORIGINAL_TRACE_NUMBER : null;
+        }
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (final IOException e) {
+                // Closed
+                return;
+            }
+            connections.incrementAndGet();
+
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    handle(socket);
+                }
+            });
+        }
+    }
+
+    private void handle(final Socket rawSocket) {
+        try {
+            final SSLSocket socket = (SSLSocket) sslSocketFactory.createSocket(rawSocket, LOCALHOST, rawSocket.getPort(), true);
+            socket.setUseClientMode(false);
+            socket.setEnabledProtocols(protocols);
+
+            final InputStream in = socket.getInputStream();
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(in, Charsets.ISO_8859_1));
+
+            final Map<String, String> request = new LinkedHashMap<String, String>();
+            socket.setSoTimeout(idleTimeoutMillis);
+            String line = reader.readLine();
+            socket.setSoTimeout(0);
+            while (line != null && !ENDOFDATA.equals(line)) {
+                final int equalPos = line.indexOf('=');
+                request.put(line.substring(0, equalPos), line.substring(equalPos + 1));
+                line = reader.readLine();
+            }
+            if (line == null) {
+                // Client went away (e.g. warm connection evicted from the pool)
+                return;
+            }
+            requests.incrementAndGet();
+
+            Thread.sleep(latency.nextMillis(random));
+            if (random.nextDouble() < resetProbability) {
+                resets.incrementAndGet();
+                // RST, without close_notify nor FIN
+                rawSocket.setSoLinger(true, 0);
+                return;
+            }
+
+            final OutputStream out = socket.getOutputStream();
+            final StringBuilder content = new StringBuilder();
+            for (final Map.Entry<String, String> entry : buildResponse(request).entrySet()) {
+                content.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+                if (dripDelayMillis > 0) {
+                    drip(out, content);
+                }
+            }
+            content.append(ENDOFDATA).append('\n');
+            out.write(content.toString().getBytes(Charsets.ISO_8859_1));
+            out.flush();
+        } catch (final IOException ignored) {
+        } catch (final InterruptedException e) {
+            // Server closed
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                rawSocket.close();
+            } catch (final IOException ignored) {
+            }
+        }
+    }
+
+    private void drip(final OutputStream out, final StringBuilder content) throws IOException, InterruptedException {
+        out.write(content.toString().getBytes(Charsets.ISO_8859_1));
+        out.flush();
+        content.setLength(0);
+        Thread.sleep(dripDelayMillis);
+    }
+
+    private static void putIfPresent(final Map<String, String> request, final Map<String, String> response, final String key) {
+        if (request.get(key) != null) {
+            response.put(key, request.get(key));
+        }
+    }
+
+    private String generateAuthorizationCode() {
+        final StringBuilder authorizationCode = new StringBuilder(6);
+        for (int i = 0; i < 6; i++) {
+            authorizationCode.append(AUTHORIZATION_CODE_CHARACTERS.charAt(random.nextInt(AUTHORIZATION_CODE_CHARACTERS.length())));
+        }
+        return authorizationCode.toString();
+    }
+
+    private static KeyStore loadKeyStore() throws GeneralSecurityException {
+        final InputStream inputStream = AGIStandInServer.class.getClassLoader().getResourceAsStream(KEY_STORE);
+        try {
+            final KeyStore keyStore = KeyStore.getInstance("JKS");
+            keyStore.load(inputStream, KEY_STORE_PASSWORD);
+            return keyStore;
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            try {
+                inputStream.close();
+            } catch (final IOException ignored) {
+            }
+        }
+    }
+
+    // Processing time of the stand-in gateway
+    public abstract static class LatencyDistribution {
+
+        public abstract long nextMillis(Random random);
+
+        public static LatencyDistribution none() {
+            return fixed(0);
+        }
+
+        public static LatencyDistribution fixed(final long millis) {
+            return new LatencyDistribution() {
+                @Override
+                public long nextMillis(final Random random) {
+                    return millis;
+                }
+            };
+        }
+
+        public static LatencyDistribution uniform(final long minMillis, final long maxMillis) {
+            return new LatencyDistribution() {
+                @Override
+                public long nextMillis(final Random random) {
+                    return minMillis + (long) (random.nextDouble() * (maxMillis - minMillis));
+                }
+            };
+        }
+
+        // Long tail, like real gateway latencies: half of the requests take less than medianMillis, 99% less than p99Millis
+        public static LatencyDistribution logNormal(final long medianMillis, final long p99Millis) {
+            final double mu = Math.log(medianMillis);
+            final double sigma = Math.log((double) p99Millis / medianMillis) / 2.326;
+            return new LatencyDistribution() {
+                @Override
+                public long nextMillis(final Random random) {
+                    return Math.round(Math.exp(mu + sigma * random.nextGaussian()));
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.client.agi;
+
+import java.net.InetAddress;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestAGIEndpoints {
+
+    @Test(groups = "fast")
+    public void testParse() throws Exception {
+        final List<AGIEndpoint> endpoints = AGIEndpoints.parse("www.paymentsgateway.net, 10.0.0.1:6051,[::1]:6052,[::1],", 6050);
+        Assert.assertEquals(endpoints.size(), 4);
+        assertEndpoint(endpoints.get(0), "www.paymentsgateway.net", 6050);
+        assertEndpoint(endpoints.get(1), "10.0.0.1", 6051);
+        assertEndpoint(endpoints.get(2), "::1", 6052);
+        assertEndpoint(endpoints.get(3), "::1", 6050);
+
+        Assert.assertTrue(AGIEndpoints.parse(null, 6050).isEmpty());
+    }
+
+    @Test(groups = "fast")
+    public void testSelection() throws Exception {
+        final AGIEndpoints endpoints = new AGIEndpoints("a,b,c", 6050, new AGIHostResolver(0), 60000);
+        final AGIEndpoint a = endpoints.getEndpoints().get(0);
+        final AGIEndpoint b = endpoints.getEndpoints().get(1);
+        final AGIEndpoint c = endpoints.getEndpoints().get(2);
+
+        a.recordConnect(50);
+        a.recordResponse(200);
+        b.recordConnect(20);
+        b.recordResponse(100);
+        c.recordConnectFailure(60000);
+
+        // The first selection probes the least recently used endpoint
+        endpoints.select();
+        for (int i = 0; i < 10; i++) {
+            final List<AGIEndpoint> selected = endpoints.select();
+            Assert.assertEquals(selected.get(0), b);
+            Assert.assertEquals(selected.get(1), a);
+            Assert.assertEquals(selected.get(2), c);
+        }
+
+        // Latency averages move towards the latest samples
+        for (int i = 0; i < 10; i++) {
+            b.recordResponse(1000);
+        }
+        Assert.assertTrue(b.getResponseLatencyMillis() > 800);
+        Assert.assertEquals(endpoints.select().get(0), a);
+
+        // A successful connection makes the endpoint available again
+        c.recordConnect(10);
+        Assert.assertTrue(c.isAvailable());
+        Assert.assertEquals(endpoints.select().get(0), c);
+    }
+
+    @Test(groups = "fast")
+    public void testHostResolverCache() throws Exception {
+        final AGIHostResolver resolver = new AGIHostResolver(60000);
+        final InetAddress[] addresses = resolver.resolve("localhost");
+        Assert.assertSame(resolver.resolve("localhost"), addresses);
+
+        final AGIHostResolver noCacheResolver = new AGIHostResolver(0);
+        Assert.assertNotSame(noCacheResolver.resolve("localhost"), noCacheResolver.resolve("localhost"));
+    }
+
+    private void assertEndpoint(final AGIEndpoint endpoint, final String host, final int port) {
+        Assert.assertEquals(endpoint.getHost(), host);
+        Assert.assertEquals(endpoint.getPort(), port);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.client.agi;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+
+import org.testng.annotations.Test;
+
+// Full TLS handshakes against the local stand-in gateway: every supported cipher suite enabled (previous behavior)
+// vs the default AGITLSPolicy. Run with -Ptest-stress.
+public class TestAGIHandshakeBenchmark {
+
+    private static final int WARM_UP_HANDSHAKES = 200;
+    private static final int HANDSHAKES = 1000;
+
+    @Test(groups = "stress")
+    public void testHandshakes() throws Exception {
+        final AGIStandInServer server = new AGIStandInServer(new String[]{"TLSv1.3", "TLSv1.2"});
+        try {
+            final SSLContext sslContext = AGIStandInServer.createClientSSLContext();
+            final AGITLSPolicy allSupported = new AGITLSPolicy(null, Arrays.asList(sslContext.getSupportedSSLParameters().getCipherSuites()));
+            final AGITLSPolicy defaultPolicy = AGITLSPolicy.parse(null, null);
+
+            final InetSocketAddress address = new InetSocketAddress(server.getHost(), server.getPort());
+            benchmark("All supported suites", new AGISocketFactory(AGIStandInServer.createClientSSLContext(), allSupported, 100, 3600, 10000), address);
+            benchmark("Default policy", new AGISocketFactory(AGIStandInServer.createClientSSLContext(), defaultPolicy, 100, 3600, 10000), address);
+        } finally {
+            server.close();
+        }
+    }
+
+    private void benchmark(final String name, final AGISocketFactory factory, final InetSocketAddress address) throws Exception {
+        handshakes(factory, address, WARM_UP_HANDSHAKES);
+
+        final long[] latenciesNanos = handshakes(factory, address, HANDSHAKES);
+        Arrays.sort(latenciesNanos);
+        long totalNanos = 0;
+        for (final long latencyNanos : latenciesNanos) {
+            totalNanos += latencyNanos;
+        }
+
+        final SSLSocket socket = factory.createSocket(address);
+        final SSLSession session = socket.getSession();
+        System.out.format("%s: %s %s, %d full handshakes, avg=%.2f ms, p50=%.2f ms, p99=%.2f ms%n",
+                          name,
+                          session.getProtocol(),
+                          session.getCipherSuite(),
+                          HANDSHAKES,
+                          totalNanos / (double) HANDSHAKES / TimeUnit.MILLISECONDS.toNanos(1),
+                          latenciesNanos[HANDSHAKES / 2] / (double) TimeUnit.MILLISECONDS.toNanos(1),
+                          latenciesNanos[HANDSHAKES * 99 / 100] / (double) TimeUnit.MILLISECONDS.toNanos(1));
+        session.invalidate();
+        socket.close();
+    }
+
+    private long[] handshakes(final AGISocketFactory factory, final InetSocketAddress address, final int handshakes) throws Exception {
+        final long[] latenciesNanos = new long[handshakes];
+        for (int i = 0; i < handshakes; i++) {
+            final long startNanos = System.nanoTime();
+            final SSLSocket socket = factory.createSocket(address);
+            latenciesNanos[i] = System.nanoTime() - startNanos;
+
+            // No resumption: every handshake is a full one
+            socket.getSession().invalidate();
+            socket.close();
+        }
+        return latenciesNanos;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.client.agi;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestAGIHostResolver {
+
+    @Test(groups = "fast")
+    public void testJvmTtl() throws Exception {
+        Assert.assertEquals(AGIHostResolver.parseJvmTtlSeconds(null, null, false), 30);
+        Assert.assertEquals(AGIHostResolver.parseJvmTtlSeconds(null, null, true), -1);
+        Assert.assertEquals(AGIHostResolver.parseJvmTtlSeconds("10", "120", true), 10);
+        Assert.assertEquals(AGIHostResolver.parseJvmTtlSeconds(null, "120", false), 120);
+        Assert.assertEquals(AGIHostResolver.parseJvmTtlSeconds("-5", null, false), -1);
+        Assert.assertEquals(AGIHostResolver.parseJvmTtlSeconds("invalid", "120", false), 120);
+
+        Assert.assertTrue(AGIHostResolver.checkJvmTtl(60000, 30));
+        Assert.assertTrue(AGIHostResolver.checkJvmTtl(60000, 0));
+        // The JVM would serve stale addresses past dnsTtl
+        Assert.assertFalse(AGIHostResolver.checkJvmTtl(60000, 120));
+        Assert.assertFalse(AGIHostResolver.checkJvmTtl(60000, -1));
+    }
+}
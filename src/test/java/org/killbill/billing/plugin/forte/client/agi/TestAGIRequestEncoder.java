@@ -0,0 +1,131 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.forte.client.agi;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import org.killbill.billing.plugin.forte.client.ForteAGIClient;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+
+public class TestAGIRequestEncoder {
+
+    @Test(groups = "fast")
+    public void testEncoding() throws Exception {
+        final AGIRequestEncoder encoder = new AGIRequestEncoder("123456", "password");
+        final AGIRequest request = encoder.newRequest(ForteAGIClient.CREDIT_CARD_SALE)
+                                          .put(AGIField.PG_TOTAL_AMOUNT, "10")
+                                          .put(AGIField.ECOM_BILLTO_POSTAL_STREET_LINE1, null)
+                                          .put(ForteAGIClient.PG_PAYMENT_METHOD_ID, "token")
+                                          .put("pg_unknown", "value");
+        request.terminate();
+
+        Assert.assertEquals(new String(request.getBuffer(), 0, request.getLength(), Charsets.ISO_8859_1),
+                            "pg_merchant_id=123456\n" +
+                            "pg_password=password\n" +
+                            "pg_transaction_type=10\n" +
+                            "pg_total_amount=10\n" +
+                            "pg_payment_method_id=token\n" +
+                            "pg_unknown=value\n" +
+                            "endofdata\n");
+        Assert.assertTrue(request.has(AGIField.PG_MERCHANT_ID));
+        Assert.assertTrue(request.has(AGIField.PG_PAYMENT_METHOD_ID));
+        Assert.assertFalse(request.has(AGIField.ECOM_PAYMENT_CARD_NUMBER));
+        Assert.assertEquals(request.getFields(), AGIField.PG_MERCHANT_ID.getBit() |
+                                                 AGIField.PG_PASSWORD.getBit() |
+                                                 AGIField.PG_TRANSACTION_TYPE.getBit() |
+                                                 AGIField.PG_TOTAL_AMOUNT.getBit() |
+                                                 AGIField.PG_PAYMENT_METHOD_ID.getBit());
+    }
+
+    @Test(groups = "fast")
+    public void testDuplicateFieldsAreRejected() throws Exception {
+        final AGIRequestEncoder encoder = new AGIRequestEncoder("123456", "password");
+
+        // Field with a bit (e.g. the token, from both the optional data and the token path)
+        final AGIRequest tokenRequest = encoder.newRequest(ForteAGIClient.CREDIT_CARD_SALE).put(AGIField.PG_PAYMENT_METHOD_ID, "token");
+        assertDuplicateIsRejected(tokenRequest, ForteAGIClient.PG_PAYMENT_METHOD_ID);
+        // Credentials and transaction type, from the encoder
+        assertDuplicateIsRejected(encoder.newRequest(ForteAGIClient.CREDIT_CARD_SALE), ForteAGIClient.PG_TRANSACTION_TYPE);
+        // Field without a bit
+        assertDuplicateIsRejected(encoder.newRequest(ForteAGIClient.CREDIT_CARD_SALE).put(AGIField.PG_MERCHANT_DATA_1, "data"), ForteAGIClient.PG_MERCHANT_DATA_1);
+        // Unknown key
+        assertDuplicateIsRejected(encoder.newRequest(ForteAGIClient.CREDIT_CARD_SALE).put("pg_unknown", "value"), "pg_unknown");
+
+        // Null values aren't set
+        encoder.newRequest(ForteAGIClient.CREDIT_CARD_SALE).put(AGIField.PG_MERCHANT_DATA_2, null).put(AGIField.PG_MERCHANT_DATA_2, "data").release();
+    }
+
+    @Test(groups = "fast")
+    public void testBuffersAreWipedAndReused() throws Exception {
+        final AGIRequestEncoder encoder = new AGIRequestEncoder("123456", "password");
+        final AGIRequest request = encoder.newRequest(ForteAGIClient.CREDIT_CARD_SALE).put(AGIField.ECOM_PAYMENT_CARD_NUMBER, "4111111111111111");
+        final byte[] buffer = request.getBuffer();
+        final int length = request.getLength();
+        request.release();
+        request.release();
+
+        for (int i = 0; i < length; i++) {
+            Assert.assertEquals(buffer[i], 0);
+        }
+        Assert.assertSame(encoder.newRequest(ForteAGIClient.CREDIT_CARD_SALE).getBuffer(), buffer);
+    }
+
+    @Test(groups = "fast")
+    public void testLargeRequest() throws Exception {
+        final AGIRequestEncoder encoder = new AGIRequestEncoder("123456", "password");
+        final StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            value.append('x');
+        }
+        final AGIRequest request = encoder.newRequest(ForteAGIClient.CREDIT_CARD_SALE).put(AGIField.PG_MERCHANT_DATA_1, value.toString());
+        request.terminate();
+
+        Assert.assertTrue(new String(request.getBuffer(), 0, request.getLength(), Charsets.ISO_8859_1).endsWith("pg_merchant_data_1=" + value + "\nendofdata\n"));
+    }
+
+    private void assertDuplicateIsRejected(final AGIRequest request, final String key) {
+        final byte[] buffer = request.getBuffer();
+        final int length = request.getLength();
+        try {
+            request.put(key, "value");
+            Assert.fail();
+        } catch (final IllegalArgumentException e) {
+            Assert.assertEquals(e.getMessage(), "Duplicate AGI field " + key);
+        }
+
+        // Released
+        Assert.assertNull(request.getBuffer());
+        for (int i = 0; i < length; i++) {
+            Assert.assertEquals(buffer[i], 0);
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testAllFieldsAreKnown() throws Exception {
+        for (final Field field : ForteAGIClient.class.getFields()) {
+            if (Modifier.isStatic(field.getModifiers()) && (field.getName().startsWith("PG_") || field.getName().startsWith("ECOM_"))) {
+                final AGIField agiField = AGIField.forKey((String) field.get(null));
+                Assert.assertNotNull(agiField, field.getName());
+                Assert.assertEquals(agiField.name(), field.getName());
+            }
+        }
+    }
+}
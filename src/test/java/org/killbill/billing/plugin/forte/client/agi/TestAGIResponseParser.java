@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.forte.client.agi;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.killbill.billing.plugin.forte.client.ForteAGIClient;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+
+public class TestAGIResponseParser {
+
+    private static final String RESPONSE = "pg_response_type=A\r\n" +
+                                           "pg_response_code=A01\r\n" +
+                                           "pg_response_description=APPROVED\r\n" +
+                                           "pg_trace_number=ABC=123\r\n" +
+                                           "pg_unknown=value\r\n" +
+                                           "endofdata\r\n" +
+                                           "ignored=true\r\n";
+
+    @Test(groups = "fast")
+    public void testFragmentedResponse() throws Exception {
+        final byte[] bytes = RESPONSE.getBytes(Charsets.ISO_8859_1);
+        final AGIResponseParser parser = new AGIResponseParser();
+        // One byte at a time, as it could come off the network
+        int offset = 0;
+        while (!parser.consume(bytes, offset, 1)) {
+            offset++;
+        }
+
+        final AGIResponse response = parser.getResponse();
+        Assert.assertEquals(response.get(AGIField.PG_RESPONSE_TYPE), "A");
+        Assert.assertEquals(response.get(AGIField.PG_RESPONSE_CODE), "A01");
+        Assert.assertEquals(response.get(AGIField.PG_TRACE_NUMBER), "ABC=123");
+        Assert.assertNull(response.get(AGIField.PG_AUTHORIZATION_CODE));
+        Assert.assertEquals(response.getAdditionalFields(), ImmutableMap.<String, String>of("pg_unknown", "value"));
+
+        // Map view
+        Assert.assertEquals(response.size(), 5);
+        Assert.assertEquals(response.get(ForteAGIClient.PG_RESPONSE_DESCRIPTION), "APPROVED");
+        Assert.assertEquals(response.get("pg_unknown"), "value");
+        Assert.assertFalse(response.containsKey("ignored"));
+        Assert.assertEquals(new LinkedHashMap<String, String>(response), ImmutableMap.<String, String>of(ForteAGIClient.PG_TRACE_NUMBER, "ABC=123",
+                                                                                                        ForteAGIClient.PG_RESPONSE_TYPE, "A",
+                                                                                                        ForteAGIClient.PG_RESPONSE_DESCRIPTION, "APPROVED",
+                                                                                                        ForteAGIClient.PG_RESPONSE_CODE, "A01",
+                                                                                                        "pg_unknown", "value"));
+    }
+
+    @Test(groups = "fast")
+    public void testTruncatedResponse() throws Exception {
+        final AGIResponseParser parser = new AGIResponseParser();
+        Assert.assertFalse(parser.consume(ByteBuffer.wrap("pg_response_type=E\npg_response_code=E10".getBytes(Charsets.ISO_8859_1))));
+
+        final AGIResponse response = parser.finish();
+        Assert.assertEquals(response.get(AGIField.PG_RESPONSE_TYPE), "E");
+        Assert.assertEquals(response.get(AGIField.PG_RESPONSE_CODE), "E10");
+    }
+
+    @Test(groups = "fast", expectedExceptions = ProtocolException.class)
+    public void testMalformedResponse() throws Exception {
+        new AGIResponseParser().consume(ByteBuffer.wrap("pg_response_type\n".getBytes(Charsets.ISO_8859_1)));
+    }
+
+    @Test(groups = "fast")
+    public void testCopyOf() throws Exception {
+        final Map<String, String> fields = ImmutableMap.<String, String>of(ForteAGIClient.PG_TRACE_NUMBER, "123", "pg_unknown", "value");
+        final AGIResponse response = AGIResponse.copyOf(fields);
+        Assert.assertEquals(response.get(AGIField.PG_TRACE_NUMBER), "123");
+        Assert.assertEquals(response, fields);
+        Assert.assertSame(AGIResponse.copyOf(response), response);
+    }
+}
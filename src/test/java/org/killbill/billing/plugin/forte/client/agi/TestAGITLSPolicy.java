@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.client.agi;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class TestAGITLSPolicy {
+
+    @Test(groups = "fast")
+    public void testDefaultPolicy() throws Exception {
+        final SSLEngine engine = createSSLEngine();
+        AGITLSPolicy.parse(null, null).apply(engine);
+
+        final List<String> enabledProtocols = Arrays.asList(engine.getEnabledProtocols());
+        Assert.assertTrue(AGITLSPolicy.DEFAULT_PROTOCOLS.containsAll(enabledProtocols), enabledProtocols.toString());
+        Assert.assertTrue(enabledProtocols.contains("TLSv1.2"), enabledProtocols.toString());
+
+        // Allow-list order, restricted to the supported suites
+        final List<String> enabledCipherSuites = Arrays.asList(engine.getEnabledCipherSuites());
+        Assert.assertFalse(enabledCipherSuites.isEmpty());
+        int previousIndex = -1;
+        for (final String cipherSuite : enabledCipherSuites) {
+            final int index = AGITLSPolicy.DEFAULT_CIPHER_SUITES.indexOf(cipherSuite);
+            Assert.assertTrue(index > previousIndex, enabledCipherSuites.toString());
+            previousIndex = index;
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testCustomPolicy() throws Exception {
+        final SSLEngine engine = createSSLEngine();
+        final List<String> providerDefaultProtocols = ImmutableList.<String>copyOf(engine.getEnabledProtocols());
+
+        AGITLSPolicy.parse(AGITLSPolicy.PROVIDER_DEFAULTS, "TLS_RSA_WITH_AES_128_CBC_SHA, TLS_NOT_A_SUITE").apply(engine);
+        Assert.assertEquals(Arrays.asList(engine.getEnabledProtocols()), providerDefaultProtocols);
+        Assert.assertEquals(Arrays.asList(engine.getEnabledCipherSuites()), ImmutableList.<String>of("TLS_RSA_WITH_AES_128_CBC_SHA"));
+    }
+
+    @Test(groups = "fast")
+    public void testNothingSupported() throws Exception {
+        final SSLContext sslContext = AGISocketFactory.createDefaultSSLContext();
+        try {
+            new AGISocketFactory(sslContext, AGITLSPolicy.parse("SSLv2", null), 100, 3600, 1000);
+            Assert.fail();
+        } catch (final IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("[SSLv2]"), e.getMessage());
+        }
+        try {
+            new AGISocketFactory(sslContext, AGITLSPolicy.parse(null, "TLS_NOT_A_SUITE"), 100, 3600, 1000);
+            Assert.fail();
+        } catch (final IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("[TLS_NOT_A_SUITE]"), e.getMessage());
+        }
+    }
+
+    private SSLEngine createSSLEngine() {
+        final SSLEngine engine = AGISocketFactory.createDefaultSSLContext().createSSLEngine("localhost", 6050);
+        engine.setUseClientMode(true);
+        return engine;
+    }
+}
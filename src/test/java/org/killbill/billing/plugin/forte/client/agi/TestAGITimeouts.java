@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.forte.client.agi;
+
+import org.killbill.billing.plugin.forte.client.ForteAGIClient;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+public class TestAGITimeouts {
+
+    @Test(groups = "fast")
+    public void testBudgets() throws Exception {
+        final AGITimeouts timeouts = new AGITimeouts(60000, ImmutableMap.<String, Long>of(ForteAGIClient.CREDIT_CARD_SALE, 30000L), false);
+        Assert.assertEquals(timeouts.getTimeoutMillis(ForteAGIClient.CREDIT_CARD_SALE), 30000);
+        Assert.assertEquals(timeouts.getTimeoutMillis(ForteAGIClient.CREDIT_CARD_AUTH), 60000);
+        Assert.assertEquals(timeouts.getTimeoutMillis(null), 60000);
+
+        for (int i = 0; i < 1000; i++) {
+            timeouts.recordLatency(ForteAGIClient.CREDIT_CARD_SALE, 100);
+        }
+        Assert.assertEquals(timeouts.getTimeoutMillis(ForteAGIClient.CREDIT_CARD_SALE), 30000);
+    }
+
+    @Test(groups = "fast")
+    public void testAdaptiveTimeouts() throws Exception {
+        final AGITimeouts timeouts = new AGITimeouts(60000, ImmutableMap.<String, Long>of(), true);
+
+        // Not enough samples yet
+        for (int i = 0; i < 63; i++) {
+            timeouts.recordLatency(ForteAGIClient.CREDIT_CARD_SALE, 1000);
+        }
+        Assert.assertEquals(timeouts.getTimeoutMillis(ForteAGIClient.CREDIT_CARD_SALE), 60000);
+
+        timeouts.recordLatency(ForteAGIClient.CREDIT_CARD_SALE, 1000);
+        Assert.assertEquals(timeouts.getTimeoutMillis(ForteAGIClient.CREDIT_CARD_SALE), 4000);
+        Assert.assertEquals(timeouts.getTimeoutMillis(ForteAGIClient.CREDIT_CARD_AUTH), 60000);
+
+        // Never below the floor
+        for (int i = 0; i < 256; i++) {
+            timeouts.recordLatency(ForteAGIClient.CREDIT_CARD_SALE, 10);
+        }
+        Assert.assertEquals(timeouts.getTimeoutMillis(ForteAGIClient.CREDIT_CARD_SALE), 2000);
+
+        // Timed out exchanges make the timeout grow back, up to the budget
+        for (int i = 0; i < 256; i++) {
+            timeouts.recordLatency(ForteAGIClient.CREDIT_CARD_SALE, timeouts.getTimeoutMillis(ForteAGIClient.CREDIT_CARD_SALE));
+        }
+        Assert.assertEquals(timeouts.getTimeoutMillis(ForteAGIClient.CREDIT_CARD_SALE), 60000);
+    }
+}
@@ -0,0 +1,504 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.client.ws;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.GeneralSecurityException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.namespace.QName;
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.MimeHeaders;
+import javax.xml.soap.SOAPConstants;
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPHeader;
+import javax.xml.soap.SOAPMessage;
+
+import org.killbill.billing.plugin.forte.client.agi.AGIStandInServer;
+import org.killbill.billing.plugin.forte.client.agi.AGIStandInServer.LatencyDistribution;
+import org.w3c.dom.Node;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+import https.ws_paymentsgateway_net.v1.ArrayOfClientRecord;
+import https.ws_paymentsgateway_net.v1.ArrayOfPaymentMethod;
+import https.ws_paymentsgateway_net.v1.Authentication;
+import https.ws_paymentsgateway_net.v1.ClientRecord;
+import https.ws_paymentsgateway_net.v1.CreateClient;
+import https.ws_paymentsgateway_net.v1.CreateClientResponse;
+import https.ws_paymentsgateway_net.v1.CreatePaymentMethod;
+import https.ws_paymentsgateway_net.v1.CreatePaymentMethodResponse;
+import https.ws_paymentsgateway_net.v1.DeleteClient;
+import https.ws_paymentsgateway_net.v1.DeleteClientResponse;
+import https.ws_paymentsgateway_net.v1.DeletePaymentMethod;
+import https.ws_paymentsgateway_net.v1.DeletePaymentMethodResponse;
+import https.ws_paymentsgateway_net.v1.GetClient;
+import https.ws_paymentsgateway_net.v1.GetClientResponse;
+import https.ws_paymentsgateway_net.v1.GetPaymentMethod;
+import https.ws_paymentsgateway_net.v1.GetPaymentMethodResponse;
+import https.ws_paymentsgateway_net.v1.ObjectFactory;
+import https.ws_paymentsgateway_net.v1.PaymentMethod;
+import https.ws_paymentsgateway_net.v1.UpdateClient;
+import https.ws_paymentsgateway_net.v1.UpdateClientResponse;
+import https.ws_paymentsgateway_net.v1.UpdatePaymentMethod;
+import https.ws_paymentsgateway_net.v1.UpdatePaymentMethodResponse;
+
+// Local stand-in for the Forte Web Services (Client.svc): implements the IClientService operations over SOAP 1.2 (HTTPS), checks
+// the TSHash of each call like the gateway does, and keeps the clients and payment methods in memory (tokens are sequential
+// ids). Latency, SOAP faults and HTTP 503 (transport errors for the client) can be configured while running, to load test
+// tokenization without the sandbox.
+public class WSStandInServer implements Closeable {
+
+    public static final String PATH = "/ws/Client.svc";
+    // Fails the Luhn check
+    public static final String INVALID_CARD_NUMBER = "4111111111111112";
+
+    private static final String LOCALHOST = "127.0.0.1";
+    private static final String HMAC_MD5 = "HmacMD5";
+    private static final long TICKS_EPOCH_OFFSET_SECONDS = 62135596800L;
+    private static final long MAX_CLOCK_SKEW_SECONDS = TimeUnit.MINUTES.toSeconds(15);
+    private static final String WSA_NS = "http://www.w3.org/2005/08/addressing";
+    private static final QName CLIENT_FAULT = SOAPConstants.SOAP_SENDER_FAULT;
+    private static final QName SERVER_FAULT = SOAPConstants.SOAP_RECEIVER_FAULT;
+
+    private final int merchantId;
+    private final String apiLoginId;
+    private final SecretKeySpec key;
+    private final HttpsServer server;
+    private final ExecutorService executor;
+    private final JAXBContext jaxbContext;
+    private final MessageFactory messageFactory;
+    private final AtomicInteger ids = new AtomicInteger(1000000);
+    private final ConcurrentMap<Integer, ClientRecord> clients = new ConcurrentHashMap<Integer, ClientRecord>();
+    private final ConcurrentMap<Integer, PaymentMethod> paymentMethods = new ConcurrentHashMap<Integer, PaymentMethod>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong faults = new AtomicLong();
+    private final AtomicLong unavailable = new AtomicLong();
+    private final Random random = new Random();
+
+    private volatile LatencyDistribution latency = LatencyDistribution.none();
+    private volatile double faultProbability;
+    private volatile double unavailableProbability;
+
+    public WSStandInServer(final int merchantId, final String apiLoginId, final String secureTransactionKey) throws IOException {
+        this.merchantId = merchantId;
+        this.apiLoginId = apiLoginId;
+        this.key = new SecretKeySpec(secureTransactionKey.getBytes(Charsets.UTF_8), HMAC_MD5);
+        try {
+            this.jaxbContext = JAXBContext.newInstance(ObjectFactory.class);
+            this.messageFactory = MessageFactory.newInstance(SOAPConstants.SOAP_1_2_PROTOCOL);
+        } catch (final JAXBException e) {
+            throw new IllegalStateException(e);
+        } catch (final SOAPException e) {
+            throw new IllegalStateException(e);
+        }
+
+        this.executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("ws-standin-%d").setDaemon(true).build());
+        // The policy of Client.wsdl requires HTTPS: same certificate as the AGI stand-in (see AGIStandInServer#createClientTrustManagers)
+        // Otherwise responses are delayed by ~40ms (Nagle's algorithm vs delayed acknowledgements), read once by the JDK server
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        this.server = HttpsServer.create(new InetSocketAddress(InetAddress.getByName(LOCALHOST), 0), 512);
+        this.server.setHttpsConfigurator(new HttpsConfigurator(AGIStandInServer.createServerSSLContext()));
+        this.server.setExecutor(executor);
+        this.server.createContext(PATH, new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                WSStandInServer.this.handle(exchange);
+            }
+        });
+        this.server.start();
+    }
+
+    public String getUrl() {
+        return "https://" + LOCALHOST + ":" + server.getAddress().getPort() + PATH;
+    }
+
+    // Requests received, failed ones included
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getFaults() {
+        return faults.get();
+    }
+
+    public long getUnavailable() {
+        return unavailable.get();
+    }
+
+    // Payment methods currently stored
+    public int getPaymentMethods() {
+        return paymentMethods.size();
+    }
+
+    // Time spent "processing" each request before answering
+    public WSStandInServer setLatency(final LatencyDistribution latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    // Share of the requests answered by a SOAP fault (an answer from the gateway for the client)
+    public WSStandInServer setFaultProbability(final double faultProbability) {
+        this.faultProbability = faultProbability;
+        return this;
+    }
+
+    // Share of the requests answered by an HTTP 503 without SOAP envelope (a transport error for the client)
+    public WSStandInServer setUnavailableProbability(final double unavailableProbability) {
+        this.unavailableProbability = unavailableProbability;
+        return this;
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try {
+            final byte[] requestBytes = ByteStreams.toByteArray(exchange.getRequestBody());
+            requests.incrementAndGet();
+
+            Thread.sleep(latency.nextMillis(random));
+            if (random.nextDouble() < unavailableProbability) {
+                unavailable.incrementAndGet();
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+
+            final SOAPMessage request = parseRequest(requestBytes, exchange);
+            final SOAPMessage response = messageFactory.createMessage();
+            try {
+                if (random.nextDouble() < faultProbability) {
+                    throw new FaultException(SERVER_FAULT, "Service temporarily unavailable");
+                }
+                final Object result = invoke(jaxbContext.createUnmarshaller().unmarshal(getPayload(request)));
+                jaxbContext.createMarshaller().marshal(result, response.getSOAPBody());
+            } catch (final FaultException e) {
+                faults.incrementAndGet();
+                response.getSOAPBody().addFault(e.faultCode, e.getMessage());
+            }
+            addAddressingHeaders(request, response);
+
+            final ByteArrayOutputStream content = new ByteArrayOutputStream();
+            response.writeTo(content);
+            exchange.getResponseHeaders().set("Content-Type", "application/soap+xml; charset=utf-8");
+            exchange.sendResponseHeaders(response.getSOAPBody().hasFault() ? 500 : 200, content.size());
+            exchange.getResponseBody().write(content.toByteArray());
+        } catch (final InterruptedException e) {
+            // Server closed
+            Thread.currentThread().interrupt();
+        } catch (final JAXBException e) {
+            throw new IOException(e);
+        } catch (final SOAPException e) {
+            throw new IOException(e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private SOAPMessage parseRequest(final byte[] requestBytes, final HttpExchange exchange) throws SOAPException, IOException {
+        final MimeHeaders headers = new MimeHeaders();
+        headers.addHeader("Content-Type", exchange.getRequestHeaders().getFirst("Content-Type"));
+        return messageFactory.createMessage(headers, new ByteArrayInputStream(requestBytes));
+    }
+
+    private Node getPayload(final SOAPMessage request) throws SOAPException {
+        Node payload = request.getSOAPBody().getFirstChild();
+        while (payload != null && payload.getNodeType() != Node.ELEMENT_NODE) {
+            payload = payload.getNextSibling();
+        }
+        if (payload == null) {
+            throw new FaultException(CLIENT_FAULT, "Empty SOAP body");
+        }
+        return payload;
+    }
+
+    // Like the gateway: the response is correlated with the request (otherwise CXF warns about every response)
+    private static void addAddressingHeaders(final SOAPMessage request, final SOAPMessage response) throws SOAPException {
+        final String action = getAddressingHeader(request, "Action");
+        final String messageId = getAddressingHeader(request, "MessageID");
+        final SOAPHeader header = response.getSOAPHeader();
+        if (action != null) {
+            header.addHeaderElement(new QName(WSA_NS, "Action", "a"))
+                  .addTextNode(response.getSOAPBody().hasFault() ? WSA_NS + "/soap/fault" : action + "Response");
+        }
+        if (messageId != null) {
+            header.addHeaderElement(new QName(WSA_NS, "RelatesTo", "a")).addTextNode(messageId);
+        }
+    }
+
+    private static String getAddressingHeader(final SOAPMessage request, final String name) throws SOAPException {
+        final SOAPHeader header = request.getSOAPHeader();
+        if (header == null) {
+            return null;
+        }
+        final Iterator<?> elements = header.getChildElements(new QName(WSA_NS, name));
+        return elements.hasNext() ? ((Node) elements.next()).getTextContent().trim() : null;
+    }
+
+    private Object invoke(final Object operation) {
+        if (operation instanceof CreateClient) {
+            final CreateClient createClient = (CreateClient) operation;
+            authenticate(createClient.getTicket());
+            final ClientRecord client = createClient.getClient();
+            checkMerchantId(client.getMerchantID());
+            client.setClientID(ids.incrementAndGet());
+            clients.put(client.getClientID(), client);
+
+            final CreateClientResponse response = new CreateClientResponse();
+            response.setCreateClientResult(client.getClientID());
+            return response;
+        } else if (operation instanceof UpdateClient) {
+            final UpdateClient updateClient = (UpdateClient) operation;
+            authenticate(updateClient.getTicket());
+            final ClientRecord client = updateClient.getClient();
+            checkMerchantId(client.getMerchantID());
+            if (clients.replace(client.getClientID(), client) == null) {
+                throw new FaultException(CLIENT_FAULT, "Invalid ClientID");
+            }
+
+            final UpdateClientResponse response = new UpdateClientResponse();
+            response.setUpdateClientResult(client.getClientID());
+            return response;
+        } else if (operation instanceof GetClient) {
+            final GetClient getClient = (GetClient) operation;
+            authenticate(getClient.getTicket());
+            checkMerchantId(getClient.getMerchantID());
+            final ArrayOfClientRecord records = new ArrayOfClientRecord();
+            if (getClient.getClientID() == 0) {
+                records.getClientRecord().addAll(clients.values());
+            } else if (clients.get(getClient.getClientID()) != null) {
+                records.getClientRecord().add(clients.get(getClient.getClientID()));
+            } else {
+                throw new FaultException(CLIENT_FAULT, "Invalid ClientID");
+            }
+
+            final GetClientResponse response = new GetClientResponse();
+            response.setGetClientResult(records);
+            return response;
+        } else if (operation instanceof DeleteClient) {
+            final DeleteClient deleteClient = (DeleteClient) operation;
+            authenticate(deleteClient.getTicket());
+            checkMerchantId(deleteClient.getMerchantID());
+            if (clients.remove(deleteClient.getClientID()) == null) {
+                throw new FaultException(CLIENT_FAULT, "Invalid ClientID");
+            }
+
+            final DeleteClientResponse response = new DeleteClientResponse();
+            response.setDeleteClientResult(deleteClient.getClientID());
+            return response;
+        } else if (operation instanceof CreatePaymentMethod) {
+            final CreatePaymentMethod createPaymentMethod = (CreatePaymentMethod) operation;
+            authenticate(createPaymentMethod.getTicket());
+            final PaymentMethod paymentMethod = createPaymentMethod.getPayment();
+            checkPaymentMethod(paymentMethod);
+            paymentMethod.setPaymentMethodID(ids.incrementAndGet());
+            paymentMethods.put(paymentMethod.getPaymentMethodID(), paymentMethod);
+
+            final CreatePaymentMethodResponse response = new CreatePaymentMethodResponse();
+            response.setCreatePaymentMethodResult(paymentMethod.getPaymentMethodID());
+            return response;
+        } else if (operation instanceof UpdatePaymentMethod) {
+            final UpdatePaymentMethod updatePaymentMethod = (UpdatePaymentMethod) operation;
+            authenticate(updatePaymentMethod.getTicket());
+            final PaymentMethod paymentMethod = updatePaymentMethod.getPayment();
+            checkPaymentMethod(paymentMethod);
+            if (paymentMethods.replace(paymentMethod.getPaymentMethodID(), paymentMethod) == null) {
+                throw new FaultException(CLIENT_FAULT, "Invalid PaymentMethodID");
+            }
+
+            final UpdatePaymentMethodResponse response = new UpdatePaymentMethodResponse();
+            response.setUpdatePaymentMethodResult(paymentMethod.getPaymentMethodID());
+            return response;
+        } else if (operation instanceof GetPaymentMethod) {
+            final GetPaymentMethod getPaymentMethod = (GetPaymentMethod) operation;
+            authenticate(getPaymentMethod.getTicket());
+            checkMerchantId(getPaymentMethod.getMerchantID());
+            final ArrayOfPaymentMethod records = new ArrayOfPaymentMethod();
+            for (final PaymentMethod paymentMethod : paymentMethods.values()) {
+                if ((getPaymentMethod.getPaymentMethodID() == 0 || getPaymentMethod.getPaymentMethodID() == paymentMethod.getPaymentMethodID()) &&
+                    (getPaymentMethod.getClientID() == 0 || getPaymentMethod.getClientID() == paymentMethod.getClientID())) {
+                    records.getPaymentMethod().add(mask(paymentMethod));
+                }
+            }
+            if (getPaymentMethod.getPaymentMethodID() != 0 && records.getPaymentMethod().isEmpty()) {
+                throw new FaultException(CLIENT_FAULT, "Invalid PaymentMethodID");
+            }
+
+            final GetPaymentMethodResponse response = new GetPaymentMethodResponse();
+            response.setGetPaymentMethodResult(records);
+            return response;
+        } else if (operation instanceof DeletePaymentMethod) {
+            final DeletePaymentMethod deletePaymentMethod = (DeletePaymentMethod) operation;
+            authenticate(deletePaymentMethod.getTicket());
+            checkMerchantId(deletePaymentMethod.getMerchantID());
+            if (paymentMethods.remove(deletePaymentMethod.getPaymentMethodID()) == null) {
+                throw new FaultException(CLIENT_FAULT, "Invalid PaymentMethodID");
+            }
+
+            final DeletePaymentMethodResponse response = new DeletePaymentMethodResponse();
+            response.setDeletePaymentMethodResult(deletePaymentMethod.getPaymentMethodID());
+            return response;
+        } else {
+            throw new FaultException(CLIENT_FAULT, "Unknown operation " + operation.getClass().getSimpleName());
+        }
+    }
+
+    // TSHash = HMAC-MD5(APILoginID|UTCTime) with the secure transaction key, UTCTime being .NET ticks close to the server time
+    private void authenticate(final Authentication ticket) {
+        if (ticket == null || !apiLoginId.equals(ticket.getAPILoginID()) || ticket.getUTCTime() == null || ticket.getTSHash() == null) {
+            throw new FaultException(CLIENT_FAULT, "Error[1]: Authentication Failed");
+        }
+
+        final long utcTimeSeconds;
+        try {
+            utcTimeSeconds = Long.parseLong(ticket.getUTCTime()) / 10000000L - TICKS_EPOCH_OFFSET_SECONDS;
+        } catch (final NumberFormatException e) {
+            throw new FaultException(CLIENT_FAULT, "Error[3]: Invalid UTCTime");
+        }
+        if (Math.abs(System.currentTimeMillis() / 1000 - utcTimeSeconds) > MAX_CLOCK_SKEW_SECONDS) {
+            throw new FaultException(CLIENT_FAULT, "Error[3]: Invalid UTCTime");
+        }
+
+        final String expectedHash;
+        try {
+            final Mac mac = Mac.getInstance(HMAC_MD5);
+            mac.init(key);
+            expectedHash = BaseEncoding.base16().lowerCase().encode(mac.doFinal((ticket.getAPILoginID() + "|" + ticket.getUTCTime()).getBytes(Charsets.US_ASCII)));
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        if (!expectedHash.equals(ticket.getTSHash())) {
+            throw new FaultException(CLIENT_FAULT, "Error[2]: Invalid TSHash");
+        }
+    }
+
+    private void checkMerchantId(final int requestMerchantId) {
+        if (requestMerchantId != merchantId) {
+            throw new FaultException(CLIENT_FAULT, "Error[4]: Invalid MerchantID");
+        }
+    }
+
+    private void checkPaymentMethod(final PaymentMethod paymentMethod) {
+        if (paymentMethod == null) {
+            throw new FaultException(CLIENT_FAULT, "Missing PaymentMethod");
+        }
+        checkMerchantId(paymentMethod.getMerchantID());
+        if (paymentMethod.getCcCardNumber() != null) {
+            if (paymentMethod.getCcCardType() == null) {
+                throw new FaultException(CLIENT_FAULT, "Missing CcCardType");
+            } else if (!isLuhnValid(paymentMethod.getCcCardNumber())) {
+                throw new FaultException(CLIENT_FAULT, "Invalid CcCardNumber");
+            } else if (paymentMethod.getCcExpirationDate() == null || !paymentMethod.getCcExpirationDate().matches("\\d{6}")) {
+                throw new FaultException(CLIENT_FAULT, "Invalid CcExpirationDate");
+            }
+        } else if (paymentMethod.getEcAccountNumber() != null) {
+            if (paymentMethod.getEcAccountTRN() == null || !paymentMethod.getEcAccountTRN().matches("\\d{9}")) {
+                throw new FaultException(CLIENT_FAULT, "Invalid EcAccountTRN");
+            } else if (paymentMethod.getEcAccountType() == null) {
+                throw new FaultException(CLIENT_FAULT, "Missing EcAccountType");
+            }
+        } else {
+            throw new FaultException(CLIENT_FAULT, "Missing CcCardNumber or EcAccountNumber");
+        }
+    }
+
+    // Like the gateway, only the last 4 digits are returned
+    private static PaymentMethod mask(final PaymentMethod stored) {
+        final PaymentMethod paymentMethod = new PaymentMethod();
+        paymentMethod.setMerchantID(stored.getMerchantID());
+        paymentMethod.setClientID(stored.getClientID());
+        paymentMethod.setPaymentMethodID(stored.getPaymentMethodID());
+        paymentMethod.setAcctHolderName(stored.getAcctHolderName());
+        paymentMethod.setCcCardType(stored.getCcCardType());
+        paymentMethod.setCcCardNumber(mask(stored.getCcCardNumber()));
+        paymentMethod.setCcExpirationDate(stored.getCcExpirationDate());
+        paymentMethod.setEcAccountType(stored.getEcAccountType());
+        paymentMethod.setEcAccountTRN(stored.getEcAccountTRN());
+        paymentMethod.setEcAccountNumber(mask(stored.getEcAccountNumber()));
+        paymentMethod.setNote(stored.getNote());
+        paymentMethod.setIsDefault(stored.isIsDefault());
+        return paymentMethod;
+    }
+
+    private static String mask(final String number) {
+        if (number == null || number.length() <= 4) {
+            return number;
+        }
+
+        final StringBuilder masked = new StringBuilder(number.length());
+        for (int i = 0; i < number.length() - 4; i++) {
+            masked.append('X');
+        }
+        return masked.append(number.substring(number.length() - 4)).toString();
+    }
+
+    private static boolean isLuhnValid(final String number) {
+        int sum = 0;
+        for (int i = 0; i < number.length(); i++) {
+            final char c = number.charAt(number.length() - 1 - i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            int digit = c - '0';
+            if (i % 2 == 1) {
+                digit *= 2;
+                digit = digit > 9 ? digit - 9 : digit;
+            }
+            sum += digit;
+        }
+        return number.length() > 0 && sum % 10 == 0;
+    }
+
+    private static final class FaultException extends RuntimeException {
+
+        private final QName faultCode;
+
+        private FaultException(final QName faultCode, final String message) {
+            super(message);
+            this.faultCode = faultCode;
+        }
+    }
+}
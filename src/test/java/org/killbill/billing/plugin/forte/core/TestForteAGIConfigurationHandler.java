@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.core;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.killbill.billing.osgi.libs.killbill.OSGIKillbillAPI;
+import org.killbill.billing.osgi.libs.killbill.OSGIKillbillLogService;
+import org.killbill.billing.plugin.forte.client.ForteAGIClient;
+import org.killbill.billing.plugin.forte.client.agi.AGIStandInServer;
+import org.killbill.billing.tenant.api.TenantUserApi;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class TestForteAGIConfigurationHandler {
+
+    private final UUID kbTenantId = UUID.randomUUID();
+
+    private AGIStandInServer server;
+    private TenantUserApi tenantUserApi;
+    private ForteAGIConfigurationHandler handler;
+
+    @BeforeMethod(groups = "fast")
+    public void setUp() throws Exception {
+        server = new AGIStandInServer();
+
+        tenantUserApi = Mockito.mock(TenantUserApi.class);
+        final OSGIKillbillAPI killbillAPI = Mockito.mock(OSGIKillbillAPI.class);
+        Mockito.when(killbillAPI.getTenantUserApi()).thenReturn(tenantUserApi);
+        setTenantConfiguration("123456");
+
+        handler = new ForteAGIConfigurationHandler(ForteActivator.PLUGIN_NAME, killbillAPI, Mockito.mock(OSGIKillbillLogService.class), AGIStandInServer.createClientSSLContext());
+    }
+
+    @AfterMethod(groups = "fast")
+    public void tearDown() throws Exception {
+        handler.close();
+        server.close();
+    }
+
+    @Test(groups = "fast")
+    public void testReconfigurationClosesPreviousClient() throws Exception {
+        final ForteAGIClient previousClient = handler.getConfigurable(kbTenantId);
+        createSaleTransaction(previousClient);
+        waitForIdlePooledSockets(previousClient, 2);
+
+        setTenantConfiguration("654321");
+        handler.configure(kbTenantId);
+        final ForteAGIClient client = handler.getConfigurable(kbTenantId);
+        Assert.assertNotSame(client, previousClient);
+
+        // Once its budget has elapsed, the warm sockets of the previous client are closed, and not replaced
+        waitForIdlePooledSockets(previousClient, 0);
+        Thread.sleep(500);
+        Assert.assertEquals(previousClient.getIdlePooledSockets(), 0);
+
+        createSaleTransaction(client);
+        waitForIdlePooledSockets(client, 2);
+        handler.close();
+        Assert.assertEquals(client.getIdlePooledSockets(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testReconfigurationDuringPayment() throws Exception {
+        // A payment retrieves the client of its tenant, then looks up its account and payment method...
+        final ForteAGIClient paymentClient = handler.getConfigurable(kbTenantId);
+
+        // ... while the configuration of the tenant is uploaded
+        setTenantConfiguration("654321");
+        handler.configure(kbTenantId);
+        Assert.assertNotSame(handler.getConfigurable(kbTenantId), paymentClient);
+
+        // The gateway call still goes through the client it holds
+        final Map<String, String> response = paymentClient.createSaleTransactionAsync(new BigDecimal("10"), "John", "Smith", "John Smith", "VISA", "4111111111111111", "08", "2030", null).get();
+        Assert.assertEquals(response.get(ForteAGIClient.PG_RESPONSE_TYPE), AGIStandInServer.RESPONSE_TYPE_APPROVAL, response.toString());
+    }
+
+    @Test(groups = "fast")
+    public void testConcurrentFirstConfiguration() throws Exception {
+        final int threads = 8;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            final List<Future<ForteAGIClient>> clients = new ArrayList<Future<ForteAGIClient>>();
+            for (int i = 0; i < threads; i++) {
+                clients.add(executor.submit(new Callable<ForteAGIClient>() {
+                    @Override
+                    public ForteAGIClient call() throws Exception {
+                        start.await();
+                        return handler.getConfigurable(kbTenantId);
+                    }
+                }));
+            }
+            start.countDown();
+
+            // A single client is created, and none is closed under the feet of the first payments
+            final ForteAGIClient client = clients.get(0).get();
+            for (final Future<ForteAGIClient> otherClient : clients) {
+                Assert.assertSame(otherClient.get(), client);
+            }
+            createSaleTransaction(client);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void setTenantConfiguration(final String merchantId) throws Exception {
+        final String configuration = "org.killbill.billing.plugin.forte.merchantId=" + merchantId + "\n" +
+                                     "org.killbill.billing.plugin.forte.password=password\n" +
+                                     "org.killbill.billing.plugin.forte.host=" + server.getHost() + "\n" +
+                                     "org.killbill.billing.plugin.forte.port=" + server.getPort() + "\n" +
+                                     "org.killbill.billing.plugin.forte.poolSize=2\n" +
+                                     "org.killbill.billing.plugin.forte.timeout=1000\n";
+        Mockito.when(tenantUserApi.getTenantValuesForKey(Mockito.eq("PLUGIN_CONFIG_" + ForteActivator.PLUGIN_NAME), Mockito.<TenantContext>any()))
+               .thenReturn(ImmutableList.<String>of(configuration));
+    }
+
+    private void createSaleTransaction(final ForteAGIClient agiClient) throws Exception {
+        agiClient.createSaleTransaction(new BigDecimal("10"), "John", "Smith", "John Smith", "VISA", "4111111111111111", "08", "2030", null);
+    }
+
+    private void waitForIdlePooledSockets(final ForteAGIClient agiClient, final int idlePooledSockets) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (agiClient.getIdlePooledSockets() != idlePooledSockets && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(agiClient.getIdlePooledSockets(), idlePooledSockets);
+    }
+}
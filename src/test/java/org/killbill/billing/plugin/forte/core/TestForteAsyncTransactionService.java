@@ -0,0 +1,184 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.forte.core;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.killbill.billing.osgi.libs.killbill.OSGIKillbillAPI;
+import org.killbill.billing.osgi.libs.killbill.OSGIKillbillLogService;
+import org.killbill.billing.plugin.forte.api.async.ForteTransactionCallback;
+import org.killbill.billing.plugin.forte.client.ForteAGIClient;
+import org.killbill.billing.plugin.forte.client.ForteExecutors;
+import org.killbill.billing.plugin.forte.client.agi.AGIResponse;
+import org.killbill.billing.plugin.forte.client.agi.AGIStandInServer;
+import org.killbill.billing.tenant.api.TenantUserApi;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.SettableFuture;
+
+public class TestForteAsyncTransactionService {
+
+    private static final BigDecimal AMOUNT = new BigDecimal("10");
+
+    private final UUID kbTenantId = UUID.randomUUID();
+
+    private ExecutorService callbackExecutor;
+    private SettableFuture<AGIResponse> exchange;
+    private ForteAsyncTransactionService asyncTransactionService;
+
+    @BeforeMethod(groups = "fast")
+    public void setUp() throws Exception {
+        callbackExecutor = ForteExecutors.newGatewayExecutor("forte-callbacks", 1, false);
+
+        exchange = SettableFuture.<AGIResponse>create();
+        final ForteAGIClient agiClient = Mockito.mock(ForteAGIClient.class);
+        Mockito.when(agiClient.createSaleTransactionAsync(Mockito.<BigDecimal>any(),
+                                                          Mockito.anyString(),
+                                                          Mockito.anyString(),
+                                                          Mockito.anyString(),
+                                                          Mockito.anyString(),
+                                                          Mockito.anyString(),
+                                                          Mockito.anyString(),
+                                                          Mockito.anyString(),
+                                                          Mockito.<Map<String, Object>>any())).thenReturn(exchange);
+        final ForteAGIConfigurationHandler agiConfigurationHandler = Mockito.mock(ForteAGIConfigurationHandler.class);
+        Mockito.when(agiConfigurationHandler.getConfigurable(kbTenantId)).thenReturn(agiClient);
+
+        asyncTransactionService = new ForteAsyncTransactionService(agiConfigurationHandler, callbackExecutor);
+    }
+
+    @AfterMethod(groups = "fast")
+    public void tearDown() throws Exception {
+        callbackExecutor.shutdownNow();
+    }
+
+    @Test(groups = "fast")
+    public void testBlockingCallback() throws Exception {
+        final CountDownLatch releaseCallback = new CountDownLatch(1);
+        final CountDownLatch callbackInvoked = new CountDownLatch(1);
+        final AtomicReference<String> callbackThread = new AtomicReference<String>();
+        final ForteTransactionCallback callback = new ForteTransactionCallback() {
+            @Override
+            public void onResponse(final Map<String, String> response) {
+                callbackThread.set(Thread.currentThread().getName());
+                callbackInvoked.countDown();
+                try {
+                    releaseCallback.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void onFailure(final Throwable t) {
+            }
+        };
+        final Future<Map<String, String>> future = asyncTransactionService.createSaleTransaction(kbTenantId, AMOUNT, "John", "Smith", "John Smith", "VISA", "4111111111111111", "08", "2030", ImmutableMap.<String, Object>of(), callback);
+
+        // Completed as the transport would (e.g. from the nio I/O thread): the callback doesn't hold this thread
+        final long startNanos = System.nanoTime();
+        exchange.set(AGIResponse.copyOf(ImmutableMap.<String, String>of(ForteAGIClient.PG_RESPONSE_TYPE, "A")));
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) < 1000);
+        Assert.assertEquals(future.get(5, TimeUnit.SECONDS).get(ForteAGIClient.PG_RESPONSE_TYPE), "A");
+
+        Assert.assertTrue(callbackInvoked.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(callbackThread.get().startsWith("forte-callbacks-"), callbackThread.get());
+        releaseCallback.countDown();
+    }
+
+    @Test(groups = "fast")
+    public void testReconfigurationWithPendingTransactions() throws Exception {
+        final AGIStandInServer server = new AGIStandInServer().setLatency(AGIStandInServer.LatencyDistribution.fixed(200));
+        final TenantUserApi tenantUserApi = Mockito.mock(TenantUserApi.class);
+        final OSGIKillbillAPI killbillAPI = Mockito.mock(OSGIKillbillAPI.class);
+        Mockito.when(killbillAPI.getTenantUserApi()).thenReturn(tenantUserApi);
+        setTenantConfiguration(tenantUserApi, server, "123456");
+        // Reconfigures the tenant right after the lookup of its client, before the transaction is submitted to it
+        final AtomicBoolean reconfigureOnLookup = new AtomicBoolean();
+        final ForteAGIConfigurationHandler agiConfigurationHandler = new ForteAGIConfigurationHandler(ForteActivator.PLUGIN_NAME,
+                                                                                                      killbillAPI,
+                                                                                                      Mockito.mock(OSGIKillbillLogService.class),
+                                                                                                      AGIStandInServer.createClientSSLContext()) {
+            @Override
+            public ForteAGIClient getConfigurable(final UUID kbTenantId) {
+                final ForteAGIClient client = super.getConfigurable(kbTenantId);
+                if (reconfigureOnLookup.compareAndSet(true, false)) {
+                    configure(kbTenantId);
+                }
+                return client;
+            }
+        };
+        try {
+            final ForteAsyncTransactionService service = new ForteAsyncTransactionService(agiConfigurationHandler, callbackExecutor);
+
+            // A fan-out batch of another plugin: more transactions than async threads, some are still queued...
+            final List<Future<Map<String, String>>> futures = new ArrayList<Future<Map<String, String>>>();
+            for (int i = 0; i < 5; i++) {
+                futures.add(service.createSaleTransaction(kbTenantId, AMOUNT, "John", "Smith", "John Smith", "VISA", "4111111111111111", "08", "2030", ImmutableMap.<String, Object>of(), null));
+            }
+
+            // ... when the configuration of the tenant is uploaded
+            setTenantConfiguration(tenantUserApi, server, "654321");
+            reconfigureOnLookup.set(true);
+            futures.add(service.createSaleTransaction(kbTenantId, AMOUNT, "John", "Smith", "John Smith", "VISA", "4111111111111111", "08", "2030", ImmutableMap.<String, Object>of(), null));
+            Assert.assertFalse(reconfigureOnLookup.get());
+            Assert.assertFalse(futures.get(futures.size() - 1).isDone());
+
+            for (final Future<Map<String, String>> future : futures) {
+                final Map<String, String> response = future.get(10, TimeUnit.SECONDS);
+                Assert.assertEquals(response.get(ForteAGIClient.PG_RESPONSE_TYPE), AGIStandInServer.RESPONSE_TYPE_APPROVAL, response.toString());
+                Assert.assertEquals(response.get(ForteAGIClient.PG_MERCHANT_ID), "123456");
+            }
+
+            // New transactions go through the new client
+            final Map<String, String> response = service.createSaleTransaction(kbTenantId, AMOUNT, "John", "Smith", "John Smith", "VISA", "4111111111111111", "08", "2030", ImmutableMap.<String, Object>of(), null)
+                                                        .get(10, TimeUnit.SECONDS);
+            Assert.assertEquals(response.get(ForteAGIClient.PG_MERCHANT_ID), "654321");
+        } finally {
+            agiConfigurationHandler.close();
+            server.close();
+        }
+    }
+
+    private void setTenantConfiguration(final TenantUserApi tenantUserApi, final AGIStandInServer server, final String merchantId) throws Exception {
+        final String configuration = "org.killbill.billing.plugin.forte.merchantId=" + merchantId + "\n" +
+                                     "org.killbill.billing.plugin.forte.password=password\n" +
+                                     "org.killbill.billing.plugin.forte.host=" + server.getHost() + "\n" +
+                                     "org.killbill.billing.plugin.forte.port=" + server.getPort() + "\n" +
+                                     "org.killbill.billing.plugin.forte.asyncThreads=2\n" +
+                                     "org.killbill.billing.plugin.forte.timeout=5000\n";
+        Mockito.when(tenantUserApi.getTenantValuesForKey(Mockito.eq("PLUGIN_CONFIG_" + ForteActivator.PLUGIN_NAME), Mockito.<TenantContext>any()))
+               .thenReturn(ImmutableList.<String>of(configuration));
+    }
+}
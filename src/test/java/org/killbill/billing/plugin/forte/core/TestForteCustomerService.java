@@ -0,0 +1,169 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.ws.WebServiceException;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.plugin.forte.client.ForteWSClient;
+import org.killbill.billing.plugin.forte.dao.ForteDao;
+import org.killbill.clock.DefaultClock;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+
+public class TestForteCustomerService {
+
+    private final UUID kbTenantId = UUID.randomUUID();
+
+    private ForteDao dao;
+    private ForteWSClient wsClient;
+    private Supplier<Account> account;
+    private ForteCustomerService service;
+
+    @BeforeMethod(groups = "fast")
+    public void setUp() throws Exception {
+        dao = Mockito.mock(ForteDao.class);
+        wsClient = Mockito.mock(ForteWSClient.class);
+
+        final Account mockAccount = Mockito.mock(Account.class);
+        Mockito.when(mockAccount.getName()).thenReturn("John Doe");
+        Mockito.when(mockAccount.getFirstNameLength()).thenReturn(4);
+        Mockito.when(mockAccount.getEmail()).thenReturn("john@example.com");
+        account = Suppliers.ofInstance(mockAccount);
+
+        final ForteWSConfigurationHandler configurationHandler = Mockito.mock(ForteWSConfigurationHandler.class);
+        Mockito.when(configurationHandler.getConfigurable(kbTenantId)).thenReturn(wsClient);
+
+        service = new ForteCustomerService(configurationHandler, dao, new DefaultClock(), 100);
+    }
+
+    @Test(groups = "fast")
+    public void testCreateOnce() throws Exception {
+        final UUID kbAccountId = UUID.randomUUID();
+        Mockito.when(wsClient.createClient("John", "Doe", null, null, null, null, "john@example.com")).thenReturn("123");
+
+        Assert.assertEquals(service.getOrCreateCustomerId(kbAccountId, kbTenantId, account), "123");
+        Mockito.verify(dao).addCustomer(Mockito.eq(kbAccountId), Mockito.eq("123"), Mockito.<DateTime>any(), Mockito.eq(kbTenantId));
+
+        // Cached: neither the gateway nor the database is queried again
+        Assert.assertEquals(service.getOrCreateCustomerId(kbAccountId, kbTenantId, account), "123");
+        Mockito.verify(wsClient, Mockito.times(1)).createClient(Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any());
+        Mockito.verify(dao, Mockito.times(1)).getCustomerId(kbAccountId, kbTenantId);
+    }
+
+    @Test(groups = "fast")
+    public void testExistingCustomer() throws Exception {
+        final UUID kbAccountId = UUID.randomUUID();
+        Mockito.when(dao.getCustomerId(kbAccountId, kbTenantId)).thenReturn("456");
+
+        Assert.assertEquals(service.getOrCreateCustomerId(kbAccountId, kbTenantId, account), "456");
+        Mockito.verifyZeroInteractions(wsClient);
+    }
+
+    @Test(groups = "fast")
+    public void testConcurrentCreations() throws Exception {
+        final UUID kbAccountId = UUID.randomUUID();
+        final CountDownLatch creating = new CountDownLatch(1);
+        final CountDownLatch created = new CountDownLatch(1);
+        Mockito.when(wsClient.createClient(Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any()))
+               .thenAnswer(new Answer<String>() {
+                   @Override
+                   public String answer(final InvocationOnMock invocation) throws Throwable {
+                       creating.countDown();
+                       Assert.assertTrue(created.await(10, TimeUnit.SECONDS));
+                       return "789";
+                   }
+               });
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<String>> customerIds = new ArrayList<Future<String>>();
+            for (int i = 0; i < 4; i++) {
+                customerIds.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return service.getOrCreateCustomerId(kbAccountId, kbTenantId, account);
+                    }
+                }));
+            }
+            Assert.assertTrue(creating.await(10, TimeUnit.SECONDS));
+            created.countDown();
+
+            for (final Future<String> customerId : customerIds) {
+                Assert.assertEquals(customerId.get(10, TimeUnit.SECONDS), "789");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Mockito.verify(wsClient, Mockito.times(1)).createClient(Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any());
+        Mockito.verify(dao, Mockito.times(1)).addCustomer(Mockito.eq(kbAccountId), Mockito.eq("789"), Mockito.<DateTime>any(), Mockito.eq(kbTenantId));
+    }
+
+    @Test(groups = "fast")
+    public void testGatewayFailureIsNotCached() throws Exception {
+        final UUID kbAccountId = UUID.randomUUID();
+        Mockito.when(wsClient.createClient(Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any()))
+               .thenThrow(new WebServiceException("Connection refused"))
+               .thenReturn("321");
+
+        try {
+            service.getOrCreateCustomerId(kbAccountId, kbTenantId, account);
+            Assert.fail();
+        } catch (final WebServiceException e) {
+            Assert.assertEquals(e.getMessage(), "Connection refused");
+        }
+        Assert.assertEquals(service.getOrCreateCustomerId(kbAccountId, kbTenantId, account), "321");
+    }
+
+    @Test(groups = "fast")
+    public void testNamelessAccount() throws Exception {
+        final UUID kbAccountId = UUID.randomUUID();
+        final Account namelessAccount = Mockito.mock(Account.class);
+        Mockito.when(namelessAccount.getFirstNameLength()).thenReturn(4);
+        Mockito.when(wsClient.createClient(null, null, null, null, null, null, null)).thenReturn("654");
+
+        Assert.assertEquals(service.getOrCreateCustomerId(kbAccountId, kbTenantId, Suppliers.ofInstance(namelessAccount)), "654");
+    }
+
+    @Test(groups = "fast")
+    public void testSplitName() {
+        Assert.assertEquals(ForteCustomerService.splitName("John Doe", 4), new String[]{"John", "Doe"});
+        Assert.assertEquals(ForteCustomerService.splitName("John Doe", null), new String[]{null, "John Doe"});
+        Assert.assertEquals(ForteCustomerService.splitName("Cher", 10), new String[]{"Cher", null});
+        Assert.assertEquals(ForteCustomerService.splitName(" Cher ", 0), new String[]{null, "Cher"});
+        Assert.assertEquals(ForteCustomerService.splitName(null, 4), new String[]{null, null});
+    }
+}
@@ -0,0 +1,402 @@
+/*
+ * Copyright 2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.plugin.forte.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.xml.namespace.QName;
+import javax.xml.soap.SOAPFactory;
+import javax.xml.ws.WebServiceException;
+import javax.xml.ws.soap.SOAPFaultException;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.osgi.libs.killbill.OSGIKillbillAPI;
+import org.killbill.billing.plugin.forte.client.ForteWSClient;
+import org.killbill.billing.plugin.forte.dao.ForteDao;
+import org.killbill.billing.plugin.forte.dao.ForteVaultMigrationBatch;
+import org.killbill.billing.plugin.forte.dao.gen.tables.records.ForteVaultMigrationsRecord;
+import org.killbill.clock.DefaultClock;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.SettableFuture;
+
+public class TestForteVaultMigrationService {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final UUID kbTenantId = UUID.randomUUID();
+    private final List<ForteVaultMigrationBatch> savedBatches = new ArrayList<ForteVaultMigrationBatch>();
+
+    private ForteDao dao;
+    private ForteWSClient wsClient;
+    private ForteCustomerService customerService;
+    private ForteVaultMigrationService service;
+
+    @BeforeMethod(groups = "fast")
+    public void setUp() throws Exception {
+        savedBatches.clear();
+
+        dao = Mockito.mock(ForteDao.class);
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) throws Throwable {
+                savedBatches.add((ForteVaultMigrationBatch) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(dao).addVaultMigrationBatch(Mockito.<ForteVaultMigrationBatch>any(), Mockito.<DateTime>any(), Mockito.eq(kbTenantId));
+
+        wsClient = Mockito.mock(ForteWSClient.class);
+        Mockito.when(wsClient.tokenizeCreditCardAsync(Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.eq("42")))
+               .thenReturn(Futures.immediateFuture("clid=1"));
+        Mockito.when(wsClient.tokenizeECheckAsync(Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.eq("42")))
+               .thenReturn(Futures.immediateFuture("clid=2"));
+
+        final ForteWSConfigurationHandler configurationHandler = Mockito.mock(ForteWSConfigurationHandler.class);
+        Mockito.when(configurationHandler.getConfigurable(kbTenantId)).thenReturn(wsClient);
+
+        // Payment methods are attached to the client of their account
+        customerService = Mockito.mock(ForteCustomerService.class);
+        Mockito.when(customerService.getOrCreateCustomerId(Mockito.<UUID>any(), Mockito.eq(kbTenantId), Mockito.<Supplier<Account>>any())).thenReturn("42");
+
+        service = new ForteVaultMigrationService(configurationHandler, customerService, Mockito.mock(OSGIKillbillAPI.class), dao, new DefaultClock());
+    }
+
+    @Test(groups = "fast")
+    public void testMigrate() throws Exception {
+        final List<Map<String, String>> records = new ArrayList<Map<String, String>>();
+        records.add(creditCard("4111111111111111"));
+        records.add(eCheck());
+        final Map<String, String> invalidRecord = creditCard("4111111111111111");
+        invalidRecord.put(ForteVaultMigrationService.RECORD_KB_ACCOUNT_ID, "not-a-uuid");
+        records.add(invalidRecord);
+        records.add(creditCard("4000000000000002"));
+        records.add(creditCard("4111111111111111"));
+
+        final SOAPFaultException declined = new SOAPFaultException(SOAPFactory.newInstance().createFault("Invalid card", new QName("http://schemas.xmlsoap.org/soap/envelope/", "Client")));
+        Mockito.when(wsClient.tokenizeCreditCardAsync(Mockito.<String>any(), Mockito.<String>any(), Mockito.eq("4000000000000002"), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any()))
+               .thenReturn(Futures.<String>immediateFailedFuture(declined));
+
+        final ForteVaultMigrationResult result = service.migrate(kbTenantId, "vault", toInputStream(records), 2, 2);
+        Assert.assertNull(result.getError());
+        Assert.assertEquals(result.getPosition(), 5);
+        Assert.assertEquals(result.getTokenized(), 3);
+        Assert.assertEquals(result.getSkipped(), 0);
+        Assert.assertEquals(result.getFailed(), 2);
+        Assert.assertEquals(result.getFailures().size(), 2);
+        Assert.assertEquals(result.getFailures().get(0).getPosition(), 3);
+        Assert.assertEquals(result.getFailures().get(1).getPosition(), 4);
+        Assert.assertEquals(result.getFailures().get(1).getKbPaymentMethodId(), records.get(3).get(ForteVaultMigrationService.RECORD_KB_PAYMENT_METHOD_ID));
+
+        // One checkpoint per batch
+        Assert.assertEquals(savedBatches.size(), 3);
+        Assert.assertEquals(savedBatches.get(0).getPosition(), 2);
+        Assert.assertEquals(savedBatches.get(0).getPaymentMethods().size(), 2);
+        Assert.assertEquals(savedBatches.get(1).getPosition(), 4);
+        Assert.assertEquals(savedBatches.get(1).getPaymentMethods().size(), 0);
+        Assert.assertEquals(savedBatches.get(2).getPosition(), 5);
+        Assert.assertEquals(savedBatches.get(2).getTokenized(), 3);
+        Assert.assertEquals(savedBatches.get(2).getFailed(), 2);
+
+        // Card and account numbers aren't stored
+        final ForteVaultMigrationBatch.PaymentMethod creditCard = savedBatches.get(0).getPaymentMethods().get(0);
+        Assert.assertEquals(creditCard.getKbPaymentMethodId().toString(), records.get(0).get(ForteVaultMigrationService.RECORD_KB_PAYMENT_METHOD_ID));
+        Assert.assertTrue(creditCard.isDefault());
+        Assert.assertEquals(creditCard.getProperties().get("token"), "clid=1");
+        Assert.assertEquals(creditCard.getProperties().get("ccType"), "visa");
+        Assert.assertNull(creditCard.getProperties().get("ccNumber"));
+        final ForteVaultMigrationBatch.PaymentMethod eCheck = savedBatches.get(0).getPaymentMethods().get(1);
+        Assert.assertEquals(eCheck.getProperties().get("token"), "clid=2");
+        Assert.assertNull(eCheck.getProperties().get("accountNumber"));
+    }
+
+    @Test(groups = "fast")
+    public void testResume() throws Exception {
+        final List<Map<String, String>> records = new ArrayList<Map<String, String>>();
+        for (int i = 0; i < 4; i++) {
+            records.add(creditCard("4111111111111111"));
+        }
+
+        // First two records saved by a previous run, the third one saved before the crash
+        final ForteVaultMigrationsRecord checkpoint = new ForteVaultMigrationsRecord();
+        checkpoint.setPosition(2L);
+        checkpoint.setTokenized(2L);
+        checkpoint.setSkipped(0L);
+        checkpoint.setFailed(0L);
+        Mockito.when(dao.getVaultMigration("vault", kbTenantId)).thenReturn(checkpoint);
+        final String savedPaymentMethodId = records.get(2).get(ForteVaultMigrationService.RECORD_KB_PAYMENT_METHOD_ID);
+        Mockito.when(dao.getExistingPaymentMethodIds(Mockito.<Collection<String>>any())).thenReturn(ImmutableSet.<String>of(savedPaymentMethodId));
+
+        final ForteVaultMigrationResult result = service.migrate(kbTenantId, "vault", toInputStream(records), 4, 10);
+        Assert.assertNull(result.getError());
+        Assert.assertEquals(result.getPosition(), 4);
+        Assert.assertEquals(result.getTokenized(), 3);
+        Assert.assertEquals(result.getSkipped(), 1);
+        Assert.assertEquals(result.getFailed(), 0);
+
+        Mockito.verify(wsClient, Mockito.times(1)).tokenizeCreditCardAsync(Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any());
+        Assert.assertEquals(savedBatches.size(), 1);
+        Assert.assertEquals(savedBatches.get(0).getPaymentMethods().size(), 1);
+        Assert.assertEquals(savedBatches.get(0).getPaymentMethods().get(0).getKbPaymentMethodId().toString(), records.get(3).get(ForteVaultMigrationService.RECORD_KB_PAYMENT_METHOD_ID));
+    }
+
+    @Test(groups = "fast")
+    public void testGatewayOutage() throws Exception {
+        final List<Map<String, String>> records = new ArrayList<Map<String, String>>();
+        records.add(creditCard("4111111111111111"));
+        records.add(creditCard("4111111111111111"));
+        records.add(creditCard("4000000000000002"));
+        records.add(creditCard("4111111111111111"));
+        records.add(creditCard("4111111111111111"));
+
+        Mockito.when(wsClient.tokenizeCreditCardAsync(Mockito.<String>any(), Mockito.<String>any(), Mockito.eq("4000000000000002"), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any()))
+               .thenReturn(Futures.<String>immediateFailedFuture(new WebServiceException("Connection refused")));
+
+        final ForteVaultMigrationResult result = service.migrate(kbTenantId, "vault", toInputStream(records), 1, 2);
+        Assert.assertEquals(result.getError(), "Connection refused");
+        // The second batch will be replayed: the fifth record isn't read
+        Assert.assertEquals(result.getPosition(), 2);
+        Assert.assertEquals(result.getTokenized(), 2);
+        Assert.assertEquals(result.getFailed(), 0);
+
+        Assert.assertEquals(savedBatches.size(), 2);
+        Assert.assertEquals(savedBatches.get(1).getPosition(), 2);
+        Assert.assertEquals(savedBatches.get(1).getTokenized(), 2);
+        Assert.assertEquals(savedBatches.get(1).getPaymentMethods().size(), 1);
+        final String savedPaymentMethodId = records.get(3).get(ForteVaultMigrationService.RECORD_KB_PAYMENT_METHOD_ID);
+        Assert.assertEquals(savedBatches.get(1).getPaymentMethods().get(0).getKbPaymentMethodId().toString(), savedPaymentMethodId);
+
+        // Once the gateway is back, the second batch is replayed: the fourth record, saved already, is only counted once
+        Mockito.when(wsClient.tokenizeCreditCardAsync(Mockito.<String>any(), Mockito.<String>any(), Mockito.eq("4000000000000002"), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any()))
+               .thenReturn(Futures.immediateFuture("clid=3"));
+        final ForteVaultMigrationsRecord checkpoint = new ForteVaultMigrationsRecord();
+        checkpoint.setPosition(savedBatches.get(1).getPosition());
+        checkpoint.setTokenized(savedBatches.get(1).getTokenized());
+        checkpoint.setSkipped(savedBatches.get(1).getSkipped());
+        checkpoint.setFailed(savedBatches.get(1).getFailed());
+        Mockito.when(dao.getVaultMigration("vault", kbTenantId)).thenReturn(checkpoint);
+        Mockito.when(dao.getExistingPaymentMethodIds(Mockito.<Collection<String>>any())).thenReturn(ImmutableSet.<String>of(savedPaymentMethodId));
+
+        final ForteVaultMigrationResult resumedResult = service.migrate(kbTenantId, "vault", toInputStream(records), 1, 2);
+        Assert.assertNull(resumedResult.getError());
+        Assert.assertEquals(resumedResult.getPosition(), 5);
+        Assert.assertEquals(resumedResult.getTokenized(), 4);
+        Assert.assertEquals(resumedResult.getSkipped(), 1);
+        Assert.assertEquals(resumedResult.getFailed(), 0);
+        Assert.assertEquals(resumedResult.getTokenized() + resumedResult.getSkipped() + resumedResult.getFailed(), records.size());
+    }
+
+    @Test(groups = "fast")
+    public void testClientCreationFailures() throws Exception {
+        final List<Map<String, String>> records = new ArrayList<Map<String, String>>();
+        records.add(creditCard("4111111111111111"));
+        records.add(creditCard("4111111111111111"));
+        records.add(creditCard("4111111111111111"));
+
+        // Rejected for the first account, the gateway is down for the third one
+        final SOAPFaultException rejected = new SOAPFaultException(SOAPFactory.newInstance().createFault("Invalid client", new QName("http://schemas.xmlsoap.org/soap/envelope/", "Client")));
+        Mockito.when(customerService.getOrCreateCustomerId(Mockito.eq(UUID.fromString(records.get(0).get(ForteVaultMigrationService.RECORD_KB_ACCOUNT_ID))), Mockito.eq(kbTenantId), Mockito.<Supplier<Account>>any()))
+               .thenThrow(rejected);
+        Mockito.when(customerService.getOrCreateCustomerId(Mockito.eq(UUID.fromString(records.get(2).get(ForteVaultMigrationService.RECORD_KB_ACCOUNT_ID))), Mockito.eq(kbTenantId), Mockito.<Supplier<Account>>any()))
+               .thenThrow(new WebServiceException("Connection refused"));
+
+        final ForteVaultMigrationResult result = service.migrate(kbTenantId, "vault", toInputStream(records), 1, 2);
+        Assert.assertEquals(result.getError(), "Connection refused");
+        Assert.assertEquals(result.getPosition(), 2);
+        Assert.assertEquals(result.getTokenized(), 1);
+        Assert.assertEquals(result.getFailed(), 1);
+        Assert.assertEquals(result.getFailures().get(0).getPosition(), 1);
+
+        // Neither is tokenized outside of the client of its account
+        Mockito.verify(wsClient, Mockito.times(1)).tokenizeCreditCardAsync(Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any());
+    }
+
+    @Test(groups = "fast")
+    public void testDatabaseOutageDuringClientRetrieval() throws Exception {
+        final List<Map<String, String>> records = new ArrayList<Map<String, String>>();
+        records.add(creditCard("4111111111111111"));
+        records.add(creditCard("4111111111111111"));
+        records.add(creditCard("4111111111111111"));
+
+        Mockito.when(customerService.getOrCreateCustomerId(Mockito.eq(UUID.fromString(records.get(1).get(ForteVaultMigrationService.RECORD_KB_ACCOUNT_ID))), Mockito.eq(kbTenantId), Mockito.<Supplier<Account>>any()))
+               .thenThrow(new SQLException("Connection is closed"));
+
+        final ForteVaultMigrationResult result = service.migrate(kbTenantId, "vault", toInputStream(records), 2, 3);
+        Assert.assertEquals(result.getError(), "Connection is closed");
+        Assert.assertEquals(result.getPosition(), 0);
+
+        // What was tokenized in the batch is saved, so that the next run doesn't tokenize it again
+        Assert.assertEquals(savedBatches.size(), 1);
+        Assert.assertEquals(savedBatches.get(0).getPaymentMethods().size(), 2);
+        Mockito.verify(wsClient, Mockito.times(2)).tokenizeCreditCardAsync(Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any());
+    }
+
+    @Test(groups = "fast")
+    public void testMigrationAlreadyRunning() throws Exception {
+        final List<Map<String, String>> records = new ArrayList<Map<String, String>>();
+        records.add(creditCard("4111111111111111"));
+
+        final SettableFuture<String> token = SettableFuture.<String>create();
+        final CountDownLatch tokenizing = new CountDownLatch(1);
+        Mockito.when(wsClient.tokenizeCreditCardAsync(Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any()))
+               .thenAnswer(new Answer<SettableFuture<String>>() {
+                   @Override
+                   public SettableFuture<String> answer(final InvocationOnMock invocation) {
+                       tokenizing.countDown();
+                       return token;
+                   }
+               });
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<ForteVaultMigrationResult> result = executor.submit(new Callable<ForteVaultMigrationResult>() {
+                @Override
+                public ForteVaultMigrationResult call() throws Exception {
+                    return service.migrate(kbTenantId, "vault", toInputStream(records), 1, 1);
+                }
+            });
+            Assert.assertTrue(tokenizing.await(5, TimeUnit.SECONDS));
+
+            try {
+                service.migrate(kbTenantId, "vault", toInputStream(records), 1, 1);
+                Assert.fail();
+            } catch (final ForteVaultMigrationRunningException e) {
+                Assert.assertEquals(e.getMessage(), "Vault migration vault is already running");
+            }
+
+            token.set("clid=1");
+            Assert.assertEquals(result.get(5, TimeUnit.SECONDS).getTokenized(), 1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testInterruptedWithPendingTokenizations() throws Exception {
+        final List<Map<String, String>> records = new ArrayList<Map<String, String>>();
+        records.add(creditCard("4111111111111111"));
+        records.add(creditCard("4111111111111111"));
+        records.add(creditCard("4111111111111111"));
+
+        final SettableFuture<String> token = SettableFuture.<String>create();
+        final CountDownLatch tokenizing = new CountDownLatch(1);
+        Mockito.when(wsClient.tokenizeCreditCardAsync(Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any()))
+               .thenAnswer(new Answer<SettableFuture<String>>() {
+                   @Override
+                   public SettableFuture<String> answer(final InvocationOnMock invocation) {
+                       tokenizing.countDown();
+                       return token;
+                   }
+               });
+
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        final Thread migration = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    service.migrate(kbTenantId, "vault", toInputStream(records), 1, 3);
+                } catch (final Exception e) {
+                    failure.set(e);
+                }
+            }
+        });
+        migration.start();
+
+        // The first record is being tokenized, the second one waits for its permit
+        Assert.assertTrue(tokenizing.await(5, TimeUnit.SECONDS));
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (migration.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(migration.getState(), Thread.State.WAITING);
+        migration.interrupt();
+
+        // The token created meanwhile is saved, without moving the position: the next run skips that record
+        token.set("clid=1");
+        migration.join(5000);
+        Assert.assertTrue(failure.get() instanceof InterruptedIOException, String.valueOf(failure.get()));
+        Assert.assertEquals(savedBatches.size(), 1);
+        Assert.assertEquals(savedBatches.get(0).getPosition(), 0);
+        Assert.assertEquals(savedBatches.get(0).getPaymentMethods().size(), 1);
+        Assert.assertEquals(savedBatches.get(0).getPaymentMethods().get(0).getKbPaymentMethodId().toString(), records.get(0).get(ForteVaultMigrationService.RECORD_KB_PAYMENT_METHOD_ID));
+        Assert.assertEquals(savedBatches.get(0).getPaymentMethods().get(0).getProperties().get("token"), "clid=1");
+        Mockito.verify(wsClient, Mockito.times(1)).tokenizeCreditCardAsync(Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<String>any());
+    }
+
+    private Map<String, String> creditCard(final String ccNumber) {
+        final Map<String, String> record = newRecord();
+        record.put("ccFirstName", "John");
+        record.put("ccLastName", "Doe");
+        record.put("ccType", "visa");
+        record.put("ccNumber", ccNumber);
+        record.put("ccExpirationMonth", "12");
+        record.put("ccExpirationYear", "2030");
+        return record;
+    }
+
+    private Map<String, String> eCheck() {
+        final Map<String, String> record = newRecord();
+        record.put("accountHolderName", "John Doe");
+        record.put("trn", "021000021");
+        record.put("accountNumber", "2222222222222");
+        record.put("accountType", "Checking");
+        return record;
+    }
+
+    private Map<String, String> newRecord() {
+        final Map<String, String> record = new LinkedHashMap<String, String>();
+        record.put(ForteVaultMigrationService.RECORD_KB_ACCOUNT_ID, UUID.randomUUID().toString());
+        record.put(ForteVaultMigrationService.RECORD_KB_PAYMENT_METHOD_ID, UUID.randomUUID().toString());
+        record.put(ForteVaultMigrationService.RECORD_IS_DEFAULT, "true");
+        return record;
+    }
+
+    private InputStream toInputStream(final List<Map<String, String>> records) throws Exception {
+        final StringBuilder content = new StringBuilder();
+        for (final Map<String, String> record : records) {
+            content.append(objectMapper.writeValueAsString(record)).append('\n');
+        }
+        return new ByteArrayInputStream(content.toString().getBytes(Charsets.UTF_8));
+    }
+}